@@ -0,0 +1,65 @@
+package evaluator.decompose;
+
+import dev.roanh.gmark.lang.cq.CQ;
+import dev.roanh.gmark.lang.cpq.CPQ;
+import evaluator.decompose.CpqDecomposition.Component;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CpqEnumerationBenchmark {
+    @Param({"3", "5", "7"})
+    public int depth;
+
+    @Param({"4"})
+    public int labelCount;
+
+    @Param({"8"})
+    public int queryCount;
+
+    @Param({"0"})
+    public int decompositionLimit;
+
+    @Param({"1"})
+    public long seed;
+
+    private final List<CQ> queries = new ArrayList<>();
+    private final List<Integer> diameters = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        queries.clear();
+        diameters.clear();
+        for (CPQ cpq : RandomCpqs.generate(queryCount, depth, labelCount, seed)) {
+            queries.add(cpq.toCQ());
+            diameters.add(cpq.getDiameter());
+        }
+    }
+
+    @Benchmark
+    public void enumerateComponents(Blackhole bh) {
+        for (int i = 0; i < queries.size(); i++) {
+            List<Component> components = CpqEnumeration.enumerateCpqkComponents(queries.get(i), diameters.get(i));
+            bh.consume(components);
+        }
+    }
+
+    @Benchmark
+    public void enumerateExactDecompositions(Blackhole bh) {
+        for (int i = 0; i < queries.size(); i++) {
+            CpqEnumeration.enumerateExactDecompositions(queries.get(i), diameters.get(i), decompositionLimit, bh::consume);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package evaluator.decompose;
+
+import dev.roanh.gmark.lang.cpq.CPQ;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CpqNormalizerBenchmark {
+    @Param({"3", "6", "9"})
+    public int depth;
+
+    @Param({"4"})
+    public int labelCount;
+
+    @Param({"64"})
+    public int queryCount;
+
+    @Param({"1"})
+    public long seed;
+
+    private List<CPQ> queries;
+
+    @Setup
+    public void setup() {
+        queries = RandomCpqs.generate(queryCount, depth, labelCount, seed);
+    }
+
+    @Benchmark
+    public void normalize(Blackhole bh) {
+        for (CPQ cpq : queries) {
+            bh.consume(CpqNormalizer.normalize(cpq));
+        }
+    }
+}
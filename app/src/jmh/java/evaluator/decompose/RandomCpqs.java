@@ -0,0 +1,23 @@
+package evaluator.decompose;
+
+import dev.roanh.gmark.lang.cpq.CPQ;
+import dev.roanh.gmark.util.Util;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seeded batches of {@link CPQ#generateRandomCPQ} queries, so every fork plans the same inputs.
+ */
+final class RandomCpqs {
+    private RandomCpqs() {
+    }
+
+    static List<CPQ> generate(int count, int depth, int labelCount, long seed) {
+        Util.setRandomSeed(seed);
+        List<CPQ> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            out.add(CPQ.generateRandomCPQ(depth, labelCount));
+        }
+        return out;
+    }
+}
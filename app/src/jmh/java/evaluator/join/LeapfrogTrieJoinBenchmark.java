@@ -0,0 +1,91 @@
+package evaluator.join;
+
+import evaluator.join.SyntheticRelations.Distribution;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LeapfrogTrieJoinBenchmark {
+    public enum Pattern {
+        PATH,
+        TRIANGLE,
+        CYCLE4
+    }
+
+    @Param({"UNIFORM", "ZIPF"})
+    public Distribution distribution;
+
+    @Param({"PATH", "TRIANGLE", "CYCLE4"})
+    public Pattern pattern;
+
+    @Param({"2000"})
+    public int vertices;
+
+    @Param({"20000"})
+    public int edges;
+
+    @Param({"1.1", "1.5"})
+    public double zipfExponent;
+
+    /**
+     * Heavy-key threshold for the projections; {@code 0} runs the plain leapfrog on every key.
+     */
+    @Param({"0", "64"})
+    public int heavyDegree;
+
+    /**
+     * Stores the projections as compressed posting lists; they have no heavy keys.
+     */
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    @Param({"42"})
+    public long seed;
+
+    private List<RelationBinding> relations;
+    private List<String> variableOrder;
+
+    @Setup
+    public void setup() {
+        int[][] graph = SyntheticRelations.edges(distribution, vertices, edges, zipfExponent, seed);
+        relations = switch (pattern) {
+            case PATH -> List.of(
+                    relation("?a", "?b", graph),
+                    relation("?b", "?c", graph));
+            case TRIANGLE -> List.of(
+                    relation("?a", "?b", graph),
+                    relation("?b", "?c", graph),
+                    relation("?a", "?c", graph));
+            case CYCLE4 -> List.of(
+                    relation("?a", "?b", graph),
+                    relation("?b", "?c", graph),
+                    relation("?c", "?d", graph),
+                    relation("?d", "?a", graph));
+        };
+        variableOrder = pattern == Pattern.CYCLE4
+                ? List.of("?a", "?b", "?c", "?d")
+                : List.of("?a", "?b", "?c");
+    }
+
+    private RelationBinding relation(String sourceVar, String targetVar, int[][] graph) {
+        return compressed
+                ? SyntheticRelations.compressed(sourceVar, targetVar, graph)
+                : SyntheticRelations.binary(sourceVar, targetVar, graph, heavyDegree);
+    }
+
+    @Benchmark
+    public List<Map<String, Integer>> join() {
+        return LeapfrogTrieJoin.join(relations, variableOrder);
+    }
+}
@@ -0,0 +1,57 @@
+package evaluator.join;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortedIntersectionBenchmark {
+    @Param({"256", "4096"})
+    public int length;
+
+    /**
+     * Fraction of the id range present in each list; higher means more matches.
+     */
+    @Param({"0.1", "0.5"})
+    public double density;
+
+    @Param({"42"})
+    public long seed;
+
+    private int[] a;
+    private int[] b;
+    private int[] out;
+    private SortedIntersection.Kernel kernel;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(seed);
+        int bound = (int) (length / density);
+        a = random.ints(length * 2L, 0, bound).distinct().limit(length).sorted().toArray();
+        b = random.ints(length * 2L, 0, bound).distinct().limit(length).sorted().toArray();
+        out = new int[length];
+        kernel = SortedIntersection.vectorKernel();
+    }
+
+    @Benchmark
+    public int scalar() {
+        return SortedIntersection.scalar(a, 0, a.length, b, 0, b.length, out, 0);
+    }
+
+    @Benchmark
+    public int vector() {
+        if (kernel == null) {
+            throw new IllegalStateException("Vector kernel unavailable; run with -PvectorSimd");
+        }
+        return kernel.intersect(a, 0, a.length, b, 0, b.length, out);
+    }
+}
@@ -0,0 +1,67 @@
+package evaluator.join;
+
+import evaluator.join.RelationBinding.RelationProjection;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generators for the edge sets that back the join benchmarks.
+ */
+public final class SyntheticRelations {
+    public enum Distribution {
+        UNIFORM,
+        ZIPF
+    }
+
+    private SyntheticRelations() {
+    }
+
+    /**
+     * Generates {@code edgeCount} distinct-ish (source, target) pairs over {@code vertexCount}
+     * vertices. With {@link Distribution#ZIPF} both endpoints follow a Zipf law with the given
+     * exponent, so a handful of hub vertices carry most of the edges.
+     */
+    static int[][] edges(Distribution distribution, int vertexCount, int edgeCount, double exponent, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] cdf = distribution == Distribution.ZIPF ? zipfCdf(vertexCount, exponent) : null;
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            sources[i] = cdf == null ? random.nextInt(vertexCount) : sample(cdf, random);
+            targets[i] = cdf == null ? random.nextInt(vertexCount) : sample(cdf, random);
+        }
+        return new int[][] {sources, targets};
+    }
+
+    static RelationBinding binary(String sourceVar, String targetVar, int[][] edges) {
+        return binary(sourceVar, targetVar, edges, RelationProjection.DEFAULT_HEAVY_DEGREE);
+    }
+
+    static RelationBinding binary(String sourceVar, String targetVar, int[][] edges, int heavyDegree) {
+        RelationProjection projection = RelationProjection.fromPairs(edges[0], edges[1], edges[0].length, heavyDegree);
+        return RelationBinding.binary(sourceVar, targetVar, sourceVar + "->" + targetVar, projection);
+    }
+
+    static RelationBinding compressed(String sourceVar, String targetVar, int[][] edges) {
+        CompressedProjection projection = CompressedProjection.fromPairs(edges[0], edges[1], edges[0].length);
+        return RelationBinding.binary(sourceVar, targetVar, sourceVar + "->" + targetVar, projection);
+    }
+
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, SplittableRandom random) {
+        int idx = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(idx >= 0 ? idx : -idx - 1, cdf.length - 1);
+    }
+}
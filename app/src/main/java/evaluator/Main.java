@@ -2,24 +2,58 @@ package evaluator;
 
 import evaluator.cq.ConjunctiveQuery;
 import evaluator.decompose.CpqDecomposition;
+import evaluator.decompose.CpqEnumeration.IncrementalEnumeration;
+import evaluator.index.AnswerCache;
 import evaluator.index.CpqNativeIndex;
+import evaluator.index.QueryBatch;
+import evaluator.index.ShardLayout;
+import evaluator.index.ShardedIndex;
+import evaluator.index.StatisticsCatalog;
+import evaluator.index.VertexOrdering;
+import evaluator.join.FactorisedResult;
+import evaluator.join.LeapfrogTrieJoin;
+import evaluator.join.OffHeapTuples;
+import evaluator.join.RelationBinding;
+import evaluator.join.SpillingTupleBuffer;
+import evaluator.output.AnswerFileWriter;
 import java.io.BufferedReader;
+import java.lang.foreign.Arena;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
 import java.util.Objects;
 
 public final class Main {
+    private static final int FAMILY_STATES = 16;
+    private static final boolean OFF_HEAP = Boolean.getBoolean("cpq.evaluation.offHeap");
+
     private Main() {
     }
 
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.err.println("Usage: [indexFile] <cqText...>");
-            System.err.println("   or: [indexFile] --queries-file <path>");
+            System.err.println("Usage: [indexFile] [--count|--exists] [--output <file> [--delta]] [--graph <file.edge>] <cqText...>");
+            System.err.println("   or: [indexFile] [--count|--exists] [--output <dir> [--delta]] [--graph <file.edge>] --queries-file <path>");
             System.err.println("If indexFile is omitted, uses ./index.bin");
+            System.err.println("   or: [indexFile] --build-stats <labelCount>");
+            System.err.println("--count reports the number of answers, --exists only whether one exists");
+            System.err.println("--build-stats writes the statistics catalog next to the index file");
+            System.err.println("   or: [indexFile] --build-order <degree|bfs> <labelCount>");
+            System.err.println("--build-order writes a vertex relabelling next to the index file, applied on load");
+            System.err.println("   or: <manifest.shards> --build-shards <graphFile> <shards> <hash|range> <k> [hops]");
+            System.err.println("--build-shards partitions the graph, indexes every shard and writes the manifest; passing");
+            System.err.println("  a manifest instead of an index file evaluates on one worker process per shard");
+            System.err.println("--output writes all answers as a binary columnar file (one per query into <dir> for");
+            System.err.println("  --queries-file); --delta delta/varint-compresses the columns");
+            System.err.println("--graph attaches the indexed edge list; with -Dcpq.evaluation.sideways=true, components bound");
+            System.err.println("  by earlier ones may then be answered by traversal instead of index lookups");
+            System.err.println("--updates <file> applies edge updates ('+ s label t' inserts, '- s label t' deletes) on top of");
+            System.err.println("  the index before querying; needs --graph. --compact then folds them into indexFile and the graph");
             System.err.println("Example: indices/robotssmall.k2.idx \"(x,y) \u2190 0(x,y)\"");
             System.err.println("Example: indices/robotssmall.k2.idx --queries-file queries/robotssmall.cq");
             return;
@@ -27,16 +61,73 @@ public final class Main {
 
         ParsedArgs parsed = ParsedArgs.parse(args);
         try {
+            if (parsed.shards != null) {
+                ShardLayout layout = ShardLayout.partition(parsed.shards.graphFile(), parsed.indexFile, parsed.shards.count(),
+                        parsed.shards.strategy(), parsed.shards.k(), parsed.shards.hops(), Runtime.getRuntime().availableProcessors());
+                System.out.println("manifest=" + parsed.indexFile + " " + layout);
+                return;
+            }
+            if (ShardLayout.isManifest(parsed.indexFile)) {
+                evaluateSharded(parsed);
+                return;
+            }
             CpqNativeIndex index = CpqNativeIndex.load(parsed.indexFile);
-            if (parsed.queriesFile != null) {
-                evaluateQueriesFile(index, parsed.queriesFile);
+            AnswerCache cache = AnswerCache.shared();
+            if (cache.budgetBytes() > 0) {
+                index.setAnswerCache(cache);
+            }
+            if (parsed.graphFile != null) {
+                index.attachGraph(parsed.graphFile);
+            }
+            if (parsed.updates != null) {
+                applyUpdates(index, parsed.indexFile, parsed.graphFile, parsed.updates);
+            }
+            if (parsed.ordering != null) {
+                VertexOrdering ordering = index.computeVertexOrdering(parsed.ordering, parsed.labelCount);
+                Path sidecar = VertexOrdering.sidecarFor(parsed.indexFile);
+                ordering.write(sidecar, CpqNativeIndex.indexStamp(parsed.indexFile));
+                System.out.println("ordering=" + sidecar + " " + ordering);
+            } else if (parsed.labelCount > 0) {
+                StatisticsCatalog catalog = index.computeStatistics(parsed.labelCount, index.k());
+                Path sidecar = StatisticsCatalog.sidecarFor(parsed.indexFile);
+                catalog.write(sidecar, CpqNativeIndex.indexStamp(parsed.indexFile));
+                System.out.println("statistics=" + sidecar + " " + catalog);
+            } else if (parsed.queriesFile != null) {
+                evaluateQueriesFile(index, parsed.queriesFile, parsed.mode, parsed.output);
             } else {
                 ConjunctiveQuery cq = index.parseCQ(parsed.cqText);
-                CpqDecomposition decomposition = cq.decompose(index.k());
-                List<Map<String, Integer>> answers = index.evaluate(decomposition);
+                CpqDecomposition decomposition = index.plan(cq, () -> cq.decompose(index.k()));
+                switch (parsed.mode) {
+                    case COUNT -> System.out.println("answers=" + index.count(decomposition));
+                    case EXISTS -> System.out.println("exists=" + index.exists(decomposition));
+                    case ROWS -> {
+                        if (parsed.output != null) {
+                            long written = writeAnswers(index, decomposition, parsed.output);
+                            System.out.println("answers=" + written + " output=" + parsed.output.file());
+                        } else if (LeapfrogTrieJoin.spillBudgetBytes() > 0) {
+                            try (SpillingTupleBuffer answers = spill(index, decomposition)) {
+                                System.out.println("answers=" + answers.countDistinct());
+                                int[] shown = {0};
+                                answers.forEachDistinct(tuple -> {
+                                    System.out.println(Arrays.toString(tuple));
+                                    return ++shown[0] < 5;
+                                });
+                            }
+                        } else if (OFF_HEAP) {
+                            try (Arena arena = Arena.ofConfined()) {
+                                OffHeapTuples answers = index.evaluateOffHeap(decomposition, arena);
+
+                                System.out.println("answers=" + answers.count());
+                                answers.toRows(5).forEach(System.out::println);
+                            }
+                        } else {
+                            FactorisedResult answers = index.evaluateFactorised(decomposition);
 
-                System.out.println("answers=" + answers.size());
-                answers.stream().limit(5).forEach(System.out::println);
+                            System.out.println("answers=" + answers.count());
+                            answers.toRows(5).forEach(System.out::println);
+                        }
+                    }
+                }
             }
         } catch (Exception e) {
             e.printStackTrace(System.err);
@@ -44,10 +135,54 @@ public final class Main {
         }
     }
 
-    private static void evaluateQueriesFile(CpqNativeIndex index, Path queriesFile) throws Exception {
+    /**
+     * Applies the edge updates listed in the file, one {@code + source label target} (insert) or
+     * {@code - source label target} (delete) per line; blank lines and {@code #} comments are
+     * skipped.
+     */
+    private static void applyUpdates(CpqNativeIndex index, Path indexFile, Path graphFile, Updates updates) throws Exception {
+        int applied = 0;
+        try (BufferedReader reader = Files.newBufferedReader(updates.file())) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length != 4 || !("+".equals(parts[0]) || "-".equals(parts[0]))) {
+                    throw new IllegalArgumentException(updates.file() + ":" + lineNumber + ": expected '+|- source label target': " + line);
+                }
+                int source = Integer.parseInt(parts[1]);
+                int label = Integer.parseInt(parts[2]);
+                int target = Integer.parseInt(parts[3]);
+                if ("+".equals(parts[0])) {
+                    index.insertEdge(source, label, target);
+                } else {
+                    index.deleteEdge(source, label, target);
+                }
+                applied++;
+            }
+        }
+        System.out.println("updates=" + applied + " pending=" + index.pendingEdgeUpdates());
+        if (updates.compact()) {
+            index.compactAsync(indexFile, graphFile, Runtime.getRuntime().availableProcessors()).join();
+            System.out.println("compacted=" + indexFile + " graph=" + graphFile);
+        }
+    }
+
+    private static void evaluateQueriesFile(CpqNativeIndex index, Path queriesFile, Mode mode, Output output) throws Exception {
         Objects.requireNonNull(index, "index");
         Objects.requireNonNull(queriesFile, "queriesFile");
 
+        if (QueryBatch.defaultBudgetBytes() > 0 && !OFF_HEAP) {
+            evaluateBatch(index, queriesFile, mode, output);
+            return;
+        }
+
+        Deque<IncrementalEnumeration> family = new ArrayDeque<>();
         int queryIndex = 0;
         try (BufferedReader reader = Files.newBufferedReader(queriesFile)) {
             for (String line; (line = reader.readLine()) != null;) {
@@ -57,17 +192,300 @@ public final class Main {
                 }
                 queryIndex++;
                 ConjunctiveQuery cq = index.parseCQ(query);
-                CpqDecomposition decomposition = cq.decompose(index.k());
-                List<Map<String, Integer>> answers = index.evaluate(decomposition);
-                System.out.println("query=" + queryIndex + " answers=" + answers.size());
+                CpqDecomposition decomposition = index.plan(cq, () -> cq.decompose(enumerationFor(family, cq, index.k())));
+                switch (mode) {
+                    case COUNT -> System.out.println("query=" + queryIndex + " answers=" + index.count(decomposition));
+                    case EXISTS -> System.out.println("query=" + queryIndex + " exists=" + index.exists(decomposition));
+                    case ROWS -> {
+                        if (output != null) {
+                            Output file = output.forQuery(queryIndex);
+                            System.out.println("query=" + queryIndex + " answers=" + writeAnswers(index, decomposition, file) + " output=" + file.file());
+                        } else {
+                            System.out.println("query=" + queryIndex + " answers=" + countRows(index, decomposition));
+                        }
+                    }
+                }
             }
         }
         if (queryIndex == 0) {
             System.out.println("No queries found in " + queriesFile);
+        } else if (AnswerCache.shared().budgetBytes() > 0) {
+            System.err.println("cache " + AnswerCache.shared().stats());
         }
     }
 
-    private record ParsedArgs(Path indexFile, String cqText, Path queriesFile) {
+    /**
+     * Evaluates the query or queries file on the shard workers of a manifest; answer files are not
+     * supported there.
+     */
+    private static void evaluateSharded(ParsedArgs parsed) throws Exception {
+        if (parsed.output != null) {
+            throw new IllegalArgumentException("--output is not supported with a shard manifest");
+        }
+        try (ShardedIndex index = ShardedIndex.open(parsed.indexFile)) {
+            if (parsed.queriesFile == null) {
+                printSharded(index, parsed.cqText, parsed.mode, "", 5);
+                return;
+            }
+            int queryIndex = 0;
+            try (BufferedReader reader = Files.newBufferedReader(parsed.queriesFile)) {
+                for (String line; (line = reader.readLine()) != null;) {
+                    String query = line.trim();
+                    if (!query.isEmpty() && !query.startsWith("#")) {
+                        printSharded(index, query, parsed.mode, "query=" + ++queryIndex + " ", 0);
+                    }
+                }
+            }
+            if (queryIndex == 0) {
+                System.out.println("No queries found in " + parsed.queriesFile);
+            }
+        }
+    }
+
+    private static void printSharded(ShardedIndex index, String query, Mode mode, String prefix, int shownRows) {
+        switch (mode) {
+            case COUNT -> System.out.println(prefix + "answers=" + index.count(query));
+            case EXISTS -> System.out.println(prefix + "exists=" + (index.count(query) > 0));
+            case ROWS -> {
+                FactorisedResult answers = index.evaluate(query);
+                System.out.println(prefix + "answers=" + answers.count());
+                answers.toRows(shownRows).forEach(System.out::println);
+            }
+        }
+    }
+
+    /**
+     * Decomposes the whole file first and evaluates each distinct component once for all queries
+     * using it (see {@link QueryBatch}); results are printed in file order. Queries the answer
+     * cache holds are answered from it and left out of the batch; answer rows the batch computes
+     * are cached.
+     */
+    private static void evaluateBatch(CpqNativeIndex index, Path queriesFile, Mode mode, Output output) throws Exception {
+        Deque<IncrementalEnumeration> family = new ArrayDeque<>();
+        List<CpqDecomposition> decompositions = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(queriesFile)) {
+            for (String line; (line = reader.readLine()) != null;) {
+                String query = line.trim();
+                if (query.isEmpty() || query.startsWith("#")) {
+                    continue;
+                }
+                ConjunctiveQuery cq = index.parseCQ(query);
+                decompositions.add(index.plan(cq, () -> cq.decompose(enumerationFor(family, cq, index.k()))));
+            }
+        }
+        if (decompositions.isEmpty()) {
+            System.out.println("No queries found in " + queriesFile);
+            return;
+        }
+
+        String[] lines = new String[decompositions.size()];
+        List<CpqDecomposition> pending = new ArrayList<>();
+        List<Integer> pendingQueries = new ArrayList<>();
+        for (int q = 0; q < decompositions.size(); q++) {
+            lines[q] = cachedLine(index, decompositions.get(q), mode, output, q + 1);
+            if (lines[q] == null) {
+                pending.add(decompositions.get(q));
+                pendingQueries.add(q);
+            }
+        }
+
+        QueryBatch batch = new QueryBatch(index, pending, QueryBatch.defaultBudgetBytes());
+        batch.run((query, decomposition, relations) -> {
+            int q = pendingQueries.get(query);
+            String prefix = "query=" + (q + 1);
+            List<String> freeVars = decomposition.freeVars().stream().map(CpqDecomposition::varName).toList();
+            List<String> order = decomposition.variableOrder();
+            lines[q] = switch (mode) {
+                case COUNT -> prefix + " answers=" + (relations == null ? 0 : LeapfrogTrieJoin.count(relations, order, freeVars));
+                case EXISTS -> prefix + " exists=" + (relations != null && LeapfrogTrieJoin.exists(relations, order));
+                case ROWS -> {
+                    if (output == null) {
+                        yield prefix + " answers=" + countRows(index, relations, batch.identity(), decomposition, freeVars);
+                    }
+                    Output file = output.forQuery(q + 1);
+                    yield prefix + " answers=" + writeAnswers(index, relations, batch.identity(), decomposition, freeVars, file) + " output=" + file.file();
+                }
+            };
+        });
+        for (String line : lines) {
+            System.out.println(line);
+        }
+        // statistics go to stderr so stdout keeps one result line per query
+        System.err.println("batch " + batch.stats());
+        if (AnswerCache.shared().budgetBytes() > 0) {
+            System.err.println("cache " + AnswerCache.shared().stats());
+        }
+    }
+
+    /**
+     * The result line of a query the answer cache holds, or {@code null} if it has to be evaluated.
+     */
+    private static String cachedLine(CpqNativeIndex index, CpqDecomposition decomposition, Mode mode, Output output, int query) throws Exception {
+        long count = index.cachedCount(decomposition);
+        if (count < 0) {
+            return null;
+        }
+        String prefix = "query=" + query;
+        return switch (mode) {
+            case COUNT -> prefix + " answers=" + count;
+            case EXISTS -> prefix + " exists=" + (count > 0);
+            case ROWS -> {
+                if (output == null) {
+                    yield prefix + " answers=" + count;
+                }
+                Output file = output.forQuery(query);
+                yield prefix + " answers=" + writeAnswers(index.evaluateFactorised(decomposition), file) + " output=" + file.file();
+            }
+        };
+    }
+
+    private static long countRows(CpqNativeIndex index, List<RelationBinding> relations, String identity, CpqDecomposition decomposition,
+            List<String> freeVars) {
+        if (relations == null) {
+            return 0;
+        }
+        if (LeapfrogTrieJoin.spillBudgetBytes() > 0) {
+            try (SpillingTupleBuffer answers = new SpillingTupleBuffer(freeVars.size(), LeapfrogTrieJoin.spillBudgetBytes(), LeapfrogTrieJoin.spillDirectory())) {
+                LeapfrogTrieJoin.projectInto(relations, decomposition.variableOrder(), freeVars, answers);
+                return answers.countDistinct();
+            }
+        }
+        return index.evaluateFactorised(decomposition, relations, identity).count();
+    }
+
+    /**
+     * Writes the answers of batch-shared {@code relations}, which are in the index's internal ids
+     * (see {@link CpqNativeIndex#vertexOrdering}) and were evaluated against {@code identity}.
+     */
+    private static long writeAnswers(CpqNativeIndex index, List<RelationBinding> relations, String identity, CpqDecomposition decomposition,
+            List<String> freeVars, Output output) throws Exception {
+        if (LeapfrogTrieJoin.spillBudgetBytes() <= 0) {
+            return writeAnswers(index.evaluateFactorised(decomposition, relations, identity), output);
+        }
+        VertexOrdering ordering = index.vertexOrdering();
+        try (AnswerFileWriter writer = AnswerFileWriter.open(output.file(), freeVars, output.encoding())) {
+            if (relations == null) {
+                return writer.finish();
+            }
+            try (SpillingTupleBuffer answers = new SpillingTupleBuffer(freeVars.size(), LeapfrogTrieJoin.spillBudgetBytes(), LeapfrogTrieJoin.spillDirectory())) {
+                // spilled tuples are in projection order, i.e. freeVars
+                LeapfrogTrieJoin.projectInto(relations, decomposition.variableOrder(), freeVars, answers);
+                int[] row = new int[freeVars.size()];
+                answers.forEachDistinct(tuple -> {
+                    if (ordering == null) {
+                        writer.write(tuple);
+                    } else {
+                        System.arraycopy(tuple, 0, row, 0, row.length);
+                        ordering.restore(row);
+                        writer.write(row);
+                    }
+                    return true;
+                });
+            }
+            return writer.finish();
+        }
+    }
+
+    private static long writeAnswers(FactorisedResult answers, Output output) throws Exception {
+        try (AnswerFileWriter writer = AnswerFileWriter.open(output.file(), answers.variables(), output.encoding())) {
+            answers.forEach(tuple -> {
+                writer.write(tuple);
+                return true;
+            });
+            return writer.finish();
+        }
+    }
+
+    private static long countRows(CpqNativeIndex index, CpqDecomposition decomposition) {
+        if (LeapfrogTrieJoin.spillBudgetBytes() > 0) {
+            try (SpillingTupleBuffer answers = spill(index, decomposition)) {
+                return answers.countDistinct();
+            }
+        }
+        if (!OFF_HEAP) {
+            return index.evaluate(decomposition).size();
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            return index.evaluateOffHeap(decomposition, arena).count();
+        }
+    }
+
+    /**
+     * Writes every answer to {@code output}, going through whichever collection mode is active.
+     */
+    private static long writeAnswers(CpqNativeIndex index, CpqDecomposition decomposition, Output output) throws Exception {
+        List<String> variables = decomposition.freeVars().stream().map(CpqDecomposition::varName).toList();
+        try (AnswerFileWriter writer = AnswerFileWriter.open(output.file(), variables, output.encoding())) {
+            FactorisedResult.TupleVisitor sink = tuple -> {
+                writer.write(tuple);
+                return true;
+            };
+            if (LeapfrogTrieJoin.spillBudgetBytes() > 0) {
+                try (SpillingTupleBuffer answers = spill(index, decomposition)) {
+                    answers.forEachDistinct(sink);
+                }
+            } else if (OFF_HEAP) {
+                try (Arena arena = Arena.ofConfined()) {
+                    index.evaluateOffHeap(decomposition, arena).forEach(sink);
+                }
+            } else {
+                index.evaluateFactorised(decomposition).forEach(sink);
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Collects the answers under the {@code cpq.join.spillBytes} budget so that huge answer sets
+     * go to disk instead of failing the run with an out-of-memory error.
+     */
+    private static SpillingTupleBuffer spill(CpqNativeIndex index, CpqDecomposition decomposition) {
+        return index.evaluateSpilling(decomposition, LeapfrogTrieJoin.spillBudgetBytes(), LeapfrogTrieJoin.spillDirectory());
+    }
+
+    /**
+     * Batches often hold families of queries that grow a shared core by an atom or two, so the
+     * state of the largest recent query contained in {@code cq} is extended rather than
+     * enumerating from scratch.
+     */
+    private static IncrementalEnumeration enumerationFor(Deque<IncrementalEnumeration> family, ConjunctiveQuery cq, int k) {
+        IncrementalEnumeration base = null;
+        for (IncrementalEnumeration candidate : family) {
+            if ((base == null || candidate.atomCount() > base.atomCount()) && candidate.isContainedIn(cq.syntax())) {
+                base = candidate;
+            }
+        }
+        IncrementalEnumeration state = base == null
+                ? IncrementalEnumeration.of(cq.syntax(), k)
+                : base.extend(cq.syntax());
+        family.addFirst(state);
+        if (family.size() > FAMILY_STATES) {
+            family.removeLast();
+        }
+        return state;
+    }
+
+    private enum Mode {
+        ROWS,
+        COUNT,
+        EXISTS
+    }
+
+    private record Output(Path file, AnswerFileWriter.Encoding encoding) {
+        Output forQuery(int queryIndex) throws Exception {
+            Files.createDirectories(file);
+            return new Output(file.resolve("query-" + queryIndex + ".cpqa"), encoding);
+        }
+    }
+
+    private record ShardBuild(Path graphFile, int count, ShardLayout.Strategy strategy, int k, int hops) {
+    }
+
+    private record Updates(Path file, boolean compact) {
+    }
+
+    private record ParsedArgs(Path indexFile, String cqText, Path queriesFile, Mode mode, int labelCount, Output output, ShardBuild shards,
+            VertexOrdering.Strategy ordering, Path graphFile, Updates updates) {
         static ParsedArgs parse(String[] args) {
             Path defaultIndex = Path.of("index.bin");
             if (args.length == 0) {
@@ -75,7 +493,7 @@ public final class Main {
             }
 
             Path first = Path.of(args[0]);
-            if (Files.exists(first) && !Files.isDirectory(first)) {
+            if ((Files.exists(first) && !Files.isDirectory(first)) || ShardLayout.isManifest(first)) {
                 return parseAfterIndex(first, Arrays.copyOfRange(args, 1, args.length));
             }
 
@@ -83,14 +501,68 @@ public final class Main {
         }
 
         private static ParsedArgs parseAfterIndex(Path indexFile, String[] rest) {
+            if (rest.length >= 2 && "--build-stats".equals(rest[0])) {
+                return new ParsedArgs(indexFile, "", null, Mode.ROWS, Integer.parseInt(rest[1]), null, null, null, null, null);
+            }
+            if (rest.length >= 3 && "--build-order".equals(rest[0])) {
+                return new ParsedArgs(indexFile, "", null, Mode.ROWS, Integer.parseInt(rest[2]), null, null,
+                        VertexOrdering.Strategy.valueOf(rest[1].toUpperCase(Locale.ROOT)), null, null);
+            }
+            if (rest.length >= 5 && "--build-shards".equals(rest[0])) {
+                int k = Integer.parseInt(rest[4]);
+                ShardBuild shards = new ShardBuild(Path.of(rest[1]), Integer.parseInt(rest[2]),
+                        ShardLayout.Strategy.valueOf(rest[3].toUpperCase(Locale.ROOT)), k,
+                        rest.length >= 6 ? Integer.parseInt(rest[5]) : k);
+                return new ParsedArgs(indexFile, "", null, Mode.ROWS, 0, null, shards, null, null, null);
+            }
+            Mode mode = Mode.ROWS;
+            Path outputFile = null;
+            Path graphFile = null;
+            Path updatesFile = null;
+            boolean compact = false;
+            AnswerFileWriter.Encoding encoding = AnswerFileWriter.Encoding.PLAIN;
+            int consumed = 0;
+            while (consumed < rest.length) {
+                String option = rest[consumed];
+                if ("--count".equals(option) || "--exists".equals(option)) {
+                    mode = "--count".equals(option) ? Mode.COUNT : Mode.EXISTS;
+                    consumed++;
+                } else if ("--output".equals(option) && consumed + 1 < rest.length) {
+                    outputFile = Path.of(rest[consumed + 1]);
+                    consumed += 2;
+                } else if ("--graph".equals(option) && consumed + 1 < rest.length) {
+                    graphFile = Path.of(rest[consumed + 1]);
+                    consumed += 2;
+                } else if ("--updates".equals(option) && consumed + 1 < rest.length) {
+                    updatesFile = Path.of(rest[consumed + 1]);
+                    consumed += 2;
+                } else if ("--compact".equals(option)) {
+                    compact = true;
+                    consumed++;
+                } else if ("--delta".equals(option)) {
+                    encoding = AnswerFileWriter.Encoding.DELTA_VARINT;
+                    consumed++;
+                } else {
+                    break;
+                }
+            }
+            rest = Arrays.copyOfRange(rest, consumed, rest.length);
+            Output output = outputFile == null ? null : new Output(outputFile, encoding);
+            if ((updatesFile != null || compact) && graphFile == null) {
+                throw new IllegalArgumentException("--updates and --compact need the indexed edge list given with --graph");
+            }
+            if (compact && updatesFile == null) {
+                throw new IllegalArgumentException("--compact needs --updates");
+            }
+            Updates updates = updatesFile == null ? null : new Updates(updatesFile, compact);
             if (rest.length == 0) {
                 throw new IllegalArgumentException("CQ text missing");
             }
             if (rest.length >= 2 && "--queries-file".equals(rest[0])) {
-                return new ParsedArgs(indexFile, "", Path.of(rest[1]));
+                return new ParsedArgs(indexFile, "", Path.of(rest[1]), mode, 0, output, null, null, graphFile, updates);
             }
             String cqText = String.join(" ", rest);
-            return new ParsedArgs(indexFile, cqText, null);
+            return new ParsedArgs(indexFile, cqText, null, mode, 0, output, null, null, graphFile, updates);
         }
     }
 }
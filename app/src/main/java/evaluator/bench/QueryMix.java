@@ -0,0 +1,128 @@
+package evaluator.bench;
+
+import evaluator.cq.ConjunctiveQuery;
+import dev.roanh.gmark.lang.cpq.CPQ;
+import dev.roanh.gmark.util.Util;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * Builds the per-class query batches a workload run cycles through.
+ */
+final class QueryMix {
+    enum QueryClass {
+        CHAIN,
+        STAR,
+        CYCLE,
+        CLIQUE,
+        GMARK,
+        FILE
+    }
+
+    private QueryMix() {
+    }
+
+    static Map<QueryClass, List<ConjunctiveQuery>> generate(
+            List<QueryClass> classes,
+            int queriesPerClass,
+            int size,
+            int labelCount,
+            long seed,
+            Path queriesFile) throws IOException {
+        Objects.requireNonNull(classes, "classes");
+        if (queriesPerClass < 1) {
+            throw new IllegalArgumentException("queriesPerClass must be >= 1");
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be >= 1");
+        }
+        if (labelCount < 1) {
+            throw new IllegalArgumentException("labelCount must be >= 1");
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        Map<QueryClass, List<ConjunctiveQuery>> out = new LinkedHashMap<>();
+        for (QueryClass queryClass : classes) {
+            List<ConjunctiveQuery> queries = new ArrayList<>(queriesPerClass);
+            switch (queryClass) {
+                case FILE -> queries.addAll(readQueries(Objects.requireNonNull(queriesFile, "queriesFile")));
+                case GMARK -> {
+                    Util.setRandomSeed(random.nextLong());
+                    for (int i = 0; i < queriesPerClass; i++) {
+                        queries.add(ConjunctiveQuery.from(CPQ.generateRandomCPQ(size, labelCount).toCQ()));
+                    }
+                }
+                default -> {
+                    for (int i = 0; i < queriesPerClass; i++) {
+                        queries.add(ConjunctiveQuery.parse(shape(queryClass, size, labelCount, random)));
+                    }
+                }
+            }
+            out.put(queryClass, queries);
+        }
+        return out;
+    }
+
+    static String shape(QueryClass queryClass, int size, int labelCount, SplittableRandom random) {
+        List<String> atoms = new ArrayList<>();
+        String head;
+        switch (queryClass) {
+            case CHAIN -> {
+                for (int i = 0; i < size; i++) {
+                    atoms.add(atom(random, labelCount, "x" + i, "x" + (i + 1)));
+                }
+                head = "(x0,x" + size + ")";
+            }
+            case STAR -> {
+                for (int i = 1; i <= size; i++) {
+                    atoms.add(atom(random, labelCount, "x0", "x" + i));
+                }
+                head = "(x0)";
+            }
+            case CYCLE -> {
+                int length = Math.max(2, size);
+                for (int i = 0; i < length; i++) {
+                    atoms.add(atom(random, labelCount, "x" + i, "x" + ((i + 1) % length)));
+                }
+                head = "(x0)";
+            }
+            case CLIQUE -> {
+                int vertices = Math.max(2, size);
+                for (int i = 0; i < vertices; i++) {
+                    for (int j = i + 1; j < vertices; j++) {
+                        atoms.add(atom(random, labelCount, "x" + i, "x" + j));
+                    }
+                }
+                head = "(x0,x1)";
+            }
+            default -> throw new IllegalArgumentException("Not a shaped query class: " + queryClass);
+        }
+        return head + " ← " + String.join(", ", atoms);
+    }
+
+    private static String atom(SplittableRandom random, int labelCount, String source, String target) {
+        return random.nextInt(labelCount) + "(" + source + "," + target + ")";
+    }
+
+    private static List<ConjunctiveQuery> readQueries(Path queriesFile) throws IOException {
+        List<ConjunctiveQuery> out = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(queriesFile)) {
+            for (String line; (line = reader.readLine()) != null;) {
+                String query = line.trim();
+                if (query.isEmpty() || query.startsWith("#")) {
+                    continue;
+                }
+                out.add(ConjunctiveQuery.parse(query));
+            }
+        }
+        return out;
+    }
+}
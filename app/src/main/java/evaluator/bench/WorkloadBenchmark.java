@@ -0,0 +1,337 @@
+package evaluator.bench;
+
+import evaluator.bench.QueryMix.QueryClass;
+import evaluator.bench.WorkloadReport.ClassResult;
+import evaluator.cq.ConjunctiveQuery;
+import evaluator.decompose.CpqDecomposition;
+import evaluator.index.CpqNativeIndex;
+import evaluator.index.QueryScheduler;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * End-to-end workload driver: loads (or builds) an index, runs a mix of CQ classes through a
+ * warm-up and a measurement phase and reports latency percentiles, throughput and peak heap per
+ * class as JSON.
+ */
+public final class WorkloadBenchmark {
+    private WorkloadBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: (--index <file> | --graph <file.edge> [--k 2] [--threads n] [--save-index <file>])");
+            System.err.println("       [--classes chain,star,cycle,clique,gmark,file] [--queries-file <path>]");
+            System.err.println("       [--queries-per-class n] [--size n] [--labels n] [--seed n]");
+            System.err.println("       [--warmup n] [--iterations n] [--concurrency n] [--report <file.json>]");
+            System.err.println("       [--traversal true|false]");
+            System.err.println("--concurrency > 1 runs queries from n client threads through a QueryScheduler");
+            System.err.println("--traversal true attaches the --graph edge list and passes bindings sideways, so bound");
+            System.err.println("  components may be answered by traversal instead of index lookups");
+            System.err.println("Example: --graph graphs/graph.edge --classes chain,cycle --size 3 --report bench.json");
+            return;
+        }
+
+        try {
+            Options options = Options.parse(args);
+            WorkloadReport report = run(options);
+            if (options.report() != null) {
+                try (Writer out = Files.newBufferedWriter(options.report())) {
+                    report.writeJson(out);
+                }
+                System.out.println("report=" + options.report());
+            } else {
+                Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                report.writeJson(out);
+                out.flush();
+            }
+        } catch (Exception e) {
+            e.printStackTrace(System.err);
+            System.exit(1);
+        }
+    }
+
+    static WorkloadReport run(Options options) throws Exception {
+        Objects.requireNonNull(options, "options");
+
+        long loadStart = System.nanoTime();
+        CpqNativeIndex index = options.index() != null
+                ? CpqNativeIndex.load(options.index())
+                : CpqNativeIndex.build(options.graph(), options.k(), options.threads());
+        long loadNanos = System.nanoTime() - loadStart;
+        if (options.saveIndex() != null) {
+            index.save(options.saveIndex());
+        }
+        if (options.traversal()) {
+            index.attachGraph(options.graph());
+            index.setSidewaysPassing(true);
+        }
+
+        int labelCount = options.labels() > 0 ? options.labels() : labelCountFromHeader(options.graph());
+        Map<QueryClass, List<ConjunctiveQuery>> mix = QueryMix.generate(
+                options.classes(),
+                options.queriesPerClass(),
+                options.size(),
+                labelCount,
+                options.seed(),
+                options.queriesFile());
+
+        WorkloadReport report = new WorkloadReport();
+        report.setting("index", options.index() != null ? options.index() : options.graph());
+        report.setting("k", index.k());
+        report.setting("indexLoadMs", String.format(Locale.ROOT, "%.3f", loadNanos / 1_000_000.0));
+        report.setting("labels", labelCount);
+        report.setting("size", options.size());
+        report.setting("seed", options.seed());
+        report.setting("warmup", options.warmup());
+        report.setting("iterations", options.iterations());
+        report.setting("concurrency", options.concurrency());
+        report.setting("traversal", options.traversal());
+        QueryScheduler scheduler = options.concurrency() > 1 ? QueryScheduler.withDefaults(index) : null;
+
+        for (int round = 0; round < options.warmup(); round++) {
+            for (List<ConjunctiveQuery> queries : mix.values()) {
+                for (ConjunctiveQuery cq : queries) {
+                    runQuery(index, cq);
+                }
+            }
+        }
+
+        for (Map.Entry<QueryClass, List<ConjunctiveQuery>> entry : mix.entrySet()) {
+            report.add(measure(index, scheduler, options.concurrency(), entry.getKey(), entry.getValue(), options.iterations()));
+        }
+        if (scheduler != null) {
+            report.setting("scheduler", scheduler.stats());
+        }
+        return report;
+    }
+
+    /**
+     * Runs the class's queries {@code iterations} times; with a scheduler, from {@code concurrency}
+     * client threads that go through admission control, so latencies include queueing and
+     * rejected queries count as failures.
+     */
+    private static ClassResult measure(
+            CpqNativeIndex index, QueryScheduler scheduler, int concurrency,
+            QueryClass queryClass, List<ConjunctiveQuery> queries, int iterations) throws InterruptedException {
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        Samples samples = new Samples(queries.size() * iterations, queryClass);
+        long wallStart = System.nanoTime();
+        if (scheduler == null) {
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                for (ConjunctiveQuery cq : queries) {
+                    long start = System.nanoTime();
+                    try {
+                        samples.success(runQuery(index, cq), start);
+                    } catch (RuntimeException e) {
+                        samples.failure(e);
+                    }
+                }
+            }
+        } else {
+            ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+            try {
+                List<Future<?>> pending = new ArrayList<>();
+                for (int iteration = 0; iteration < iterations; iteration++) {
+                    for (ConjunctiveQuery cq : queries) {
+                        pending.add(clients.submit(() -> {
+                            long start = System.nanoTime();
+                            try {
+                                CpqDecomposition decomposition = cq.decompose(index.k());
+                                samples.success(scheduler.run(decomposition, QueryScheduler.Priority.NORMAL,
+                                        d -> index.evaluate(d).size()), start);
+                            } catch (RuntimeException e) {
+                                samples.failure(e);
+                            }
+                            return null;
+                        }));
+                    }
+                }
+                for (Future<?> future : pending) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                clients.shutdownNow();
+            }
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        return ClassResult.of(
+                queryClass.name().toLowerCase(Locale.ROOT),
+                queries.size(),
+                samples.latencies,
+                samples.count,
+                samples.failures,
+                samples.answers,
+                wallNanos,
+                peakHeap);
+    }
+
+    private static int runQuery(CpqNativeIndex index, ConjunctiveQuery cq) {
+        CpqDecomposition decomposition = cq.decompose(index.k());
+        return index.evaluate(decomposition).size();
+    }
+
+    private static final class Samples {
+        private final long[] latencies;
+        private final QueryClass queryClass;
+        private int count;
+        private int failures;
+        private long answers;
+
+        Samples(int capacity, QueryClass queryClass) {
+            this.latencies = new long[capacity];
+            this.queryClass = queryClass;
+        }
+
+        synchronized void success(int answerCount, long startNanos) {
+            answers += answerCount;
+            latencies[count++] = System.nanoTime() - startNanos;
+        }
+
+        synchronized void failure(RuntimeException e) {
+            if (failures++ == 0) {
+                System.err.println("class=" + queryClass + " query failed: " + e);
+            }
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> out = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                out.add(pool);
+            }
+        }
+        return out;
+    }
+
+    private static int labelCountFromHeader(Path graph) throws IOException {
+        if (graph == null) {
+            throw new IllegalArgumentException("--labels is required when no --graph is given");
+        }
+        try (BufferedReader reader = Files.newBufferedReader(graph)) {
+            String header = reader.readLine();
+            String[] parts = header == null ? new String[0] : header.trim().split("\\s+");
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("Graph header must be '<vertices> <edges> <labels>': " + graph);
+            }
+            return Integer.parseInt(parts[2]);
+        }
+    }
+
+    record Options(
+            Path index,
+            Path graph,
+            Path saveIndex,
+            int k,
+            int threads,
+            List<QueryClass> classes,
+            Path queriesFile,
+            int queriesPerClass,
+            int size,
+            int labels,
+            long seed,
+            int warmup,
+            int iterations,
+            int concurrency,
+            Path report,
+            boolean traversal) {
+
+        static Options parse(String[] args) {
+            Path index = null;
+            Path graph = null;
+            Path saveIndex = null;
+            int k = 2;
+            int threads = Runtime.getRuntime().availableProcessors();
+            List<QueryClass> classes = List.of(QueryClass.CHAIN, QueryClass.STAR, QueryClass.CYCLE, QueryClass.CLIQUE);
+            Path queriesFile = null;
+            int queriesPerClass = 10;
+            int size = 3;
+            int labels = 0;
+            long seed = 1;
+            int warmup = 2;
+            int iterations = 5;
+            int concurrency = 1;
+            Path report = null;
+            boolean traversal = false;
+
+            for (int i = 0; i < args.length; i++) {
+                String flag = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + flag);
+                }
+                String value = args[++i];
+                switch (flag) {
+                    case "--index" -> index = Path.of(value);
+                    case "--graph" -> graph = Path.of(value);
+                    case "--save-index" -> saveIndex = Path.of(value);
+                    case "--k" -> k = Integer.parseInt(value);
+                    case "--threads" -> threads = Integer.parseInt(value);
+                    case "--classes" -> classes = Arrays.stream(value.split(","))
+                            .map(String::trim)
+                            .filter(s -> !s.isEmpty())
+                            .map(s -> QueryClass.valueOf(s.toUpperCase(Locale.ROOT)))
+                            .toList();
+                    case "--queries-file" -> queriesFile = Path.of(value);
+                    case "--queries-per-class" -> queriesPerClass = Integer.parseInt(value);
+                    case "--size" -> size = Integer.parseInt(value);
+                    case "--labels" -> labels = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--warmup" -> warmup = Integer.parseInt(value);
+                    case "--iterations" -> iterations = Integer.parseInt(value);
+                    case "--concurrency" -> concurrency = Integer.parseInt(value);
+                    case "--report" -> report = Path.of(value);
+                    case "--traversal" -> traversal = Boolean.parseBoolean(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + flag);
+                }
+            }
+
+            if (index == null && graph == null) {
+                throw new IllegalArgumentException("Either --index or --graph is required");
+            }
+            if (traversal && graph == null) {
+                throw new IllegalArgumentException("--traversal needs the edge list given with --graph");
+            }
+            if (queriesFile != null && !classes.contains(QueryClass.FILE)) {
+                classes = new ArrayList<>(classes);
+                classes.add(QueryClass.FILE);
+            }
+            if (warmup < 0 || iterations < 1) {
+                throw new IllegalArgumentException("warmup must be >= 0 and iterations >= 1");
+            }
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("concurrency must be >= 1");
+            }
+            return new Options(index, graph, saveIndex, k, threads, List.copyOf(classes), queriesFile,
+                    queriesPerClass, size, labels, seed, warmup, iterations, concurrency, report, traversal);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package evaluator.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Collects measured latencies per query class and renders them as a JSON report.
+ */
+final class WorkloadReport {
+    private final Map<String, String> settings = new LinkedHashMap<>();
+    private final List<ClassResult> classes = new ArrayList<>();
+
+    void setting(String name, Object value) {
+        settings.put(Objects.requireNonNull(name, "name"), String.valueOf(value));
+    }
+
+    void add(ClassResult result) {
+        classes.add(Objects.requireNonNull(result, "result"));
+    }
+
+    List<ClassResult> classes() {
+        return classes;
+    }
+
+    void writeJson(Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"settings\": {");
+        int i = 0;
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            sb.append(i++ == 0 ? "\n" : ",\n");
+            sb.append("    ").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue()));
+        }
+        sb.append("\n  },\n  \"classes\": [");
+        for (int c = 0; c < classes.size(); c++) {
+            ClassResult r = classes.get(c);
+            sb.append(c == 0 ? "\n" : ",\n");
+            sb.append("    {")
+                    .append("\"class\": ").append(quote(r.name()))
+                    .append(", \"queries\": ").append(r.queries())
+                    .append(", \"samples\": ").append(r.samples())
+                    .append(", \"failures\": ").append(r.failures())
+                    .append(", \"answers\": ").append(r.answers())
+                    .append(", \"p50Ms\": ").append(millis(r.p50Nanos()))
+                    .append(", \"p95Ms\": ").append(millis(r.p95Nanos()))
+                    .append(", \"p99Ms\": ").append(millis(r.p99Nanos()))
+                    .append(", \"meanMs\": ").append(millis(r.meanNanos()))
+                    .append(", \"throughputQps\": ").append(String.format(Locale.ROOT, "%.3f", r.throughput()))
+                    .append(", \"peakHeapBytes\": ").append(r.peakHeapBytes())
+                    .append('}');
+        }
+        sb.append("\n  ]\n}\n");
+        out.write(sb.toString());
+    }
+
+    private static String millis(double nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                default -> sb.append(ch);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    record ClassResult(
+            String name,
+            int queries,
+            int samples,
+            int failures,
+            long answers,
+            double p50Nanos,
+            double p95Nanos,
+            double p99Nanos,
+            double meanNanos,
+            double throughput,
+            long peakHeapBytes) {
+
+        static ClassResult of(String name, int queries, long[] latencies, int samples, int failures,
+                long answers, long wallNanos, long peakHeapBytes) {
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            double mean = samples == 0 ? 0.0 : Arrays.stream(sorted).average().orElse(0.0);
+            double throughput = wallNanos <= 0 ? 0.0 : samples / (wallNanos / 1_000_000_000.0);
+            return new ClassResult(
+                    name,
+                    queries,
+                    samples,
+                    failures,
+                    answers,
+                    percentile(sorted, 0.50),
+                    percentile(sorted, 0.95),
+                    percentile(sorted, 0.99),
+                    mean,
+                    throughput,
+                    peakHeapBytes);
+        }
+
+        private static double percentile(long[] sorted, double q) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int rank = (int) Math.ceil(q * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+        }
+    }
+}
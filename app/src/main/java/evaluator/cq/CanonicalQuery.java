@@ -0,0 +1,203 @@
+package evaluator.cq;
+
+import dev.roanh.gmark.lang.cq.AtomCQ;
+import dev.roanh.gmark.lang.cq.VarCQ;
+import dev.roanh.gmark.type.schema.Predicate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Canonical identity of a conjunctive query: two queries that differ only in variable names and
+ * atom order get the same {@link #key()}. Variables are numbered by colour refinement on the query
+ * graph, and ties between equally coloured variables are broken by searching for the smallest
+ * encoding. {@link #freeVariables()} lists the caller's free variable names in canonical order, so
+ * answers stored under a key can be handed back to any query with that key.
+ *
+ * <p>The tie-breaking search is bounded; highly symmetric queries that exceed the budget keep the
+ * first ordering found. Such keys are still exact, they may just miss matches with renamed copies.
+ */
+public record CanonicalQuery(String key, List<String> freeVariables) {
+    private static final int SEARCH_BUDGET = 4096;
+
+    public CanonicalQuery {
+        Objects.requireNonNull(key, "key");
+        freeVariables = List.copyOf(freeVariables);
+    }
+
+    public static CanonicalQuery of(ConjunctiveQuery cq) {
+        Objects.requireNonNull(cq, "cq");
+        return new Labeller(cq).canonical();
+    }
+
+    private static final class Labeller {
+        private final String[] names;
+        private final boolean[] free;
+        private final int[][] atoms;
+        private final String[] labels;
+        private String best;
+        private int[] bestPosition;
+        private int leaves;
+
+        Labeller(ConjunctiveQuery cq) {
+            Map<String, Integer> ids = new TreeMap<>();
+            List<AtomCQ> parsed = cq.atoms();
+            for (AtomCQ atom : parsed) {
+                ids.put(atom.getSource().getName(), 0);
+                ids.put(atom.getTarget().getName(), 0);
+            }
+            for (VarCQ v : cq.freeVariables()) {
+                ids.put(v.getName(), 0);
+            }
+            names = ids.keySet().toArray(String[]::new);
+            for (int i = 0; i < names.length; i++) {
+                ids.put(names[i], i);
+            }
+
+            free = new boolean[names.length];
+            for (VarCQ v : cq.freeVariables()) {
+                free[ids.get(v.getName())] = true;
+            }
+
+            atoms = new int[parsed.size()][];
+            labels = new String[parsed.size()];
+            for (int i = 0; i < parsed.size(); i++) {
+                AtomCQ atom = parsed.get(i);
+                Predicate label = atom.getLabel();
+                int s = ids.get(atom.getSource().getName());
+                int t = ids.get(atom.getTarget().getName());
+                if (label.isInverse()) {
+                    atoms[i] = new int[] {t, s};
+                    labels[i] = label.getInverse().getAlias();
+                } else {
+                    atoms[i] = new int[] {s, t};
+                    labels[i] = label.getAlias();
+                }
+            }
+        }
+
+        CanonicalQuery canonical() {
+            int[] colours = refine();
+            int[] position = new int[names.length];
+            Arrays.fill(position, -1);
+            search(colours, position, 0);
+
+            String[] freeInOrder = new String[names.length];
+            for (int v = 0; v < names.length; v++) {
+                if (free[v]) {
+                    freeInOrder[bestPosition[v]] = names[v];
+                }
+            }
+            List<String> freeVariables = new ArrayList<>();
+            for (String name : freeInOrder) {
+                if (name != null) {
+                    freeVariables.add(name);
+                }
+            }
+            return new CanonicalQuery(best, freeVariables);
+        }
+
+        /**
+         * Colour refinement: starts from the free/bound split and repeatedly recolours each
+         * variable by its colour and the sorted multiset of (direction, label, neighbour colour)
+         * until the number of colours stops growing.
+         */
+        private int[] refine() {
+            int[] colours = new int[names.length];
+            for (int v = 0; v < names.length; v++) {
+                colours[v] = free[v] ? 0 : 1;
+            }
+            int classes = -1;
+            while (true) {
+                String[] signatures = new String[names.length];
+                List<List<String>> incident = new ArrayList<>(names.length);
+                for (int v = 0; v < names.length; v++) {
+                    incident.add(new ArrayList<>());
+                }
+                for (int i = 0; i < atoms.length; i++) {
+                    int s = atoms[i][0];
+                    int t = atoms[i][1];
+                    incident.get(s).add("o" + labels[i] + ":" + colours[t]);
+                    incident.get(t).add("i" + labels[i] + ":" + colours[s]);
+                }
+                for (int v = 0; v < names.length; v++) {
+                    List<String> parts = incident.get(v);
+                    parts.sort(null);
+                    signatures[v] = colours[v] + "|" + String.join(",", parts);
+                }
+
+                Map<String, Integer> rank = new TreeMap<>();
+                for (String signature : signatures) {
+                    rank.put(signature, 0);
+                }
+                int next = 0;
+                for (Map.Entry<String, Integer> e : rank.entrySet()) {
+                    e.setValue(next++);
+                }
+                for (int v = 0; v < names.length; v++) {
+                    colours[v] = rank.get(signatures[v]);
+                }
+                if (rank.size() == classes) {
+                    return colours;
+                }
+                classes = rank.size();
+            }
+        }
+
+        /**
+         * Assigns positions in colour order, branching over the variables of the lowest unplaced
+         * colour, and keeps the ordering with the smallest encoding.
+         */
+        private void search(int[] colours, int[] position, int placed) {
+            if (placed == names.length) {
+                leaves++;
+                String encoding = encode(position);
+                if (best == null || encoding.compareTo(best) < 0) {
+                    best = encoding;
+                    bestPosition = position.clone();
+                }
+                return;
+            }
+            int colour = Integer.MAX_VALUE;
+            for (int v = 0; v < names.length; v++) {
+                if (position[v] < 0) {
+                    colour = Math.min(colour, colours[v]);
+                }
+            }
+            for (int v = 0; v < names.length; v++) {
+                if (position[v] < 0 && colours[v] == colour) {
+                    position[v] = placed;
+                    search(colours, position, placed + 1);
+                    position[v] = -1;
+                    if (leaves >= SEARCH_BUDGET) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private String encode(int[] position) {
+            String[] encoded = new String[atoms.length];
+            for (int i = 0; i < atoms.length; i++) {
+                encoded[i] = position[atoms[i][0]] + " " + labels[i] + " " + position[atoms[i][1]];
+            }
+            Arrays.sort(encoded);
+            StringBuilder out = new StringBuilder();
+            out.append(names.length).append(';');
+            boolean[] freeAt = new boolean[names.length];
+            for (int v = 0; v < names.length; v++) {
+                freeAt[position[v]] = free[v];
+            }
+            for (int p = 0; p < names.length; p++) {
+                if (freeAt[p]) {
+                    out.append(p).append(' ');
+                }
+            }
+            out.append(';').append(String.join(",", encoded));
+            return out.toString();
+        }
+    }
+}
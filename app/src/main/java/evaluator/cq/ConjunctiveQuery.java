@@ -70,8 +70,11 @@ public final class ConjunctiveQuery {
         Objects.checkIndex(Math.max(k, 1) - 1, Integer.MAX_VALUE);
         Objects.requireNonNull(strategy, "strategy");
 
+        if (strategy == Strategy.SINGLE_EDGE) {
+            return new CpqDecomposition(this, SingleEdgeDecomposition());
+        }
         List<List<Component>> exact = CpqEnumeration.enumerateExactDecompositions(syntax, k, 0);
-        if (strategy == Strategy.SINGLE_EDGE || exact.isEmpty()) {
+        if (exact.isEmpty()) {
             return new CpqDecomposition(this, SingleEdgeDecomposition());
         }
 
@@ -83,6 +86,22 @@ public final class ConjunctiveQuery {
         return new CpqDecomposition(this, exact.get(selected));
     }
 
+    /**
+     * Decomposes using a prepared enumeration state for this query, typically one obtained by
+     * extending the state of a smaller query from the same family.
+     */
+    public CpqDecomposition decompose(CpqEnumeration.IncrementalEnumeration enumeration) {
+        Objects.requireNonNull(enumeration, "enumeration");
+        if (enumeration.cq() != syntax) {
+            throw new IllegalArgumentException("Enumeration state belongs to a different query");
+        }
+        List<List<Component>> exact = enumeration.exactDecompositions(1);
+        if (exact.isEmpty()) {
+            return new CpqDecomposition(this, SingleEdgeDecomposition());
+        }
+        return new CpqDecomposition(this, exact.get(0));
+    }
+
     private List<Component> SingleEdgeDecomposition() {
         List<AtomCQ> atoms = atoms();
         int edgeCount = atoms.size();
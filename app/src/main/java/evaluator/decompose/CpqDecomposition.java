@@ -61,6 +61,26 @@ public final class CpqDecomposition {
         }
     }
 
+    /**
+     * A component's CPQ up to orientation. {@code key} is shared by components with the same CPQ
+     * and by components whose CPQ is its inverse; {@code transposed} tells whether the component
+     * reads the keyed relation from target to source. Identity-closed components keep only the
+     * diagonal, which is the same in both orientations, so they are never transposed.
+     */
+    public record Orientation(String key, boolean transposed) {
+    }
+
+    public static Orientation orientation(Component component) {
+        Objects.requireNonNull(component, "component");
+        String forward = component.canonical();
+        String backward = CpqNormalizer.inverse(component.cpq()).canonical();
+        if (component.isUnary()) {
+            return new Orientation("loop:" + (backward.compareTo(forward) < 0 ? backward : forward), false);
+        }
+        boolean transposed = backward.compareTo(forward) < 0;
+        return new Orientation(transposed ? backward : forward, transposed);
+    }
+
     private final ConjunctiveQuery cq;
     private final List<Component> components;
     private final List<String> variableOrder;
@@ -102,6 +122,10 @@ public final class CpqDecomposition {
     }
 
     public static String varName(VarCQ v) {
-        return "?" + v.getName();
+        return varName(v.getName());
+    }
+
+    public static String varName(String name) {
+        return "?" + name;
     }
 }
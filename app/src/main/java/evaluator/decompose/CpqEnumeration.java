@@ -19,8 +19,27 @@ import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public final class CpqEnumeration {
+    /**
+     * Whether exact covers that are images of each other under a query graph automorphism are
+     * enumerated only once, from the {@code cpq.enumeration.symmetry} system property (on by
+     * default).
+     */
+    private static final boolean SYMMETRY_BREAKING = Boolean.parseBoolean(System.getProperty("cpq.enumeration.symmetry", "true"));
+
+    /**
+     * Order of enumerated components. Ties on diameter and CPQ are broken by endpoints and atoms so
+     * the order, and with it the first exact cover, does not depend on hash iteration.
+     */
+    private static final Comparator<Component> COMPONENT_ORDER = Comparator
+            .comparingInt(Component::diameter)
+            .thenComparing(Component::canonical)
+            .thenComparing((Component c) -> c.s().getName())
+            .thenComparing((Component c) -> c.t().getName())
+            .thenComparing(Component::mask, CpqEnumeration::compareMasks);
+
     private CpqEnumeration() {
     }
 
@@ -52,6 +71,10 @@ public final class CpqEnumeration {
 
         Instance instance = Instance.from(cq);
         List<Component> components = enumerateCpqkComponents(cq, k);
+        exactCovers(instance, components, limit, out);
+    }
+
+    private static void exactCovers(Instance instance, List<Component> components, int limit, Consumer<List<Component>> out) {
         int edgeCount = instance.edges().size();
         List<VarCQ> vertices = instance.vertices();
         Map<VarCQ, Integer> varIndex = new HashMap<>(vertices.size());
@@ -107,11 +130,17 @@ public final class CpqEnumeration {
 
         int max = limit == 0 ? Integer.MAX_VALUE : limit;
         BitSet empty = new BitSet(edgeCount);
+        List<int[]> symmetries = SYMMETRY_BREAKING ? componentSymmetries(instance, varIndex, components) : List.of();
 
         class Dfs {
             int outputs = 0;
 
-            void run(BitSet covered, Set<VarCQ> freeCovered, ArrayList<Integer> chosen) {
+            /**
+             * {@code symmetries} are the component permutations of automorphisms fixing every
+             * chosen component: two candidates one of them maps onto each other lead to covers
+             * that are images of each other, so only the first is explored.
+             */
+            void run(BitSet covered, Set<VarCQ> freeCovered, ArrayList<Integer> chosen, List<int[]> symmetries) {
                 if (outputs >= max) {
                     return;
                 }
@@ -147,11 +176,20 @@ public final class CpqEnumeration {
                     return;
                 }
 
+                BitSet explored = symmetries.isEmpty() ? null : new BitSet(components.size());
                 for (int idx : cover.get(nextEdge)) {
                     Component c = components.get(idx);
                     if (c.mask().intersects(covered)) {
                         continue;
                     }
+                    List<int[]> fixing = symmetries;
+                    if (explored != null) {
+                        if (mapsIntoExplored(symmetries, idx, explored)) {
+                            continue;
+                        }
+                        explored.set(idx);
+                        fixing = fixing(symmetries, idx);
+                    }
 
                     BitSet nextCovered = (BitSet) covered.clone();
                     nextCovered.or(c.mask());
@@ -165,7 +203,7 @@ public final class CpqEnumeration {
                     }
 
                     chosen.add(idx);
-                    run(nextCovered, nextFreeCovered, chosen);
+                    run(nextCovered, nextFreeCovered, chosen, fixing);
                     chosen.remove(chosen.size() - 1);
 
                     if (outputs >= max) {
@@ -175,7 +213,222 @@ public final class CpqEnumeration {
             }
         }
 
-        new Dfs().run(new BitSet(edgeCount), new HashSet<>(), new ArrayList<>());
+        new Dfs().run(new BitSet(edgeCount), new HashSet<>(), new ArrayList<>(), symmetries);
+    }
+
+    /**
+     * Permutations of {@code components} induced by the query graph's automorphisms; an entry is
+     * {@code -1} when the image of a component is not in the list.
+     */
+    private static List<int[]> componentSymmetries(Instance instance, Map<VarCQ, Integer> varIndex, List<Component> components) {
+        List<Edge> edges = instance.edges();
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        String[] labels = new String[edges.size()];
+        for (int e = 0; e < edges.size(); e++) {
+            sources[e] = varIndex.get(edges.get(e).src());
+            targets[e] = varIndex.get(edges.get(e).trg());
+            labels[e] = edges.get(e).label().getAlias();
+        }
+        BitSet free = new BitSet(varIndex.size());
+        for (VarCQ v : instance.freeVars()) {
+            Integer idx = varIndex.get(v);
+            if (idx != null) {
+                free.set(idx);
+            }
+        }
+        QueryAutomorphisms group = QueryAutomorphisms.compute(varIndex.size(), sources, targets, labels, free);
+        if (group.size() == 0) {
+            return List.of();
+        }
+
+        Map<ImageKey, Integer> byKey = new HashMap<>(components.size() * 2);
+        for (int idx = 0; idx < components.size(); idx++) {
+            Component c = components.get(idx);
+            byKey.putIfAbsent(new ImageKey(c.s(), c.t(), c.mask(), c.canonical()), idx);
+        }
+        List<VarCQ> vertices = instance.vertices();
+        List<int[]> out = new ArrayList<>(group.size());
+        for (int element = 0; element < group.size(); element++) {
+            int[] vertexMap = group.vertexMap(element);
+            int[] edgeMap = group.edgeMap(element);
+            int[] permutation = new int[components.size()];
+            for (int idx = 0; idx < components.size(); idx++) {
+                Component c = components.get(idx);
+                BitSet mask = new BitSet(edges.size());
+                for (int e = c.mask().nextSetBit(0); e >= 0; e = c.mask().nextSetBit(e + 1)) {
+                    mask.set(edgeMap[e]);
+                }
+                VarCQ s = vertices.get(vertexMap[varIndex.get(c.s())]);
+                VarCQ t = vertices.get(vertexMap[varIndex.get(c.t())]);
+                permutation[idx] = byKey.getOrDefault(new ImageKey(s, t, mask, c.canonical()), -1);
+            }
+            out.add(permutation);
+        }
+        return out;
+    }
+
+    private static boolean mapsIntoExplored(List<int[]> symmetries, int idx, BitSet explored) {
+        for (int[] permutation : symmetries) {
+            if (permutation[idx] >= 0 && explored.get(permutation[idx])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<int[]> fixing(List<int[]> symmetries, int idx) {
+        List<int[]> out = new ArrayList<>();
+        for (int[] permutation : symmetries) {
+            if (permutation[idx] == idx) {
+                out.add(permutation);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Enumeration state for a family of queries that extend a common core by a few atoms. The
+     * closed component set of a query is kept, and {@link #extend} adds only the new atoms to a
+     * copy of it instead of re-running the closure from the base components. Atoms are matched by
+     * variable names and label alias, so family members should be parsed with the same label
+     * alphabet.
+     */
+    public static final class IncrementalEnumeration {
+        private final Enumerator enumerator;
+        private final CQ cq;
+        private final Set<String> atomKeys;
+
+        private IncrementalEnumeration(Enumerator enumerator, CQ cq, Set<String> atomKeys) {
+            this.enumerator = enumerator;
+            this.cq = cq;
+            this.atomKeys = atomKeys;
+        }
+
+        public static IncrementalEnumeration of(CQ cq, int k) {
+            Objects.requireNonNull(cq, "cq");
+            if (k < 0) {
+                throw new IllegalArgumentException("k must be >= 0");
+            }
+            Enumerator enumerator = new Enumerator(cq, k);
+            enumerator.enumerate();
+            return new IncrementalEnumeration(enumerator, cq, atomKeys(enumerator.edges()));
+        }
+
+        public CQ cq() {
+            return cq;
+        }
+
+        public int atomCount() {
+            return atomKeys.size();
+        }
+
+        /**
+         * Whether every atom of this state's query is also an atom of {@code other}.
+         */
+        public boolean isContainedIn(CQ other) {
+            return atomKeys(Instance.from(Objects.requireNonNull(other, "other")).edges()).containsAll(atomKeys);
+        }
+
+        /**
+         * Returns the state for {@code extended}, which must contain every atom of this state's
+         * query; this state stays valid for other extensions.
+         */
+        public IncrementalEnumeration extend(CQ extended) {
+            Objects.requireNonNull(extended, "extended");
+            List<Edge> extendedEdges = Instance.from(extended).edges();
+            Set<String> extendedKeys = atomKeys(extendedEdges);
+            if (!extendedKeys.containsAll(atomKeys)) {
+                throw new IllegalArgumentException("Query does not extend " + cq.toFormalSyntax());
+            }
+
+            Map<String, VarCQ> known = new HashMap<>();
+            for (Edge e : enumerator.edges()) {
+                known.put(e.src().getName(), e.src());
+                known.put(e.trg().getName(), e.trg());
+            }
+            List<Edge> added = new ArrayList<>();
+            for (Edge e : extendedEdges) {
+                if (!atomKeys.contains(atomKey(e))) {
+                    VarCQ src = known.computeIfAbsent(e.src().getName(), ignored -> e.src());
+                    VarCQ trg = known.computeIfAbsent(e.trg().getName(), ignored -> e.trg());
+                    added.add(new Edge(-1, src, trg, e.label()));
+                }
+            }
+
+            Enumerator next = enumerator.copy();
+            next.addEdges(added);
+            return new IncrementalEnumeration(next, extended, extendedKeys);
+        }
+
+        /**
+         * Components of this state's query, with masks and endpoints in that query's own numbering.
+         */
+        public List<Component> components() {
+            return remap(Instance.from(cq));
+        }
+
+        public List<List<Component>> exactDecompositions(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit must be >= 0");
+            }
+            Instance instance = Instance.from(cq);
+            List<List<Component>> out = new ArrayList<>();
+            exactCovers(instance, remap(instance), limit, out::add);
+            return out;
+        }
+
+        private List<Component> remap(Instance instance) {
+            Map<String, Integer> edgeIds = new HashMap<>();
+            for (Edge e : instance.edges()) {
+                edgeIds.put(atomKey(e), e.id());
+            }
+            Map<String, VarCQ> vars = new HashMap<>();
+            for (VarCQ v : instance.vertices()) {
+                vars.put(v.getName(), v);
+            }
+            int[] toTarget = new int[enumerator.edges().size()];
+            for (Edge e : enumerator.edges()) {
+                toTarget[e.id()] = edgeIds.get(atomKey(e));
+            }
+
+            List<Component> out = new ArrayList<>();
+            for (Component c : enumerator.collect()) {
+                BitSet mask = new BitSet(instance.edges().size());
+                BitSet source = c.mask();
+                for (int e = source.nextSetBit(0); e >= 0; e = source.nextSetBit(e + 1)) {
+                    mask.set(toTarget[e]);
+                }
+                out.add(new Component(
+                        vars.get(c.s().getName()),
+                        vars.get(c.t().getName()),
+                        c.diameter(),
+                        mask,
+                        c.cpq(),
+                        c.canonical()));
+            }
+            out.sort(COMPONENT_ORDER);
+            return out;
+        }
+
+        private static Set<String> atomKeys(List<Edge> edges) {
+            Set<String> keys = new HashSet<>(edges.size() * 2);
+            for (Edge e : edges) {
+                keys.add(atomKey(e));
+            }
+            return keys;
+        }
+
+        private static String atomKey(Edge e) {
+            return e.src().getName() + "|" + e.label().getAlias() + "|" + e.trg().getName();
+        }
+    }
+
+    private static int compareMasks(BitSet a, BitSet b) {
+        BitSet diff = (BitSet) a.clone();
+        diff.xor(b);
+        int first = diff.nextSetBit(0);
+        return first < 0 ? 0 : a.get(first) ? -1 : 1;
     }
 
     private static int prefersEdgeDirection(Component component, Edge edge) {
@@ -241,27 +494,78 @@ public final class CpqEnumeration {
     private static final class Enumerator {
         private final int maxCoreDiam;
         private final List<Edge> edges;
-        private final int atomCount;
+        private int atomCount;
         private int nextId;
-        private final Map<ComponentKey, InternalComponent> bestByKey = new HashMap<>();
+        private final Map<ComponentKey, InternalComponent> bestByKey;
+        private final Map<String, NormalizedData> normalized;
 
-        private final Map<VarCQ, List<InternalComponent>> bySource = new HashMap<>();
-        private final Map<VarCQ, List<InternalComponent>> byTarget = new HashMap<>();
-        private final Map<EndpointPair, List<InternalComponent>> byEndpoints = new HashMap<>();
+        private final Map<VarCQ, List<InternalComponent>> bySource;
+        private final Map<VarCQ, List<InternalComponent>> byTarget;
+        private final Map<EndpointPair, List<InternalComponent>> byEndpoints;
 
         Enumerator(CQ cq, int k) {
+            this(k, Instance.from(cq).edges());
+        }
+
+        private Enumerator(int k, List<Edge> edges) {
             this.maxCoreDiam = k;
-            Instance instance = Instance.from(cq);
-            this.edges = instance.edges();
+            this.edges = new ArrayList<>(edges);
             this.atomCount = edges.size();
             this.nextId = 0;
+            this.bestByKey = new HashMap<>();
+            this.normalized = new HashMap<>();
+            this.bySource = new HashMap<>();
+            this.byTarget = new HashMap<>();
+            this.byEndpoints = new HashMap<>();
+        }
+
+        private Enumerator(Enumerator other) {
+            this.maxCoreDiam = other.maxCoreDiam;
+            this.edges = new ArrayList<>(other.edges);
+            this.atomCount = other.atomCount;
+            this.nextId = other.nextId;
+            this.bestByKey = new HashMap<>(other.bestByKey);
+            this.normalized = new HashMap<>(other.normalized);
+            this.bySource = copyIndex(other.bySource);
+            this.byTarget = copyIndex(other.byTarget);
+            this.byEndpoints = copyIndex(other.byEndpoints);
+        }
+
+        Enumerator copy() {
+            return new Enumerator(this);
         }
 
         List<Component> enumerate() {
             Queue<InternalComponent> worklist = new ArrayDeque<>();
+            initializeBaseComponents(edges, worklist);
+            close(worklist);
+            return collect();
+        }
+
+        /**
+         * Adds atoms to an already closed component set and closes it again. Every new component
+         * gets a higher id than the existing ones, so the worklist pairs it with all old components
+         * while pairs of old components are not revisited.
+         */
+        void addEdges(List<Edge> added) {
+            List<Edge> renumbered = new ArrayList<>(added.size());
+            for (Edge e : added) {
+                Edge edge = new Edge(edges.size(), e.src(), e.trg(), e.label());
+                edges.add(edge);
+                renumbered.add(edge);
+            }
+            atomCount = edges.size();
 
-            initializeBaseComponents(worklist);
+            Queue<InternalComponent> worklist = new ArrayDeque<>();
+            initializeBaseComponents(renumbered, worklist);
+            close(worklist);
+        }
 
+        List<Edge> edges() {
+            return edges;
+        }
+
+        private void close(Queue<InternalComponent> worklist) {
             while (!worklist.isEmpty()) {
                 if (Thread.currentThread().isInterrupted()) {
                     throw new RuntimeException("Enumeration interrupted");
@@ -304,7 +608,9 @@ public final class CpqEnumeration {
                 }
 
             }
+        }
 
+        List<Component> collect() {
             List<InternalComponent> values = new ArrayList<>(bestByKey.values());
             values.sort(Comparator.comparingInt(InternalComponent::coreDiam).thenComparing(InternalComponent::canonical));
 
@@ -312,7 +618,7 @@ public final class CpqEnumeration {
             for (InternalComponent component : values) {
                 result.add(toExternalComponent(component));
             }
-            result.sort(Comparator.comparingInt(Component::diameter).thenComparing(Component::canonical));
+            result.sort(COMPONENT_ORDER);
 
             if (Boolean.getBoolean("cpq.enumeration.dump")) {
                 for (Component component : result) {
@@ -323,13 +629,13 @@ public final class CpqEnumeration {
             return result;
         }
 
-        private void initializeBaseComponents(Queue<InternalComponent> worklist) {
-            for (Edge e : edges) {
+        private void initializeBaseComponents(List<Edge> baseEdges, Queue<InternalComponent> worklist) {
+            for (Edge e : baseEdges) {
                 BitSet owned = new BitSet(atomCount);
                 owned.set(e.id());
                 BitSet inverse = new BitSet(atomCount);
 
-                NormalizedData fwdNorm = normalize(CPQ.label(e.label()));
+                NormalizedData fwdNorm = normalize("label\0" + e.label().getAlias(), () -> CPQ.label(e.label()));
                 InternalComponent fwd = newComponent(
                         e.src(),
                         e.trg(),
@@ -342,7 +648,7 @@ public final class CpqEnumeration {
                 registerIfBetter(fwd, worklist);
 
                 Predicate inv = e.label().getInverse();
-                NormalizedData invNorm = normalize(CPQ.label(inv));
+                NormalizedData invNorm = normalize("label\0" + inv.getAlias(), () -> CPQ.label(inv));
                 BitSet inverseBack = new BitSet(atomCount);
                 inverseBack.set(e.id());
                 InternalComponent bwd = newComponent(
@@ -372,8 +678,8 @@ public final class CpqEnumeration {
             }
             BitSet owned = union(left.ownedAtoms(), right.ownedAtoms());
             BitSet inverse = union(left.inverseAtoms(), right.inverseAtoms());
-            CPQ cpq = CPQ.concat(List.of(left.cpq(), right.cpq()));
-            NormalizedData norm = normalize(cpq);
+            NormalizedData norm = normalize("concat\0" + left.canonical() + "\0" + right.canonical(),
+                    () -> CPQ.concat(List.of(left.cpq(), right.cpq())));
 
             InternalComponent out = newComponent(
                     left.s(),
@@ -400,8 +706,8 @@ public final class CpqEnumeration {
             }
             BitSet owned = union(left.ownedAtoms(), right.ownedAtoms());
             BitSet inverse = union(left.inverseAtoms(), right.inverseAtoms());
-            CPQ cpq = CPQ.intersect(List.of(left.cpq(), right.cpq()));
-            NormalizedData norm = normalize(cpq);
+            NormalizedData norm = normalize("intersect\0" + left.canonical() + "\0" + right.canonical(),
+                    () -> CPQ.intersect(List.of(left.cpq(), right.cpq())));
 
             InternalComponent out = newComponent(
                     left.s(),
@@ -450,6 +756,20 @@ public final class CpqEnumeration {
                     component.canonical());
         }
 
+        /**
+         * Normalises the CPQ built by {@code cpq}, once per {@code key}: the key names the operator
+         * and the canonical forms of the operands, so symmetric copies of a component, which differ
+         * only in their variables, share one normalisation.
+         */
+        private NormalizedData normalize(String key, Supplier<CPQ> cpq) {
+            NormalizedData known = normalized.get(key);
+            if (known == null) {
+                known = normalize(cpq.get());
+                normalized.put(key, known);
+            }
+            return known;
+        }
+
         private NormalizedData normalize(CPQ cpq) {
             CpqNormalizer.Normalized norm = CpqNormalizer.normalize(cpq);
             CPQ normalized = norm.cpq();
@@ -474,6 +794,14 @@ public final class CpqEnumeration {
         private boolean isCurrent(InternalComponent component) {
             return bestByKey.get(component.key()) == component;
         }
+
+        private static <K> Map<K, List<InternalComponent>> copyIndex(Map<K, List<InternalComponent>> index) {
+            Map<K, List<InternalComponent>> out = new HashMap<>(index.size() * 2);
+            for (Map.Entry<K, List<InternalComponent>> entry : index.entrySet()) {
+                out.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            }
+            return out;
+        }
     }
 
     private static BitSet union(BitSet left, BitSet right) {
@@ -528,6 +856,9 @@ public final class CpqEnumeration {
     private record EndpointPair(VarCQ s, VarCQ t) {
     }
 
+    private record ImageKey(VarCQ s, VarCQ t, BitSet mask, String canonical) {
+    }
+
     private record Edge(int id, VarCQ src, VarCQ trg, Predicate label) {
     }
 
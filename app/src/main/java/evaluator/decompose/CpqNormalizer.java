@@ -66,6 +66,25 @@ final class CpqNormalizer {
         }
     }
 
+    /**
+     * Normal form of the inverse of {@code cpq}, which matches {@code (t, s)} whenever {@code cpq}
+     * matches {@code (s, t)}: labels are inverted and concatenations reversed.
+     */
+    static Normalized inverse(CPQ cpq) {
+        Objects.requireNonNull(cpq, "cpq");
+        return normalize(invert(cpq.toAbstractSyntaxTree()));
+    }
+
+    private static CPQ invert(QueryTree node) {
+        return switch (node.getOperation()) {
+            case IDENTITY -> CPQ.id();
+            case EDGE -> CPQ.label(node.getEdgeAtom().getLabel().getInverse());
+            case CONCATENATION -> CPQ.concat(invert(node.getOperand(1)), invert(node.getOperand(0)));
+            case INTERSECTION -> CPQ.intersect(invert(node.getOperand(0)), invert(node.getOperand(1)));
+            default -> throw new IllegalArgumentException("Unsupported CPQ operation: " + node.getOperation());
+        };
+    }
+
     private static Normalized normalizeTree(QueryTree node) {
         return switch (node.getOperation()) {
             case IDENTITY -> new Normalized(CPQ.id(), "id");
@@ -0,0 +1,198 @@
+package evaluator.decompose;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Automorphisms of a query graph: vertex permutations that map every atom onto an atom with the
+ * same label and direction and keep the set of free variables. Found by backtracking over
+ * vertices in breadth-first order, trying only images with the same free flag and the same
+ * multisets of incoming and outgoing labels, and checking atoms as soon as both ends are mapped.
+ * Collection stops after {@link #MAX_ELEMENTS} elements; any subset of the group is still safe
+ * for symmetry breaking, it only prunes less.
+ */
+final class QueryAutomorphisms {
+    static final int MAX_ELEMENTS = 1024;
+
+    private final List<int[]> vertexMaps;
+    private final List<int[]> edgeMaps;
+
+    private QueryAutomorphisms(List<int[]> vertexMaps, List<int[]> edgeMaps) {
+        this.vertexMaps = vertexMaps;
+        this.edgeMaps = edgeMaps;
+    }
+
+    /**
+     * Non-identity automorphisms of the graph on vertices {@code 0..vertexCount-1} whose atom
+     * {@code e} runs from {@code sources[e]} to {@code targets[e]} with label {@code labels[e]};
+     * {@code free} marks the free variables.
+     */
+    static QueryAutomorphisms compute(int vertexCount, int[] sources, int[] targets, String[] labels, BitSet free) {
+        Objects.requireNonNull(free, "free");
+        if (sources.length != targets.length || sources.length != labels.length) {
+            throw new IllegalArgumentException("sources, targets and labels must have the same length");
+        }
+        return new Search(vertexCount, sources, targets, labels, free).run();
+    }
+
+    /**
+     * Number of non-identity elements found.
+     */
+    int size() {
+        return vertexMaps.size();
+    }
+
+    int[] vertexMap(int element) {
+        return vertexMaps.get(element);
+    }
+
+    /**
+     * Atom permutation induced by the element: atom {@code e} maps to atom {@code edgeMap[e]}.
+     */
+    int[] edgeMap(int element) {
+        return edgeMaps.get(element);
+    }
+
+    private static final class Search {
+        private final int vertexCount;
+        private final int[] sources;
+        private final int[] targets;
+        private final String[] labels;
+        private final Map<String, Integer> atoms = new HashMap<>();
+        private final String[] colour;
+        private final List<List<Integer>> incident = new ArrayList<>();
+        private final int[] order;
+        private final int[] map;
+        private final boolean[] used;
+        private final List<int[]> vertexMaps = new ArrayList<>();
+        private final List<int[]> edgeMaps = new ArrayList<>();
+
+        Search(int vertexCount, int[] sources, int[] targets, String[] labels, BitSet free) {
+            this.vertexCount = vertexCount;
+            this.sources = sources;
+            this.targets = targets;
+            this.labels = labels;
+            List<List<String>> out = new ArrayList<>();
+            List<List<String>> in = new ArrayList<>();
+            for (int v = 0; v < vertexCount; v++) {
+                incident.add(new ArrayList<>());
+                out.add(new ArrayList<>());
+                in.add(new ArrayList<>());
+            }
+            for (int e = 0; e < sources.length; e++) {
+                atoms.put(atomKey(sources[e], labels[e], targets[e]), e);
+                incident.get(sources[e]).add(e);
+                if (targets[e] != sources[e]) {
+                    incident.get(targets[e]).add(e);
+                }
+                out.get(sources[e]).add(labels[e]);
+                in.get(targets[e]).add(labels[e]);
+            }
+            this.colour = new String[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                out.get(v).sort(null);
+                in.get(v).sort(null);
+                colour[v] = (free.get(v) ? "free" : "bound") + out.get(v) + in.get(v);
+            }
+            this.order = breadthFirstOrder();
+            this.map = new int[vertexCount];
+            this.used = new boolean[vertexCount];
+        }
+
+        QueryAutomorphisms run() {
+            Arrays.fill(map, -1);
+            extend(0);
+            return new QueryAutomorphisms(vertexMaps, edgeMaps);
+        }
+
+        private boolean extend(int depth) {
+            if (depth == vertexCount) {
+                record();
+                return vertexMaps.size() < MAX_ELEMENTS;
+            }
+            int v = order[depth];
+            for (int image = 0; image < vertexCount; image++) {
+                if (used[image] || !colour[v].equals(colour[image])) {
+                    continue;
+                }
+                map[v] = image;
+                used[image] = true;
+                boolean proceed = !consistent(v) || extend(depth + 1);
+                used[image] = false;
+                map[v] = -1;
+                if (!proceed) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether every atom at {@code v} whose other end is mapped has an image atom.
+         */
+        private boolean consistent(int v) {
+            for (int e : incident.get(v)) {
+                int s = map[sources[e]];
+                int t = map[targets[e]];
+                if (s >= 0 && t >= 0 && !atoms.containsKey(atomKey(s, labels[e], t))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void record() {
+            boolean identity = true;
+            for (int v = 0; v < vertexCount && identity; v++) {
+                identity = map[v] == v;
+            }
+            if (identity) {
+                return;
+            }
+            int[] edgeMap = new int[sources.length];
+            for (int e = 0; e < sources.length; e++) {
+                edgeMap[e] = atoms.get(atomKey(map[sources[e]], labels[e], map[targets[e]]));
+            }
+            vertexMaps.add(map.clone());
+            edgeMaps.add(edgeMap);
+        }
+
+        /**
+         * Vertices in breadth-first order over the undirected graph, so each vertex after the first
+         * of its connected part has a mapped neighbour to check atoms against.
+         */
+        private int[] breadthFirstOrder() {
+            int[] out = new int[vertexCount];
+            boolean[] seen = new boolean[vertexCount];
+            int head = 0;
+            int tail = 0;
+            for (int root = 0; root < vertexCount; root++) {
+                if (seen[root]) {
+                    continue;
+                }
+                seen[root] = true;
+                out[tail++] = root;
+                while (head < tail) {
+                    int v = out[head++];
+                    for (int e : incident.get(v)) {
+                        int other = sources[e] == v ? targets[e] : sources[e];
+                        if (!seen[other]) {
+                            seen[other] = true;
+                            out[tail++] = other;
+                        }
+                    }
+                }
+            }
+            return out;
+        }
+
+        private static String atomKey(int source, String label, int target) {
+            return source + "|" + label + "|" + target;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package evaluator.index;
+
+import evaluator.cq.CanonicalQuery;
+import evaluator.join.FactorisedResult;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Process-wide cache of complete query answers. Entries are keyed by index identity and
+ * {@link CanonicalQuery} key, so renamed or reordered copies of a query share one entry; answers
+ * are stored as one int column per free variable, in the trie order they were put in, with the
+ * canonical variable of each column, and rebuilt into a {@link FactorisedResult} on a hit. The cache holds at most {@link #budgetBytes()} of column data
+ * and evicts by {@link Policy}.
+ */
+public final class AnswerCache {
+    public enum Policy {
+        /**
+         * Evicts the least recently used entry.
+         */
+        LRU,
+        /**
+         * Evicts the least frequently used entry, oldest first among equals.
+         */
+        LFU
+    }
+
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+    private static final AnswerCache SHARED = new AnswerCache(
+            Long.getLong("cpq.cache.bytes", 64L << 20),
+            Policy.valueOf(System.getProperty("cpq.cache.policy", "LRU")));
+
+    private final long budgetBytes;
+    private final Policy policy;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+    private long tick;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public AnswerCache(long budgetBytes, Policy policy) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("budgetBytes must be >= 0");
+        }
+        this.budgetBytes = budgetBytes;
+        this.policy = Objects.requireNonNull(policy, "policy");
+    }
+
+    /**
+     * The process-level cache, sized by the {@code cpq.cache.bytes} system property (64 MiB by
+     * default, {@code 0} disables it) with the eviction policy from {@code cpq.cache.policy}.
+     */
+    public static AnswerCache shared() {
+        return SHARED;
+    }
+
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    /**
+     * Returns the cached answers of {@code query} on index {@code indexId} over the caller's names
+     * for the canonical free variables ({@code freeVars}, in canonical order), or {@code null} on a
+     * miss.
+     */
+    public synchronized FactorisedResult get(String indexId, CanonicalQuery query, List<String> freeVars) {
+        Entry entry = entries.get(key(indexId, query));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        entry.uses++;
+        entry.lastUse = ++tick;
+        return entry.toResult(freeVars);
+    }
+
+    /**
+     * Returns the number of cached answers of {@code query} on index {@code indexId}, or
+     * {@code -1} on a miss.
+     */
+    public synchronized long count(String indexId, CanonicalQuery query) {
+        Entry entry = entries.get(key(indexId, query));
+        if (entry == null) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        entry.uses++;
+        entry.lastUse = ++tick;
+        return entry.rows;
+    }
+
+    /**
+     * Stores {@code answers}, whose variables are the caller's names for the canonical free
+     * variables ({@code freeVars}, in canonical order) in any order. Answers larger than the whole
+     * budget are not cached and are not expanded.
+     */
+    public synchronized void put(String indexId, CanonicalQuery query, List<String> freeVars, FactorisedResult answers) {
+        Objects.requireNonNull(freeVars, "freeVars");
+        Objects.requireNonNull(answers, "answers");
+        String key = key(indexId, query);
+        long count = answers.count();
+        int arity = freeVars.size();
+        long bytes = ENTRY_OVERHEAD_BYTES + key.length() * 2L + count * arity * Integer.BYTES;
+        if (bytes > budgetBytes || count > Integer.MAX_VALUE) {
+            return;
+        }
+
+        // columns keep the trie's level order, so the rows stay sorted without a re-sort
+        List<String> levels = answers.levelVariables();
+        if (levels.size() != arity) {
+            throw new IllegalArgumentException("Expected " + arity + " variables, got " + levels);
+        }
+        int[] levelOf = new int[arity];
+        int[] columnOfLevel = new int[arity];
+        for (int c = 0; c < arity; c++) {
+            levelOf[c] = levels.indexOf(freeVars.get(c));
+            if (levelOf[c] < 0) {
+                throw new IllegalArgumentException("Answers do not bind " + freeVars.get(c));
+            }
+            columnOfLevel[c] = answers.variables().indexOf(levels.get(c));
+        }
+
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            usedBytes -= previous.bytes;
+        }
+        while (usedBytes + bytes > budgetBytes && !entries.isEmpty()) {
+            evictOne();
+        }
+
+        int rows = (int) count;
+        int[][] columns = new int[arity][rows];
+        int[] row = {0};
+        answers.forEach(tuple -> {
+            for (int level = 0; level < arity; level++) {
+                columns[level][row[0]] = tuple[columnOfLevel[level]];
+            }
+            row[0]++;
+            return true;
+        });
+
+        Entry entry = new Entry(columns, levelOf, rows, bytes);
+        entry.lastUse = ++tick;
+        entries.put(key, entry);
+        usedBytes += bytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), usedBytes, budgetBytes);
+    }
+
+    private void evictOne() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        Map.Entry<String, Entry> victim = it.next();
+        if (policy == Policy.LFU) {
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                Entry candidate = e.getValue();
+                Entry current = victim.getValue();
+                if (candidate.uses < current.uses
+                        || (candidate.uses == current.uses && candidate.lastUse < current.lastUse)) {
+                    victim = e;
+                }
+            }
+        }
+        usedBytes -= victim.getValue().bytes;
+        entries.remove(victim.getKey());
+        evictions++;
+    }
+
+    private static String key(String indexId, CanonicalQuery query) {
+        Objects.requireNonNull(indexId, "indexId");
+        Objects.requireNonNull(query, "query");
+        return indexId + '\n' + query.key();
+    }
+
+    /**
+     * Snapshot of the cache counters.
+     */
+    public record Stats(long hits, long misses, long evictions, int entries, long usedBytes, long budgetBytes) {
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "hits=%d misses=%d hitRate=%.3f evictions=%d entries=%d bytes=%d/%d",
+                    hits, misses, hitRate(), evictions, entries, usedBytes, budgetBytes);
+        }
+    }
+
+    private static final class Entry {
+        private final int[][] columns;
+        /**
+         * Column of each canonical free variable.
+         */
+        private final int[] levelOf;
+        private final int rows;
+        private final long bytes;
+        private long uses;
+        private long lastUse;
+
+        Entry(int[][] columns, int[] levelOf, int rows, long bytes) {
+            this.columns = columns;
+            this.levelOf = levelOf;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Rows were stored in trie order, i.e. sorted lexicographically by column, so they rebuild
+         * the trie directly; the result views the columns in canonical order.
+         */
+        FactorisedResult toResult(List<String> freeVars) {
+            if (freeVars.size() != columns.length) {
+                throw new IllegalArgumentException("Expected " + columns.length + " free variables, got " + freeVars.size());
+            }
+            String[] levels = new String[columns.length];
+            for (int c = 0; c < levelOf.length; c++) {
+                levels[levelOf[c]] = freeVars.get(c);
+            }
+            return FactorisedResult.fromSortedColumns(List.of(levels), columns, rows).reordered(freeVars);
+        }
+    }
+}
@@ -1,28 +1,52 @@
 package evaluator.index;
 
+import evaluator.cq.CanonicalQuery;
 import evaluator.cq.ConjunctiveQuery;
 import evaluator.decompose.CpqDecomposition;
 import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.join.CompressedProjection;
+import evaluator.join.FactorisedResult;
 import evaluator.join.LeapfrogTrieJoin;
+import evaluator.join.OffHeapProjection;
+import evaluator.join.OffHeapTuples;
+import evaluator.join.SpillingTupleBuffer;
 import evaluator.join.RelationBinding;
 import evaluator.join.RelationBinding.RelationProjection;
 import dev.roanh.cpqindex.Index;
+import dev.roanh.cpqindex.IndexUtil;
 import dev.roanh.cpqindex.Main;
 import dev.roanh.cpqindex.Pair;
+import dev.roanh.cpqindex.ProgressListener;
+import dev.roanh.gmark.ast.QueryTree;
+import dev.roanh.gmark.lang.cq.AtomCQ;
+import dev.roanh.gmark.lang.cq.VarCQ;
+import dev.roanh.gmark.lang.cpq.CPQ;
+import dev.roanh.gmark.type.schema.Predicate;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public final class CpqNativeIndex {
-    private static final int[] EMPTY_INT_ARRAY = new int[0];
-
     static {
         try {
             Main.loadNatives();
@@ -31,19 +55,106 @@ public final class CpqNativeIndex {
         }
     }
 
-    private final Index index;
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cpq-index-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final int k;
+    private final EdgeDelta.Log updates = new EdgeDelta.Log();
+    private volatile Base base;
+    private volatile boolean sidewaysPassing = Boolean.getBoolean("cpq.evaluation.sideways");
+    private volatile boolean compressedProjections = Boolean.getBoolean("cpq.evaluation.compressed");
+    private volatile boolean componentSharing = Boolean.parseBoolean(System.getProperty("cpq.evaluation.sharing", "true"));
+    private volatile GraphAdjacency graph;
+    private volatile VertexOrdering ordering;
+    private volatile StatisticsCatalog statistics;
+    private volatile Base statisticsBase;
+    private volatile AnswerCache answerCache;
+    private final LongAdder traversals = new LongAdder();
+
+    private CpqNativeIndex(Index index, String identity) {
+        this(index, 2, identity);
+    }
 
-    private CpqNativeIndex(Index index) {
-        this.index = Objects.requireNonNull(index, "index");
-        this.k = 2;
+    private CpqNativeIndex(Index index, int k, String identity) {
+        this.base = new Base(Objects.requireNonNull(index, "index"), Objects.requireNonNull(identity, "identity"));
+        this.k = k;
     }
 
     public static CpqNativeIndex load(Path savedIndexFile) throws Exception {
+        return load(savedIndexFile, 2);
+    }
+
+    /**
+     * Loads an index built with diameter {@code k}, which queries are then decomposed for; the
+     * saved file does not record it.
+     */
+    public static CpqNativeIndex load(Path savedIndexFile, int k) throws Exception {
         Objects.requireNonNull(savedIndexFile, "savedIndexFile");
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be >= 1");
+        }
+        CpqNativeIndex loaded;
         try (InputStream in = Files.newInputStream(savedIndexFile)) {
             Index index = new Index(in);
-            return new CpqNativeIndex(index);
+            loaded = new CpqNativeIndex(index, k, fileIdentity("index", savedIndexFile));
+        }
+        // sidecars written for another index file, or before it was rebuilt, are skipped: a stale
+        // catalog could prove a query empty that has answers
+        String stamp = indexStamp(savedIndexFile);
+        Path sidecar = StatisticsCatalog.sidecarFor(savedIndexFile);
+        if (Files.isRegularFile(sidecar)) {
+            try {
+                loaded.statistics = StatisticsCatalog.read(sidecar, stamp);
+                loaded.statisticsBase = loaded.base;
+            } catch (IOException e) {
+                System.err.println("Ignoring statistics catalog: " + e.getMessage());
+            }
+        }
+        Path order = VertexOrdering.sidecarFor(savedIndexFile);
+        if (Files.isRegularFile(order)) {
+            try {
+                loaded.ordering = VertexOrdering.read(order, stamp);
+            } catch (IOException e) {
+                System.err.println("Ignoring vertex ordering: " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Size and modification time of an index file. Sidecars record the stamp of the index file
+     * they were computed for, so {@link #load} can tell when the index was replaced under them.
+     */
+    public static String indexStamp(Path indexFile) throws IOException {
+        Objects.requireNonNull(indexFile, "indexFile");
+        return Files.size(indexFile) + ":" + Files.getLastModifiedTime(indexFile).toMillis();
+    }
+
+    public static CpqNativeIndex build(Path graphFile, int k, int threads) throws Exception {
+        Objects.requireNonNull(graphFile, "graphFile");
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be >= 1");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1");
+        }
+        Index index = new Index(IndexUtil.readGraph(graphFile), k, true, true, threads, Integer.MAX_VALUE, ProgressListener.NONE);
+        return new CpqNativeIndex(index, k, fileIdentity("graph:k=" + k, graphFile));
+    }
+
+    private static String fileIdentity(String kind, Path file) throws Exception {
+        return kind + ":" + file.toAbsolutePath().normalize()
+                + ":" + Files.size(file)
+                + ":" + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    public void save(Path indexFile) throws Exception {
+        Objects.requireNonNull(indexFile, "indexFile");
+        try (OutputStream out = Files.newOutputStream(indexFile)) {
+            base.index().write(out, false);
         }
     }
 
@@ -51,113 +162,940 @@ public final class CpqNativeIndex {
         return k;
     }
 
+    /**
+     * Identifies the indexed data (file path, size and modification time, plus the vertex ordering
+     * and the edge update version when present) for keying cached answers.
+     */
+    public String identity() {
+        Base current;
+        EdgeDelta delta;
+        synchronized (updates) {
+            current = base;
+            delta = updates.snapshot();
+        }
+        return identity(current, ordering, delta);
+    }
+
+    private static String identity(Base base, VertexOrdering order, EdgeDelta delta) {
+        String baseIdentity = order == null ? base.identity() : base.identity() + "+order:" + order.fingerprint();
+        return delta.isEmpty() ? baseIdentity : baseIdentity + "+delta:" + delta.version();
+    }
+
+    /**
+     * Computes a vertex ordering from the index's edges with labels {@code 0..labelCount-1}, in
+     * original ids. Write it to {@link VertexOrdering#sidecarFor} so later {@link #load} calls use
+     * it, or apply it with {@link #setVertexOrdering}.
+     */
+    public VertexOrdering computeVertexOrdering(VertexOrdering.Strategy strategy, int labelCount) {
+        Objects.requireNonNull(strategy, "strategy");
+        if (labelCount < 1) {
+            throw new IllegalArgumentException("labelCount must be >= 1");
+        }
+        PairBuffer edges = new PairBuffer(1024);
+        int vertexCount = 0;
+        for (int id = 0; id < labelCount; id++) {
+            for (Pair pair : base.index().query(CPQ.label(new Predicate(id, String.valueOf(id))))) {
+                edges.add(pair.getSource(), pair.getTarget());
+                vertexCount = Math.max(vertexCount, Math.max(pair.getSource(), pair.getTarget()) + 1);
+            }
+        }
+        PairColumns columns = edges.toColumns();
+        return VertexOrdering.compute(strategy, vertexCount, columns.sources(), columns.targets(), columns.size());
+    }
+
+    /**
+     * Maps index results through {@code next} from now on, so projections and joins work on its
+     * internal ids; answers still come back in original ids. {@code null} turns relabelling off.
+     * Not to be called while queries run or edge updates are pending.
+     */
+    public void setVertexOrdering(VertexOrdering next) {
+        if (updates.size() > 0) {
+            throw new IllegalStateException("Compact pending edge updates before changing the vertex ordering");
+        }
+        VertexOrdering previous = ordering;
+        GraphAdjacency adjacency = graph;
+        if (adjacency != null) {
+            graph = adjacency.relabel(v -> {
+                int original = previous == null ? v : previous.original(v);
+                return next == null ? original : next.internal(original);
+            });
+        }
+        ordering = next;
+    }
+
+    /**
+     * The vertex ordering in use, or {@code null}. Relations handed out by package-level batch
+     * evaluation are in its internal ids; {@link VertexOrdering#restore} maps tuples back.
+     */
+    public VertexOrdering vertexOrdering() {
+        return ordering;
+    }
+
+    /**
+     * Adds the edge {@code source -label-> target} to the graph seen by queries, without
+     * rebuilding the index; {@link #compactAsync} folds pending updates into a new index file.
+     * Requires {@link #attachGraph}: components touching updated labels are patched by traversal.
+     */
+    public void insertEdge(int source, int label, int target) {
+        update(source, label, target, true);
+    }
+
+    /**
+     * Removes the edge {@code source -label-> target} from the graph seen by queries; see
+     * {@link #insertEdge}.
+     */
+    public void deleteEdge(int source, int label, int target) {
+        update(source, label, target, false);
+    }
+
+    private void update(int source, int label, int target, boolean present) {
+        if (source < 0 || label < 0 || target < 0) {
+            throw new IllegalArgumentException("Vertex and label ids must be >= 0");
+        }
+        if (graph == null) {
+            throw new IllegalStateException("Edge updates need the graph; call attachGraph first");
+        }
+        VertexOrdering order = ordering;
+        if (order != null) {
+            source = order.internal(source);
+            target = order.internal(target);
+        }
+        updates.apply(source, label, target, present);
+    }
+
+    /**
+     * Number of edges whose state differs from the indexed graph.
+     */
+    public int pendingEdgeUpdates() {
+        return updates.size();
+    }
+
+    /**
+     * Folds the pending edge updates into a fresh index in the background: the updated graph is
+     * written to {@code graphFile} and indexed into {@code indexFile} (both replaced atomically),
+     * then queries switch to the new index. Updates arriving meanwhile stay pending on top of it.
+     * Completes with {@code indexFile}, or at once when nothing is pending.
+     */
+    public CompletableFuture<Path> compactAsync(Path indexFile, Path graphFile, int threads) {
+        Objects.requireNonNull(indexFile, "indexFile");
+        Objects.requireNonNull(graphFile, "graphFile");
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1");
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                compact(indexFile, graphFile, threads);
+                return indexFile;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, COMPACTOR);
+    }
+
+    private void compact(Path indexFile, Path graphFile, int threads) throws Exception {
+        EdgeDelta delta = updates.snapshot();
+        GraphAdjacency baseGraph = graph;
+        if (delta.isEmpty() || baseGraph == null) {
+            return;
+        }
+        GraphAdjacency merged = baseGraph.withDelta(delta).compact();
+        // files and the index stay in original ids; only the attached graph is relabelled
+        VertexOrdering order = ordering;
+        GraphAdjacency original = order == null ? merged : merged.relabel(order::original);
+
+        Path graphTmp = Files.createTempFile(graphFile.toAbsolutePath().getParent(), "cpq-graph-", ".tmp");
+        original.writeEdgeList(graphTmp);
+        Index rebuilt = new Index(original.toGraph(), k, true, true, threads, Integer.MAX_VALUE, ProgressListener.NONE);
+        Path indexTmp = Files.createTempFile(indexFile.toAbsolutePath().getParent(), "cpq-index-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(indexTmp)) {
+            rebuilt.write(out, false);
+        }
+        Files.move(graphTmp, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // the catalog describes the old edges; the ordering is still a valid permutation
+        Files.deleteIfExists(StatisticsCatalog.sidecarFor(indexFile));
+        if (order != null) {
+            order.write(VertexOrdering.sidecarFor(indexFile), indexStamp(indexFile));
+        }
+
+        // published together with folding the delta, under the lock view() reads them with, so no
+        // query pairs the old index with the folded delta
+        Base compacted = new Base(rebuilt, fileIdentity("index", indexFile));
+        synchronized (updates) {
+            graph = merged;
+            base = compacted;
+            updates.fold(delta.version());
+        }
+    }
+
+    /**
+     * Serves complete answers from {@code cache} and stores newly computed ones in it; {@code null}
+     * turns caching off. Caches may be shared between indexes, entries are kept apart by
+     * {@link #identity()}.
+     */
+    public void setAnswerCache(AnswerCache cache) {
+        answerCache = cache;
+    }
+
+    /**
+     * Enables sideways information passing: components are evaluated most selective first and the
+     * vertices bound so far for a shared variable filter the projections of later components.
+     * Defaults to the {@code cpq.evaluation.sideways} system property.
+     */
+    public void setSidewaysPassing(boolean enabled) {
+        sidewaysPassing = enabled;
+    }
+
+    /**
+     * Stores heap component projections as delta-compressed posting lists
+     * ({@link CompressedProjection}) instead of int arrays, trading decoding time in the join for
+     * memory. Defaults to the {@code cpq.evaluation.compressed} system property.
+     */
+    public void setCompressedProjections(boolean enabled) {
+        compressedProjections = enabled;
+    }
+
+    /**
+     * Lets components with the same CPQ up to orientation share one index lookup and projection.
+     * Defaults to the {@code cpq.evaluation.sharing} system property, which is on unless set to
+     * {@code false}.
+     */
+    public void setComponentSharing(boolean enabled) {
+        componentSharing = enabled;
+    }
+
+    /**
+     * Loads the adjacency lists of the indexed graph so that components whose variables are
+     * already narrowed by sideways passing can be evaluated by traversal from the bound vertices
+     * when that is estimated to touch fewer entries than a full index lookup.
+     */
+    public void attachGraph(Path graphFile) throws Exception {
+        GraphAdjacency loaded = GraphAdjacency.load(graphFile);
+        VertexOrdering order = ordering;
+        graph = order == null ? loaded : loaded.relabel(order::internal);
+    }
+
+    /**
+     * Computes the statistics catalog for labels {@code 0..labelCount-1} by querying the index and
+     * uses it from now on; write it with {@link StatisticsCatalog#write} to
+     * {@link StatisticsCatalog#sidecarFor} so later {@link #load} calls pick it up.
+     */
+    public StatisticsCatalog computeStatistics(int labelCount, int maxSequenceLength) {
+        Base current = base;
+        StatisticsCatalog catalog = StatisticsCatalog.compute(cpq -> {
+            PairColumns pairs = PairColumns.drain(current.index().query(cpq), null, null, null);
+            return RelationProjection.fromPairs(pairs.sources(), pairs.targets(), pairs.size());
+        }, labelCount, maxSequenceLength);
+        statistics = catalog;
+        statisticsBase = current;
+        return catalog;
+    }
+
+    /**
+     * The loaded or computed statistics catalog, or {@code null} if there is none.
+     */
+    public StatisticsCatalog statistics() {
+        return statistics;
+    }
+
+    /**
+     * Whether label metadata alone shows the query has no answers: some atom's label has no edges,
+     * or two atoms meeting at a variable form a two-label path the statistics catalog records as
+     * empty. Label counts come from the catalog or the attached graph. Answers {@code false}
+     * while edge updates are pending, and ignores a catalog computed before the last compaction,
+     * since either could claim a path is empty that now has pairs.
+     */
+    public boolean isProvablyEmpty(ConjunctiveQuery cq) {
+        Objects.requireNonNull(cq, "cq");
+        if (updates.size() > 0) {
+            return false;
+        }
+        StatisticsCatalog catalog = statisticsBase == base ? statistics : null;
+        GraphAdjacency adjacency = graph;
+        if (catalog == null && adjacency == null) {
+            return false;
+        }
+
+        List<AtomCQ> atoms = cq.atoms();
+        for (AtomCQ atom : atoms) {
+            Predicate label = atom.getLabel();
+            if ((catalog != null && catalog.provesEmpty(List.of(label)))
+                    || (adjacency != null && adjacency.edgeCount(label.getID()) == 0)) {
+                return true;
+            }
+        }
+        if (catalog == null || catalog.maxSequenceLength() < 2) {
+            return false;
+        }
+        for (int i = 0; i < atoms.size(); i++) {
+            AtomCQ first = atoms.get(i);
+            for (int j = i + 1; j < atoms.size(); j++) {
+                AtomCQ second = atoms.get(j);
+                for (VarCQ v : List.of(first.getSource(), first.getTarget())) {
+                    if (!v.equals(second.getSource()) && !v.equals(second.getTarget())) {
+                        continue;
+                    }
+                    // walk into v along the first atom and out of it along the second
+                    Predicate in = first.getTarget().equals(v) ? first.getLabel() : first.getLabel().getInverse();
+                    Predicate out = second.getSource().equals(v) ? second.getLabel() : second.getLabel().getInverse();
+                    if (catalog.provesEmpty(List.of(in, out))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decomposition to evaluate {@code cq} with. A query {@link #isProvablyEmpty} rules out gets
+     * one without components, which every evaluation method answers as empty at once, and its
+     * exact covers are never enumerated; the rest are decomposed by {@code decompose}.
+     */
+    public CpqDecomposition plan(ConjunctiveQuery cq, Supplier<CpqDecomposition> decompose) {
+        Objects.requireNonNull(decompose, "decompose");
+        return isProvablyEmpty(cq) ? new CpqDecomposition(cq, List.of()) : decompose.get();
+    }
+
+    /**
+     * Estimated number of pairs the component contributes, from the statistics catalog, or from
+     * the attached graph's label counts when the catalog is missing or does not cover the
+     * component's labels; {@code NaN} when neither knows.
+     */
+    public double estimateCardinality(Component component) {
+        Objects.requireNonNull(component, "component");
+        StatisticsCatalog catalog = statistics;
+        if (catalog != null) {
+            double pairs = catalog.estimateCardinality(component);
+            if (!Double.isNaN(pairs)) {
+                return pairs;
+            }
+        }
+        GraphAdjacency adjacency = graph;
+        if (adjacency != null) {
+            return adjacency.estimateCardinality(component.cpq().toAbstractSyntaxTree());
+        }
+        return Double.NaN;
+    }
+
     public ConjunctiveQuery parseCQ(String text) {
         return ConjunctiveQuery.parse(text);
     }
 
     public List<Map<String, Integer>> evaluate(CpqDecomposition decomposition) {
+        return evaluateFactorised(decomposition).toRows();
+    }
+
+    /**
+     * Evaluates the decomposed query into a factorised answer set over its free variables, in the
+     * decomposition's order, leaving expansion to flat rows to the consumer.
+     */
+    public FactorisedResult evaluateFactorised(CpqDecomposition decomposition) {
+        Objects.requireNonNull(decomposition, "decomposition");
+
+        // the cache key comes from the same state the components are evaluated against
+        View view = view();
+        AnswerCache cache = answerCache;
+        if (cache != null) {
+            CanonicalQuery canonical = CanonicalQuery.of(decomposition.cq());
+            List<String> freeVars = canonical.freeVariables().stream().map(CpqDecomposition::varName).toList();
+            FactorisedResult cached = cache.get(view.identity(), canonical, freeVars);
+            if (cached != null) {
+                return restore(cached.reordered(freeVarNames(decomposition)));
+            }
+        }
+        return answers(decomposition, evaluateComponents(view, decomposition, null), view.identity());
+    }
+
+    /**
+     * Joins component relations the caller evaluated itself, such as those shared by a
+     * {@link QueryBatch} ({@code null} when a component is empty), into the query's answers. They
+     * are stored in the answer cache like {@link #evaluateFactorised(CpqDecomposition)} does, under
+     * {@code identity}, the {@link #identity()} read before the relations were evaluated, and only
+     * while it is still current, so answers computed across an update are not cached.
+     */
+    public FactorisedResult evaluateFactorised(CpqDecomposition decomposition, List<RelationBinding> relations, String identity) {
+        Objects.requireNonNull(decomposition, "decomposition");
+        Objects.requireNonNull(identity, "identity");
+        return answers(decomposition, relations, identity.equals(identity()) ? identity : null);
+    }
+
+    /**
+     * Joins the relations and stores the answers in the cache under {@code identity} unless it is
+     * {@code null}.
+     */
+    private FactorisedResult answers(CpqDecomposition decomposition, List<RelationBinding> relations, String identity) {
+        FactorisedResult answers = join(relations, decomposition, freeVarNames(decomposition));
+        AnswerCache cache = answerCache;
+        if (cache != null && identity != null) {
+            CanonicalQuery canonical = CanonicalQuery.of(decomposition.cq());
+            List<String> freeVars = canonical.freeVariables().stream().map(CpqDecomposition::varName).toList();
+            // cached in internal ids, in the join's trie order; the cache maps columns to canonical order
+            cache.put(identity, canonical, freeVars, answers);
+        }
+        return restore(answers);
+    }
+
+    /**
+     * {@code answers} in original vertex ids; no longer sorted when an ordering is in use.
+     */
+    private FactorisedResult restore(FactorisedResult answers) {
+        VertexOrdering order = ordering;
+        return order == null ? answers : answers.mapValues(order::original);
+    }
+
+    /**
+     * Visitor receiving tuples in original vertex ids, copied so the join's buffer is untouched.
+     */
+    private FactorisedResult.TupleVisitor restoring(FactorisedResult.TupleVisitor visitor, int arity) {
+        VertexOrdering order = ordering;
+        if (order == null) {
+            return visitor;
+        }
+        int[] row = new int[arity];
+        return tuple -> {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = order.original(tuple[i]);
+            }
+            return visitor.visit(row);
+        };
+    }
+
+    private static FactorisedResult join(List<RelationBinding> relations, CpqDecomposition decomposition, List<String> freeVars) {
+        if (relations == null) {
+            return FactorisedResult.empty(freeVars);
+        }
+        return LeapfrogTrieJoin.joinProjected(relations, decomposition.variableOrder(), freeVars);
+    }
+
+    /**
+     * Evaluates the decomposed query with the component projections and the answer rows allocated
+     * in {@code arena} instead of on the heap. Both stay valid until the arena is closed, so a
+     * per-query confined arena frees everything the moment the query is done. The answer cache is
+     * not consulted.
+     */
+    public OffHeapTuples evaluateOffHeap(CpqDecomposition decomposition, Arena arena) {
+        Objects.requireNonNull(decomposition, "decomposition");
+        Objects.requireNonNull(arena, "arena");
+
+        List<String> freeVars = freeVarNames(decomposition);
+        OffHeapTuples answers = new OffHeapTuples(arena, freeVars);
+        List<RelationBinding> relations = evaluateComponents(decomposition, arena);
+        if (relations != null) {
+            LeapfrogTrieJoin.forEachDistinct(relations, decomposition.variableOrder(), freeVars, restoring(tuple -> {
+                answers.add(tuple);
+                return true;
+            }, freeVars.size()));
+        }
+        return answers;
+    }
+
+    /**
+     * Evaluates the decomposed query into a buffer that keeps at most {@code memoryBudgetBytes} of
+     * answer tuples in memory and spills the rest as sorted runs under {@code spillDirectory}. The
+     * caller streams the answers with {@link SpillingTupleBuffer#forEachDistinct} and must close
+     * the buffer to delete the run files. The answer cache is not consulted.
+     */
+    public SpillingTupleBuffer evaluateSpilling(CpqDecomposition decomposition, long memoryBudgetBytes, Path spillDirectory) {
         Objects.requireNonNull(decomposition, "decomposition");
 
+        List<String> freeVars = freeVarNames(decomposition);
+        SpillingTupleBuffer answers = new SpillingTupleBuffer(freeVars.size(), memoryBudgetBytes, spillDirectory);
+        List<RelationBinding> relations = evaluateComponents(decomposition);
+        if (relations != null && ordering == null) {
+            LeapfrogTrieJoin.projectInto(relations, decomposition.variableOrder(), freeVars, answers);
+        } else if (relations != null) {
+            LeapfrogTrieJoin.forEachDistinct(relations, decomposition.variableOrder(), freeVars, restoring(tuple -> {
+                answers.add(tuple);
+                return true;
+            }, freeVars.size()));
+        }
+        return answers;
+    }
+
+    /**
+     * Counts the distinct answers of the decomposed query without materialising answer rows.
+     */
+    public long count(CpqDecomposition decomposition) {
+        Objects.requireNonNull(decomposition, "decomposition");
+
+        long cached = cachedCount(decomposition);
+        if (cached >= 0) {
+            return cached;
+        }
+
+        List<RelationBinding> relations = evaluateComponents(decomposition);
+        if (relations == null) {
+            return 0;
+        }
+        return LeapfrogTrieJoin.count(relations, decomposition.variableOrder(), freeVarNames(decomposition));
+    }
+
+    /**
+     * Returns whether the decomposed query has at least one answer, stopping at the first complete binding.
+     */
+    public boolean exists(CpqDecomposition decomposition) {
+        Objects.requireNonNull(decomposition, "decomposition");
+
+        long cached = cachedCount(decomposition);
+        if (cached >= 0) {
+            return cached > 0;
+        }
+
+        List<RelationBinding> relations = evaluateComponents(decomposition);
+        return relations != null && LeapfrogTrieJoin.exists(relations, decomposition.variableOrder());
+    }
+
+    /**
+     * Answer count from the cache, or {@code -1} when there is no cache or no entry. Misses are not
+     * filled in: counting does not produce the answers to store.
+     */
+    public long cachedCount(CpqDecomposition decomposition) {
+        Objects.requireNonNull(decomposition, "decomposition");
+        AnswerCache cache = answerCache;
+        return cache == null ? -1 : cache.count(identity(), CanonicalQuery.of(decomposition.cq()));
+    }
+
+    private List<RelationBinding> evaluateComponents(CpqDecomposition decomposition) {
+        return evaluateComponents(decomposition, null);
+    }
+
+    private List<RelationBinding> evaluateComponents(CpqDecomposition decomposition, Arena arena) {
+        return evaluateComponents(view(), decomposition, arena);
+    }
+
+    /**
+     * Evaluates every component against the index, building projections in {@code arena} when it
+     * is non-null; returns {@code null} as soon as one of them is empty, and without querying the
+     * index when there are none (see {@link #plan}). Components with the same
+     * CPQ up to orientation are evaluated once and share the projection, read in reverse by the
+     * transposed ones, unless {@link #setComponentSharing} turned that off.
+     */
+    private List<RelationBinding> evaluateComponents(View view, CpqDecomposition decomposition, Arena arena) {
         List<Component> components = decomposition.components();
         if (components.isEmpty()) {
-            return List.of();
+            return null;
+        }
+        if (sidewaysPassing) {
+            return evaluateSideways(view, components, arena, Map.of());
         }
 
-        List<RelationBinding> relations = components.stream()
-                .map(this::evaluateComponent)
-                .filter(Objects::nonNull)
-                .toList();
+        boolean sharing = componentSharing;
+        Map<String, SharedRelation> shared = new HashMap<>();
+        List<RelationBinding> relations = new ArrayList<>(components.size());
+        for (Component component : components) {
+            CpqDecomposition.Orientation orientation = CpqDecomposition.orientation(component);
+            SharedRelation relation = sharing ? shared.get(orientation.key()) : null;
+            if (relation == null) {
+                RelationBinding evaluated = evaluateComponent(view, component, null, null, arena);
+                if (evaluated == null) {
+                    return null;
+                }
+                shared.put(orientation.key(), new SharedRelation(evaluated, orientation.transposed()));
+                relations.add(evaluated);
+            } else {
+                relations.add(relation.orientedAs(component, orientation));
+            }
+        }
+        return relations;
+    }
 
-        if (relations.size() != components.size()) {
-            return List.of();
+    /**
+     * A component relation evaluated for one component of a group sharing a CPQ up to orientation;
+     * {@code transposed} is that component's orientation.
+     */
+    record SharedRelation(RelationBinding relation, boolean transposed) {
+        /**
+         * The relation over {@code component}'s variables, read in reverse when the component's
+         * orientation differs from the evaluated one.
+         */
+        RelationBinding orientedAs(Component component, CpqDecomposition.Orientation orientation) {
+            String source = CpqDecomposition.varName(component.s());
+            String target = CpqDecomposition.varName(component.t());
+            return orientation.transposed() == transposed
+                    ? relation.renamed(source, target)
+                    : relation.renamed(target, source);
         }
+    }
 
-        List<Map<String, Integer>> raw = LeapfrogTrieJoin.join(relations, decomposition.variableOrder());
-        return project(raw, decomposition.freeVars().stream().map(CpqDecomposition::varName).toList());
+    /**
+     * Evaluates components in {@link #sidewaysOrder} order, narrowing the set of vertices each
+     * variable can still take and dropping pairs outside it while projections are built. Stops at
+     * the first empty component without querying the rest. {@code seed} holds sorted vertex sets
+     * some variables are restricted to from the start.
+     */
+    private List<RelationBinding> evaluateSideways(View view, List<Component> components, Arena arena, Map<String, int[]> seed) {
+        Map<String, int[]> bound = new HashMap<>(seed);
+        List<RelationBinding> relations = new ArrayList<>(components.size());
+        for (Component component : sidewaysOrder(components, seed.keySet())) {
+            String left = CpqDecomposition.varName(component.s());
+            String right = CpqDecomposition.varName(component.t());
+            RelationBinding relation = evaluateComponent(view, component, bound.get(left), bound.get(right), arena);
+            if (relation == null) {
+                return null;
+            }
+            relations.add(relation);
+            bound.merge(left, relation.domainFor(left, Map.of()), SortedInts::intersect);
+            if (!left.equals(right)) {
+                bound.merge(right, relation.domainFor(right, Map.of()), SortedInts::intersect);
+            }
+        }
+        return relations;
     }
 
-    private RelationBinding evaluateComponent(Component component) {
-        List<Pair> matches = index.query(component.cpq());
+    /**
+     * Greedy order: start with the most selective component, then keep picking the most selective
+     * one that shares a variable with those already evaluated so that it receives a filter.
+     * Selectivity comes from cardinality estimates when available, otherwise from structure.
+     * Variables in {@code initiallyBound} count as evaluated already.
+     */
+    private List<Component> sidewaysOrder(List<Component> components, Set<String> initiallyBound) {
+        List<Component> remaining = new ArrayList<>(components);
+        if (statistics != null || graph != null) {
+            Map<Component, Double> estimates = new HashMap<>();
+            for (Component c : components) {
+                // components without an estimate go after all estimated ones
+                double estimate = estimateCardinality(c);
+                estimates.put(c, Double.isNaN(estimate) ? Double.POSITIVE_INFINITY : estimate);
+            }
+            remaining.sort(Comparator.comparingDouble((Component c) -> estimates.get(c))
+                    .thenComparing(CpqNativeIndex::compareSelectivity));
+        } else {
+            remaining.sort(CpqNativeIndex::compareSelectivity);
+        }
 
+        List<Component> order = new ArrayList<>(components.size());
+        Set<String> boundVars = new HashSet<>(initiallyBound);
+        while (!remaining.isEmpty()) {
+            int pick = 0;
+            for (int i = 0; i < remaining.size(); i++) {
+                Component c = remaining.get(i);
+                if (boundVars.contains(CpqDecomposition.varName(c.s())) || boundVars.contains(CpqDecomposition.varName(c.t()))) {
+                    pick = i;
+                    break;
+                }
+            }
+            Component next = remaining.remove(pick);
+            order.add(next);
+            boundVars.add(CpqDecomposition.varName(next.s()));
+            boundVars.add(CpqDecomposition.varName(next.t()));
+        }
+        return order;
+    }
+
+    /**
+     * Structural selectivity ranking: identity-closed components first, then components covering
+     * more atoms (intersections), then shorter ones.
+     */
+    private static int compareSelectivity(Component a, Component b) {
+        if (a.isUnary() != b.isUnary()) {
+            return a.isUnary() ? -1 : 1;
+        }
+        int atoms = Integer.compare(b.mask().cardinality(), a.mask().cardinality());
+        if (atoms != 0) {
+            return atoms;
+        }
+        return Integer.compare(a.diameter(), b.diameter());
+    }
+
+    /**
+     * Evaluates the decomposed query with {@code variable} restricted to the sorted vertex set
+     * {@code domain}; the restriction is passed sideways to the other components whatever
+     * {@link #setSidewaysPassing} says. Used by shard workers, so the answer cache is not consulted.
+     */
+    FactorisedResult evaluateRestricted(CpqDecomposition decomposition, String variable, int[] domain) {
+        Objects.requireNonNull(decomposition, "decomposition");
+        Objects.requireNonNull(variable, "variable");
+        Objects.requireNonNull(domain, "domain");
+
+        List<String> freeVars = freeVarNames(decomposition);
+        List<Component> components = decomposition.components();
+        VertexOrdering order = ordering;
+        int[] internal = order == null ? domain : order.internalSet(domain);
+        List<RelationBinding> relations = components.isEmpty()
+                ? null
+                : evaluateSideways(view(), components, null, Map.of(variable, internal));
+        if (relations == null) {
+            return FactorisedResult.empty(freeVars);
+        }
+        return restore(LeapfrogTrieJoin.joinProjected(relations, decomposition.variableOrder(), freeVars));
+    }
+
+    /**
+     * Evaluates one component on its own, without filters, for sharing between queries; returns
+     * {@code null} if it has no matches. The relation is in internal ids, see
+     * {@link #vertexOrdering}.
+     */
+    RelationBinding evaluateComponent(Component component) {
+        Objects.requireNonNull(component, "component");
+        return evaluateComponent(view(), component, null, null, null);
+    }
+
+    /**
+     * Matches of one component whose source lies in the sorted vertex set {@code sourceFilter}, as
+     * {@code {sources, targets}}; identity-closed components keep only pairs with equal ends. Both
+     * the filter and the pairs are in original ids.
+     */
+    int[][] componentPairs(Component component, int[] sourceFilter) {
+        Objects.requireNonNull(component, "component");
+        VertexOrdering order = ordering;
+        int[] filter = order == null || sourceFilter == null ? sourceFilter : order.internalSet(sourceFilter);
+        PairColumns matches = matches(view(), component, filter, null);
+        PairBuffer out = new PairBuffer(matches.size());
+        boolean unary = component.isUnary();
+        for (int i = 0; i < matches.size(); i++) {
+            if (!unary || matches.sources()[i] == matches.targets()[i]) {
+                int source = matches.sources()[i];
+                int target = matches.targets()[i];
+                out.add(order == null ? source : order.original(source), order == null ? target : order.original(target));
+            }
+        }
+        PairColumns pairs = out.toColumns();
+        return new int[][] {Arrays.copyOf(pairs.sources(), pairs.size()), Arrays.copyOf(pairs.targets(), pairs.size())};
+    }
+
+    private static List<String> freeVarNames(CpqDecomposition decomposition) {
+        return decomposition.freeVars().stream().map(CpqDecomposition::varName).toList();
+    }
+
+    /**
+     * The index, graph and pending edge updates one evaluation works against, and the
+     * {@link #identity()} they make up. They are read under the update log's lock, which
+     * {@link #compact} holds while it publishes the new index and graph and folds the delta, so a
+     * view never pairs the old index with the folded delta.
+     */
+    private View view() {
+        Base current;
+        GraphAdjacency adjacency;
+        EdgeDelta delta;
+        synchronized (updates) {
+            current = base;
+            adjacency = graph;
+            delta = updates.snapshot();
+        }
+        VertexOrdering order = ordering;
+        return new View(current.index(), adjacency == null ? null : adjacency.withDelta(delta), delta, order,
+                identity(current, order, delta));
+    }
+
+    /**
+     * Evaluates one component; {@code sourceFilter}/{@code targetFilter} are optional sorted vertex
+     * sets that matching pairs must fall into. Binary projections go into {@code arena} when it is
+     * non-null.
+     */
+    private RelationBinding evaluateComponent(View view, Component component, int[] sourceFilter, int[] targetFilter, Arena arena) {
         String left = CpqDecomposition.varName(component.s());
         String right = CpqDecomposition.varName(component.t());
         String description = component.canonical();
+        PairColumns matches = matches(view, component, sourceFilter, targetFilter);
 
         if (left.equals(right)) {
-            Set<Integer> values = new HashSet<>();
-            for (Pair pair : matches) {
-                if (pair.getSource() == pair.getTarget()) {
-                    values.add(pair.getSource());
+            IntAccumulator values = new IntAccumulator();
+            for (int i = 0; i < matches.size(); i++) {
+                if (matches.sources()[i] == matches.targets()[i]) {
+                    values.add(matches.sources()[i]);
                 }
             }
-            if (values.isEmpty()) {
+            int[] domain = values.toSortedDistinctArray();
+            if (domain.length == 0) {
                 return null;
             }
-            int[] domain = values.stream().mapToInt(Integer::intValue).sorted().toArray();
             return RelationBinding.unary(left, description, domain);
         }
 
-        Map<Integer, IntAccumulator> forward = new HashMap<>();
-        Map<Integer, IntAccumulator> reverse = new HashMap<>();
-        for (Pair pair : matches) {
-            forward.computeIfAbsent(pair.getSource(), ignored -> new IntAccumulator()).add(pair.getTarget());
-            reverse.computeIfAbsent(pair.getTarget(), ignored -> new IntAccumulator()).add(pair.getSource());
-        }
-
-        if (forward.isEmpty() || reverse.isEmpty()) {
+        if (matches.size() == 0) {
             return null;
         }
 
-        RelationProjection projection = new RelationProjection(
-                sortedKeys(forward.keySet()),
-                sortedKeys(reverse.keySet()),
-                toIntArrayMap(forward),
-                toIntArrayMap(reverse));
-
+        if (arena != null) {
+            OffHeapProjection projection = OffHeapProjection.fromPairs(arena, matches.sources(), matches.targets(), matches.size());
+            return projection.isEmpty() ? null : RelationBinding.binary(left, right, description, projection);
+        }
+        if (compressedProjections) {
+            CompressedProjection projection = CompressedProjection.fromPairs(matches.sources(), matches.targets(), matches.size());
+            return projection.isEmpty() ? null : RelationBinding.binary(left, right, description, projection);
+        }
+        RelationProjection projection = RelationProjection.fromPairs(matches.sources(), matches.targets(), matches.size());
         if (projection.isEmpty()) {
             return null;
         }
         return RelationBinding.binary(left, right, description, projection);
     }
 
-    private static int[] sortedKeys(Set<Integer> keys) {
-        if (keys.isEmpty()) {
-            return EMPTY_INT_ARRAY;
+    /**
+     * Pairs matching the component's CPQ, from a traversal or an index lookup patched with pending
+     * edge updates, filtered like {@link #evaluateComponent}.
+     */
+    private PairColumns matches(View view, Component component, int[] sourceFilter, int[] targetFilter) {
+        QueryTree tree = component.cpq().toAbstractSyntaxTree();
+        GraphAdjacency adjacency = view.graph();
+        if (adjacency != null && preferTraversal(adjacency, tree, lookupEstimate(adjacency, tree), sourceFilter, targetFilter)) {
+            traversals.increment();
+            return traverse(adjacency, tree, component.isUnary(), sourceFilter, targetFilter);
         }
-        int[] sorted = keys.stream().mapToInt(Integer::intValue).toArray();
-        Arrays.sort(sorted);
-        return sorted;
+        PairColumns matches = PairColumns.drain(view.index().query(component.cpq()), sourceFilter, targetFilter, view.ordering());
+        BitSet labels = labels(tree, new BitSet());
+        if (view.delta().touchesAny(labels)) {
+            matches = patch(adjacency, tree, labels, view.delta(), matches, sourceFilter, targetFilter);
+        }
+        return matches;
     }
 
-    private static Map<Integer, int[]> toIntArrayMap(Map<Integer, IntAccumulator> input) {
-        Map<Integer, int[]> result = new HashMap<>(input.size());
-        for (Map.Entry<Integer, IntAccumulator> entry : input.entrySet()) {
-            result.put(entry.getKey(), entry.getValue().toSortedDistinctArray());
+    /**
+     * Brings index pairs of a component up to date with pending edge updates. Only sources within
+     * {@code radius - 1} steps of a changed edge (over the component's labels, either direction)
+     * can gain or lose targets, since every witness path from a source has at most
+     * {@link #radius} edges and reaches a changed edge through unchanged ones; those sources are
+     * re-evaluated by traversal of the updated graph and all other index pairs are kept.
+     */
+    private static PairColumns patch(
+            GraphAdjacency adjacency, QueryTree tree, BitSet labels, EdgeDelta delta,
+            PairColumns base, int[] sourceFilter, int[] targetFilter) {
+
+        int[] affected = adjacency.verticesNear(delta.endpoints(labels), labels, Math.max(radius(tree) - 1, 0));
+        PairBuffer out = new PairBuffer(base.size() + affected.length);
+        for (int i = 0; i < base.size(); i++) {
+            if (!SortedInts.contains(affected, base.sources()[i])) {
+                out.add(base.sources()[i], base.targets()[i]);
+            }
+        }
+        for (int source : affected) {
+            if (sourceFilter != null && !SortedInts.contains(sourceFilter, source)) {
+                continue;
+            }
+            for (int target : adjacency.reach(tree, source, false)) {
+                if (targetFilter == null || SortedInts.contains(targetFilter, target)) {
+                    out.add(source, target);
+                }
+            }
         }
-        return result;
+        return out.toColumns();
     }
 
-    private static List<Map<String, Integer>> project(List<Map<String, Integer>> rows, List<String> vars) {
-        if (rows.isEmpty()) {
-            return rows;
+    /**
+     * Longest path a match of the CPQ follows from its source.
+     */
+    private static int radius(QueryTree node) {
+        return switch (node.getOperation()) {
+            case IDENTITY -> 0;
+            case EDGE -> 1;
+            case CONCATENATION -> radius(node.getOperand(0)) + radius(node.getOperand(1));
+            case INTERSECTION -> Math.max(radius(node.getOperand(0)), radius(node.getOperand(1)));
+            default -> throw new IllegalArgumentException("Unsupported CPQ operation: " + node.getOperation());
+        };
+    }
+
+    private static BitSet labels(QueryTree node, BitSet out) {
+        switch (node.getOperation()) {
+            case EDGE -> out.set(node.getEdgeAtom().getLabel().getID());
+            case CONCATENATION, INTERSECTION -> {
+                labels(node.getOperand(0), out);
+                labels(node.getOperand(1), out);
+            }
+            default -> {
+            }
         }
-        if (vars.isEmpty()) {
-            return List.of(Map.of());
+        return out;
+    }
+
+    /**
+     * Compares the estimated adjacency entries a traversal from the smaller bound side touches with
+     * the estimated number of pairs a full index lookup returns.
+     */
+    /**
+     * Number of components evaluated by graph traversal instead of an index lookup so far.
+     */
+    long traversals() {
+        return traversals.sum();
+    }
+
+    private static boolean preferTraversal(GraphAdjacency adjacency, QueryTree tree, double lookupPairs, int[] sourceFilter, int[] targetFilter) {
+        if (sourceFilter == null && targetFilter == null) {
+            return false;
         }
+        int bound = Math.min(
+                sourceFilter == null ? Integer.MAX_VALUE : sourceFilter.length,
+                targetFilter == null ? Integer.MAX_VALUE : targetFilter.length);
+        return bound * adjacency.estimateTraversalWork(tree) < lookupPairs;
+    }
 
-        Set<List<Integer>> seen = new HashSet<>();
-        List<Map<String, Integer>> out = new java.util.ArrayList<>(rows.size());
-        for (Map<String, Integer> row : rows) {
-            List<Integer> key = vars.stream().map(row::get).toList();
-            if (seen.add(key)) {
-                Map<String, Integer> projected = new java.util.LinkedHashMap<>(vars.size());
-                for (String v : vars) {
-                    projected.put(v, row.get(v));
+    private double lookupEstimate(GraphAdjacency adjacency, QueryTree tree) {
+        StatisticsCatalog catalog = statistics;
+        double pairs = catalog != null ? catalog.estimateCardinality(tree) : Double.NaN;
+        return Double.isNaN(pairs) ? adjacency.estimateCardinality(tree) : pairs;
+    }
+
+    private static PairColumns traverse(GraphAdjacency adjacency, QueryTree tree, boolean unary, int[] sourceFilter, int[] targetFilter) {
+        boolean fromSources = sourceFilter != null && (targetFilter == null || sourceFilter.length <= targetFilter.length);
+        int[] starts = fromSources ? sourceFilter : targetFilter;
+        int[] others = fromSources ? targetFilter : sourceFilter;
+
+        PairBuffer out = new PairBuffer(Math.min(starts.length, 1024));
+        for (int start : starts) {
+            for (int reached : adjacency.reach(tree, start, !fromSources)) {
+                if (unary) {
+                    if (reached == start) {
+                        out.add(start, start);
+                    }
+                } else if (others == null || SortedInts.contains(others, reached)) {
+                    out.add(fromSources ? start : reached, fromSources ? reached : start);
                 }
-                out.add(projected);
             }
         }
-        return out;
+        return out.toColumns();
+    }
+
+    private record Base(Index index, String identity) {
+    }
+
+    private record View(Index index, GraphAdjacency graph, EdgeDelta delta, VertexOrdering ordering, String identity) {
+    }
+
+    /**
+     * Source and target columns copied out of an index result in a single pass, so the boxed
+     * {@link Pair} list can be dropped before the projection is built. Ids are mapped to the
+     * internal ids of {@code ordering} when it is non-null, before filtering.
+     */
+    private record PairColumns(int[] sources, int[] targets, int size) {
+        static PairColumns drain(List<Pair> pairs, int[] sourceFilter, int[] targetFilter, VertexOrdering ordering) {
+            boolean filtered = sourceFilter != null || targetFilter != null;
+            PairBuffer out = new PairBuffer(filtered ? Math.min(pairs.size(), 1024) : pairs.size());
+            for (Pair pair : pairs) {
+                int source = ordering == null ? pair.getSource() : ordering.internal(pair.getSource());
+                int target = ordering == null ? pair.getTarget() : ordering.internal(pair.getTarget());
+                if ((sourceFilter != null && !SortedInts.contains(sourceFilter, source))
+                        || (targetFilter != null && !SortedInts.contains(targetFilter, target))) {
+                    continue;
+                }
+                out.add(source, target);
+            }
+            return out.toColumns();
+        }
+    }
+
+    private static final class PairBuffer {
+        private int[] sources;
+        private int[] targets;
+        private int size = 0;
+
+        PairBuffer(int capacity) {
+            this.sources = new int[Math.max(capacity, 1)];
+            this.targets = new int[sources.length];
+        }
+
+        void add(int source, int target) {
+            if (size == sources.length) {
+                sources = Arrays.copyOf(sources, size * 2);
+                targets = Arrays.copyOf(targets, size * 2);
+            }
+            sources[size] = source;
+            targets[size] = target;
+            size++;
+        }
+
+        PairColumns toColumns() {
+            return new PairColumns(sources, targets, size);
+        }
     }
 
     private static final class IntAccumulator {
@@ -172,18 +1110,7 @@ public final class CpqNativeIndex {
         }
 
         int[] toSortedDistinctArray() {
-            if (size == 0) {
-                return EMPTY_INT_ARRAY;
-            }
-            int[] out = Arrays.copyOf(data, size);
-            Arrays.sort(out);
-            int unique = 1;
-            for (int i = 1; i < out.length; i++) {
-                if (out[i] != out[unique - 1]) {
-                    out[unique++] = out[i];
-                }
-            }
-            return unique == out.length ? out : Arrays.copyOf(out, unique);
+            return SortedInts.sortedDistinct(Arrays.copyOf(data, size), size);
         }
     }
 }
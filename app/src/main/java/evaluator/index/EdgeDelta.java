@@ -0,0 +1,212 @@
+package evaluator.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the labelled edges inserted into or deleted from a base graph since it was
+ * indexed. Each edge keeps only its last update, so the overlaid graph is the base edges minus the
+ * deleted ones plus the inserted ones. Changes are also grouped per label and vertex, in both
+ * directions, for {@link GraphAdjacency#withDelta}.
+ */
+final class EdgeDelta {
+    static final EdgeDelta EMPTY = new EdgeDelta(0, new int[0], new int[0], new int[0], new boolean[0]);
+
+    private final long version;
+    private final int[] sources;
+    private final int[] labels;
+    private final int[] targets;
+    private final boolean[] present;
+    private final BitSet touchedLabels = new BitSet();
+    private final Map<Long, int[]> forwardAdded = new HashMap<>();
+    private final Map<Long, int[]> forwardRemoved = new HashMap<>();
+    private final Map<Long, int[]> reverseAdded = new HashMap<>();
+    private final Map<Long, int[]> reverseRemoved = new HashMap<>();
+    private int vertexLimit;
+    private int labelLimit;
+
+    private EdgeDelta(long version, int[] sources, int[] labels, int[] targets, boolean[] present) {
+        this.version = version;
+        this.sources = sources;
+        this.labels = labels;
+        this.targets = targets;
+        this.present = present;
+
+        Map<Long, IntList> fa = new HashMap<>();
+        Map<Long, IntList> fr = new HashMap<>();
+        Map<Long, IntList> ra = new HashMap<>();
+        Map<Long, IntList> rr = new HashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            touchedLabels.set(labels[i]);
+            labelLimit = Math.max(labelLimit, labels[i] + 1);
+            if (present[i]) {
+                vertexLimit = Math.max(vertexLimit, Math.max(sources[i], targets[i]) + 1);
+            }
+            (present[i] ? fa : fr).computeIfAbsent(key(labels[i], sources[i]), ignored -> new IntList()).add(targets[i]);
+            (present[i] ? ra : rr).computeIfAbsent(key(labels[i], targets[i]), ignored -> new IntList()).add(sources[i]);
+        }
+        seal(fa, forwardAdded);
+        seal(fr, forwardRemoved);
+        seal(ra, reverseAdded);
+        seal(rr, reverseRemoved);
+    }
+
+    /**
+     * Number of updates applied to the log this snapshot was taken from; grows with every update,
+     * so it identifies the overlaid graph together with the base.
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Number of edges whose state differs from the base.
+     */
+    int size() {
+        return sources.length;
+    }
+
+    boolean isEmpty() {
+        return sources.length == 0;
+    }
+
+    /**
+     * Whether any changed edge carries one of {@code labels}.
+     */
+    boolean touchesAny(BitSet labels) {
+        return touchedLabels.intersects(labels);
+    }
+
+    /**
+     * One past the largest vertex of an inserted edge.
+     */
+    int vertexLimit() {
+        return vertexLimit;
+    }
+
+    int labelLimit() {
+        return labelLimit;
+    }
+
+    /**
+     * Sorted neighbours inserted ({@code added}) or deleted for {@code vertex} along {@code label},
+     * following edges backwards when {@code reverse}.
+     */
+    int[] changes(int label, int vertex, boolean reverse, boolean added) {
+        Map<Long, int[]> lists = reverse
+                ? (added ? reverseAdded : reverseRemoved)
+                : (added ? forwardAdded : forwardRemoved);
+        return lists.getOrDefault(key(label, vertex), SortedInts.EMPTY);
+    }
+
+    /**
+     * Sorted, distinct endpoints of the changed edges carrying one of {@code labels}.
+     */
+    int[] endpoints(BitSet labels) {
+        int[] out = new int[sources.length * 2];
+        int size = 0;
+        for (int i = 0; i < sources.length; i++) {
+            if (labels.get(this.labels[i])) {
+                out[size++] = sources[i];
+                out[size++] = targets[i];
+            }
+        }
+        return SortedInts.sortedDistinct(out, size);
+    }
+
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < sources.length; i++) {
+            visitor.visit(sources[i], labels[i], targets[i], present[i]);
+        }
+    }
+
+    @FunctionalInterface
+    interface Visitor {
+        void visit(int source, int label, int target, boolean present);
+    }
+
+    private static long key(int label, int vertex) {
+        return ((long) label << 32) | (vertex & 0xFFFFFFFFL);
+    }
+
+    private static void seal(Map<Long, IntList> lists, Map<Long, int[]> out) {
+        for (Map.Entry<Long, IntList> e : lists.entrySet()) {
+            IntList list = e.getValue();
+            out.put(e.getKey(), SortedInts.sortedDistinct(list.values, list.size));
+        }
+    }
+
+    /**
+     * Mutable, thread-safe update log. Snapshots are rebuilt lazily, once per burst of updates, so
+     * queries between updates share one.
+     */
+    static final class Log {
+        private final Map<Edge, Update> updates = new HashMap<>();
+        private long version;
+        private EdgeDelta snapshot = EMPTY;
+
+        synchronized void apply(int source, int label, int target, boolean present) {
+            updates.put(new Edge(source, label, target), new Update(present, ++version));
+            snapshot = null;
+        }
+
+        synchronized int size() {
+            return updates.size();
+        }
+
+        synchronized EdgeDelta snapshot() {
+            if (snapshot == null) {
+                int n = updates.size();
+                int[] sources = new int[n];
+                int[] labels = new int[n];
+                int[] targets = new int[n];
+                boolean[] present = new boolean[n];
+                int i = 0;
+                for (Map.Entry<Edge, Update> e : updates.entrySet()) {
+                    sources[i] = e.getKey().source();
+                    labels[i] = e.getKey().label();
+                    targets[i] = e.getKey().target();
+                    present[i] = e.getValue().present();
+                    i++;
+                }
+                snapshot = new EdgeDelta(version, sources, labels, targets, present);
+            }
+            return snapshot;
+        }
+
+        /**
+         * Drops the updates folded into a new base by compacting the snapshot at
+         * {@code upToVersion}; later updates of the same edges stay.
+         */
+        synchronized void fold(long upToVersion) {
+            Iterator<Update> it = updates.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().version() <= upToVersion) {
+                    it.remove();
+                }
+            }
+            snapshot = null;
+        }
+
+        private record Edge(int source, int label, int target) {
+        }
+
+        private record Update(boolean present, long version) {
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
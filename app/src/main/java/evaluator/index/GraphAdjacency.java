@@ -0,0 +1,388 @@
+package evaluator.index;
+
+import dev.roanh.cpqindex.IndexUtil;
+import dev.roanh.gmark.ast.QueryTree;
+import dev.roanh.gmark.type.schema.Predicate;
+import dev.roanh.gmark.util.graph.generic.UniqueGraph;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Label-partitioned adjacency lists of the indexed graph, used to evaluate a component's CPQ by
+ * traversal from a small set of bound vertices instead of a full index lookup. A view with an
+ * {@link EdgeDelta} applied ({@link #withDelta}) traverses the updated graph without copying the
+ * base lists.
+ */
+final class GraphAdjacency {
+    private final int vertexCount;
+    private final int[][] forwardOffsets;
+    private final int[][] forwardTargets;
+    private final int[][] reverseOffsets;
+    private final int[][] reverseTargets;
+    private final EdgeDelta delta;
+
+    private GraphAdjacency(int vertexCount, int[][] forwardOffsets, int[][] forwardTargets, int[][] reverseOffsets, int[][] reverseTargets, EdgeDelta delta) {
+        this.vertexCount = vertexCount;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardTargets = forwardTargets;
+        this.reverseOffsets = reverseOffsets;
+        this.reverseTargets = reverseTargets;
+        this.delta = delta;
+    }
+
+    static GraphAdjacency load(Path graphFile) throws IOException {
+        Objects.requireNonNull(graphFile, "graphFile");
+        return from(IndexUtil.readGraph(graphFile));
+    }
+
+    static GraphAdjacency from(UniqueGraph<Integer, Predicate> graph) {
+        Objects.requireNonNull(graph, "graph");
+        List<UniqueGraph.GraphEdge<Integer, Predicate>> edges = graph.getEdges();
+        int edgeCount = edges.size();
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        int[] labels = new int[edgeCount];
+        int maxVertex = -1;
+        int maxLabel = -1;
+        for (int i = 0; i < edgeCount; i++) {
+            UniqueGraph.GraphEdge<Integer, Predicate> edge = edges.get(i);
+            sources[i] = edge.getSource();
+            targets[i] = edge.getTarget();
+            labels[i] = edge.getData().getID();
+            maxVertex = Math.max(maxVertex, Math.max(sources[i], targets[i]));
+            maxLabel = Math.max(maxLabel, labels[i]);
+        }
+        for (UniqueGraph.GraphNode<Integer, Predicate> node : graph.getNodes()) {
+            maxVertex = Math.max(maxVertex, node.getData());
+        }
+        return from(maxVertex + 1, maxLabel + 1, sources, targets, labels);
+    }
+
+    static GraphAdjacency from(int vertexCount, int labelCount, int[] sources, int[] targets, int[] labels) {
+        int[][] forwardOffsets = new int[labelCount][];
+        int[][] forwardTargets = new int[labelCount][];
+        int[][] reverseOffsets = new int[labelCount][];
+        int[][] reverseTargets = new int[labelCount][];
+        for (int label = 0; label < labelCount; label++) {
+            forwardOffsets[label] = new int[vertexCount + 1];
+            reverseOffsets[label] = new int[vertexCount + 1];
+        }
+        for (int i = 0; i < labels.length; i++) {
+            forwardOffsets[labels[i]][sources[i] + 1]++;
+            reverseOffsets[labels[i]][targets[i] + 1]++;
+        }
+        for (int label = 0; label < labelCount; label++) {
+            forwardTargets[label] = new int[prefixSum(forwardOffsets[label])];
+            reverseTargets[label] = new int[prefixSum(reverseOffsets[label])];
+        }
+        int[][] forwardFill = new int[labelCount][];
+        int[][] reverseFill = new int[labelCount][];
+        for (int label = 0; label < labelCount; label++) {
+            forwardFill[label] = Arrays.copyOf(forwardOffsets[label], vertexCount);
+            reverseFill[label] = Arrays.copyOf(reverseOffsets[label], vertexCount);
+        }
+        for (int i = 0; i < labels.length; i++) {
+            forwardTargets[labels[i]][forwardFill[labels[i]][sources[i]]++] = targets[i];
+            reverseTargets[labels[i]][reverseFill[labels[i]][targets[i]]++] = sources[i];
+        }
+        for (int label = 0; label < labelCount; label++) {
+            sortRanges(forwardOffsets[label], forwardTargets[label]);
+            sortRanges(reverseOffsets[label], reverseTargets[label]);
+        }
+        return new GraphAdjacency(vertexCount, forwardOffsets, forwardTargets, reverseOffsets, reverseTargets, null);
+    }
+
+    /**
+     * View of this base graph with {@code delta} applied; estimates still describe the base.
+     */
+    GraphAdjacency withDelta(EdgeDelta delta) {
+        Objects.requireNonNull(delta, "delta");
+        if (this.delta != null) {
+            throw new IllegalStateException("Delta already applied");
+        }
+        if (delta.isEmpty()) {
+            return this;
+        }
+        int vertices = Math.max(vertexCount, delta.vertexLimit());
+        return new GraphAdjacency(vertices, forwardOffsets, forwardTargets, reverseOffsets, reverseTargets, delta);
+    }
+
+    int vertexCount() {
+        return vertexCount;
+    }
+
+    int labelCount() {
+        return delta == null ? forwardOffsets.length : Math.max(forwardOffsets.length, delta.labelLimit());
+    }
+
+    long edgeCount(int label) {
+        return label < forwardTargets.length ? forwardTargets[label].length : 0;
+    }
+
+    /**
+     * Sorted, distinct vertices reachable from {@code start} by the CPQ rooted at {@code node};
+     * with {@code backward} the CPQ is followed in reverse, i.e. the result holds its sources.
+     */
+    int[] reach(QueryTree node, int start, boolean backward) {
+        return switch (node.getOperation()) {
+            case IDENTITY -> new int[] {start};
+            case EDGE -> neighbours(node.getEdgeAtom().getLabel(), start, backward);
+            case CONCATENATION -> {
+                QueryTree first = node.getOperand(backward ? 1 : 0);
+                QueryTree second = node.getOperand(backward ? 0 : 1);
+                int[] middle = reach(first, start, backward);
+                if (middle.length == 0) {
+                    yield SortedInts.EMPTY;
+                }
+                if (middle.length == 1) {
+                    yield reach(second, middle[0], backward);
+                }
+                int[] buffer = new int[16];
+                int size = 0;
+                for (int vertex : middle) {
+                    int[] next = reach(second, vertex, backward);
+                    if (size + next.length > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + next.length));
+                    }
+                    System.arraycopy(next, 0, buffer, size, next.length);
+                    size += next.length;
+                }
+                yield SortedInts.sortedDistinct(buffer, size);
+            }
+            case INTERSECTION -> {
+                int[] left = reach(node.getOperand(0), start, backward);
+                yield left.length == 0 ? SortedInts.EMPTY : SortedInts.intersect(left, reach(node.getOperand(1), start, backward));
+            }
+            default -> throw new IllegalArgumentException("Unsupported CPQ operation: " + node.getOperation());
+        };
+    }
+
+    /**
+     * Estimated number of (source, target) pairs matching the CPQ, from per-label edge counts under
+     * an independence assumption.
+     */
+    double estimateCardinality(QueryTree node) {
+        return switch (node.getOperation()) {
+            case IDENTITY -> vertexCount;
+            case EDGE -> edgeCount(node.getEdgeAtom().getLabel().getID());
+            case CONCATENATION -> {
+                double left = estimateCardinality(node.getOperand(0));
+                double right = estimateCardinality(node.getOperand(1));
+                yield vertexCount == 0 ? 0.0 : left * right / vertexCount;
+            }
+            case INTERSECTION -> {
+                double left = estimateCardinality(node.getOperand(0));
+                double right = estimateCardinality(node.getOperand(1));
+                double universe = (double) vertexCount * vertexCount;
+                yield universe == 0.0 ? 0.0 : Math.max(1.0, left * right / universe);
+            }
+            default -> throw new IllegalArgumentException("Unsupported CPQ operation: " + node.getOperation());
+        };
+    }
+
+    /**
+     * Estimated adjacency entries touched by one {@link #reach} call.
+     */
+    double estimateTraversalWork(QueryTree node) {
+        return switch (node.getOperation()) {
+            case IDENTITY -> 1.0;
+            case EDGE -> 1.0 + averageDegree(node.getEdgeAtom().getLabel().getID());
+            case CONCATENATION -> {
+                double fanOut = vertexCount == 0 ? 0.0 : estimateCardinality(node.getOperand(0)) / vertexCount;
+                yield estimateTraversalWork(node.getOperand(0)) + fanOut * estimateTraversalWork(node.getOperand(1));
+            }
+            case INTERSECTION -> estimateTraversalWork(node.getOperand(0)) + estimateTraversalWork(node.getOperand(1));
+            default -> throw new IllegalArgumentException("Unsupported CPQ operation: " + node.getOperation());
+        };
+    }
+
+    private double averageDegree(int label) {
+        return vertexCount == 0 ? 0.0 : edgeCount(label) / (double) vertexCount;
+    }
+
+    private int[] neighbours(Predicate label, int vertex, boolean backward) {
+        return neighbours(label.getID(), vertex, label.isInverse() != backward);
+    }
+
+    /**
+     * Sorted out-neighbours of {@code vertex} along label {@code id}, or in-neighbours when
+     * {@code reverse}, with the delta applied.
+     */
+    private int[] neighbours(int id, int vertex, boolean reverse) {
+        int[] base = baseNeighbours(id, vertex, reverse);
+        if (delta == null) {
+            return base;
+        }
+        int[] removed = delta.changes(id, vertex, reverse, false);
+        int[] added = delta.changes(id, vertex, reverse, true);
+        if (removed.length == 0 && added.length == 0) {
+            return base;
+        }
+        int[] merged = new int[base.length + added.length];
+        int size = 0;
+        for (int v : base) {
+            if (!SortedInts.contains(removed, v)) {
+                merged[size++] = v;
+            }
+        }
+        System.arraycopy(added, 0, merged, size, added.length);
+        return SortedInts.sortedDistinct(merged, size + added.length);
+    }
+
+    private int[] baseNeighbours(int id, int vertex, boolean reverse) {
+        if (id >= forwardOffsets.length || vertex < 0 || vertex >= forwardOffsets[id].length - 1) {
+            return SortedInts.EMPTY;
+        }
+        int[] offsets = reverse ? reverseOffsets[id] : forwardOffsets[id];
+        int[] values = reverse ? reverseTargets[id] : forwardTargets[id];
+        return offsets[vertex] == offsets[vertex + 1] ? SortedInts.EMPTY : Arrays.copyOfRange(values, offsets[vertex], offsets[vertex + 1]);
+    }
+
+    /**
+     * Sorted vertices within {@code radius} steps of {@code seeds}, following edges with one of
+     * {@code labels} in either direction.
+     */
+    int[] verticesNear(int[] seeds, BitSet labels, int radius) {
+        BitSet seen = new BitSet();
+        int[] frontier = seeds.clone();
+        for (int v : frontier) {
+            seen.set(v);
+        }
+        for (int step = 0; step < radius && frontier.length > 0; step++) {
+            int[] next = new int[16];
+            int size = 0;
+            for (int vertex : frontier) {
+                for (int label = labels.nextSetBit(0); label >= 0; label = labels.nextSetBit(label + 1)) {
+                    for (int reverse = 0; reverse < 2; reverse++) {
+                        for (int v : neighbours(label, vertex, reverse == 1)) {
+                            if (!seen.get(v)) {
+                                seen.set(v);
+                                if (size == next.length) {
+                                    next = Arrays.copyOf(next, size * 2);
+                                }
+                                next[size++] = v;
+                            }
+                        }
+                    }
+                }
+            }
+            frontier = Arrays.copyOf(next, size);
+        }
+        return seen.stream().toArray();
+    }
+
+    /**
+     * Visits every edge of the graph, with the delta applied, as (source, label, target).
+     */
+    void forEachEdge(EdgeVisitor visitor) {
+        for (int label = 0; label < labelCount(); label++) {
+            for (int source = 0; source < vertexCount; source++) {
+                for (int target : neighbours(label, source, false)) {
+                    visitor.visit(source, label, target);
+                }
+            }
+        }
+    }
+
+    /**
+     * Materialises the graph with the delta applied as a new base without a delta.
+     */
+    GraphAdjacency compact() {
+        return delta == null ? this : relabel(IntUnaryOperator.identity());
+    }
+
+    /**
+     * Copy of the graph, with the delta applied, whose vertex {@code v} is renamed to
+     * {@code mapping.applyAsInt(v)}; the mapping must be injective.
+     */
+    GraphAdjacency relabel(IntUnaryOperator mapping) {
+        int[][] columns = new int[3][16];
+        int[] size = {0};
+        int[] vertices = {vertexCount};
+        forEachEdge((source, label, target) -> {
+            if (size[0] == columns[0].length) {
+                for (int c = 0; c < 3; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], size[0] * 2);
+                }
+            }
+            columns[0][size[0]] = mapping.applyAsInt(source);
+            columns[1][size[0]] = mapping.applyAsInt(target);
+            columns[2][size[0]] = label;
+            vertices[0] = Math.max(vertices[0], Math.max(columns[0][size[0]], columns[1][size[0]]) + 1);
+            size[0]++;
+        });
+        int n = size[0];
+        return from(vertices[0], labelCount(),
+                Arrays.copyOf(columns[0], n), Arrays.copyOf(columns[1], n), Arrays.copyOf(columns[2], n));
+    }
+
+    /**
+     * The graph in the format {@link IndexUtil#readGraph} reads.
+     */
+    UniqueGraph<Integer, Predicate> toGraph() {
+        Predicate[] predicates = new Predicate[labelCount()];
+        for (int label = 0; label < predicates.length; label++) {
+            predicates[label] = new Predicate(label, String.valueOf(label));
+        }
+        UniqueGraph<Integer, Predicate> graph = new UniqueGraph<>();
+        for (int v = 0; v < vertexCount; v++) {
+            graph.addUniqueNode(v);
+        }
+        forEachEdge((source, label, target) -> graph.addUniqueEdge(source, target, predicates[label]));
+        return graph;
+    }
+
+    /**
+     * Writes the graph as an edge list: a {@code <vertices> <edges> <labels>} header, then one
+     * {@code <source> <target> <label>} line per edge.
+     */
+    void writeEdgeList(Path file) throws IOException {
+        long[] edges = {0};
+        forEachEdge((source, label, target) -> edges[0]++);
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write(vertexCount + " " + edges[0] + " " + labelCount());
+            out.newLine();
+            IOException[] failure = {null};
+            forEachEdge((source, label, target) -> {
+                if (failure[0] == null) {
+                    try {
+                        out.write(source + " " + target + " " + label);
+                        out.newLine();
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface EdgeVisitor {
+        void visit(int source, int label, int target);
+    }
+
+    private static int prefixSum(int[] offsets) {
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        return offsets[offsets.length - 1];
+    }
+
+    private static void sortRanges(int[] offsets, int[] values) {
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            if (offsets[v + 1] - offsets[v] > 1) {
+                Arrays.sort(values, offsets[v], offsets[v + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package evaluator.index;
+
+import evaluator.decompose.CpqDecomposition;
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.join.RelationBinding;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Evaluates a batch of decomposed queries against shared component relations. Components are keyed
+ * by their canonical CPQ up to orientation, so a component that recurs across queries, under any
+ * variable names or reversed, is evaluated once. Queries run in an order that favours relations
+ * already resident; a relation is released once its last consumer has run, or earlier when the
+ * resident relations outgrow the memory budget, in which case it is evaluated again if a later
+ * query needs it.
+ */
+public final class QueryBatch {
+    private static final long DEFAULT_BUDGET_BYTES = Long.getLong("cpq.batch.bytes", 256L << 20);
+
+    private final CpqNativeIndex index;
+    private final List<CpqDecomposition> queries;
+    private final long budgetBytes;
+    private final List<Set<String>> keys = new ArrayList<>();
+    private final Map<String, Integer> consumers = new HashMap<>();
+    private final Map<String, Resident> resident = new HashMap<>();
+    private long residentBytes;
+    private long peakBytes;
+    private int evaluations;
+    private int reuses;
+    private int evictions;
+    private String identity;
+
+    public QueryBatch(CpqNativeIndex index, List<CpqDecomposition> queries, long budgetBytes) {
+        this.index = Objects.requireNonNull(index, "index");
+        this.queries = List.copyOf(Objects.requireNonNull(queries, "queries"));
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("budgetBytes must be >= 0");
+        }
+        this.budgetBytes = budgetBytes;
+        for (CpqDecomposition query : this.queries) {
+            Set<String> queryKeys = new LinkedHashSet<>();
+            for (Component component : query.components()) {
+                queryKeys.add(key(component));
+            }
+            keys.add(queryKeys);
+            for (String key : queryKeys) {
+                consumers.merge(key, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Budget for resident shared relations from the {@code cpq.batch.bytes} system property
+     * (256 MiB by default); {@code 0} turns batching off.
+     */
+    public static long defaultBudgetBytes() {
+        return DEFAULT_BUDGET_BYTES;
+    }
+
+    /**
+     * Runs every query once, handing {@code visitor} its component relations, or {@code null} when
+     * one of them is empty. Relations are only valid during the call.
+     */
+    public void run(QueryVisitor visitor) throws Exception {
+        Objects.requireNonNull(visitor, "visitor");
+        identity = index.identity();
+        boolean[] done = new boolean[queries.size()];
+        for (int remaining = queries.size(); remaining > 0; remaining--) {
+            int next = pickNext(done);
+            done[next] = true;
+            CpqDecomposition query = queries.get(next);
+            visitor.visit(next, query, relationsFor(query, keys.get(next)));
+            for (String key : keys.get(next)) {
+                if (consumers.merge(key, -1, Integer::sum) == 0) {
+                    consumers.remove(key);
+                    release(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * The index's {@link CpqNativeIndex#identity()} when {@link #run} started, before any relation
+     * was evaluated, for caching the answers joined from them.
+     */
+    public String identity() {
+        return identity;
+    }
+
+    /**
+     * Distinct components across the batch.
+     */
+    public int distinctComponents() {
+        Set<String> all = new LinkedHashSet<>();
+        keys.forEach(all::addAll);
+        return all.size();
+    }
+
+    public String stats() {
+        return String.format(Locale.ROOT, "queries=%d components=%d evaluations=%d reused=%d evicted=%d peakBytes=%d",
+                queries.size(), distinctComponents(), evaluations, reuses, evictions, peakBytes);
+    }
+
+    @FunctionalInterface
+    public interface QueryVisitor {
+        void visit(int queryIndex, CpqDecomposition decomposition, List<RelationBinding> relations) throws Exception;
+    }
+
+    /**
+     * The pending query with most of its components resident; ties go to the query sharing the
+     * most components with other pending queries, then to the earliest.
+     */
+    private int pickNext(boolean[] done) {
+        int best = -1;
+        int bestResident = -1;
+        int bestShared = -1;
+        for (int q = 0; q < done.length; q++) {
+            if (done[q]) {
+                continue;
+            }
+            int residentCount = 0;
+            int shared = 0;
+            for (String key : keys.get(q)) {
+                if (resident.containsKey(key)) {
+                    residentCount++;
+                }
+                shared += consumers.get(key) - 1;
+            }
+            if (residentCount > bestResident || (residentCount == bestResident && shared > bestShared)) {
+                best = q;
+                bestResident = residentCount;
+                bestShared = shared;
+            }
+        }
+        return best;
+    }
+
+    private List<RelationBinding> relationsFor(CpqDecomposition query, Set<String> queryKeys) {
+        if (query.components().isEmpty()) {
+            return null;
+        }
+        List<RelationBinding> relations = new ArrayList<>(query.components().size());
+        for (Component component : query.components()) {
+            CpqDecomposition.Orientation orientation = CpqDecomposition.orientation(component);
+            Resident shared = resident.get(orientation.key());
+            if (shared != null) {
+                reuses++;
+            } else {
+                RelationBinding relation = index.evaluateComponent(component);
+                shared = new Resident(relation == null ? null : new CpqNativeIndex.SharedRelation(relation, orientation.transposed()),
+                        relation == null ? 0 : relation.byteSize());
+                evaluations++;
+                resident.put(orientation.key(), shared);
+                residentBytes += shared.bytes();
+                peakBytes = Math.max(peakBytes, residentBytes);
+                evictOver(queryKeys);
+            }
+            if (shared.relation() == null) {
+                return null;
+            }
+            relations.add(shared.relation().orientedAs(component, orientation));
+        }
+        return relations;
+    }
+
+    /**
+     * Evicts relations the current query does not use, fewest remaining consumers first, until the
+     * resident set fits the budget again.
+     */
+    private void evictOver(Set<String> inUse) {
+        while (residentBytes > budgetBytes) {
+            String victim = null;
+            for (String key : resident.keySet()) {
+                if (!inUse.contains(key) && (victim == null || consumers.get(key) < consumers.get(victim))) {
+                    victim = key;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            release(victim);
+            evictions++;
+        }
+    }
+
+    private void release(String key) {
+        Resident released = resident.remove(key);
+        if (released != null) {
+            residentBytes -= released.bytes();
+        }
+    }
+
+    /**
+     * Components share a relation when their CPQs agree up to orientation; identity-closed
+     * components keep only the diagonal, so they do not share with the open form.
+     */
+    private static String key(Component component) {
+        return CpqDecomposition.orientation(component).key();
+    }
+
+    private record Resident(CpqNativeIndex.SharedRelation relation, long bytes) {
+    }
+}
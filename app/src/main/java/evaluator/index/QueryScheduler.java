@@ -0,0 +1,210 @@
+package evaluator.index;
+
+import evaluator.decompose.CpqDecomposition;
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.join.FactorisedResult;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Admission control in front of a {@link CpqNativeIndex} for concurrent workloads. Every query is
+ * charged an estimate of its peak memory (component projections plus join output) against a
+ * global budget and waits until the charges of running queries leave room for it. Waiting queries
+ * are admitted strictly by priority class and then arrival, so a large query at the head is not
+ * starved by smaller ones behind it; a query estimated above the whole budget runs alone. When the
+ * queue is full new queries are rejected, low-priority ones already at half capacity, so overload
+ * sheds work instead of exhausting the heap.
+ */
+public final class QueryScheduler {
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    /**
+     * Heap bytes per pair of a component projection: the pair in both directions plus a share of
+     * keys and list headers.
+     */
+    private static final long PAIR_BYTES = 24;
+    /**
+     * Charge for a component when neither statistics nor the graph give an estimate.
+     */
+    private static final long UNKNOWN_COMPONENT_BYTES = 4L << 20;
+
+    private final CpqNativeIndex index;
+    private final ToLongFunction<CpqDecomposition> estimator;
+    private final long budgetBytes;
+    private final int maxQueued;
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(
+            Comparator.comparing(Ticket::priority).thenComparingLong(Ticket::sequence));
+    private long sequence;
+    private long inUseBytes;
+    private int running;
+    private long admitted;
+    private long rejected;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    public QueryScheduler(CpqNativeIndex index, long budgetBytes, int maxQueued) {
+        this(Objects.requireNonNull(index, "index"), null, budgetBytes, maxQueued);
+    }
+
+    /**
+     * {@code estimator} replaces {@link #estimatePeakBytes} when non-null.
+     */
+    QueryScheduler(CpqNativeIndex index, ToLongFunction<CpqDecomposition> estimator, long budgetBytes, int maxQueued) {
+        this.index = index;
+        this.estimator = estimator != null ? estimator : this::estimatePeakBytes;
+        if (budgetBytes < 1) {
+            throw new IllegalArgumentException("budgetBytes must be >= 1");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("maxQueued must be >= 0");
+        }
+        this.budgetBytes = budgetBytes;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Scheduler with the budget from {@code cpq.scheduler.bytes} (half the maximum heap by default)
+     * and the queue length from {@code cpq.scheduler.queue} (64 by default).
+     */
+    public static QueryScheduler withDefaults(CpqNativeIndex index) {
+        return new QueryScheduler(index,
+                Long.getLong("cpq.scheduler.bytes", Runtime.getRuntime().maxMemory() / 2),
+                Integer.getInteger("cpq.scheduler.queue", 64));
+    }
+
+    /**
+     * Estimated peak bytes of evaluating {@code decomposition}: every component projection, from
+     * {@link CpqNativeIndex#estimateCardinality}, plus join output as large as the largest
+     * component over all free variables.
+     */
+    public long estimatePeakBytes(CpqDecomposition decomposition) {
+        Objects.requireNonNull(decomposition, "decomposition");
+        double total = 0;
+        double largest = 0;
+        for (Component component : decomposition.components()) {
+            double pairs = index.estimateCardinality(component);
+            if (Double.isNaN(pairs)) {
+                total += UNKNOWN_COMPONENT_BYTES;
+            } else {
+                total += pairs * PAIR_BYTES;
+                largest = Math.max(largest, pairs);
+            }
+        }
+        total += largest * Integer.BYTES * Math.max(1, decomposition.freeVars().size());
+        return (long) Math.min(total, Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits for admission, then applies {@code evaluation} to the decomposition and releases its
+     * charge. Throws {@link RejectedExecutionException} when the queue has no room for
+     * {@code priority}.
+     */
+    public <T> T run(CpqDecomposition decomposition, Priority priority, Function<CpqDecomposition, T> evaluation) throws InterruptedException {
+        Objects.requireNonNull(priority, "priority");
+        Objects.requireNonNull(evaluation, "evaluation");
+        Ticket ticket = admit(estimator.applyAsLong(decomposition), priority);
+        try {
+            return evaluation.apply(decomposition);
+        } finally {
+            release(ticket);
+        }
+    }
+
+    public FactorisedResult evaluate(CpqDecomposition decomposition, Priority priority) throws InterruptedException {
+        return run(decomposition, priority, index::evaluateFactorised);
+    }
+
+    public long count(CpqDecomposition decomposition, Priority priority) throws InterruptedException {
+        return run(decomposition, priority, index::count);
+    }
+
+    public synchronized int queueDepth() {
+        return waiting.size();
+    }
+
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(admitted, rejected, running, waiting.size(), inUseBytes, budgetBytes, totalWaitNanos, maxWaitNanos);
+    }
+
+    private synchronized Ticket admit(long estimateBytes, Priority priority) throws InterruptedException {
+        int limit = priority == Priority.LOW ? maxQueued / 2 : maxQueued;
+        // the head may go straight in, so only count a queue that is actually backed up
+        if (!waiting.isEmpty() || inUseBytes + Math.min(estimateBytes, budgetBytes) > budgetBytes) {
+            if (waiting.size() >= limit) {
+                rejected++;
+                throw new RejectedExecutionException("Query queue full (" + waiting.size() + " waiting, "
+                        + priority.name().toLowerCase(Locale.ROOT) + " priority)");
+            }
+        }
+        // charging oversize queries the whole budget makes them wait until nothing else runs
+        Ticket ticket = new Ticket(priority, sequence++, Math.min(estimateBytes, budgetBytes), System.nanoTime());
+        waiting.add(ticket);
+        try {
+            while (waiting.peek() != ticket || inUseBytes + ticket.bytes() > budgetBytes) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            waiting.remove(ticket);
+            notifyAll();
+            throw e;
+        }
+        waiting.poll();
+        inUseBytes += ticket.bytes();
+        running++;
+        admitted++;
+        long waited = System.nanoTime() - ticket.arrivalNanos();
+        totalWaitNanos += waited;
+        maxWaitNanos = Math.max(maxWaitNanos, waited);
+        // the next ticket may fit as well
+        notifyAll();
+        return ticket;
+    }
+
+    private synchronized void release(Ticket ticket) {
+        inUseBytes -= ticket.bytes();
+        running--;
+        notifyAll();
+    }
+
+    private record Ticket(Priority priority, long sequence, long bytes, long arrivalNanos) {
+    }
+
+    /**
+     * Snapshot of the scheduler counters; waits are measured from submission to admission.
+     */
+    public record Stats(
+            long admitted,
+            long rejected,
+            int running,
+            int queued,
+            long inUseBytes,
+            long budgetBytes,
+            long totalWaitNanos,
+            long maxWaitNanos) {
+
+        public double averageWaitMillis() {
+            return admitted == 0 ? 0.0 : totalWaitNanos / 1_000_000.0 / admitted;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "admitted=%d rejected=%d running=%d queued=%d bytes=%d/%d avgWaitMs=%.3f maxWaitMs=%.3f",
+                    admitted, rejected, running, queued, inUseBytes, budgetBytes,
+                    averageWaitMillis(), maxWaitNanos / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package evaluator.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Vertex partitioning of a graph into shards that are indexed separately. A shard owns the
+ * vertices assigned to it by hash or by contiguous id range, and holds every edge incident to a
+ * vertex within {@code hops - 1} steps of an owned vertex (either direction, any label), so every
+ * path of at most {@code hops} edges from an owned vertex lies inside the shard. The layout is
+ * kept in a small {@code .shards} manifest next to the shard index files.
+ */
+public final class ShardLayout {
+    public static final String MANIFEST_SUFFIX = ".shards";
+
+    private static final int MAGIC = 0x43505348;
+    private static final int VERSION = 1;
+
+    public enum Strategy {
+        HASH,
+        RANGE
+    }
+
+    private final Strategy strategy;
+    private final int shardCount;
+    private final int vertexCount;
+    private final int k;
+    private final int hops;
+    private final List<Path> indexFiles;
+
+    ShardLayout(Strategy strategy, int shardCount, int vertexCount, int k, int hops, List<Path> indexFiles) {
+        this.strategy = Objects.requireNonNull(strategy, "strategy");
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be >= 1");
+        }
+        if (k < 1 || hops < k) {
+            throw new IllegalArgumentException("k must be >= 1 and hops >= k");
+        }
+        if (indexFiles.size() != shardCount) {
+            throw new IllegalArgumentException("Expected " + shardCount + " index files, got " + indexFiles.size());
+        }
+        this.shardCount = shardCount;
+        this.vertexCount = vertexCount;
+        this.k = k;
+        this.hops = hops;
+        this.indexFiles = List.copyOf(indexFiles);
+    }
+
+    /**
+     * Splits the graph in {@code graphFile} into {@code shardCount} shards replicating {@code hops}
+     * steps around owned vertices, indexes each with diameter {@code k} and writes the shard edge
+     * lists, the shard indexes and the manifest next to {@code manifest}.
+     */
+    public static ShardLayout partition(Path graphFile, Path manifest, int shardCount, Strategy strategy, int k, int hops, int threads) throws Exception {
+        Objects.requireNonNull(graphFile, "graphFile");
+        Objects.requireNonNull(manifest, "manifest");
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be >= 1");
+        }
+        GraphAdjacency graph = GraphAdjacency.load(graphFile);
+        String stem = manifest.getFileName().toString();
+        if (stem.endsWith(MANIFEST_SUFFIX)) {
+            stem = stem.substring(0, stem.length() - MANIFEST_SUFFIX.length());
+        }
+        List<Path> indexFiles = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            indexFiles.add(manifest.resolveSibling(stem + "-" + shard + ".idx"));
+        }
+        ShardLayout layout = new ShardLayout(strategy, shardCount, graph.vertexCount(), k, hops, indexFiles);
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            Path shardGraph = manifest.resolveSibling(stem + "-" + shard + ".edge");
+            layout.shardGraph(graph, shard).writeEdgeList(shardGraph);
+            CpqNativeIndex.build(shardGraph, k, threads).save(indexFiles.get(shard));
+        }
+        layout.write(manifest);
+        return layout;
+    }
+
+    public static boolean isManifest(Path file) {
+        return file.getFileName() != null && file.getFileName().toString().endsWith(MANIFEST_SUFFIX);
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Diameter the shard indexes were built with; queries are decomposed with it.
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * Number of steps around owned vertices whose edges every shard holds.
+     */
+    public int hops() {
+        return hops;
+    }
+
+    public Path indexFile(int shard) {
+        return indexFiles.get(shard);
+    }
+
+    /**
+     * The shard owning {@code vertex}. Range partitioning assigns ids beyond the partitioned graph
+     * to the last shard.
+     */
+    public int owner(int vertex) {
+        return switch (strategy) {
+            case HASH -> Math.floorMod(mix(vertex), shardCount);
+            case RANGE -> (int) Math.min(shardCount - 1, (long) vertex * shardCount / Math.max(vertexCount, 1));
+        };
+    }
+
+    /**
+     * Sorted vertices of the partitioned graph owned by {@code shard}.
+     */
+    int[] ownedVertices(int shard) {
+        int[] owned = new int[16];
+        int size = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            if (owner(v) == shard) {
+                if (size == owned.length) {
+                    owned = Arrays.copyOf(owned, size * 2);
+                }
+                owned[size++] = v;
+            }
+        }
+        return Arrays.copyOf(owned, size);
+    }
+
+    /**
+     * The edges of {@code graph} that {@code shard} holds, keeping global vertex ids.
+     */
+    GraphAdjacency shardGraph(GraphAdjacency graph, int shard) {
+        BitSet allLabels = new BitSet();
+        allLabels.set(0, graph.labelCount());
+        BitSet near = new BitSet();
+        for (int v : graph.verticesNear(ownedVertices(shard), allLabels, hops - 1)) {
+            near.set(v);
+        }
+        int[][] columns = new int[3][16];
+        int[] size = {0};
+        graph.forEachEdge((source, label, target) -> {
+            if (!near.get(source) && !near.get(target)) {
+                return;
+            }
+            if (size[0] == columns[0].length) {
+                for (int c = 0; c < 3; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], size[0] * 2);
+                }
+            }
+            columns[0][size[0]] = source;
+            columns[1][size[0]] = target;
+            columns[2][size[0]] = label;
+            size[0]++;
+        });
+        int n = size[0];
+        return GraphAdjacency.from(graph.vertexCount(), graph.labelCount(),
+                Arrays.copyOf(columns[0], n), Arrays.copyOf(columns[1], n), Arrays.copyOf(columns[2], n));
+    }
+
+    /**
+     * Writes the manifest; index files are stored relative to its directory.
+     */
+    public void write(Path manifest) throws IOException {
+        Objects.requireNonNull(manifest, "manifest");
+        Path directory = manifest.toAbsolutePath().getParent();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(manifest)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(strategy.name());
+            out.writeInt(shardCount);
+            out.writeInt(vertexCount);
+            out.writeInt(k);
+            out.writeInt(hops);
+            for (Path file : indexFiles) {
+                out.writeUTF(directory.relativize(file.toAbsolutePath()).toString());
+            }
+        }
+    }
+
+    public static ShardLayout read(Path manifest) throws IOException {
+        Objects.requireNonNull(manifest, "manifest");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a shard manifest: " + manifest);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported shard manifest version " + version + ": " + manifest);
+            }
+            Strategy strategy = Strategy.valueOf(in.readUTF());
+            int shardCount = in.readInt();
+            int vertexCount = in.readInt();
+            int k = in.readInt();
+            int hops = in.readInt();
+            List<Path> indexFiles = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) {
+                indexFiles.add(manifest.toAbsolutePath().resolveSibling(in.readUTF()));
+            }
+            return new ShardLayout(strategy, shardCount, vertexCount, k, hops, indexFiles);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "shards=%d strategy=%s k=%d hops=%d vertices=%d",
+                shardCount, strategy.name().toLowerCase(Locale.ROOT), k, hops, vertexCount);
+    }
+
+    /**
+     * Spreads consecutive ids so hash shards do not follow id locality.
+     */
+    private static int mix(int vertex) {
+        int h = vertex * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,134 @@
+package evaluator.index;
+
+import evaluator.decompose.CpqDecomposition;
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.join.FactorisedResult;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Worker process serving one shard of a {@link ShardLayout} to a {@link ShardedIndex}. Requests
+ * arrive on standard input and answers leave on standard output, both as {@link DataOutputStream}
+ * records; everything the process would print goes to standard error. The worker exits when its
+ * input is closed.
+ */
+final class ShardWorker {
+    static final byte ANSWERS = 1;
+    static final byte COUNT = 2;
+    static final byte COMPONENTS = 3;
+
+    static final byte OK = 0;
+    static final byte FAILED = 1;
+
+    private final CpqNativeIndex index;
+    private final int[] owned;
+
+    private ShardWorker(CpqNativeIndex index, int[] owned) {
+        this.index = index;
+        this.owned = owned;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: <manifest.shards> <shard>");
+            System.exit(2);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        System.setOut(System.err);
+
+        ShardLayout layout = ShardLayout.read(Path.of(args[0]));
+        int shard = Integer.parseInt(args[1]);
+        // decomposed for the shard indexes' diameter, exactly as the coordinator does
+        ShardWorker worker = new ShardWorker(CpqNativeIndex.load(layout.indexFile(shard), layout.k()), layout.ownedVertices(shard));
+        worker.serve(new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in))), out);
+    }
+
+    private void serve(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            byte op;
+            try {
+                op = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            String query = in.readUTF();
+            String root = op == COMPONENTS ? null : in.readUTF();
+            try {
+                CpqDecomposition decomposition = index.parseCQ(query).decompose(index.k());
+                switch (op) {
+                    case ANSWERS -> writeAnswers(index.evaluateRestricted(decomposition, root, owned), out);
+                    case COUNT -> {
+                        long count = index.evaluateRestricted(decomposition, root, owned).count();
+                        out.writeByte(OK);
+                        out.writeLong(count);
+                    }
+                    case COMPONENTS -> writeComponents(decomposition.components(), out);
+                    default -> throw new IllegalArgumentException("Unknown request " + op);
+                }
+            } catch (RuntimeException e) {
+                out.writeByte(FAILED);
+                out.writeUTF(String.valueOf(e));
+            }
+            out.flush();
+        }
+    }
+
+    private static void writeAnswers(FactorisedResult answers, DataOutputStream out) throws IOException {
+        out.writeByte(OK);
+        out.writeInt(answers.variables().size());
+        for (String variable : answers.variables()) {
+            out.writeUTF(variable);
+        }
+        out.writeLong(answers.count());
+        IOException[] failure = {null};
+        answers.forEach(tuple -> {
+            try {
+                for (int value : tuple) {
+                    out.writeInt(value);
+                }
+                return true;
+            } catch (IOException e) {
+                failure[0] = e;
+                return false;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Pairs of every component whose source is owned here. Those are exact as long as the
+     * component's diameter is at most the layout's hops, so the shards' lists are disjoint and
+     * together form the component's relation.
+     */
+    private void writeComponents(List<Component> components, DataOutputStream out) throws IOException {
+        int[][][] pairs = new int[components.size()][][];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = index.componentPairs(components.get(i), owned);
+        }
+        out.writeByte(OK);
+        out.writeInt(components.size());
+        for (int i = 0; i < pairs.length; i++) {
+            Component component = components.get(i);
+            out.writeUTF(CpqDecomposition.varName(component.s()));
+            out.writeUTF(CpqDecomposition.varName(component.t()));
+            out.writeUTF(component.canonical());
+            out.writeInt(pairs[i][0].length);
+            for (int c = 0; c < 2; c++) {
+                for (int value : pairs[i][c]) {
+                    out.writeInt(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package evaluator.index;
+
+import evaluator.cq.ConjunctiveQuery;
+import evaluator.decompose.CpqDecomposition;
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.join.FactorisedResult;
+import evaluator.join.LeapfrogTrieJoin;
+import evaluator.join.RelationBinding;
+import evaluator.join.RelationBinding.RelationProjection;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinator over the shards of a {@link ShardLayout}, each served by its own local
+ * {@link ShardWorker} process so that no single heap has to hold the whole index.
+ *
+ * <p>A query whose every component lies within {@link ShardLayout#hops} steps of some variable
+ * (the root) is evaluated completely on every shard, with the root restricted to the shard's own
+ * vertices; the shards' answers are then disjoint in the root and are merged by the coordinator.
+ * Any other query falls back to evaluating components on the shards, each shard returning the
+ * pairs whose source it owns, and joining the union here.
+ */
+public final class ShardedIndex implements AutoCloseable {
+    private final ShardLayout layout;
+    private final List<Worker> workers;
+    private final ExecutorService dispatch;
+
+    private ShardedIndex(ShardLayout layout, List<Worker> workers) {
+        this.layout = layout;
+        this.workers = workers;
+        this.dispatch = Executors.newFixedThreadPool(workers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "cpq-shard-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the manifest and starts one worker process per shard, with the class path of this
+     * process and the JVM options it needs from it (see {@link #workerOptions}).
+     */
+    public static ShardedIndex open(Path manifest) throws IOException {
+        Objects.requireNonNull(manifest, "manifest");
+        ShardLayout layout = ShardLayout.read(manifest);
+        List<Worker> workers = new ArrayList<>(layout.shardCount());
+        try {
+            for (int shard = 0; shard < layout.shardCount(); shard++) {
+                workers.add(Worker.start(manifest, shard));
+            }
+        } catch (IOException | RuntimeException e) {
+            workers.forEach(Worker::destroy);
+            throw e;
+        }
+        return new ShardedIndex(layout, workers);
+    }
+
+    public ShardLayout layout() {
+        return layout;
+    }
+
+    public int k() {
+        return layout.k();
+    }
+
+    public synchronized FactorisedResult evaluate(String cqText) {
+        CpqDecomposition decomposition = decompose(cqText);
+        List<String> freeVars = freeVarNames(decomposition);
+        if (decomposition.components().isEmpty()) {
+            return FactorisedResult.empty(freeVars);
+        }
+        String root = localRoot(decomposition, layout.hops());
+        if (root == null) {
+            List<RelationBinding> relations = joinInputs(cqText, decomposition);
+            return relations == null
+                    ? FactorisedResult.empty(freeVars)
+                    : LeapfrogTrieJoin.joinProjected(relations, decomposition.variableOrder(), freeVars);
+        }
+
+        List<Answers> shards = broadcast(ShardWorker.ANSWERS, cqText, root, ShardedIndex::readAnswers);
+        int total = 0;
+        for (Answers answers : shards) {
+            total += answers.tuples().length;
+        }
+        int[][] tuples = new int[total][];
+        int filled = 0;
+        for (Answers answers : shards) {
+            int[] columnOf = freeVars.stream().mapToInt(answers.variables()::indexOf).toArray();
+            for (int[] tuple : answers.tuples()) {
+                int[] row = new int[columnOf.length];
+                for (int i = 0; i < columnOf.length; i++) {
+                    row[i] = tuple[columnOf[i]];
+                }
+                tuples[filled++] = row;
+            }
+        }
+        Arrays.sort(tuples, Arrays::compare);
+        // a projected-away root may give the same answer on several shards; fromSortedTuples
+        // expects distinct tuples
+        int distinct = 0;
+        for (int[] tuple : tuples) {
+            if (distinct == 0 || !Arrays.equals(tuples[distinct - 1], tuple)) {
+                tuples[distinct++] = tuple;
+            }
+        }
+        return FactorisedResult.fromSortedTuples(freeVars, Arrays.copyOf(tuples, distinct));
+    }
+
+    /**
+     * Counts distinct answers; when the root is a free variable the shards' counts are summed
+     * without shipping any tuples.
+     */
+    public synchronized long count(String cqText) {
+        CpqDecomposition decomposition = decompose(cqText);
+        List<String> freeVars = freeVarNames(decomposition);
+        if (decomposition.components().isEmpty()) {
+            return 0;
+        }
+        String root = localRoot(decomposition, layout.hops());
+        if (root == null) {
+            List<RelationBinding> relations = joinInputs(cqText, decomposition);
+            return relations == null ? 0 : LeapfrogTrieJoin.count(relations, decomposition.variableOrder(), freeVars);
+        }
+        if (!freeVars.contains(root)) {
+            return evaluate(cqText).count();
+        }
+        long total = 0;
+        for (long count : broadcast(ShardWorker.COUNT, cqText, root, DataInputStream::readLong)) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Stops the worker processes.
+     */
+    @Override
+    public synchronized void close() {
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+        dispatch.shutdownNow();
+    }
+
+    private CpqDecomposition decompose(String cqText) {
+        Objects.requireNonNull(cqText, "cqText");
+        return ConjunctiveQuery.parse(cqText).decompose(layout.k());
+    }
+
+    /**
+     * The variable whose components lie closest to it, if all of them lie within {@code hops}
+     * steps, else {@code null}. A component is within reach when the root's distance to the nearer
+     * of its ends plus its diameter is at most {@code hops}; free variables win ties.
+     */
+    static String localRoot(CpqDecomposition decomposition, int hops) {
+        List<Component> components = decomposition.components();
+        String best = null;
+        int bestReach = Integer.MAX_VALUE;
+        List<String> freeVars = freeVarNames(decomposition);
+        for (String root : decomposition.variableOrder()) {
+            Map<String, Integer> distance = distancesFrom(root, components);
+            int reach = 0;
+            for (Component component : components) {
+                int near = Math.min(
+                        distance.getOrDefault(CpqDecomposition.varName(component.s()), Integer.MAX_VALUE),
+                        distance.getOrDefault(CpqDecomposition.varName(component.t()), Integer.MAX_VALUE));
+                reach = near == Integer.MAX_VALUE ? Integer.MAX_VALUE : Math.max(reach, near + component.diameter());
+            }
+            if (reach < bestReach || (reach == bestReach && best != null && !freeVars.contains(best) && freeVars.contains(root))) {
+                best = root;
+                bestReach = reach;
+            }
+        }
+        return bestReach <= hops ? best : null;
+    }
+
+    /**
+     * Shortest distances between variables when each component is an undirected edge as long as
+     * its diameter; the query graphs are tiny, so plain relaxation suffices.
+     */
+    private static Map<String, Integer> distancesFrom(String root, List<Component> components) {
+        Map<String, Integer> distance = new HashMap<>();
+        distance.put(root, 0);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Component component : components) {
+                String s = CpqDecomposition.varName(component.s());
+                String t = CpqDecomposition.varName(component.t());
+                changed |= relax(distance, s, t, component.diameter());
+                changed |= relax(distance, t, s, component.diameter());
+            }
+        }
+        return distance;
+    }
+
+    private static boolean relax(Map<String, Integer> distance, String from, String to, int length) {
+        Integer base = distance.get(from);
+        if (base == null) {
+            return false;
+        }
+        Integer current = distance.get(to);
+        if (current != null && current <= base + length) {
+            return false;
+        }
+        distance.put(to, base + length);
+        return true;
+    }
+
+    /**
+     * Component relations assembled from every shard's owned-source pairs, or {@code null} if any
+     * of them is empty.
+     */
+    private List<RelationBinding> joinInputs(String cqText, CpqDecomposition decomposition) {
+        for (Component component : decomposition.components()) {
+            if (component.diameter() > layout.hops()) {
+                throw new IllegalStateException("Component " + component.canonical() + " has diameter "
+                        + component.diameter() + ", shards only replicate " + layout.hops() + " hops");
+            }
+        }
+        List<List<ComponentPairs>> shards = broadcast(ShardWorker.COMPONENTS, cqText, null, ShardedIndex::readComponents);
+        int componentCount = shards.get(0).size();
+        List<RelationBinding> relations = new ArrayList<>(componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            ComponentPairs first = shards.get(0).get(c);
+            int size = 0;
+            for (List<ComponentPairs> shard : shards) {
+                ComponentPairs pairs = shard.get(c);
+                if (!pairs.left().equals(first.left()) || !pairs.right().equals(first.right())) {
+                    throw new IllegalStateException("Shards decomposed the query differently");
+                }
+                size += pairs.sources().length;
+            }
+            int[] sources = new int[size];
+            int[] targets = new int[size];
+            int filled = 0;
+            for (List<ComponentPairs> shard : shards) {
+                ComponentPairs pairs = shard.get(c);
+                System.arraycopy(pairs.sources(), 0, sources, filled, pairs.sources().length);
+                System.arraycopy(pairs.targets(), 0, targets, filled, pairs.targets().length);
+                filled += pairs.sources().length;
+            }
+            if (size == 0) {
+                return null;
+            }
+            if (first.left().equals(first.right())) {
+                relations.add(RelationBinding.unary(first.left(), first.description(), SortedInts.sortedDistinct(sources, size)));
+            } else {
+                relations.add(RelationBinding.binary(first.left(), first.right(), first.description(),
+                        RelationProjection.fromPairs(sources, targets, size)));
+            }
+        }
+        if (!new HashSet<>(decomposition.variableOrder()).equals(variablesOf(relations))) {
+            throw new IllegalStateException("Shards decomposed the query differently");
+        }
+        return relations;
+    }
+
+    private static Set<String> variablesOf(List<RelationBinding> relations) {
+        Set<String> variables = new HashSet<>();
+        for (RelationBinding relation : relations) {
+            variables.add(relation.sourceVar());
+            if (relation.targetVar() != null) {
+                variables.add(relation.targetVar());
+            }
+        }
+        return variables;
+    }
+
+    /**
+     * Sends one request to every worker and reads the replies concurrently, in shard order.
+     */
+    private <T> List<T> broadcast(byte op, String cqText, String root, Reply<T> reply) {
+        List<Future<T>> pending = new ArrayList<>(workers.size());
+        for (Worker worker : workers) {
+            pending.add(dispatch.submit(() -> worker.request(op, cqText, root, reply)));
+        }
+        List<T> out = new ArrayList<>(workers.size());
+        for (int shard = 0; shard < pending.size(); shard++) {
+            try {
+                out.add(pending.get(shard).get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Shard " + shard + " failed: " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for shard " + shard, e);
+            }
+        }
+        return out;
+    }
+
+    private static Answers readAnswers(DataInputStream in) throws IOException {
+        List<String> variables = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            variables.add(in.readUTF());
+        }
+        long count = in.readLong();
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IOException("Shard returned " + count + " answers");
+        }
+        int[][] tuples = new int[(int) count][variables.size()];
+        for (int[] tuple : tuples) {
+            for (int i = 0; i < tuple.length; i++) {
+                tuple[i] = in.readInt();
+            }
+        }
+        return new Answers(variables, tuples);
+    }
+
+    private static List<ComponentPairs> readComponents(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<ComponentPairs> out = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            String left = in.readUTF();
+            String right = in.readUTF();
+            String description = in.readUTF();
+            int size = in.readInt();
+            int[] sources = new int[size];
+            int[] targets = new int[size];
+            for (int i = 0; i < size; i++) {
+                sources[i] = in.readInt();
+            }
+            for (int i = 0; i < size; i++) {
+                targets[i] = in.readInt();
+            }
+            out.add(new ComponentPairs(left, right, description, sources, targets));
+        }
+        return out;
+    }
+
+    /**
+     * The coordinator's JVM options that workers need: preview features, added modules, native
+     * access and library paths, and {@code cpq.*} settings. Heap sizes, agents and debug ports are
+     * not passed on; {@code -Dcpq.shards.workerHeap=<size>} sets each worker's maximum heap.
+     */
+    static List<String> workerOptions(List<String> coordinatorOptions) {
+        List<String> options = new ArrayList<>();
+        for (String option : coordinatorOptions) {
+            if (option.equals("--enable-preview")
+                    || option.startsWith("--add-modules")
+                    || option.startsWith("--enable-native-access")
+                    || option.startsWith("-Djava.library.path=")
+                    || option.startsWith("-Dcpq.")) {
+                options.add(option);
+            }
+        }
+        String heap = System.getProperty("cpq.shards.workerHeap");
+        if (heap != null && !heap.isBlank()) {
+            options.add("-Xmx" + heap.trim());
+        }
+        return options;
+    }
+
+    private static List<String> freeVarNames(CpqDecomposition decomposition) {
+        return decomposition.freeVars().stream().map(CpqDecomposition::varName).toList();
+    }
+
+    @FunctionalInterface
+    private interface Reply<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private record Answers(List<String> variables, int[][] tuples) {
+    }
+
+    private record ComponentPairs(String left, String right, String description, int[] sources, int[] targets) {
+    }
+
+    private static final class Worker {
+        private final Process process;
+        private final DataOutputStream in;
+        private final DataInputStream out;
+
+        private Worker(Process process) {
+            this.process = process;
+            this.in = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        static Worker start(Path manifest, int shard) throws IOException {
+            List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command()
+                    .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+            command.addAll(workerOptions(ManagementFactory.getRuntimeMXBean().getInputArguments()));
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ShardWorker.class.getName());
+            command.add(manifest.toAbsolutePath().toString());
+            command.add(String.valueOf(shard));
+            Process process = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            return new Worker(process);
+        }
+
+        synchronized <T> T request(byte op, String cqText, String root, Reply<T> reply) throws IOException {
+            in.writeByte(op);
+            in.writeUTF(cqText);
+            if (root != null) {
+                in.writeUTF(root);
+            }
+            in.flush();
+            if (out.readByte() != ShardWorker.OK) {
+                throw new IOException(out.readUTF());
+            }
+            return reply.read(out);
+        }
+
+        void stop() {
+            try {
+                in.close();
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            } catch (IOException e) {
+                process.destroy();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroy();
+            }
+        }
+
+        void destroy() {
+            process.destroy();
+        }
+    }
+}
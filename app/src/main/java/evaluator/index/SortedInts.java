@@ -0,0 +1,50 @@
+package evaluator.index;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for sorted, duplicate-free {@code int[]} vertex sets.
+ */
+final class SortedInts {
+    static final int[] EMPTY = new int[0];
+
+    private SortedInts() {
+    }
+
+    static int[] sortedDistinct(int[] values, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(values, 0, size);
+        int unique = 1;
+        for (int i = 1; i < size; i++) {
+            if (values[i] != values[unique - 1]) {
+                values[unique++] = values[i];
+            }
+        }
+        return unique == values.length ? values : Arrays.copyOf(values, unique);
+    }
+
+    static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    static boolean contains(int[] sorted, int value) {
+        return Arrays.binarySearch(sorted, value) >= 0;
+    }
+}
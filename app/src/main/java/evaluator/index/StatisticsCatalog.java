@@ -0,0 +1,420 @@
+package evaluator.index;
+
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.join.RelationBinding.RelationProjection;
+import dev.roanh.gmark.ast.OperationType;
+import dev.roanh.gmark.ast.QueryTree;
+import dev.roanh.gmark.lang.cpq.CPQ;
+import dev.roanh.gmark.type.schema.Predicate;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Per-label and per-label-sequence statistics of an index, used for cheap cardinality estimates
+ * of components. Computed once, stored next to the index as a {@code .stats} sidecar file.
+ */
+public final class StatisticsCatalog {
+    public static final String SIDECAR_SUFFIX = ".stats";
+
+    private static final int MAGIC = 0x43505153;
+    private static final int VERSION = 2;
+    private static final int HEAVY_HITTERS = 16;
+    private static final int HISTOGRAM_BUCKETS = 32;
+
+    /**
+     * Statistics of the relation defined by one label path; {@code outDegreeHistogram[i]} counts
+     * sources whose out-degree lies in {@code [2^i, 2^(i+1))}.
+     */
+    public record PathStats(
+            long pairs,
+            int distinctSources,
+            int distinctTargets,
+            int maxOutDegree,
+            int maxInDegree,
+            long[] outDegreeHistogram,
+            long[] inDegreeHistogram,
+            int[] heavySources,
+            int[] heavyTargets) {
+
+        PathStats inverse() {
+            return new PathStats(pairs, distinctTargets, distinctSources, maxInDegree, maxOutDegree,
+                    inDegreeHistogram, outDegreeHistogram, heavyTargets, heavySources);
+        }
+    }
+
+    private record Estimate(double pairs, double sources, double targets) {
+    }
+
+    private final int vertexCount;
+    private final int maxSequenceLength;
+    private final Map<String, PathStats> paths;
+
+    private StatisticsCatalog(int vertexCount, int maxSequenceLength, Map<String, PathStats> paths) {
+        this.vertexCount = vertexCount;
+        this.maxSequenceLength = maxSequenceLength;
+        this.paths = Map.copyOf(paths);
+    }
+
+    /**
+     * Computes statistics for every label {@code 0..labelCount-1}, its inverse, and every
+     * sequence of up to {@code maxSequenceLength} (at most 2) such labels.
+     */
+    public static StatisticsCatalog compute(Function<CPQ, RelationProjection> evaluator, int labelCount, int maxSequenceLength) {
+        Objects.requireNonNull(evaluator, "evaluator");
+        if (labelCount < 1) {
+            throw new IllegalArgumentException("labelCount must be >= 1");
+        }
+        int sequenceLength = Math.max(1, Math.min(2, maxSequenceLength));
+
+        List<Predicate> directed = new ArrayList<>(labelCount * 2);
+        Map<String, PathStats> paths = new HashMap<>();
+        BitSet vertices = new BitSet();
+        for (int id = 0; id < labelCount; id++) {
+            Predicate label = new Predicate(id, String.valueOf(id));
+            RelationProjection projection = evaluator.apply(CPQ.label(label));
+            PathStats stats = statsOf(projection);
+            paths.put(key(List.of(label)), stats);
+            paths.put(key(List.of(label.getInverse())), stats.inverse());
+            for (int v : projection.allSources()) {
+                vertices.set(v);
+            }
+            for (int v : projection.allTargets()) {
+                vertices.set(v);
+            }
+            directed.add(label);
+            directed.add(label.getInverse());
+        }
+
+        if (sequenceLength == 2) {
+            for (Predicate first : directed) {
+                for (Predicate second : directed) {
+                    String key = key(List.of(first, second));
+                    if (paths.containsKey(key)) {
+                        continue;
+                    }
+                    PathStats stats = statsOf(evaluator.apply(CPQ.concat(List.of(CPQ.label(first), CPQ.label(second)))));
+                    paths.put(key, stats);
+                    paths.put(key(List.of(second.getInverse(), first.getInverse())), stats.inverse());
+                }
+            }
+        }
+        return new StatisticsCatalog(vertices.cardinality(), sequenceLength, paths);
+    }
+
+    public static Path sidecarFor(Path indexFile) {
+        return indexFile.resolveSibling(indexFile.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    public int maxSequenceLength() {
+        return maxSequenceLength;
+    }
+
+    /**
+     * Statistics for a label path, or {@code null} if the path is longer than what was catalogued.
+     */
+    public PathStats stats(List<Predicate> path) {
+        return paths.get(key(path));
+    }
+
+    /**
+     * Whether the label path is catalogued and has no pairs. Paths that are longer than what was
+     * catalogued, or use labels beyond it, are unknown and never count as empty.
+     */
+    public boolean provesEmpty(List<Predicate> path) {
+        PathStats stats = stats(path);
+        return stats != null && stats.pairs() == 0;
+    }
+
+    /**
+     * Estimated number of distinct (s, t) pairs the component contributes to the join;
+     * {@code NaN} when it uses a label the catalog did not record.
+     */
+    public double estimateCardinality(Component component) {
+        Objects.requireNonNull(component, "component");
+        QueryTree tree = component.cpq().toAbstractSyntaxTree();
+        double pairs = estimateCardinality(tree);
+        if (component.isUnary() && !closedByIdentity(tree)) {
+            return vertexCount == 0 ? 0.0 : pairs / vertexCount;
+        }
+        return pairs;
+    }
+
+    /**
+     * Estimated number of pairs matching the CPQ; {@code NaN} when it uses a label the catalog did
+     * not record, which nothing can be assumed about.
+     */
+    public double estimateCardinality(QueryTree tree) {
+        return estimate(Objects.requireNonNull(tree, "tree")).pairs();
+    }
+
+    private Estimate estimate(QueryTree node) {
+        return switch (node.getOperation()) {
+            case IDENTITY -> new Estimate(vertexCount, vertexCount, vertexCount);
+            case EDGE -> fromStats(stats(List.of(node.getEdgeAtom().getLabel())));
+            case CONCATENATION -> estimateConcatenation(node);
+            case INTERSECTION -> {
+                Estimate left = estimate(node.getOperand(0));
+                Estimate right = estimate(node.getOperand(1));
+                double domain = Math.max(1.0, Math.max(left.sources(), right.sources()) * Math.max(left.targets(), right.targets()));
+                double pairs = Math.min(Math.min(left.pairs(), right.pairs()), left.pairs() * right.pairs() / domain);
+                yield new Estimate(pairs, Math.min(left.sources(), right.sources()), Math.min(left.targets(), right.targets()));
+            }
+            default -> throw new IllegalArgumentException("Unsupported CPQ operation: " + node.getOperation());
+        };
+    }
+
+    /**
+     * Uses catalogued pair statistics for runs of consecutive labels and joins the runs under a
+     * containment assumption.
+     */
+    private Estimate estimateConcatenation(QueryTree node) {
+        List<QueryTree> parts = new ArrayList<>();
+        flattenConcatenation(node, parts);
+
+        Estimate result = null;
+        for (int i = 0; i < parts.size();) {
+            Estimate next = null;
+            if (maxSequenceLength >= 2 && i + 1 < parts.size() && isEdge(parts.get(i)) && isEdge(parts.get(i + 1))) {
+                PathStats pair = stats(List.of(parts.get(i).getEdgeAtom().getLabel(), parts.get(i + 1).getEdgeAtom().getLabel()));
+                if (pair != null) {
+                    next = fromStats(pair);
+                    i += 2;
+                }
+            }
+            if (next == null) {
+                next = estimate(parts.get(i++));
+            }
+            result = result == null ? next : join(result, next);
+        }
+        return result;
+    }
+
+    private static Estimate join(Estimate left, Estimate right) {
+        double shared = Math.max(1.0, Math.max(left.targets(), right.sources()));
+        double pairs = left.pairs() * right.pairs() / shared;
+        return new Estimate(pairs, Math.min(left.sources(), pairs), Math.min(right.targets(), pairs));
+    }
+
+    private static Estimate fromStats(PathStats stats) {
+        // unknown rather than empty; NaN carries through every estimate built on it
+        return stats == null
+                ? new Estimate(Double.NaN, Double.NaN, Double.NaN)
+                : new Estimate(stats.pairs(), stats.distinctSources(), stats.distinctTargets());
+    }
+
+    private static void flattenConcatenation(QueryTree node, List<QueryTree> out) {
+        if (node.getOperation() == OperationType.CONCATENATION) {
+            flattenConcatenation(node.getOperand(0), out);
+            flattenConcatenation(node.getOperand(1), out);
+            return;
+        }
+        out.add(node);
+    }
+
+    private static boolean isEdge(QueryTree node) {
+        return node.getOperation() == OperationType.EDGE;
+    }
+
+    private static boolean closedByIdentity(QueryTree node) {
+        return switch (node.getOperation()) {
+            case IDENTITY -> true;
+            case INTERSECTION -> closedByIdentity(node.getOperand(0)) || closedByIdentity(node.getOperand(1));
+            default -> false;
+        };
+    }
+
+    private static String key(List<Predicate> path) {
+        StringBuilder sb = new StringBuilder();
+        for (Predicate label : path) {
+            if (!sb.isEmpty()) {
+                sb.append(',');
+            }
+            sb.append(label.getID());
+            if (label.isInverse()) {
+                sb.append('-');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static PathStats statsOf(RelationProjection projection) {
+        int[] sources = projection.allSources();
+        int[] targets = projection.allTargets();
+        int[] outDegrees = new int[sources.length];
+        int[] inDegrees = new int[targets.length];
+        long pairs = 0;
+        for (int i = 0; i < sources.length; i++) {
+            outDegrees[i] = projection.targetsForSource(sources[i]).length;
+            pairs += outDegrees[i];
+        }
+        for (int i = 0; i < targets.length; i++) {
+            inDegrees[i] = projection.sourcesForTarget(targets[i]).length;
+        }
+        return new PathStats(
+                pairs,
+                sources.length,
+                targets.length,
+                max(outDegrees),
+                max(inDegrees),
+                histogram(outDegrees),
+                histogram(inDegrees),
+                heavyHitters(sources, outDegrees),
+                heavyHitters(targets, inDegrees));
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int v : values) {
+            max = Math.max(max, v);
+        }
+        return max;
+    }
+
+    private static long[] histogram(int[] degrees) {
+        long[] buckets = new long[HISTOGRAM_BUCKETS];
+        for (int degree : degrees) {
+            if (degree > 0) {
+                buckets[31 - Integer.numberOfLeadingZeros(degree)]++;
+            }
+        }
+        return buckets;
+    }
+
+    private static int[] heavyHitters(int[] vertices, int[] degrees) {
+        List<Integer> order = new ArrayList<>(vertices.length);
+        for (int i = 0; i < vertices.length; i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Integer.compare(degrees[b], degrees[a]));
+        int n = Math.min(HEAVY_HITTERS, order.size());
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) {
+            out[i] = vertices[order.get(i)];
+        }
+        return out;
+    }
+
+    /**
+     * Writes the catalog for the index file with {@code indexStamp} (see
+     * {@link CpqNativeIndex#indexStamp}); {@link #read} rejects it for any other index file.
+     */
+    public void write(Path file, String indexStamp) throws IOException {
+        Objects.requireNonNull(file, "file");
+        Objects.requireNonNull(indexStamp, "indexStamp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(indexStamp);
+            out.writeInt(vertexCount);
+            out.writeInt(maxSequenceLength);
+            List<String> keys = new ArrayList<>(paths.keySet());
+            Collections.sort(keys);
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                PathStats s = paths.get(key);
+                out.writeUTF(key);
+                out.writeLong(s.pairs());
+                out.writeInt(s.distinctSources());
+                out.writeInt(s.distinctTargets());
+                out.writeInt(s.maxOutDegree());
+                out.writeInt(s.maxInDegree());
+                writeLongs(out, s.outDegreeHistogram());
+                writeLongs(out, s.inDegreeHistogram());
+                writeInts(out, s.heavySources());
+                writeInts(out, s.heavyTargets());
+            }
+        }
+    }
+
+    /**
+     * Reads a catalog written for the index file with {@code indexStamp}; a catalog written for
+     * another index, or an earlier state of this one, is rejected with an {@link IOException}.
+     */
+    public static StatisticsCatalog read(Path file, String indexStamp) throws IOException {
+        Objects.requireNonNull(file, "file");
+        Objects.requireNonNull(indexStamp, "indexStamp");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a statistics catalog: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported statistics catalog version " + version + ": " + file);
+            }
+            if (!in.readUTF().equals(indexStamp)) {
+                throw new IOException("Statistics catalog was computed for a different index: " + file);
+            }
+            int vertexCount = in.readInt();
+            int maxSequenceLength = in.readInt();
+            int entries = in.readInt();
+            Map<String, PathStats> paths = new HashMap<>(entries * 2);
+            for (int i = 0; i < entries; i++) {
+                String key = in.readUTF();
+                paths.put(key, new PathStats(
+                        in.readLong(),
+                        in.readInt(),
+                        in.readInt(),
+                        in.readInt(),
+                        in.readInt(),
+                        readLongs(in),
+                        readLongs(in),
+                        readInts(in),
+                        readInts(in)));
+            }
+            return new StatisticsCatalog(vertexCount, maxSequenceLength, paths);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long v : values) {
+            out.writeLong(v);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in) throws IOException {
+        long[] values = new long[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "StatisticsCatalog{vertices=" + vertexCount + ", paths=" + paths.size()
+                + ", maxSequenceLength=" + maxSequenceLength + "}";
+    }
+}
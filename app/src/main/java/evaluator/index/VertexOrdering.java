@@ -0,0 +1,240 @@
+package evaluator.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Permutation of vertex ids that index results are mapped through, so relation projections, join
+ * cursors and answer sets work on ids with better locality than the input graph's order: hubs get
+ * small ids, and with {@link Strategy#BFS} neighbourhoods get nearby ids, which shortens leapfrog
+ * seeks and the gaps between sorted list entries. Answers are mapped back to original ids before
+ * they leave the index. Ids beyond the permuted range map to themselves. Stored next to the index
+ * as a {@code .perm} sidecar file.
+ */
+public final class VertexOrdering {
+    public static final String SIDECAR_SUFFIX = ".perm";
+
+    private static final int MAGIC = 0x43505150;
+    private static final int VERSION = 2;
+
+    public enum Strategy {
+        /**
+         * Descending total degree, ties by original id.
+         */
+        DEGREE,
+        /**
+         * Breadth-first over the undirected graph, starting from the highest-degree unvisited
+         * vertex and visiting each vertex's neighbours highest degree first (Cuthill-McKee style).
+         */
+        BFS
+    }
+
+    private final Strategy strategy;
+    private final int[] toInternal;
+    private final int[] toOriginal;
+    private final int fingerprint;
+
+    private VertexOrdering(Strategy strategy, int[] toOriginal) {
+        this.strategy = strategy;
+        this.toOriginal = toOriginal;
+        this.fingerprint = Arrays.hashCode(toOriginal);
+        this.toInternal = new int[toOriginal.length];
+        for (int internal = 0; internal < toOriginal.length; internal++) {
+            toInternal[toOriginal[internal]] = internal;
+        }
+    }
+
+    /**
+     * Ordering of vertices {@code 0..vertexCount-1} from the first {@code size} edges
+     * {@code sources[i] -> targets[i]}; labels and direction do not matter.
+     */
+    static VertexOrdering compute(Strategy strategy, int vertexCount, int[] sources, int[] targets, int size) {
+        Objects.requireNonNull(strategy, "strategy");
+        int[] degree = new int[vertexCount];
+        for (int i = 0; i < size; i++) {
+            degree[sources[i]]++;
+            degree[targets[i]]++;
+        }
+        long[] byDegree = new long[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            byDegree[v] = degreeKey(degree, v);
+        }
+        Arrays.sort(byDegree);
+        int[] order = new int[vertexCount];
+        if (strategy == Strategy.DEGREE) {
+            for (int i = 0; i < vertexCount; i++) {
+                order[i] = (int) byDegree[i];
+            }
+        } else {
+            breadthFirst(degree, sources, targets, size, byDegree, order);
+        }
+        return new VertexOrdering(strategy, order);
+    }
+
+    private static void breadthFirst(int[] degree, int[] sources, int[] targets, int size, long[] byDegree, int[] order) {
+        int vertexCount = degree.length;
+        int[] offsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] = offsets[v] + degree[v];
+        }
+        int[] neighbours = new int[offsets[vertexCount]];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < size; i++) {
+            neighbours[fill[sources[i]]++] = targets[i];
+            neighbours[fill[targets[i]]++] = sources[i];
+        }
+
+        boolean[] visited = new boolean[vertexCount];
+        long[] scratch = new long[16];
+        int head = 0;
+        int tail = 0;
+        for (long start : byDegree) {
+            int root = (int) start;
+            if (visited[root]) {
+                continue;
+            }
+            visited[root] = true;
+            order[tail++] = root;
+            while (head < tail) {
+                int vertex = order[head++];
+                int found = 0;
+                for (int i = offsets[vertex]; i < offsets[vertex + 1]; i++) {
+                    int next = neighbours[i];
+                    if (!visited[next]) {
+                        visited[next] = true;
+                        if (found == scratch.length) {
+                            scratch = Arrays.copyOf(scratch, found * 2);
+                        }
+                        scratch[found++] = degreeKey(degree, next);
+                    }
+                }
+                Arrays.sort(scratch, 0, found);
+                for (int i = 0; i < found; i++) {
+                    order[tail++] = (int) scratch[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Sort key placing higher degrees first and breaking ties by id.
+     */
+    private static long degreeKey(int[] degree, int vertex) {
+        return ((long) (Integer.MAX_VALUE - degree[vertex]) << 32) | vertex;
+    }
+
+    public Strategy strategy() {
+        return strategy;
+    }
+
+    /**
+     * Short tag telling orderings apart, for keying cached answers held in internal ids.
+     */
+    public String fingerprint() {
+        return strategy.name().toLowerCase(Locale.ROOT) + ":" + toOriginal.length + ":" + Integer.toHexString(fingerprint);
+    }
+
+    /**
+     * Number of permuted vertices.
+     */
+    public int size() {
+        return toOriginal.length;
+    }
+
+    public int internal(int original) {
+        return original < toInternal.length ? toInternal[original] : original;
+    }
+
+    public int original(int internal) {
+        return internal < toOriginal.length ? toOriginal[internal] : internal;
+    }
+
+    /**
+     * Maps {@code tuple} from internal back to original ids in place.
+     */
+    public void restore(int[] tuple) {
+        for (int i = 0; i < tuple.length; i++) {
+            tuple[i] = original(tuple[i]);
+        }
+    }
+
+    /**
+     * Sorted internal ids of the original vertices in {@code originals}.
+     */
+    int[] internalSet(int[] originals) {
+        int[] out = new int[originals.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = internal(originals[i]);
+        }
+        return SortedInts.sortedDistinct(out, out.length);
+    }
+
+    public static Path sidecarFor(Path indexFile) {
+        return indexFile.resolveSibling(indexFile.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Writes the ordering for the index file with {@code indexStamp} (see
+     * {@link CpqNativeIndex#indexStamp}); {@link #read} rejects it for any other index file.
+     */
+    public void write(Path file, String indexStamp) throws IOException {
+        Objects.requireNonNull(file, "file");
+        Objects.requireNonNull(indexStamp, "indexStamp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(indexStamp);
+            out.writeUTF(strategy.name());
+            out.writeInt(toOriginal.length);
+            for (int v : toOriginal) {
+                out.writeInt(v);
+            }
+        }
+    }
+
+    /**
+     * Reads an ordering written for the index file with {@code indexStamp}; one written for
+     * another index, or an earlier state of this one, is rejected with an {@link IOException}.
+     */
+    public static VertexOrdering read(Path file, String indexStamp) throws IOException {
+        Objects.requireNonNull(file, "file");
+        Objects.requireNonNull(indexStamp, "indexStamp");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a vertex ordering: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported vertex ordering version " + version + ": " + file);
+            }
+            if (!in.readUTF().equals(indexStamp)) {
+                throw new IOException("Vertex ordering was computed for a different index: " + file);
+            }
+            Strategy strategy = Strategy.valueOf(in.readUTF());
+            int[] toOriginal = new int[in.readInt()];
+            boolean[] seen = new boolean[toOriginal.length];
+            for (int i = 0; i < toOriginal.length; i++) {
+                int v = in.readInt();
+                if (v < 0 || v >= toOriginal.length || seen[v]) {
+                    throw new IOException("Vertex ordering is not a permutation: " + file);
+                }
+                seen[v] = true;
+                toOriginal[i] = v;
+            }
+            return new VertexOrdering(strategy, toOriginal);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ordering=" + strategy.name().toLowerCase(Locale.ROOT) + " vertices=" + toOriginal.length;
+    }
+}
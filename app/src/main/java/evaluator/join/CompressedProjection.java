@@ -0,0 +1,136 @@
+package evaluator.join;
+
+import evaluator.join.RelationBinding.RelationProjection;
+import java.util.Objects;
+
+/**
+ * Compressed counterpart of {@link RelationProjection}: the same two sorted adjacency structures,
+ * with keys and adjacency lists held as {@link PostingBlocks}, delta-encoded and bit-packed in
+ * blocks with skip pointers. Join cursors decode a block at a time and seek over the skip
+ * pointers, so large, dense relations take a fraction of the heap at some decoding cost. Keys are
+ * never split into heavy and light.
+ */
+public final class CompressedProjection {
+    private final Side forward;
+    private final Side reverse;
+
+    private CompressedProjection(Side forward, Side reverse) {
+        this.forward = forward;
+        this.reverse = reverse;
+    }
+
+    /**
+     * Builds the projection from the first {@code size} (source, target) pairs of two parallel
+     * columns. Duplicates are removed; vertex ids must be non-negative.
+     */
+    public static CompressedProjection fromPairs(int[] sources, int[] targets, int size) {
+        Objects.requireNonNull(sources, "sources");
+        Objects.requireNonNull(targets, "targets");
+        if (size < 0 || size > sources.length || size > targets.length) {
+            throw new IllegalArgumentException("size out of range: " + size);
+        }
+
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = RelationProjection.pack(sources[i], targets[i]);
+        }
+        int distinct = RelationProjection.sortDistinct(packed, size);
+        Side forward = Side.write(packed, distinct);
+
+        for (int i = 0; i < distinct; i++) {
+            packed[i] = RelationProjection.pack((int) packed[i], (int) (packed[i] >>> 32));
+        }
+        RelationProjection.sortDistinct(packed, distinct);
+        Side reverse = Side.write(packed, distinct);
+        return new CompressedProjection(forward, reverse);
+    }
+
+    public boolean isEmpty() {
+        return forward.keys.valueCount() == 0 || reverse.keys.valueCount() == 0;
+    }
+
+    /**
+     * Number of distinct (source, target) pairs.
+     */
+    public long size() {
+        return forward.lists.valueCount();
+    }
+
+    /**
+     * Heap bytes held by the compressed lists of both directions.
+     */
+    public long byteSize() {
+        return forward.byteSize() + reverse.byteSize();
+    }
+
+    /**
+     * Decodes the distinct sources.
+     */
+    public int[] allSources() {
+        return forward.keys.toArray(0);
+    }
+
+    public int[] allTargets() {
+        return reverse.keys.toArray(0);
+    }
+
+    public int[] targetsForSource(int source) {
+        return forward.valuesFor(source);
+    }
+
+    public int[] sourcesForTarget(int target) {
+        return reverse.valuesFor(target);
+    }
+
+    /**
+     * Trie over {@code variables}, read source to targets when {@code sourcesFirst} and target to
+     * sources otherwise, decoding blocks as the join reaches them.
+     */
+    RelationTrie trie(String[] variables, boolean sourcesFirst) {
+        Side side = sourcesFirst ? forward : reverse;
+        return RelationTrie.of(variables, side.keys, side.lists);
+    }
+
+    /**
+     * One direction: the sorted keys as a single list, and the values of the {@code i}-th key as
+     * list {@code i} of {@code lists}.
+     */
+    private record Side(PostingBlocks keys, PostingBlocks lists) {
+        static Side write(long[] packed, int size) {
+            int[] keys = new int[RelationProjection.countKeys(packed, size)];
+            int[] values = new int[PostingBlocks.BLOCK];
+            PostingBlocks.Builder lists = new PostingBlocks.Builder();
+            int key = 0;
+            for (int start = 0; start < size; key++) {
+                int end = start + 1;
+                while (end < size && (packed[end] >>> 32) == (packed[start] >>> 32)) {
+                    end++;
+                }
+                keys[key] = (int) (packed[start] >>> 32);
+                if (end - start > values.length) {
+                    values = new int[Math.max(end - start, values.length * 2)];
+                }
+                for (int i = start; i < end; i++) {
+                    values[i - start] = (int) packed[i];
+                }
+                lists.add(values, end - start);
+                start = end;
+            }
+            return new Side(PostingBlocks.of(keys, keys.length), lists.build());
+        }
+
+        long byteSize() {
+            return keys.byteSize() + lists.byteSize();
+        }
+
+        int[] valuesFor(int key) {
+            PostingBlocks.Cursor cursor = keys.cursor();
+            cursor.reset(0);
+            cursor.seek(key);
+            if (cursor.atEnd() || cursor.key() != key) {
+                return new int[0];
+            }
+            return lists.toArray(cursor.index());
+        }
+    }
+}
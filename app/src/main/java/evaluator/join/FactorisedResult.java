@@ -0,0 +1,368 @@
+package evaluator.join;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Join result kept as a trie of bindings in variable order: level {@code d} stores the values of
+ * the {@code d}-th variable, and the children of a node are a contiguous range of the next level.
+ * Shared prefixes are stored once, so high fan-out joins stay proportional to the number of trie
+ * nodes rather than the number of flat tuples. Every stored node has at least one complete tuple
+ * below it. The columns handed out ({@link #variables()}) may be a permutation of the levels
+ * ({@link #levelVariables()}); tuples are still visited in trie order.
+ */
+public final class FactorisedResult {
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
+
+    private final List<String> variables;
+    private final int[][] values;
+    private final int[][] firstChild;
+    private final int[] sizes;
+    private final boolean nullaryPresent;
+    /**
+     * Level holding each column, or {@code null} when columns are the levels in order.
+     */
+    private final int[] levelOfColumn;
+
+    private FactorisedResult(List<String> variables, int[][] values, int[][] firstChild, int[] sizes, boolean nullaryPresent) {
+        this(variables, values, firstChild, sizes, nullaryPresent, null);
+    }
+
+    private FactorisedResult(
+            List<String> variables, int[][] values, int[][] firstChild, int[] sizes, boolean nullaryPresent, int[] levelOfColumn) {
+        this.variables = List.copyOf(variables);
+        this.values = values;
+        this.firstChild = firstChild;
+        this.sizes = sizes;
+        this.nullaryPresent = nullaryPresent;
+        this.levelOfColumn = levelOfColumn;
+    }
+
+    public static FactorisedResult empty(List<String> variables) {
+        return new Builder(variables).build();
+    }
+
+    /**
+     * Builds a trie from lexicographically sorted, distinct tuples.
+     */
+    public static FactorisedResult fromSortedTuples(List<String> variables, int[][] tuples) {
+        Objects.requireNonNull(tuples, "tuples");
+        return fromSortedStream(variables, visitor -> {
+            for (int[] tuple : tuples) {
+                visitor.visit(tuple);
+            }
+        });
+    }
+
+    /**
+     * Builds a trie from {@code rows} tuples stored column-wise ({@code columns[c][r]}), sorted and
+     * distinct like the tuples of {@link #fromSortedTuples}.
+     */
+    public static FactorisedResult fromSortedColumns(List<String> variables, int[][] columns, int rows) {
+        Objects.requireNonNull(columns, "columns");
+        if (columns.length != variables.size()) {
+            throw new IllegalArgumentException("Expected " + variables.size() + " columns, got " + columns.length);
+        }
+        return fromSortedStream(variables, visitor -> {
+            int[] tuple = new int[columns.length];
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < columns.length; c++) {
+                    tuple[c] = columns[c][r];
+                }
+                visitor.visit(tuple);
+            }
+        });
+    }
+
+    /**
+     * Builds a trie from the lexicographically sorted tuples {@code producer} hands to its visitor;
+     * the producer may reuse its tuple buffer, and repeated tuples are skipped.
+     */
+    static FactorisedResult fromSortedStream(List<String> variables, Consumer<TupleVisitor> producer) {
+        Objects.requireNonNull(producer, "producer");
+        Builder builder = new Builder(variables);
+        int arity = variables.size();
+        if (arity == 0) {
+            boolean[] present = {false};
+            producer.accept(tuple -> {
+                present[0] = true;
+                return false;
+            });
+            return builder.nullary(present[0]);
+        }
+        int[] previous = new int[arity];
+        boolean[] first = {true};
+        producer.accept(tuple -> {
+            int level = 0;
+            if (!first[0]) {
+                while (level < arity && tuple[level] == previous[level]) {
+                    level++;
+                }
+                if (level == arity) {
+                    return true;
+                }
+            }
+            for (int d = level; d < arity; d++) {
+                builder.append(d, tuple[d]);
+            }
+            System.arraycopy(tuple, 0, previous, 0, arity);
+            first[0] = false;
+            return true;
+        });
+        return builder.build();
+    }
+
+    /**
+     * Column names, in the order {@link #forEach} fills tuples.
+     */
+    public List<String> variables() {
+        return variables;
+    }
+
+    /**
+     * Variables of the trie levels, outermost first; tuples are visited sorted by these.
+     */
+    public List<String> levelVariables() {
+        if (levelOfColumn == null) {
+            return variables;
+        }
+        String[] levels = new String[variables.size()];
+        for (int c = 0; c < levelOfColumn.length; c++) {
+            levels[levelOfColumn[c]] = variables.get(c);
+        }
+        return List.of(levels);
+    }
+
+    public boolean isEmpty() {
+        return count() == 0;
+    }
+
+    /**
+     * Number of flat tuples represented; every leaf is one distinct tuple.
+     */
+    public long count() {
+        if (variables.isEmpty()) {
+            return nullaryPresent ? 1 : 0;
+        }
+        return sizes[variables.size() - 1];
+    }
+
+    /**
+     * Number of distinct bindings of the first {@code prefixLength} {@link #levelVariables()}.
+     */
+    public long countDistinct(int prefixLength) {
+        Objects.checkIndex(prefixLength, variables.size() + 1);
+        if (prefixLength == 0) {
+            return isEmpty() ? 0 : 1;
+        }
+        return sizes[prefixLength - 1];
+    }
+
+    public int levelSize(int level) {
+        return sizes[Objects.checkIndex(level, variables.size())];
+    }
+
+    /**
+     * Total number of stored trie nodes; the flat form would need {@code count() * variables().size()}.
+     */
+    public long nodeCount() {
+        long total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Streams the flat tuples in trie order into {@code visitor}, reusing one buffer. Stops early
+     * and returns {@code false} when the visitor does.
+     */
+    public boolean forEach(TupleVisitor visitor) {
+        Objects.requireNonNull(visitor, "visitor");
+        int arity = variables.size();
+        if (arity == 0) {
+            return !nullaryPresent || visitor.visit(EMPTY_INT_ARRAY);
+        }
+        if (levelOfColumn != null) {
+            int[] columns = levelOfColumn;
+            int[] tuple = new int[arity];
+            TupleVisitor levels = visitor;
+            visitor = path -> {
+                for (int c = 0; c < columns.length; c++) {
+                    tuple[c] = path[columns[c]];
+                }
+                return levels.visit(tuple);
+            };
+        }
+        return walk(0, 0, sizes[0], new int[arity], visitor);
+    }
+
+    private boolean walk(int level, int from, int to, int[] tuple, TupleVisitor visitor) {
+        boolean leaf = level == variables.size() - 1;
+        for (int i = from; i < to; i++) {
+            tuple[level] = values[level][i];
+            boolean proceed = leaf
+                    ? visitor.visit(tuple)
+                    : walk(level + 1, firstChild[level][i], childEnd(level, i), tuple, visitor);
+            if (!proceed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int childEnd(int level, int node) {
+        return node + 1 < sizes[level] ? firstChild[level][node + 1] : sizes[level + 1];
+    }
+
+    /**
+     * Copy with every value {@code v} replaced by {@code mapping.applyAsInt(v)}, sharing the trie
+     * structure. Siblings keep their positions, so the copy is no longer sorted unless the mapping
+     * is monotone; it must be injective to keep tuples distinct.
+     */
+    public FactorisedResult mapValues(IntUnaryOperator mapping) {
+        Objects.requireNonNull(mapping, "mapping");
+        int[][] mapped = new int[values.length][];
+        for (int level = 0; level < values.length; level++) {
+            mapped[level] = new int[values[level].length];
+            for (int i = 0; i < sizes[level]; i++) {
+                mapped[level][i] = mapping.applyAsInt(values[level][i]);
+            }
+        }
+        return new FactorisedResult(variables, mapped, firstChild, sizes, nullaryPresent, levelOfColumn);
+    }
+
+    /**
+     * View of the same tuples with columns in the order of {@code order}, a permutation of
+     * {@link #variables()}, sharing the trie; tuples are still visited in trie order, so they are
+     * sorted by {@link #levelVariables()} rather than by the new columns.
+     */
+    public FactorisedResult reordered(List<String> order) {
+        Objects.requireNonNull(order, "order");
+        if (order.equals(variables)) {
+            return this;
+        }
+        if (order.size() != variables.size()) {
+            throw new IllegalArgumentException(order + " is not a permutation of " + variables);
+        }
+        int[] levels = new int[order.size()];
+        boolean[] seen = new boolean[variables.size()];
+        boolean identity = true;
+        for (int c = 0; c < levels.length; c++) {
+            int column = variables.indexOf(order.get(c));
+            if (column < 0 || seen[column]) {
+                throw new IllegalArgumentException(order + " is not a permutation of " + variables);
+            }
+            seen[column] = true;
+            levels[c] = levelOfColumn == null ? column : levelOfColumn[column];
+            identity &= levels[c] == c;
+        }
+        return new FactorisedResult(order, values, firstChild, sizes, nullaryPresent, identity ? null : levels);
+    }
+
+    /**
+     * Expands up to {@code limit} tuples (all of them when {@code limit < 0}).
+     */
+    public List<int[]> tuples(long limit) {
+        List<int[]> out = new ArrayList<>();
+        if (limit == 0) {
+            return out;
+        }
+        forEach(tuple -> {
+            out.add(tuple.clone());
+            return limit < 0 || out.size() < limit;
+        });
+        return out;
+    }
+
+    public List<Map<String, Integer>> toRows() {
+        return toRows(-1);
+    }
+
+    public List<Map<String, Integer>> toRows(long limit) {
+        List<Map<String, Integer>> out = new ArrayList<>();
+        for (int[] tuple : tuples(limit)) {
+            Map<String, Integer> row = new LinkedHashMap<>(variables.size());
+            for (int i = 0; i < tuple.length; i++) {
+                row.put(variables.get(i), tuple[i]);
+            }
+            out.add(row);
+        }
+        return out;
+    }
+
+    @FunctionalInterface
+    public interface TupleVisitor {
+        boolean visit(int[] tuple);
+    }
+
+    /**
+     * Appends nodes level by level in depth-first order, which keeps the children of every node
+     * contiguous in the next level.
+     */
+    static final class Builder {
+        private final List<String> variables;
+        private final int[][] values;
+        private final int[][] firstChild;
+        private final int[] sizes;
+
+        Builder(List<String> variables) {
+            this.variables = List.copyOf(Objects.requireNonNull(variables, "variables"));
+            int arity = this.variables.size();
+            this.values = new int[arity][];
+            this.firstChild = new int[Math.max(0, arity - 1)][];
+            this.sizes = new int[arity];
+            for (int d = 0; d < arity; d++) {
+                values[d] = new int[8];
+                if (d < arity - 1) {
+                    firstChild[d] = new int[8];
+                }
+            }
+        }
+
+        void append(int level, int value) {
+            int size = sizes[level];
+            if (size == values[level].length) {
+                values[level] = Arrays.copyOf(values[level], size * 2);
+                if (level < firstChild.length) {
+                    firstChild[level] = Arrays.copyOf(firstChild[level], size * 2);
+                }
+            }
+            values[level][size] = value;
+            if (level < firstChild.length) {
+                firstChild[level][size] = sizes[level + 1];
+            }
+            sizes[level] = size + 1;
+        }
+
+        /**
+         * Drops the node appended last on {@code level}; valid only once its subtree is empty again.
+         */
+        void removeLast(int level) {
+            sizes[level]--;
+        }
+
+        FactorisedResult nullary(boolean present) {
+            return new FactorisedResult(variables, values, firstChild, sizes, present);
+        }
+
+        FactorisedResult build() {
+            int arity = variables.size();
+            int[][] trimmedValues = new int[arity][];
+            int[][] trimmedChildren = new int[firstChild.length][];
+            for (int d = 0; d < arity; d++) {
+                trimmedValues[d] = Arrays.copyOf(values[d], sizes[d]);
+                if (d < firstChild.length) {
+                    trimmedChildren[d] = Arrays.copyOf(firstChild[d], sizes[d]);
+                }
+            }
+            return new FactorisedResult(variables, trimmedValues, trimmedChildren, sizes.clone(), false);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package evaluator.join;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Membership structure for the adjacency list of a heavy (high-degree) key. Dense lists are kept
+ * as a bitmap over their value range, so probing a hub's neighbours is a single word lookup; lists
+ * too sparse for a bitmap to pay off fall back to binary search over the sorted values.
+ */
+final class HeavyAdjacency {
+    private final int[] values;
+    private final int base;
+    private final long[] bits;
+
+    private HeavyAdjacency(int[] values, int base, long[] bits) {
+        this.values = values;
+        this.base = base;
+        this.bits = bits;
+    }
+
+    /**
+     * Wraps a sorted, duplicate-free list. A bitmap is built when it takes no more memory than the
+     * list itself.
+     */
+    static HeavyAdjacency of(int[] sorted) {
+        Objects.requireNonNull(sorted, "sorted");
+        if (sorted.length == 0) {
+            return new HeavyAdjacency(sorted, 0, null);
+        }
+        int base = sorted[0];
+        long words = (((long) sorted[sorted.length - 1] - base) >>> 6) + 1;
+        if (words > sorted.length / 2) {
+            return new HeavyAdjacency(sorted, base, null);
+        }
+        long[] bits = new long[(int) words];
+        for (int value : sorted) {
+            int offset = value - base;
+            bits[offset >>> 6] |= 1L << offset;
+        }
+        return new HeavyAdjacency(sorted, base, bits);
+    }
+
+    boolean contains(int value) {
+        if (bits == null) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+        long offset = (long) value - base;
+        if (offset < 0 || (offset >>> 6) >= bits.length) {
+            return false;
+        }
+        return (bits[(int) (offset >>> 6)] & (1L << offset)) != 0;
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    boolean isBitmap() {
+        return bits != null;
+    }
+}
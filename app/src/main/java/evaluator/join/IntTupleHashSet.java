@@ -0,0 +1,89 @@
+package evaluator.join;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing set of fixed-arity int tuples stored in one flat array, so deduplicating
+ * projected bindings does not allocate a boxed list per row.
+ */
+final class IntTupleHashSet {
+    private static final int EMPTY = -1;
+
+    private final int arity;
+    private int[] tuples;
+    private int[] slots;
+    private int size;
+
+    IntTupleHashSet(int arity) {
+        if (arity < 1) {
+            throw new IllegalArgumentException("arity must be >= 1");
+        }
+        this.arity = arity;
+        this.tuples = new int[arity * 16];
+        this.slots = new int[32];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a copy of {@code tuple[0..arity)}; returns {@code false} if an equal tuple was already present.
+     */
+    boolean add(int[] tuple) {
+        if ((size + 1) * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash(tuple, 0) & mask; ; slot = (slot + 1) & mask) {
+            int idx = slots[slot];
+            if (idx == EMPTY) {
+                if ((size + 1) * arity > tuples.length) {
+                    tuples = Arrays.copyOf(tuples, tuples.length * 2);
+                }
+                System.arraycopy(tuple, 0, tuples, size * arity, arity);
+                slots[slot] = size++;
+                return true;
+            }
+            if (Arrays.equals(tuples, idx * arity, idx * arity + arity, tuple, 0, arity)) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Copies the stored tuples out in lexicographic order.
+     */
+    int[][] toSortedTuples() {
+        int[][] out = new int[size][];
+        for (int idx = 0; idx < size; idx++) {
+            out[idx] = Arrays.copyOfRange(tuples, idx * arity, idx * arity + arity);
+        }
+        Arrays.sort(out, Arrays::compare);
+        return out;
+    }
+
+    private void rehash(int capacity) {
+        int[] next = new int[capacity];
+        Arrays.fill(next, EMPTY);
+        int mask = capacity - 1;
+        for (int idx = 0; idx < size; idx++) {
+            int slot = hash(tuples, idx * arity) & mask;
+            while (next[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            next[slot] = idx;
+        }
+        slots = next;
+    }
+
+    private int hash(int[] data, int offset) {
+        int h = 1;
+        for (int i = 0; i < arity; i++) {
+            h = 31 * h + data[offset + i];
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
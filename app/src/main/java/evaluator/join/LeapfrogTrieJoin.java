@@ -1,192 +1,669 @@
 package evaluator.join;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public final class LeapfrogTrieJoin {
+    private static final long SPILL_BYTES = Long.getLong("cpq.join.spillBytes", 0L);
+    private static final Path SPILL_DIRECTORY = Path.of(System.getProperty("cpq.join.spillDir", System.getProperty("java.io.tmpdir")));
+
     private LeapfrogTrieJoin() {
     }
 
+    /**
+     * Memory budget for deduplicating projected tuples before they spill to sorted run files, from
+     * the {@code cpq.join.spillBytes} system property; {@code 0} (the default) keeps dedup in
+     * memory.
+     */
+    public static long spillBudgetBytes() {
+        return SPILL_BYTES;
+    }
+
+    /**
+     * Directory for spilled runs, from {@code cpq.join.spillDir} (the temp directory by default).
+     */
+    public static Path spillDirectory() {
+        return SPILL_DIRECTORY;
+    }
+
     public static List<Map<String, Integer>> join(List<RelationBinding> relations, List<String> variableOrder) {
         Objects.requireNonNull(relations, "relations");
         if (relations.isEmpty()) {
             return List.of();
         }
 
-        Map<String, List<RelationBinding>> bindingsByVar = new HashMap<>();
-        for (RelationBinding binding : relations) {
-            binding.register(bindingsByVar);
-        }
-
-        List<String> order = (variableOrder == null || variableOrder.isEmpty())
-                ? bindingsByVar.keySet().stream()
-                .sorted(
-                        Comparator.comparingInt((String var) -> bindingsByVar.get(var).size())
-                                .reversed()
-                                .thenComparing(Comparator.naturalOrder()))
-                .toList()
-                : variableOrder;
-
+        Plan plan = Plan.of(relations, variableOrder);
+        List<String> order = plan.order();
         List<Map<String, Integer>> results = new ArrayList<>();
-        search(order, 0, bindingsByVar, new LinkedHashMap<>(), results);
+        search(plan, 0, order.size(), values -> {
+            Map<String, Integer> row = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                row.put(order.get(i), values[i]);
+            }
+            results.add(row);
+            return true;
+        });
         return results;
     }
 
-    private static void search(
-            List<String> order,
-            int depth,
-            Map<String, List<RelationBinding>> bindings,
-            Map<String, Integer> assignment,
-            List<Map<String, Integer>> results) {
+    /**
+     * Joins into a {@link FactorisedResult} over the full variable order.
+     */
+    public static FactorisedResult joinFactorised(List<RelationBinding> relations, List<String> variableOrder) {
+        Objects.requireNonNull(relations, "relations");
+        if (relations.isEmpty()) {
+            return FactorisedResult.empty(List.of());
+        }
+        Plan plan = Plan.of(relations, variableOrder);
+        return joinFactorised(plan, plan.order().size());
+    }
 
-        if (depth == order.size()) {
-            results.add(new LinkedHashMap<>(assignment));
-            return;
+    /**
+     * Returns the distinct bindings of {@code projection} in factorised form, with columns in
+     * projection order. When the projected variables form a prefix of the variable order the trie
+     * is built directly over that prefix in the planned order, with the remaining variables only
+     * checked for existence, and its columns are viewed in projection order (see
+     * {@link FactorisedResult#reordered}); otherwise the flat join is deduplicated first,
+     * spilling to disk past {@link #spillBudgetBytes()}.
+     */
+    public static FactorisedResult joinProjected(List<RelationBinding> relations, List<String> variableOrder, List<String> projection) {
+        Objects.requireNonNull(relations, "relations");
+        Objects.requireNonNull(projection, "projection");
+        if (relations.isEmpty()) {
+            return FactorisedResult.empty(projection);
         }
 
-        String variable = order.get(depth);
-        List<RelationBinding> constraints = bindings.getOrDefault(variable, List.of());
-        if (constraints.isEmpty()) {
-            return;
+        Plan plan = Plan.of(relations, variableOrder);
+        int prefix = prefixLength(plan, projection);
+        if (prefix >= 0) {
+            // the join keeps the planned order; only the columns handed out follow the projection
+            return joinFactorised(plan, prefix).reordered(projection);
         }
 
-        List<IntCursor> cursors = new ArrayList<>(constraints.size());
-        for (RelationBinding binding : constraints) {
-            int[] domain = binding.domainFor(variable, assignment);
-            if (domain.length == 0) {
-                return;
+        if (SPILL_BYTES > 0) {
+            try (SpillingTupleBuffer spilled = new SpillingTupleBuffer(projection.size(), SPILL_BYTES, SPILL_DIRECTORY)) {
+                project(plan, projection, spilled);
+                return FactorisedResult.fromSortedStream(projection, spilled::forEachDistinct);
             }
-            cursors.add(new IntCursor(domain));
         }
+        IntTupleHashSet seen = distinctTuples(plan, projection);
+        return FactorisedResult.fromSortedTuples(projection, seen.toSortedTuples());
+    }
 
-        LeapfrogIterator iterator = new LeapfrogIterator(cursors);
-        iterator.init();
-        while (!iterator.atEnd()) {
-            assignment.put(variable, iterator.key());
-            search(order, depth + 1, bindings, assignment, results);
-            assignment.remove(variable);
-            iterator.next();
+    /**
+     * Adds the bindings of {@code projection} to {@code out}, which deduplicates them by external
+     * merge, so projections of any size complete within the buffer's memory budget. When the
+     * projected variables are a prefix of the order each binding is added only once.
+     */
+    public static void projectInto(List<RelationBinding> relations, List<String> variableOrder, List<String> projection, SpillingTupleBuffer out) {
+        Objects.requireNonNull(relations, "relations");
+        Objects.requireNonNull(projection, "projection");
+        Objects.requireNonNull(out, "out");
+        if (projection.size() != out.arity()) {
+            throw new IllegalArgumentException("Buffer arity " + out.arity() + " does not match projection " + projection);
+        }
+        if (!relations.isEmpty()) {
+            project(Plan.of(relations, variableOrder), projection, out);
         }
     }
 
-    private static final class LeapfrogIterator {
-        private final List<IntCursor> cursors;
-        private int p = 0;
-        private boolean atEnd = false;
+    private static void project(Plan plan, List<String> projection, SpillingTupleBuffer out) {
+        int[] tuple = new int[projection.size()];
+        int[] columns = plan.positionsOf(projection);
+        int prefix = prefixLength(plan, projection);
+        int end = prefix >= 0 ? prefix : plan.order().size();
+        search(plan, 0, end, values -> {
+            if (prefix >= 0 && !exists(plan, prefix)) {
+                return true;
+            }
+            for (int i = 0; i < tuple.length; i++) {
+                tuple[i] = values[columns[i]];
+            }
+            out.add(tuple);
+            return true;
+        });
+    }
+
+    /**
+     * Streams the distinct bindings of {@code projection}, in projection order, into
+     * {@code visitor} without collecting them. The projected variables are moved to the front of
+     * the variable order when they are not already a prefix, so every projected binding is
+     * produced once and no deduplication set is needed. Returns {@code false} if the visitor
+     * stopped early.
+     */
+    public static boolean forEachDistinct(
+            List<RelationBinding> relations,
+            List<String> variableOrder,
+            List<String> projection,
+            FactorisedResult.TupleVisitor visitor) {
+
+        Objects.requireNonNull(relations, "relations");
+        Objects.requireNonNull(projection, "projection");
+        Objects.requireNonNull(visitor, "visitor");
+        if (relations.isEmpty()) {
+            return true;
+        }
 
-        LeapfrogIterator(List<IntCursor> cursors) {
-            this.cursors = Objects.requireNonNull(cursors, "cursors");
-            if (cursors.isEmpty()) {
-                throw new IllegalArgumentException("cursors must not be empty");
+        Plan plan = Plan.of(relations, variableOrder);
+        int prefix = prefixLength(plan, projection);
+        if (prefix < 0) {
+            List<String> order = new ArrayList<>(projection);
+            for (String v : plan.order()) {
+                if (!projection.contains(v)) {
+                    order.add(v);
+                }
             }
+            plan = Plan.of(relations, order);
+            prefix = projection.size();
         }
 
-        void init() {
-            cursors.sort(Comparator.comparingInt(IntCursor::key));
-            p = 0;
-            leapfrogSearch();
+        Plan finalPlan = plan;
+        int end = prefix;
+        int[] tuple = new int[projection.size()];
+        int[] columns = plan.positionsOf(projection);
+        return search(plan, 0, prefix, values -> {
+            if (!exists(finalPlan, end)) {
+                return true;
+            }
+            for (int i = 0; i < tuple.length; i++) {
+                tuple[i] = values[columns[i]];
+            }
+            return visitor.visit(tuple);
+        });
+    }
+
+    private static FactorisedResult joinFactorised(Plan plan, int depth) {
+        List<String> variables = plan.order().subList(0, depth);
+        FactorisedResult.Builder builder = new FactorisedResult.Builder(variables);
+        if (depth == 0) {
+            return builder.nullary(exists(plan, 0));
         }
+        buildTrie(plan, 0, depth, builder);
+        return builder.build();
+    }
 
-        boolean atEnd() {
-            return atEnd;
+    /**
+     * Appends the bindings of {@code order[depth..end)} to the trie, removing nodes again whose
+     * subtree turned out empty. Returns whether anything was kept.
+     */
+    private static boolean buildTrie(Plan plan, int depth, int end, FactorisedResult.Builder builder) {
+        Level level = plan.level(depth);
+        if (!level.open()) {
+            return false;
         }
 
-        int key() {
-            if (atEnd) {
-                throw new IllegalStateException("atEnd");
+        boolean leaf = depth == end - 1;
+        boolean complete = end == plan.order().size();
+        boolean any = false;
+        for (; !level.atEnd(); level.next()) {
+            builder.append(depth, level.key());
+            if (leaf && complete) {
+                any = true;
+                continue;
+            }
+            boolean kept = leaf ? exists(plan, end) : buildTrie(plan, depth + 1, end, builder);
+            if (kept) {
+                any = true;
+            } else {
+                builder.removeLast(depth);
             }
-            return cursors.get(p).key();
         }
+        level.close();
+        return any;
+    }
 
-        void next() {
-            if (atEnd) {
-                return;
-            }
-            cursors.get(p).next();
-            p = (p + 1) % cursors.size();
-            leapfrogSearch();
+    /**
+     * Returns whether the join has at least one complete binding, stopping at the first one found.
+     */
+    public static boolean exists(List<RelationBinding> relations, List<String> variableOrder) {
+        Objects.requireNonNull(relations, "relations");
+        if (relations.isEmpty()) {
+            return false;
         }
 
-        private void leapfrogSearch() {
-            while (true) {
-                IntCursor max = maxCursor();
-                int maxKey = max.key();
+        Plan plan = Plan.of(relations, variableOrder);
+        return exists(plan, 0);
+    }
 
-                IntCursor cur = cursors.get(p);
-                cur.seek(maxKey);
-                if (cur.atEnd()) {
-                    atEnd = true;
-                    return;
-                }
+    /**
+     * Counts the distinct bindings of {@code projection} without materialising rows. When the
+     * projected variables form a prefix of the variable order, each prefix binding is counted once
+     * as soon as one completion exists; otherwise projected tuples are deduplicated in a primitive
+     * hash set, or by external merge when {@link #spillBudgetBytes()} is set.
+     */
+    public static long count(List<RelationBinding> relations, List<String> variableOrder, List<String> projection) {
+        Objects.requireNonNull(relations, "relations");
+        Objects.requireNonNull(projection, "projection");
+        if (relations.isEmpty()) {
+            return 0;
+        }
 
-                if (cur.key() == maxKey) {
-                    IntCursor min = minCursor();
-                    if (min.key() == maxKey) {
-                        return;
-                    }
-                    p = cursors.indexOf(min);
-                } else {
-                    p = (p + 1) % cursors.size();
-                }
+        Plan plan = Plan.of(relations, variableOrder);
+        List<String> order = plan.order();
+        if (projection.isEmpty()) {
+            return exists(plan, 0) ? 1 : 0;
+        }
+
+        int prefix = prefixLength(plan, projection);
+        if (prefix < 0 && SPILL_BYTES > 0) {
+            try (SpillingTupleBuffer spilled = new SpillingTupleBuffer(projection.size(), SPILL_BYTES, SPILL_DIRECTORY)) {
+                project(plan, projection, spilled);
+                return spilled.countDistinct();
             }
         }
+        if (prefix < 0) {
+            return distinctTuples(plan, projection).size();
+        }
 
-        private IntCursor maxCursor() {
-            IntCursor max = cursors.get(0);
-            for (int i = 1; i < cursors.size(); i++) {
-                IntCursor c = cursors.get(i);
-                if (c.key() > max.key()) {
-                    max = c;
+        long[] count = {0};
+        if (prefix == order.size()) {
+            search(plan, 0, prefix - 1, values -> {
+                count[0] += countKeys(plan.level(prefix - 1));
+                return true;
+            });
+        } else {
+            search(plan, 0, prefix, values -> {
+                if (exists(plan, prefix)) {
+                    count[0]++;
                 }
+                return true;
+            });
+        }
+        return count[0];
+    }
+
+    /**
+     * Returns {@code k} if the projected variables are exactly the first {@code k} variables of
+     * the order, or {@code -1} if they are not a prefix.
+     */
+    private static int prefixLength(Plan plan, List<String> projection) {
+        Set<String> projected = new HashSet<>(projection);
+        List<String> order = plan.order();
+        for (String v : projected) {
+            if (!order.contains(v)) {
+                throw new IllegalArgumentException("Projected variable " + v + " is not bound by any relation");
             }
-            return max;
+        }
+        int prefix = projected.size();
+        return projected.equals(new HashSet<>(order.subList(0, prefix))) ? prefix : -1;
+    }
+
+    private static IntTupleHashSet distinctTuples(Plan plan, List<String> projection) {
+        IntTupleHashSet seen = new IntTupleHashSet(projection.size());
+        int[] tuple = new int[projection.size()];
+        int[] columns = plan.positionsOf(projection);
+        search(plan, 0, plan.order().size(), values -> {
+            for (int i = 0; i < tuple.length; i++) {
+                tuple[i] = values[columns[i]];
+            }
+            seen.add(tuple);
+            return true;
+        });
+        return seen;
+    }
+
+    /**
+     * Returns whether the variables {@code order[depth..]} can be bound given the iterators'
+     * current positions.
+     */
+    private static boolean exists(Plan plan, int depth) {
+        if (depth == plan.order().size()) {
+            return true;
+        }
+        Level level = plan.level(depth);
+        if (!level.open()) {
+            return false;
+        }
+        boolean found = false;
+        while (!found && !level.atEnd()) {
+            found = exists(plan, depth + 1);
+            level.next();
+        }
+        level.close();
+        return found;
+    }
+
+    private static long countKeys(Level level) {
+        if (!level.open()) {
+            return 0;
+        }
+        long count = 0;
+        for (; !level.atEnd(); level.next()) {
+            count++;
+        }
+        level.close();
+        return count;
+    }
+
+    /**
+     * Binds variables {@code order[depth..end)} and hands the bindings, indexed by position in the
+     * order, to the visitor. Returns {@code false} once the visitor asked to stop; the iterators
+     * are back at {@code depth} either way.
+     */
+    private static boolean search(Plan plan, int depth, int end, Visitor visitor) {
+        if (depth == end) {
+            return visitor.visit(plan.values);
+        }
+
+        Level level = plan.level(depth);
+        if (!level.open()) {
+            return true;
+        }
+        boolean proceed = true;
+        for (; proceed && !level.atEnd(); level.next()) {
+            plan.values[depth] = level.key();
+            proceed = search(plan, depth + 1, end, visitor);
+        }
+        level.close();
+        return proceed;
+    }
+
+    @FunctionalInterface
+    private interface Visitor {
+        /**
+         * @param values the current binding of each variable, by position in the order; only the
+         *     searched prefix is meaningful and the array is reused
+         */
+        boolean visit(int[] values);
+    }
+
+    /**
+     * Per-join state: one trie iterator per relation, and for every depth of the variable order
+     * the iterators whose next level binds that variable. Everything the search touches is
+     * allocated here, once.
+     */
+    private static final class Plan {
+        private final List<String> order;
+        private final Level[] levels;
+        final int[] values;
+
+        private Plan(List<String> order, Level[] levels) {
+            this.order = order;
+            this.levels = levels;
+            this.values = new int[order.size()];
         }
 
-        private IntCursor minCursor() {
-            IntCursor min = cursors.get(0);
-            for (int i = 1; i < cursors.size(); i++) {
-                IntCursor c = cursors.get(i);
-                if (c.key() < min.key()) {
-                    min = c;
+        static Plan of(List<RelationBinding> relations, List<String> variableOrder) {
+            Map<String, List<RelationBinding>> bindingsByVar = new HashMap<>();
+            for (RelationBinding binding : relations) {
+                binding.register(bindingsByVar);
+            }
+
+            List<String> order = (variableOrder == null || variableOrder.isEmpty())
+                    ? bindingsByVar.keySet().stream()
+                    .sorted(
+                            Comparator.comparingInt((String var) -> bindingsByVar.get(var).size())
+                                    .reversed()
+                                    .thenComparing(Comparator.naturalOrder()))
+                    .toList()
+                    : variableOrder;
+
+            List<List<RelationTrie>> participants = new ArrayList<>(order.size());
+            for (int d = 0; d < order.size(); d++) {
+                participants.add(new ArrayList<>());
+            }
+            for (RelationBinding binding : relations) {
+                RelationTrie trie = binding.trie(order);
+                for (int l = 0; l < trie.levels(); l++) {
+                    int depth = order.indexOf(trie.variable(l));
+                    if (depth < 0) {
+                        break;
+                    }
+                    participants.get(depth).add(trie);
                 }
             }
-            return min;
+            Level[] levels = new Level[order.size()];
+            for (int d = 0; d < levels.length; d++) {
+                levels[d] = new Level(participants.get(d).toArray(RelationTrie[]::new));
+            }
+            return new Plan(order, levels);
+        }
+
+        List<String> order() {
+            return order;
+        }
+
+        Level level(int depth) {
+            return levels[depth];
+        }
+
+        int[] positionsOf(List<String> variables) {
+            int[] positions = new int[variables.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = order.indexOf(variables.get(i));
+            }
+            return positions;
         }
     }
 
-    private static final class IntCursor {
-        private final int[] data;
-        private int pos;
+    /**
+     * Leapfrog intersection of one variable's trie levels. Adjacency lists of heavy keys are not
+     * scanned: the smallest list and all light ones are leapfrogged, and each candidate is probed
+     * against the heavy lists. The keys produced are the same as a plain leapfrog over every list.
+     *
+     * <p>Two or three heap lists of comparable length are instead intersected at once by the SIMD
+     * kernel into a buffer reused across bindings; the cursors are then only moved to each key
+     * when a deeper level still has to open below it. Very uneven lists keep the galloping
+     * leapfrog, which touches only about the shorter list.
+     */
+    private static final class Level {
+        /**
+         * Largest length ratio between the longest and shortest list handed to the SIMD kernel.
+         */
+        private static final long VECTOR_MAX_SKEW = 32;
+
+        private final RelationTrie[] participants;
+        private final RelationTrie[] cursors;
+        private final HeavyAdjacency[] probes;
+        private int size;
+        private int probeCount;
+        private int p;
+        private boolean atEnd;
+        private boolean materialised;
+        private boolean reposition;
+        private int[] buffer = new int[0];
+        private int[] scratch = new int[0];
+        private int bufferSize;
+        private int bufferPos;
+
+        Level(RelationTrie[] participants) {
+            this.participants = participants;
+            this.cursors = new RelationTrie[participants.length];
+            this.probes = new HeavyAdjacency[participants.length];
+        }
+
+        /**
+         * Opens every participant and positions at the first common key. Returns {@code false},
+         * with the participants closed again, when the level has no participants or one of them
+         * is empty.
+         */
+        boolean open() {
+            if (participants.length == 0) {
+                return false;
+            }
+            for (RelationTrie trie : participants) {
+                trie.open();
+            }
+            int smallest = 0;
+            for (int i = 0; i < participants.length; i++) {
+                if (participants[i].atEnd()) {
+                    close();
+                    return false;
+                }
+                if (participants[i].remaining() < participants[smallest].remaining()) {
+                    smallest = i;
+                }
+            }
+
+            size = 0;
+            probeCount = 0;
+            for (int i = 0; i < participants.length; i++) {
+                RelationTrie trie = participants[i];
+                HeavyAdjacency heavy = i == smallest ? null : trie.heavy();
+                if (heavy != null) {
+                    probes[probeCount++] = heavy;
+                    continue;
+                }
+                int key = trie.key();
+                int j = size++;
+                while (j > 0 && cursors[j - 1].key() > key) {
+                    cursors[j] = cursors[j - 1];
+                    j--;
+                }
+                cursors[j] = trie;
+            }
+            atEnd = false;
+            materialised = materialise();
+            if (materialised) {
+                bufferPos = 0;
+                atEnd = bufferSize == 0;
+            } else {
+                p = 0;
+                leapfrogSearch();
+            }
+            skipMisses();
+            align();
+            return true;
+        }
 
-        IntCursor(int[] data) {
-            this.data = Objects.requireNonNull(data, "data");
-            this.pos = 0;
+        void close() {
+            for (RelationTrie trie : participants) {
+                trie.up();
+            }
         }
 
         boolean atEnd() {
-            return pos >= data.length;
+            return atEnd;
         }
 
         int key() {
-            if (atEnd()) {
-                return Integer.MAX_VALUE;
-            }
-            return data[pos];
+            return materialised ? buffer[bufferPos] : cursors[p].key();
         }
 
         void next() {
-            pos++;
+            advance();
+            skipMisses();
+            align();
+        }
+
+        /**
+         * Intersects the cursors with the SIMD kernel when there are two or three heap lists of
+         * comparable length; returns whether it did.
+         */
+        private boolean materialise() {
+            if ((size != 2 && size != 3) || !SortedIntersection.vectorised()) {
+                return false;
+            }
+            long shortest = Long.MAX_VALUE;
+            long longest = 0;
+            reposition = false;
+            for (int i = 0; i < size; i++) {
+                RelationTrie cursor = cursors[i];
+                if (cursor.levelSlice() == null) {
+                    return false;
+                }
+                shortest = Math.min(shortest, cursor.remaining());
+                longest = Math.max(longest, cursor.remaining());
+                reposition |= cursor.depth() + 1 < cursor.levels();
+            }
+            if (longest > shortest * VECTOR_MAX_SKEW) {
+                return false;
+            }
+
+            RelationTrie.Slice a = cursors[0].levelSlice();
+            RelationTrie.Slice b = cursors[1].levelSlice();
+            long pairBound = Math.min(cursors[0].remaining(), cursors[1].remaining());
+            if (buffer.length < pairBound) {
+                buffer = new int[(int) Math.max(pairBound, 2L * buffer.length)];
+            }
+            bufferSize = SortedIntersection.intersect(
+                    a.values(), a.from(), a.end(),
+                    b.values(), b.from(), b.end(),
+                    buffer);
+            if (size == 3 && bufferSize > 0) {
+                if (scratch.length < bufferSize) {
+                    scratch = new int[Math.max(bufferSize, 2 * scratch.length)];
+                }
+                RelationTrie.Slice c = cursors[2].levelSlice();
+                bufferSize = SortedIntersection.intersect(
+                        buffer, 0, bufferSize, c.values(), c.from(), c.end(), scratch);
+                int[] swap = buffer;
+                buffer = scratch;
+                scratch = swap;
+            }
+            return true;
+        }
+
+        private void advance() {
+            if (materialised) {
+                atEnd = ++bufferPos >= bufferSize;
+                return;
+            }
+            RelationTrie cursor = cursors[p];
+            cursor.next();
+            if (cursor.atEnd()) {
+                atEnd = true;
+                return;
+            }
+            p = p + 1 == size ? 0 : p + 1;
+            leapfrogSearch();
+        }
+
+        /**
+         * Moves the cursors of a materialised level onto the current key, so deeper levels open
+         * the right children.
+         */
+        private void align() {
+            if (materialised && reposition && !atEnd) {
+                int key = buffer[bufferPos];
+                for (int i = 0; i < size; i++) {
+                    cursors[i].seek(key);
+                }
+            }
         }
 
-        void seek(int target) {
-            while (!atEnd() && key() < target) {
-                pos++;
+        /**
+         * Cursors are kept in cyclic key order starting at {@code p}, so the one before {@code p}
+         * holds the largest key; seeks the smallest up to it until all keys agree.
+         */
+        private void leapfrogSearch() {
+            int maxKey = cursors[p == 0 ? size - 1 : p - 1].key();
+            while (true) {
+                RelationTrie cursor = cursors[p];
+                if (cursor.key() == maxKey) {
+                    return;
+                }
+                cursor.seek(maxKey);
+                if (cursor.atEnd()) {
+                    atEnd = true;
+                    return;
+                }
+                maxKey = cursor.key();
+                p = p + 1 == size ? 0 : p + 1;
+            }
+        }
+
+        private void skipMisses() {
+            while (!atEnd && !containedInHeavy(key())) {
+                advance();
+            }
+        }
+
+        private boolean containedInHeavy(int key) {
+            for (int i = 0; i < probeCount; i++) {
+                if (!probes[i].contains(key)) {
+                    return false;
+                }
             }
+            return true;
         }
     }
 }
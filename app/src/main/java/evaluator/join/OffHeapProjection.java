@@ -0,0 +1,162 @@
+package evaluator.join;
+
+import evaluator.join.RelationBinding.RelationProjection;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+/**
+ * Off-heap counterpart of {@link RelationProjection}: the same two sorted adjacency structures,
+ * stored in compressed sparse row form (keys, offsets, values) in segments of a caller-supplied
+ * {@link Arena}. The projection is valid until that arena is closed, which frees it at once
+ * instead of leaving it to the garbage collector. Keys are never split into heavy and light.
+ */
+public final class OffHeapProjection {
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+
+    private final Side forward;
+    private final Side reverse;
+
+    private OffHeapProjection(Side forward, Side reverse) {
+        this.forward = forward;
+        this.reverse = reverse;
+    }
+
+    /**
+     * Builds the projection from the first {@code size} (source, target) pairs of two parallel
+     * columns into {@code arena}. Duplicates are removed; vertex ids must be non-negative.
+     */
+    public static OffHeapProjection fromPairs(Arena arena, int[] sources, int[] targets, int size) {
+        Objects.requireNonNull(arena, "arena");
+        Objects.requireNonNull(sources, "sources");
+        Objects.requireNonNull(targets, "targets");
+        if (size < 0 || size > sources.length || size > targets.length) {
+            throw new IllegalArgumentException("size out of range: " + size);
+        }
+
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = RelationProjection.pack(sources[i], targets[i]);
+        }
+        int distinct = RelationProjection.sortDistinct(packed, size);
+        Side forward = Side.write(arena, packed, distinct);
+
+        for (int i = 0; i < distinct; i++) {
+            packed[i] = RelationProjection.pack((int) packed[i], (int) (packed[i] >>> 32));
+        }
+        RelationProjection.sortDistinct(packed, distinct);
+        Side reverse = Side.write(arena, packed, distinct);
+        return new OffHeapProjection(forward, reverse);
+    }
+
+    public boolean isEmpty() {
+        return forward.keyCount == 0 || reverse.keyCount == 0;
+    }
+
+    /**
+     * Number of distinct (source, target) pairs.
+     */
+    public long size() {
+        return forward.valueCount();
+    }
+
+    /**
+     * Bytes held off-heap by this projection.
+     */
+    public long byteSize() {
+        return forward.byteSize() + reverse.byteSize();
+    }
+
+    /**
+     * Copies the distinct sources onto the heap.
+     */
+    public int[] allSources() {
+        return forward.keys.toArray(INT);
+    }
+
+    public int[] allTargets() {
+        return reverse.keys.toArray(INT);
+    }
+
+    public int[] targetsForSource(int source) {
+        return forward.valuesFor(source);
+    }
+
+    public int[] sourcesForTarget(int target) {
+        return reverse.valuesFor(target);
+    }
+
+    /**
+     * Trie over {@code variables}, read source to targets when {@code sourcesFirst} and target to
+     * sources otherwise; segments are read in place.
+     */
+    RelationTrie trie(String[] variables, boolean sourcesFirst) {
+        Side side = sourcesFirst ? forward : reverse;
+        return RelationTrie.of(variables, side.keys, side.keyCount, side.offsets, side.values);
+    }
+
+    /**
+     * One direction in CSR form: the values of {@code keys[i]} are
+     * {@code values[offsets[i] .. offsets[i + 1])}.
+     */
+    private record Side(MemorySegment keys, MemorySegment offsets, MemorySegment values, int keyCount) {
+        static Side write(Arena arena, long[] packed, int size) {
+            int keyCount = RelationProjection.countKeys(packed, size);
+            MemorySegment keys = allocateInts(arena, keyCount);
+            MemorySegment offsets = allocateInts(arena, keyCount + 1L);
+            MemorySegment values = allocateInts(arena, size);
+            int key = -1;
+            for (int i = 0; i < size; i++) {
+                int high = (int) (packed[i] >>> 32);
+                if (key < 0 || keys.getAtIndex(INT, key) != high) {
+                    key++;
+                    keys.setAtIndex(INT, key, high);
+                    offsets.setAtIndex(INT, key, i);
+                }
+                values.setAtIndex(INT, i, (int) packed[i]);
+            }
+            offsets.setAtIndex(INT, keyCount, size);
+            return new Side(keys, offsets, values, keyCount);
+        }
+
+        long valueCount() {
+            return values.byteSize() / Integer.BYTES;
+        }
+
+        long byteSize() {
+            return keys.byteSize() + offsets.byteSize() + values.byteSize();
+        }
+
+        int[] valuesFor(int key) {
+            int idx = indexOf(key);
+            if (idx < 0) {
+                return new int[0];
+            }
+            long from = offsets.getAtIndex(INT, idx);
+            long to = offsets.getAtIndex(INT, idx + 1L);
+            return values.asSlice(from * Integer.BYTES, (to - from) * Integer.BYTES).toArray(INT);
+        }
+
+        private int indexOf(int key) {
+            int lo = 0;
+            int hi = keyCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int value = keys.getAtIndex(INT, mid);
+                if (value < key) {
+                    lo = mid + 1;
+                } else if (value > key) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private static MemorySegment allocateInts(Arena arena, long count) {
+            return arena.allocate(count * Integer.BYTES, Integer.BYTES);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package evaluator.join;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Append-only tuple buffer in off-heap memory, used to collect join output without growing the
+ * heap. Rows are stored row-major in fixed-size chunks allocated from the caller's {@link Arena},
+ * so appending never copies and closing the arena releases every chunk.
+ */
+public final class OffHeapTuples {
+    private static final int CHUNK_ROWS = 1 << 16;
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+
+    private final Arena arena;
+    private final List<String> variables;
+    private final int arity;
+    private final List<MemorySegment> chunks = new ArrayList<>();
+    private long rows;
+
+    public OffHeapTuples(Arena arena, List<String> variables) {
+        this.arena = Objects.requireNonNull(arena, "arena");
+        this.variables = List.copyOf(Objects.requireNonNull(variables, "variables"));
+        this.arity = this.variables.size();
+    }
+
+    public List<String> variables() {
+        return variables;
+    }
+
+    public long count() {
+        return rows;
+    }
+
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    /**
+     * Bytes allocated for rows so far.
+     */
+    public long byteSize() {
+        long total = 0;
+        for (MemorySegment chunk : chunks) {
+            total += chunk.byteSize();
+        }
+        return total;
+    }
+
+    public void add(int[] tuple) {
+        Objects.requireNonNull(tuple, "tuple");
+        if (tuple.length != arity) {
+            throw new IllegalArgumentException("Expected " + arity + " values, got " + tuple.length);
+        }
+        if (arity > 0) {
+            int offset = (int) (rows % CHUNK_ROWS);
+            if (offset == 0) {
+                chunks.add(arena.allocate((long) CHUNK_ROWS * arity * Integer.BYTES, Integer.BYTES));
+            }
+            MemorySegment.copy(tuple, 0, chunks.get(chunks.size() - 1), INT, (long) offset * arity * Integer.BYTES, arity);
+        }
+        rows++;
+    }
+
+    public int get(long row, int column) {
+        Objects.checkIndex(row, rows);
+        Objects.checkIndex(column, arity);
+        MemorySegment chunk = chunks.get((int) (row / CHUNK_ROWS));
+        return chunk.getAtIndex(INT, (row % CHUNK_ROWS) * arity + column);
+    }
+
+    /**
+     * Streams the rows in insertion order into {@code visitor}, reusing one buffer. Stops early and
+     * returns {@code false} when the visitor does.
+     */
+    public boolean forEach(FactorisedResult.TupleVisitor visitor) {
+        Objects.requireNonNull(visitor, "visitor");
+        int[] tuple = new int[arity];
+        for (long row = 0; row < rows; row++) {
+            if (arity > 0) {
+                MemorySegment chunk = chunks.get((int) (row / CHUNK_ROWS));
+                MemorySegment.copy(chunk, INT, (row % CHUNK_ROWS) * arity * Integer.BYTES, tuple, 0, arity);
+            }
+            if (!visitor.visit(tuple)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies up to {@code limit} rows (all of them when {@code limit < 0}) onto the heap.
+     */
+    public List<Map<String, Integer>> toRows(long limit) {
+        List<Map<String, Integer>> out = new ArrayList<>();
+        if (limit == 0) {
+            return out;
+        }
+        forEach(tuple -> {
+            Map<String, Integer> row = new LinkedHashMap<>(arity);
+            for (int i = 0; i < arity; i++) {
+                row.put(variables.get(i), tuple[i]);
+            }
+            out.add(row);
+            return limit < 0 || out.size() < limit;
+        });
+        return out;
+    }
+}
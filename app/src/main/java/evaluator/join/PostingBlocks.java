@@ -0,0 +1,273 @@
+package evaluator.join;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Sorted, duplicate-free int lists stored as blocks of up to {@link #BLOCK} values. A block keeps
+ * its first value uncompressed and the gaps to the following values bit-packed at the block's
+ * widest gap, so dense runs cost a few bits per entry instead of four bytes. The first values of
+ * all blocks double as skip pointers: a {@link Cursor} decodes one block at a time and seeks by
+ * galloping over them before decoding the block that can hold the target.
+ */
+final class PostingBlocks {
+    static final int BLOCK = 128;
+
+    private final int listCount;
+    private final int[] listStart;
+    private final int[] listBlock;
+    private final int[] blockFirst;
+    private final long[] blockBit;
+    private final byte[] blockWidth;
+    private final long[] words;
+
+    private PostingBlocks(int listCount, int[] listStart, int[] listBlock, int[] blockFirst, long[] blockBit, byte[] blockWidth, long[] words) {
+        this.listCount = listCount;
+        this.listStart = listStart;
+        this.listBlock = listBlock;
+        this.blockFirst = blockFirst;
+        this.blockBit = blockBit;
+        this.blockWidth = blockWidth;
+        this.words = words;
+    }
+
+    /**
+     * A single list holding the first {@code size} values of {@code sorted}.
+     */
+    static PostingBlocks of(int[] sorted, int size) {
+        Builder builder = new Builder();
+        builder.add(sorted, size);
+        return builder.build();
+    }
+
+    int listCount() {
+        return listCount;
+    }
+
+    int length(int list) {
+        return listStart[list + 1] - listStart[list];
+    }
+
+    /**
+     * Total number of values across all lists.
+     */
+    long valueCount() {
+        return listStart[listCount];
+    }
+
+    /**
+     * Bytes of the arrays holding the lists.
+     */
+    long byteSize() {
+        return 4L * (listStart.length + listBlock.length + blockFirst.length)
+                + 8L * (blockBit.length + words.length) + blockWidth.length;
+    }
+
+    int[] toArray(int list) {
+        int[] out = new int[length(list)];
+        int at = 0;
+        for (int block = listBlock[list]; block < listBlock[list + 1]; block++) {
+            at += decode(list, block, out, at);
+        }
+        return out;
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Decodes {@code block} of {@code list} into {@code out} from {@code at}; returns the number
+     * of values written.
+     */
+    private int decode(int list, int block, int[] out, int at) {
+        int count = Math.min(BLOCK, listStart[list + 1] - listStart[list] - (block - listBlock[list]) * BLOCK);
+        int width = blockWidth[block];
+        int value = blockFirst[block];
+        out[at] = value;
+        if (width == 0) {
+            for (int i = 1; i < count; i++) {
+                out[at + i] = ++value;
+            }
+            return count;
+        }
+        long mask = (1L << width) - 1;
+        long bit = blockBit[block];
+        for (int i = 1; i < count; i++, bit += width) {
+            int word = (int) (bit >>> 6);
+            int offset = (int) (bit & 63);
+            long bits = words[word] >>> offset;
+            if (offset + width > 64) {
+                bits |= words[word + 1] << (64 - offset);
+            }
+            value += (int) (bits & mask) + 1;
+            out[at + i] = value;
+        }
+        return count;
+    }
+
+    /**
+     * Forward cursor over one list at a time, decoding a block into a reused buffer when it is
+     * entered. Not thread-safe.
+     */
+    final class Cursor {
+        private final int[] buffer = new int[BLOCK];
+        private int list;
+        private int block;
+        private int blockEnd;
+        private int count;
+        private int pos;
+
+        /**
+         * Positions the cursor at the first value of {@code list}.
+         */
+        void reset(int list) {
+            this.list = list;
+            this.blockEnd = listBlock[list + 1];
+            if (listBlock[list] < blockEnd) {
+                enter(listBlock[list]);
+            } else {
+                block = blockEnd;
+                count = 0;
+                pos = 0;
+            }
+        }
+
+        boolean atEnd() {
+            return pos >= count;
+        }
+
+        int key() {
+            return buffer[pos];
+        }
+
+        void next() {
+            pos++;
+            settle();
+        }
+
+        /**
+         * Moves forward to the first value {@code >= target}, or to the end of the list. Blocks
+         * ending below the target are skipped without being decoded.
+         */
+        void seek(int target) {
+            if (pos >= count || buffer[pos] >= target) {
+                return;
+            }
+            if (buffer[count - 1] < target) {
+                // first later block starting at or above the target; the one before it may hold it
+                int later = RelationTrie.gallop(blockFirst, block + 1, blockEnd, target);
+                if (later - 1 == block) {
+                    pos = count;
+                    settle();
+                    return;
+                }
+                enter(later - 1);
+            }
+            pos = RelationTrie.gallop(buffer, pos, count, target);
+            settle();
+        }
+
+        /**
+         * Position of the current value within its list.
+         */
+        int index() {
+            return (block - listBlock[list]) * BLOCK + pos;
+        }
+
+        long remaining() {
+            return length(list) - index();
+        }
+
+        private void enter(int next) {
+            block = next;
+            count = decode(list, next, buffer, 0);
+            pos = 0;
+        }
+
+        private void settle() {
+            if (pos == count && block + 1 < blockEnd) {
+                enter(block + 1);
+            }
+        }
+    }
+
+    /**
+     * Appends lists one after another.
+     */
+    static final class Builder {
+        private int listCount;
+        private int[] listStart = new int[16];
+        private int[] listBlock = new int[16];
+        private int blocks;
+        private int[] blockFirst = new int[16];
+        private long[] blockBit = new long[16];
+        private byte[] blockWidth = new byte[16];
+        private long bits;
+        private long[] words = new long[16];
+
+        /**
+         * Appends the first {@code size} values of {@code sorted} as the next list.
+         */
+        void add(int[] sorted, int size) {
+            Objects.requireNonNull(sorted, "sorted");
+            if (listCount + 2 > listStart.length) {
+                listStart = Arrays.copyOf(listStart, listStart.length * 2);
+                listBlock = Arrays.copyOf(listBlock, listBlock.length * 2);
+            }
+            for (int from = 0; from < size; from += BLOCK) {
+                addBlock(sorted, from, Math.min(size, from + BLOCK));
+            }
+            listStart[listCount + 1] = listStart[listCount] + size;
+            listBlock[listCount + 1] = blocks;
+            listCount++;
+        }
+
+        private void addBlock(int[] sorted, int from, int to) {
+            // OR-ing the gaps keeps the highest bit of the largest one
+            int gapBits = 0;
+            for (int i = from + 1; i < to; i++) {
+                if (sorted[i] <= sorted[i - 1]) {
+                    throw new IllegalArgumentException("values must be strictly increasing");
+                }
+                gapBits |= sorted[i] - sorted[i - 1] - 1;
+            }
+            int width = 32 - Integer.numberOfLeadingZeros(gapBits);
+            if (blocks == blockFirst.length) {
+                blockFirst = Arrays.copyOf(blockFirst, blocks * 2);
+                blockBit = Arrays.copyOf(blockBit, blocks * 2);
+                blockWidth = Arrays.copyOf(blockWidth, blocks * 2);
+            }
+            blockFirst[blocks] = sorted[from];
+            blockBit[blocks] = bits;
+            blockWidth[blocks] = (byte) width;
+            blocks++;
+            if (width == 0) {
+                return;
+            }
+            long needed = ((bits + (long) (to - from - 1) * width) >>> 6) + 1;
+            if (needed > words.length) {
+                words = Arrays.copyOf(words, (int) Math.max(needed, words.length * 2L));
+            }
+            for (int i = from + 1; i < to; i++, bits += width) {
+                long gap = sorted[i] - sorted[i - 1] - 1L;
+                int word = (int) (bits >>> 6);
+                int offset = (int) (bits & 63);
+                words[word] |= gap << offset;
+                if (offset + width > 64) {
+                    words[word + 1] |= gap >>> (64 - offset);
+                }
+            }
+        }
+
+        PostingBlocks build() {
+            return new PostingBlocks(listCount,
+                    Arrays.copyOf(listStart, listCount + 1),
+                    Arrays.copyOf(listBlock, listCount + 1),
+                    Arrays.copyOf(blockFirst, blocks),
+                    Arrays.copyOf(blockBit, blocks),
+                    Arrays.copyOf(blockWidth, blocks),
+                    Arrays.copyOf(words, (int) ((bits + 63) >>> 6)));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package evaluator.join;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -10,13 +11,18 @@ public final class RelationBinding {
     private final String targetVar;
     private final String description;
     private final RelationProjection projection;
+    private final OffHeapProjection offHeap;
+    private final CompressedProjection compressed;
     private final int[] unaryDomain;
 
-    private RelationBinding(String sourceVar, String targetVar, String description, RelationProjection projection) {
+    private RelationBinding(String sourceVar, String targetVar, String description, RelationProjection projection,
+            OffHeapProjection offHeap, CompressedProjection compressed) {
         this.sourceVar = Objects.requireNonNull(sourceVar, "sourceVar");
         this.targetVar = Objects.requireNonNull(targetVar, "targetVar");
         this.description = Objects.requireNonNull(description, "description");
-        this.projection = Objects.requireNonNull(projection, "projection");
+        this.projection = projection;
+        this.offHeap = offHeap;
+        this.compressed = compressed;
         this.unaryDomain = null;
     }
 
@@ -25,17 +31,59 @@ public final class RelationBinding {
         this.targetVar = null;
         this.description = Objects.requireNonNull(description, "description");
         this.projection = null;
+        this.offHeap = null;
+        this.compressed = null;
         this.unaryDomain = Objects.requireNonNull(unaryDomain, "unaryDomain");
     }
 
     public static RelationBinding binary(String sourceVar, String targetVar, String description, RelationProjection projection) {
-        return new RelationBinding(sourceVar, targetVar, description, projection);
+        return new RelationBinding(sourceVar, targetVar, description, Objects.requireNonNull(projection, "projection"), null, null);
+    }
+
+    /**
+     * Binary relation over an off-heap projection; the join reads its segments directly, so the
+     * binding must not outlive the projection's arena.
+     */
+    public static RelationBinding binary(String sourceVar, String targetVar, String description, OffHeapProjection projection) {
+        return new RelationBinding(sourceVar, targetVar, description, null, Objects.requireNonNull(projection, "projection"), null);
+    }
+
+    /**
+     * Binary relation over a compressed projection; the join decodes its lists as it goes.
+     */
+    public static RelationBinding binary(String sourceVar, String targetVar, String description, CompressedProjection projection) {
+        return new RelationBinding(sourceVar, targetVar, description, null, null, Objects.requireNonNull(projection, "projection"));
     }
 
     public static RelationBinding unary(String variable, String description, int[] domain) {
         return new RelationBinding(variable, description, domain);
     }
 
+    /**
+     * The same relation over other variable names, sharing the projection or domain; a unary
+     * relation takes {@code sourceVar} and ignores {@code targetVar}.
+     */
+    public RelationBinding renamed(String sourceVar, String targetVar) {
+        if (unaryDomain != null) {
+            return new RelationBinding(sourceVar, description, unaryDomain);
+        }
+        return new RelationBinding(sourceVar, targetVar, description, projection, offHeap, compressed);
+    }
+
+    /**
+     * Approximate bytes held by the relation, on the heap or, for off-heap projections, in their
+     * arena.
+     */
+    public long byteSize() {
+        if (unaryDomain != null) {
+            return 16 + 4L * unaryDomain.length;
+        }
+        if (compressed != null) {
+            return compressed.byteSize();
+        }
+        return offHeap != null ? offHeap.byteSize() : projection.byteSize();
+    }
+
     public void register(Map<String, List<RelationBinding>> relationsPerVariable) {
         relationsPerVariable.computeIfAbsent(sourceVar, ignored -> new ArrayList<>()).add(this);
         if (targetVar != null) {
@@ -43,6 +91,10 @@ public final class RelationBinding {
         }
     }
 
+    /**
+     * Sorted values {@code variable} can take given the other endpoint's binding in
+     * {@code assignment}, if any. Off-heap and compressed relations return a heap copy.
+     */
     public int[] domainFor(String variable, Map<String, Integer> assignment) {
         if (unaryDomain != null) {
             return unaryDomain;
@@ -50,20 +102,62 @@ public final class RelationBinding {
         if (variable.equals(sourceVar)) {
             if (assignment.containsKey(targetVar)) {
                 int target = assignment.get(targetVar);
-                return projection.sourcesForTarget(target);
+                if (compressed != null) {
+                    return compressed.sourcesForTarget(target);
+                }
+                return offHeap != null ? offHeap.sourcesForTarget(target) : projection.sourcesForTarget(target);
             }
-            return projection.allSources();
+            if (compressed != null) {
+                return compressed.allSources();
+            }
+            return offHeap != null ? offHeap.allSources() : projection.allSources();
         }
         if (variable.equals(targetVar)) {
             if (assignment.containsKey(sourceVar)) {
                 int source = assignment.get(sourceVar);
-                return projection.targetsForSource(source);
+                if (compressed != null) {
+                    return compressed.targetsForSource(source);
+                }
+                return offHeap != null ? offHeap.targetsForSource(source) : projection.targetsForSource(source);
+            }
+            if (compressed != null) {
+                return compressed.allTargets();
             }
-            return projection.allTargets();
+            return offHeap != null ? offHeap.allTargets() : projection.allTargets();
         }
         throw new IllegalArgumentException("Variable " + variable + " not part of relation " + description);
     }
 
+    /**
+     * Returns a new {@link TrieIterator} over this relation with its variables nested in the order
+     * they appear in {@code variableOrder}: a binary relation whose source comes first is read as
+     * source to targets, otherwise as target to sources. Variables missing from the order nest
+     * last. The iterator is meant to be reused for a whole join.
+     */
+    public TrieIterator trieIterator(List<String> variableOrder) {
+        return trie(variableOrder);
+    }
+
+    RelationTrie trie(List<String> variableOrder) {
+        Objects.requireNonNull(variableOrder, "variableOrder");
+        if (unaryDomain != null) {
+            return RelationTrie.of(new String[] {sourceVar}, unaryDomain, null, null);
+        }
+        boolean sourcesFirst = position(variableOrder, sourceVar) <= position(variableOrder, targetVar);
+        String[] variables = sourceVar.equals(targetVar)
+                ? new String[] {sourceVar}
+                : sourcesFirst ? new String[] {sourceVar, targetVar} : new String[] {targetVar, sourceVar};
+        if (compressed != null) {
+            return compressed.trie(variables, sourcesFirst);
+        }
+        return offHeap != null ? offHeap.trie(variables, sourcesFirst) : projection.trie(variables, sourcesFirst);
+    }
+
+    private static int position(List<String> variableOrder, String variable) {
+        int position = variableOrder.indexOf(variable);
+        return position < 0 ? Integer.MAX_VALUE : position;
+    }
+
     public String sourceVar() {
         return sourceVar;
     }
@@ -76,19 +170,78 @@ public final class RelationBinding {
         return description;
     }
 
+    /**
+     * Binary relation stored as two sorted adjacency structures: distinct sources with their sorted
+     * targets, and distinct targets with their sorted sources.
+     *
+     * <p>Keys whose list holds at least {@link #heavyDegree()} entries are heavy: their lists also
+     * get a {@link HeavyAdjacency} so the join can probe them instead of scanning, which keeps hub
+     * vertices of power-law graphs from dominating the intersection cost.
+     */
     public static final class RelationProjection {
+        /**
+         * Default heavy-key degree threshold, from the {@code cpq.join.heavyDegree} system property;
+         * {@code 0} disables the heavy/light split.
+         */
+        public static final int DEFAULT_HEAVY_DEGREE = Integer.getInteger("cpq.join.heavyDegree", 1024);
+
         private static final int[] EMPTY_INT_ARRAY = new int[0];
 
         private final int[] allSources;
         private final int[] allTargets;
-        private final Map<Integer, int[]> forward;
-        private final Map<Integer, int[]> reverse;
+        private final int[][] forward;
+        private final int[][] reverse;
+        private final int heavyDegree;
+        private final HeavyAdjacency[] forwardHeavy;
+        private final HeavyAdjacency[] reverseHeavy;
 
-        public RelationProjection(int[] allSources, int[] allTargets, Map<Integer, int[]> forward, Map<Integer, int[]> reverse) {
+        private RelationProjection(int[] allSources, int[] allTargets, int[][] forward, int[][] reverse, int heavyDegree) {
             this.allSources = Objects.requireNonNull(allSources, "allSources");
             this.allTargets = Objects.requireNonNull(allTargets, "allTargets");
             this.forward = Objects.requireNonNull(forward, "forward");
             this.reverse = Objects.requireNonNull(reverse, "reverse");
+            this.heavyDegree = heavyDegree <= 0 ? Integer.MAX_VALUE : heavyDegree;
+            this.forwardHeavy = heavyLists(forward, this.heavyDegree);
+            this.reverseHeavy = heavyLists(reverse, this.heavyDegree);
+        }
+
+        /**
+         * Builds the projection from the first {@code size} (source, target) pairs of two parallel
+         * columns. Duplicates are removed; vertex ids must be non-negative.
+         */
+        public static RelationProjection fromPairs(int[] sources, int[] targets, int size) {
+            return fromPairs(sources, targets, size, DEFAULT_HEAVY_DEGREE);
+        }
+
+        /**
+         * As {@link #fromPairs(int[], int[], int)}, with keys of at least {@code heavyDegree}
+         * entries treated as heavy; {@code heavyDegree <= 0} keeps every key light.
+         */
+        public static RelationProjection fromPairs(int[] sources, int[] targets, int size, int heavyDegree) {
+            Objects.requireNonNull(sources, "sources");
+            Objects.requireNonNull(targets, "targets");
+            if (size < 0 || size > sources.length || size > targets.length) {
+                throw new IllegalArgumentException("size out of range: " + size);
+            }
+
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = pack(sources[i], targets[i]);
+            }
+            int distinct = sortDistinct(packed, size);
+            int[][] forward = new int[countKeys(packed, distinct)][];
+            int[] allSources = new int[forward.length];
+            group(packed, distinct, allSources, forward);
+
+            for (int i = 0; i < distinct; i++) {
+                packed[i] = pack((int) packed[i], (int) (packed[i] >>> 32));
+            }
+            sortDistinct(packed, distinct);
+            int[][] reverse = new int[countKeys(packed, distinct)][];
+            int[] allTargets = new int[reverse.length];
+            group(packed, distinct, allTargets, reverse);
+
+            return new RelationProjection(allSources, allTargets, forward, reverse, heavyDegree);
         }
 
         public boolean isEmpty() {
@@ -104,11 +257,129 @@ public final class RelationBinding {
         }
 
         public int[] targetsForSource(int source) {
-            return forward.getOrDefault(source, EMPTY_INT_ARRAY);
+            int idx = Arrays.binarySearch(allSources, source);
+            return idx >= 0 ? forward[idx] : EMPTY_INT_ARRAY;
         }
 
         public int[] sourcesForTarget(int target) {
-            return reverse.getOrDefault(target, EMPTY_INT_ARRAY);
+            int idx = Arrays.binarySearch(allTargets, target);
+            return idx >= 0 ? reverse[idx] : EMPTY_INT_ARRAY;
+        }
+
+        /**
+         * Smallest list length that makes a key heavy, or {@link Integer#MAX_VALUE} when the split
+         * is disabled.
+         */
+        public int heavyDegree() {
+            return heavyDegree;
+        }
+
+        public int heavySourceCount() {
+            return heavyCount(forwardHeavy);
+        }
+
+        public int heavyTargetCount() {
+            return heavyCount(reverseHeavy);
+        }
+
+        /**
+         * Trie over {@code variables}, read source to targets when {@code sourcesFirst} and target
+         * to sources otherwise, with the heavy lists of that direction.
+         */
+        RelationTrie trie(String[] variables, boolean sourcesFirst) {
+            return sourcesFirst
+                    ? RelationTrie.of(variables, allSources, forward, forwardHeavy)
+                    : RelationTrie.of(variables, allTargets, reverse, reverseHeavy);
+        }
+
+        /**
+         * Number of distinct (source, target) pairs.
+         */
+        public long size() {
+            long total = 0;
+            for (int[] targets : forward) {
+                total += targets.length;
+            }
+            return total;
+        }
+
+        /**
+         * Approximate heap bytes: every pair is held once per direction, plus a key and an array
+         * header per distinct source and target. Heavy probe structures are not counted.
+         */
+        public long byteSize() {
+            return 8 * size() + 20L * (allSources.length + allTargets.length);
+        }
+
+        /**
+         * Returns the heavy structures parallel to {@code lists}, or {@code null} when no key is
+         * heavy so light-only relations carry no extra array.
+         */
+        private static HeavyAdjacency[] heavyLists(int[][] lists, int heavyDegree) {
+            HeavyAdjacency[] heavy = null;
+            for (int i = 0; i < lists.length; i++) {
+                if (lists[i].length >= heavyDegree) {
+                    if (heavy == null) {
+                        heavy = new HeavyAdjacency[lists.length];
+                    }
+                    heavy[i] = HeavyAdjacency.of(lists[i]);
+                }
+            }
+            return heavy;
+        }
+
+        private static int heavyCount(HeavyAdjacency[] heavy) {
+            int count = 0;
+            if (heavy != null) {
+                for (HeavyAdjacency h : heavy) {
+                    if (h != null) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        static long pack(int high, int low) {
+            return ((long) high << 32) | (low & 0xFFFFFFFFL);
+        }
+
+        static int sortDistinct(long[] packed, int size) {
+            Arrays.sort(packed, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || packed[i] != packed[unique - 1]) {
+                    packed[unique++] = packed[i];
+                }
+            }
+            return unique;
+        }
+
+        static int countKeys(long[] packed, int size) {
+            int keys = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || (packed[i] >>> 32) != (packed[i - 1] >>> 32)) {
+                    keys++;
+                }
+            }
+            return keys;
+        }
+
+        private static void group(long[] packed, int size, int[] keys, int[][] lists) {
+            int key = 0;
+            for (int start = 0; start < size; key++) {
+                int end = start + 1;
+                while (end < size && (packed[end] >>> 32) == (packed[start] >>> 32)) {
+                    end++;
+                }
+                keys[key] = (int) (packed[start] >>> 32);
+                int[] values = new int[end - start];
+                for (int i = start; i < end; i++) {
+                    values[i - start] = (int) packed[i];
+                }
+                lists[key] = values;
+                start = end;
+            }
         }
     }
 }
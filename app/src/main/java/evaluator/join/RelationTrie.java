@@ -0,0 +1,334 @@
+package evaluator.join;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+
+/**
+ * {@link TrieIterator} over a unary or binary relation, stored as heap arrays, as an off-heap CSR
+ * layout or as compressed {@link PostingBlocks}. Seeks gallop from the current position, so a
+ * leapfrog over a short and a long list costs about the short list's length times the log of the
+ * gap.
+ */
+abstract class RelationTrie implements TrieIterator {
+    private final String[] variables;
+    int depth = -1;
+
+    RelationTrie(String[] variables) {
+        this.variables = variables;
+    }
+
+    /**
+     * Heap trie: {@code keys} at the root and, for binary relations, {@code children[i]} below
+     * {@code keys[i]}; {@code heavy} is parallel to {@code children} or {@code null}.
+     */
+    static RelationTrie of(String[] variables, int[] keys, int[][] children, HeavyAdjacency[] heavy) {
+        return new ArrayTrie(variables, Objects.requireNonNull(keys, "keys"), children, heavy);
+    }
+
+    /**
+     * Off-heap trie: {@code keyCount} keys at the root and, for binary relations, the children of
+     * key {@code i} at {@code values[offsets[i] .. offsets[i + 1])}.
+     */
+    static RelationTrie of(String[] variables, MemorySegment keys, int keyCount, MemorySegment offsets, MemorySegment values) {
+        return new SegmentTrie(variables, Objects.requireNonNull(keys, "keys"), keyCount, offsets, values);
+    }
+
+    /**
+     * Compressed trie: the root keys are list 0 of {@code keys} and, for binary relations, the
+     * children of the {@code i}-th key are list {@code i} of {@code children}.
+     */
+    static RelationTrie of(String[] variables, PostingBlocks keys, PostingBlocks children) {
+        return new BlockTrie(variables, Objects.requireNonNull(keys, "keys"), children);
+    }
+
+    /**
+     * Number of levels, one per variable.
+     */
+    final int levels() {
+        return variables.length;
+    }
+
+    final String variable(int level) {
+        return variables[level];
+    }
+
+    @Override
+    public final int depth() {
+        return depth;
+    }
+
+    /**
+     * Probe structure for the current level when it is the adjacency list of a heavy key, else
+     * {@code null}.
+     */
+    HeavyAdjacency heavy() {
+        return null;
+    }
+
+    /**
+     * Remaining keys of the current level as a slice of a heap array, or {@code null} for
+     * off-heap and compressed tries.
+     */
+    Slice levelSlice() {
+        return null;
+    }
+
+    /**
+     * Keys {@code values[from .. end)}.
+     */
+    record Slice(int[] values, int from, int end) {
+    }
+
+    final void checkOpen() {
+        if (depth + 1 >= variables.length) {
+            throw new IllegalStateException("No level below " + depth);
+        }
+    }
+
+    /**
+     * First index in {@code [from, end)} whose value is {@code >= target}, or {@code end}.
+     */
+    static int gallop(int[] values, int from, int end, int target) {
+        int lo = from;
+        int hi = from;
+        int step = 1;
+        while (hi < end && values[hi] < target) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, end);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    static long gallop(MemorySegment values, long from, long end, int target) {
+        long lo = from;
+        long hi = from;
+        long step = 1;
+        while (hi < end && values.getAtIndex(ValueLayout.JAVA_INT, hi) < target) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        hi = Math.min(hi, end);
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (values.getAtIndex(ValueLayout.JAVA_INT, mid) < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static final class ArrayTrie extends RelationTrie {
+        private final int[] keys;
+        private final int[][] children;
+        private final HeavyAdjacency[] heavyChildren;
+        private int[] current;
+        private int pos;
+        private int parent;
+
+        ArrayTrie(String[] variables, int[] keys, int[][] children, HeavyAdjacency[] heavyChildren) {
+            super(variables);
+            this.keys = keys;
+            this.children = children;
+            this.heavyChildren = heavyChildren;
+        }
+
+        @Override
+        public void open() {
+            checkOpen();
+            if (depth < 0) {
+                current = keys;
+            } else {
+                parent = pos;
+                current = children[pos];
+            }
+            pos = 0;
+            depth++;
+        }
+
+        @Override
+        public void up() {
+            if (depth == 1) {
+                current = keys;
+                pos = parent;
+            }
+            depth--;
+        }
+
+        @Override
+        public boolean atEnd() {
+            return pos >= current.length;
+        }
+
+        @Override
+        public int key() {
+            return current[pos];
+        }
+
+        @Override
+        public void next() {
+            pos++;
+        }
+
+        @Override
+        public void seek(int target) {
+            pos = gallop(current, pos, current.length, target);
+        }
+
+        @Override
+        public long remaining() {
+            return current.length - pos;
+        }
+
+        @Override
+        HeavyAdjacency heavy() {
+            return depth == 1 && heavyChildren != null ? heavyChildren[parent] : null;
+        }
+
+        @Override
+        Slice levelSlice() {
+            return new Slice(current, pos, current.length);
+        }
+    }
+
+    private static final class SegmentTrie extends RelationTrie {
+        private final MemorySegment keys;
+        private final int keyCount;
+        private final MemorySegment offsets;
+        private final MemorySegment values;
+        private MemorySegment current;
+        private long pos;
+        private long end;
+        private long parent;
+
+        SegmentTrie(String[] variables, MemorySegment keys, int keyCount, MemorySegment offsets, MemorySegment values) {
+            super(variables);
+            this.keys = keys;
+            this.keyCount = keyCount;
+            this.offsets = offsets;
+            this.values = values;
+        }
+
+        @Override
+        public void open() {
+            checkOpen();
+            if (depth < 0) {
+                current = keys;
+                pos = 0;
+                end = keyCount;
+            } else {
+                parent = pos;
+                current = values;
+                pos = offsets.getAtIndex(ValueLayout.JAVA_INT, parent);
+                end = offsets.getAtIndex(ValueLayout.JAVA_INT, parent + 1);
+            }
+            depth++;
+        }
+
+        @Override
+        public void up() {
+            if (depth == 1) {
+                current = keys;
+                pos = parent;
+                end = keyCount;
+            }
+            depth--;
+        }
+
+        @Override
+        public boolean atEnd() {
+            return pos >= end;
+        }
+
+        @Override
+        public int key() {
+            return current.getAtIndex(ValueLayout.JAVA_INT, pos);
+        }
+
+        @Override
+        public void next() {
+            pos++;
+        }
+
+        @Override
+        public void seek(int target) {
+            pos = gallop(current, pos, end, target);
+        }
+
+        @Override
+        public long remaining() {
+            return end - pos;
+        }
+    }
+
+    private static final class BlockTrie extends RelationTrie {
+        private final PostingBlocks.Cursor keys;
+        private final PostingBlocks.Cursor children;
+        private PostingBlocks.Cursor current;
+
+        BlockTrie(String[] variables, PostingBlocks keys, PostingBlocks children) {
+            super(variables);
+            this.keys = keys.cursor();
+            this.children = children == null ? null : children.cursor();
+        }
+
+        @Override
+        public void open() {
+            checkOpen();
+            if (depth < 0) {
+                keys.reset(0);
+                current = keys;
+            } else {
+                children.reset(keys.index());
+                current = children;
+            }
+            depth++;
+        }
+
+        @Override
+        public void up() {
+            if (depth == 1) {
+                current = keys;
+            }
+            depth--;
+        }
+
+        @Override
+        public boolean atEnd() {
+            return current.atEnd();
+        }
+
+        @Override
+        public int key() {
+            return current.key();
+        }
+
+        @Override
+        public void next() {
+            current.next();
+        }
+
+        @Override
+        public void seek(int target) {
+            current.seek(target);
+        }
+
+        @Override
+        public long remaining() {
+            return current.remaining();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package evaluator.join;
+
+/**
+ * Intersection of strictly increasing int runs, vectorised with {@code jdk.incubator.vector} when
+ * the build includes the vector kernel ({@code -PvectorSimd}), that module is present at run time
+ * (it is only resolved with {@code --add-modules=jdk.incubator.vector}) and the
+ * {@code cpq.join.simd} system property is not {@code false}. The kernel is loaded by name, so
+ * the default build neither compiles nor links against the incubator module; callers check
+ * {@link #vectorised()} and otherwise keep the scalar leapfrog.
+ */
+final class SortedIntersection {
+    private static final Kernel VECTOR = loadVectorKernel();
+
+    /**
+     * An intersection with the contract of {@link #intersect}.
+     */
+    interface Kernel {
+        int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out);
+    }
+
+    private SortedIntersection() {
+    }
+
+    static boolean vectorised() {
+        return VECTOR != null;
+    }
+
+    /**
+     * The SIMD kernel, or {@code null} when {@link #vectorised()} is false.
+     */
+    static Kernel vectorKernel() {
+        return VECTOR;
+    }
+
+    /**
+     * Writes the values common to {@code a[aFrom..aTo)} and {@code b[bFrom..bTo)} to the front of
+     * {@code out}, which must hold the shorter run, and returns how many there are.
+     */
+    static int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out) {
+        return VECTOR != null
+                ? VECTOR.intersect(a, aFrom, aTo, b, bFrom, bTo, out)
+                : scalar(a, aFrom, aTo, b, bFrom, bTo, out, 0);
+    }
+
+    private static Kernel loadVectorKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("cpq.join.simd", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (Kernel) Class.forName("evaluator.join.VectorIntersection").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // built without -PvectorSimd
+            return null;
+        }
+    }
+
+    /**
+     * Merge intersection appending to {@code out} from {@code n}; returns the new length.
+     */
+    static int scalar(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out, int n) {
+        int i = aFrom;
+        int j = bFrom;
+        while (i < aTo && j < bTo) {
+            int x = a[i];
+            int y = b[j];
+            if (x == y) {
+                out[n++] = x;
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return n;
+    }
+}
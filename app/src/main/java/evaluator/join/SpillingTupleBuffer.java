@@ -0,0 +1,335 @@
+package evaluator.join;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * Collects fixed-arity int tuples under a memory budget and hands them back sorted and
+ * deduplicated. Tuples are buffered in one flat array that grows up to the budget; when it is full
+ * the buffer is sorted, deduplicated and written to a run file, and reading merges all runs with
+ * the in-memory tail, dropping duplicates across runs. Memory therefore stays at the budget plus
+ * one read buffer per merged run, however many tuples are added. Run files are deleted by
+ * {@link #close()}.
+ *
+ * <p>I/O failures surface as {@link UncheckedIOException} so the buffer can be fed from join
+ * visitors.
+ */
+public final class SpillingTupleBuffer implements AutoCloseable {
+    /**
+     * Runs merged at once; more runs are first merged into intermediate runs.
+     */
+    private static final int MAX_FAN_IN = 64;
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    private final int arity;
+    private final Path directory;
+    private final int capacity;
+    private final List<Run> runs = new ArrayList<>();
+    private int[] rows;
+    private int buffered;
+    private boolean nullaryPresent;
+
+    /**
+     * @param memoryBudgetBytes bytes the in-memory buffer may use before spilling
+     * @param directory directory for run files
+     */
+    public SpillingTupleBuffer(int arity, long memoryBudgetBytes, Path directory) {
+        if (arity < 0) {
+            throw new IllegalArgumentException("arity must be >= 0");
+        }
+        if (memoryBudgetBytes < 1) {
+            throw new IllegalArgumentException("memoryBudgetBytes must be >= 1");
+        }
+        this.arity = arity;
+        this.directory = Objects.requireNonNull(directory, "directory");
+        this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE / Math.max(arity, 1), memoryBudgetBytes / ((long) Math.max(arity, 1) * Integer.BYTES)));
+        this.rows = new int[Math.min(capacity, 1024) * arity];
+    }
+
+    public int arity() {
+        return arity;
+    }
+
+    /**
+     * Number of run files written so far.
+     */
+    public int runCount() {
+        return runs.size();
+    }
+
+    public void add(int[] tuple) {
+        if (arity == 0) {
+            nullaryPresent = true;
+            return;
+        }
+        if (buffered == capacity) {
+            spill();
+        } else if ((buffered + 1) * arity > rows.length) {
+            rows = Arrays.copyOf(rows, (int) Math.min((long) capacity * arity, 2L * rows.length));
+        }
+        System.arraycopy(tuple, 0, rows, buffered * arity, arity);
+        buffered++;
+    }
+
+    /**
+     * Streams the distinct tuples in lexicographic order into {@code visitor}, reusing one buffer.
+     * Stops early and returns {@code false} when the visitor does. May be called repeatedly.
+     */
+    public boolean forEachDistinct(FactorisedResult.TupleVisitor visitor) {
+        Objects.requireNonNull(visitor, "visitor");
+        if (arity == 0) {
+            return !nullaryPresent || visitor.visit(new int[0]);
+        }
+        buffered = sortDistinct(rows, buffered, arity);
+        while (runs.size() > MAX_FAN_IN) {
+            List<Run> group = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+            Run merged = writeRun(out -> merge(group, 0, out));
+            runs.subList(0, MAX_FAN_IN).clear();
+            group.forEach(Run::delete);
+            runs.add(merged);
+        }
+        return merge(runs, buffered, visitor);
+    }
+
+    public long countDistinct() {
+        long[] count = {0};
+        forEachDistinct(tuple -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    @Override
+    public void close() {
+        runs.forEach(Run::delete);
+        runs.clear();
+        buffered = 0;
+    }
+
+    private void spill() {
+        buffered = sortDistinct(rows, buffered, arity);
+        runs.add(writeRun(out -> {
+            int[] tuple = new int[arity];
+            for (int r = 0; r < buffered; r++) {
+                System.arraycopy(rows, r * arity, tuple, 0, arity);
+                out.visit(tuple);
+            }
+            return true;
+        }));
+        buffered = 0;
+    }
+
+    /**
+     * K-way merge of {@code sources} and the first {@code memoryRows} sorted rows of the buffer,
+     * emitting each distinct tuple once.
+     */
+    private boolean merge(List<Run> sources, int memoryRows, FactorisedResult.TupleVisitor visitor) {
+        List<Source> open = new ArrayList<>(sources.size() + 1);
+        try {
+            PriorityQueue<Source> heap = new PriorityQueue<>((a, b) -> Arrays.compare(a.current, b.current));
+            for (Run run : sources) {
+                Source source = new RunSource(run, arity);
+                open.add(source);
+                if (source.advance()) {
+                    heap.add(source);
+                }
+            }
+            if (memoryRows > 0) {
+                Source source = new MemorySource(rows, memoryRows, arity);
+                source.advance();
+                heap.add(source);
+            }
+
+            int[] last = null;
+            while (!heap.isEmpty()) {
+                Source top = heap.poll();
+                if (last == null || !Arrays.equals(last, top.current)) {
+                    if (last == null) {
+                        last = new int[arity];
+                    }
+                    System.arraycopy(top.current, 0, last, 0, arity);
+                    if (!visitor.visit(last)) {
+                        return false;
+                    }
+                }
+                if (top.advance()) {
+                    heap.add(top);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (Source source : open) {
+                source.close();
+            }
+        }
+    }
+
+    private Run writeRun(RunWriter writer) {
+        try {
+            Path file = Files.createTempFile(directory, "cpq-spill-", ".run");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), IO_BUFFER_BYTES))) {
+                writer.write(tuple -> {
+                    try {
+                        for (int value : tuple) {
+                            out.writeInt(value);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return true;
+                });
+            }
+            return new Run(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sorts the first {@code size} rows of a row-major array in place (heapsort, so no extra
+     * memory) and removes duplicates; returns the number of distinct rows.
+     */
+    static int sortDistinct(int[] rows, int size, int arity) {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(rows, i, size, arity);
+        }
+        for (int end = size - 1; end > 0; end--) {
+            swap(rows, 0, end, arity);
+            siftDown(rows, 0, end, arity);
+        }
+        int unique = 0;
+        for (int r = 0; r < size; r++) {
+            if (unique == 0 || compare(rows, r, unique - 1, arity) != 0) {
+                if (r != unique) {
+                    System.arraycopy(rows, r * arity, rows, unique * arity, arity);
+                }
+                unique++;
+            }
+        }
+        return unique;
+    }
+
+    private static void siftDown(int[] rows, int root, int size, int arity) {
+        while (true) {
+            int child = 2 * root + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && compare(rows, child + 1, child, arity) > 0) {
+                child++;
+            }
+            if (compare(rows, root, child, arity) >= 0) {
+                return;
+            }
+            swap(rows, root, child, arity);
+            root = child;
+        }
+    }
+
+    private static int compare(int[] rows, int a, int b, int arity) {
+        return Arrays.compare(rows, a * arity, a * arity + arity, rows, b * arity, b * arity + arity);
+    }
+
+    private static void swap(int[] rows, int a, int b, int arity) {
+        for (int i = 0; i < arity; i++) {
+            int tmp = rows[a * arity + i];
+            rows[a * arity + i] = rows[b * arity + i];
+            rows[b * arity + i] = tmp;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RunWriter {
+        boolean write(FactorisedResult.TupleVisitor out) throws IOException;
+    }
+
+    private record Run(Path file) {
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // best effort; the file lives in a temp directory
+            }
+        }
+    }
+
+    private abstract static class Source {
+        final int[] current;
+
+        Source(int arity) {
+            this.current = new int[arity];
+        }
+
+        abstract boolean advance() throws IOException;
+
+        void close() {
+        }
+    }
+
+    private static final class RunSource extends Source {
+        private final DataInputStream in;
+
+        RunSource(Run run, int arity) throws IOException {
+            super(arity);
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file()), IO_BUFFER_BYTES));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            try {
+                for (int i = 0; i < current.length; i++) {
+                    current[i] = in.readInt();
+                }
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // read-only stream
+            }
+        }
+    }
+
+    private static final class MemorySource extends Source {
+        private int[] rows;
+        private final int size;
+        private int next;
+
+        MemorySource(int[] rows, int size, int arity) {
+            super(arity);
+            this.rows = rows;
+            this.size = size;
+        }
+
+        @Override
+        boolean advance() {
+            if (next == size) {
+                return false;
+            }
+            System.arraycopy(rows, next * current.length, current, 0, current.length);
+            next++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package evaluator.join;
+
+/**
+ * A relation viewed as a trie with one level per variable, walked the way leapfrog triejoin
+ * expects. The iterator starts above the root; {@link #open()} descends to the first key of the
+ * next level (the root keys, or the children of the current key) and {@link #up()} returns to the
+ * parent key. Keys within a level are strictly increasing, and {@link #key()} is only defined
+ * while not {@link #atEnd()}.
+ *
+ * <p>Implementations keep their position in a few fields, so one iterator serves a whole join
+ * without allocating per level or per key. They are not thread-safe.
+ */
+public interface TrieIterator {
+    /**
+     * Descends one level, positioned at the first key of that level.
+     */
+    void open();
+
+    /**
+     * Returns to the parent level, positioned at the key that was opened.
+     */
+    void up();
+
+    /**
+     * Current level, {@code -1} above the root.
+     */
+    int depth();
+
+    boolean atEnd();
+
+    int key();
+
+    void next();
+
+    /**
+     * Moves forward to the first key {@code >= target}, or to the end of the level. Never moves
+     * backwards.
+     */
+    void seek(int target);
+
+    /**
+     * Number of keys left at the current level, counting the current one.
+     */
+    long remaining();
+}
@@ -0,0 +1,199 @@
+package evaluator.output;
+
+import evaluator.join.FactorisedResult;
+import evaluator.output.AnswerFileWriter.Encoding;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads answer files written by {@link AnswerFileWriter}. Blocks are memory-mapped on demand; for
+ * {@link Encoding#PLAIN} files a column is an {@link IntBuffer} view straight onto the mapping, so
+ * scanning does no parsing or copying. Delta-encoded columns are decoded per block.
+ */
+public final class AnswerFileReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final Encoding encoding;
+    private final List<String> variables;
+    private final long rowCount;
+    private final long[] blockOffsets;
+    private final long indexOffset;
+
+    private AnswerFileReader(FileChannel channel, Encoding encoding, List<String> variables, long rowCount, long[] blockOffsets, long indexOffset) {
+        this.channel = channel;
+        this.encoding = encoding;
+        this.variables = variables;
+        this.rowCount = rowCount;
+        this.blockOffsets = blockOffsets;
+        this.indexOffset = indexOffset;
+    }
+
+    public static AnswerFileReader open(Path file) throws IOException {
+        Objects.requireNonNull(file, "file");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return read(channel, file);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static AnswerFileReader read(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size < Integer.BYTES * 3 + 2 + AnswerFileWriter.FOOTER_BYTES) {
+            throw new IOException("Not an answer file: " + file);
+        }
+        ByteBuffer footer = map(channel, size - AnswerFileWriter.FOOTER_BYTES, AnswerFileWriter.FOOTER_BYTES);
+        long rowCount = footer.getLong();
+        int blockCount = footer.getInt();
+        long indexOffset = footer.getLong();
+        if (footer.getInt() != AnswerFileWriter.FOOTER_MAGIC) {
+            throw new IOException("Truncated answer file: " + file);
+        }
+
+        ByteBuffer index = map(channel, indexOffset, (long) blockCount * Long.BYTES);
+        long[] blockOffsets = new long[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            blockOffsets[b] = index.getLong();
+        }
+
+        ByteBuffer header = map(channel, 0, blockCount > 0 ? blockOffsets[0] : indexOffset);
+        if (header.getInt() != AnswerFileWriter.MAGIC) {
+            throw new IOException("Not an answer file: " + file);
+        }
+        int version = header.get();
+        if (version != AnswerFileWriter.VERSION) {
+            throw new IOException("Unsupported answer file version " + version + ": " + file);
+        }
+        Encoding encoding = Encoding.values()[header.get()];
+        header.getInt(); // block rows, only needed by the writer
+        int arity = header.getInt();
+        List<String> variables = new ArrayList<>(arity);
+        for (int i = 0; i < arity; i++) {
+            byte[] name = new byte[Short.toUnsignedInt(header.getShort())];
+            header.get(name);
+            variables.add(new String(name, StandardCharsets.UTF_8));
+        }
+        return new AnswerFileReader(channel, encoding, List.copyOf(variables), rowCount, blockOffsets, indexOffset);
+    }
+
+    public List<String> variables() {
+        return variables;
+    }
+
+    public Encoding encoding() {
+        return encoding;
+    }
+
+    public long rowCount() {
+        return rowCount;
+    }
+
+    public int blockCount() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Maps block {@code b}; the returned columns stay readable after {@link #close()}.
+     */
+    public Block block(int b) throws IOException {
+        Objects.checkIndex(b, blockOffsets.length);
+        long from = blockOffsets[b];
+        long to = b + 1 < blockOffsets.length ? blockOffsets[b + 1] : indexOffset;
+        ByteBuffer data = map(channel, from, to - from);
+        int rows = data.getInt();
+        IntBuffer[] columns = new IntBuffer[variables.size()];
+        for (int c = 0; c < columns.length; c++) {
+            if (encoding == Encoding.PLAIN) {
+                columns[c] = data.slice(data.position(), rows * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                data.position(data.position() + rows * Integer.BYTES);
+            } else {
+                int length = data.getInt();
+                columns[c] = IntBuffer.wrap(decodeDeltas(data.slice(data.position(), length), rows));
+                data.position(data.position() + length);
+            }
+        }
+        return new Block(rows, columns);
+    }
+
+    /**
+     * Streams every row in file order into {@code visitor}, reusing one buffer. Stops early and
+     * returns {@code false} when the visitor does.
+     */
+    public boolean forEach(FactorisedResult.TupleVisitor visitor) throws IOException {
+        Objects.requireNonNull(visitor, "visitor");
+        int[] tuple = new int[variables.size()];
+        for (int b = 0; b < blockOffsets.length; b++) {
+            Block block = block(b);
+            for (int r = 0; r < block.rows(); r++) {
+                for (int c = 0; c < tuple.length; c++) {
+                    tuple[c] = block.columns[c].get(r);
+                }
+                if (!visitor.visit(tuple)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int[] decodeDeltas(ByteBuffer in, int rows) {
+        int[] values = new int[rows];
+        int previous = 0;
+        for (int r = 0; r < rows; r++) {
+            int raw = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = in.get();
+                raw |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            previous += (raw >>> 1) ^ -(raw & 1);
+            values[r] = previous;
+        }
+        return values;
+    }
+
+    /**
+     * One block of rows with one int column per variable.
+     */
+    public static final class Block {
+        private final int rows;
+        private final IntBuffer[] columns;
+
+        private Block(int rows, IntBuffer[] columns) {
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public IntBuffer column(int c) {
+            return columns[Objects.checkIndex(c, columns.length)];
+        }
+    }
+}
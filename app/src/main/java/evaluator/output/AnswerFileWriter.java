@@ -0,0 +1,226 @@
+package evaluator.output;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Writes answer tuples in the binary columnar answer file format read by {@link AnswerFileReader}.
+ *
+ * <p>Layout, little-endian throughout:
+ * <pre>
+ * header  "CPQA" u8:version u8:encoding i32:blockRows i32:arity (u16:length utf8:name)*arity
+ * block   i32:rows then per column either rows*i32 (PLAIN) or i32:byteLength varints (DELTA_VARINT)
+ * index   i64:blockOffset*blockCount
+ * footer  i64:totalRows i32:blockCount i64:indexOffset "CPQE"
+ * </pre>
+ * {@code DELTA_VARINT} stores each column as zigzag-encoded differences to the previous value in
+ * that column and block, which is compact for the sorted leading columns of join output. Blocks
+ * are encoded into a reused direct buffer and handed to the {@link FileChannel} without an
+ * intermediate heap copy. Only {@link #finish()} writes the index and footer; a writer closed
+ * without it, for instance because evaluation failed, deletes its file, so a truncated answer
+ * set is never left behind looking complete.
+ */
+public final class AnswerFileWriter implements AutoCloseable {
+    static final int MAGIC = 0x41515043;
+    static final int FOOTER_MAGIC = 0x45515043;
+    static final int VERSION = 1;
+    static final int FOOTER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    public static final int DEFAULT_BLOCK_ROWS = 1 << 16;
+
+    public enum Encoding {
+        PLAIN,
+        DELTA_VARINT
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Encoding encoding;
+    private final int arity;
+    private final int blockRows;
+    private final int[][] columns;
+    private final ByteBuffer block;
+    private long[] blockOffsets = new long[16];
+    private int blockCount;
+    private int buffered;
+    private long totalRows;
+    private boolean closed;
+
+    private AnswerFileWriter(Path file, FileChannel channel, Encoding encoding, int arity, int blockRows) {
+        this.file = file;
+        this.channel = channel;
+        this.encoding = encoding;
+        this.arity = arity;
+        this.blockRows = blockRows;
+        this.columns = new int[arity][blockRows];
+        // worst case for a varint column is 5 bytes per value plus its length prefix
+        int perColumn = encoding == Encoding.PLAIN ? blockRows * Integer.BYTES : Integer.BYTES + blockRows * 5;
+        this.block = ByteBuffer.allocateDirect(Integer.BYTES + arity * perColumn).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static AnswerFileWriter open(Path file, List<String> variables, Encoding encoding) throws IOException {
+        return open(file, variables, encoding, DEFAULT_BLOCK_ROWS);
+    }
+
+    public static AnswerFileWriter open(Path file, List<String> variables, Encoding encoding, int blockRows) throws IOException {
+        Objects.requireNonNull(file, "file");
+        Objects.requireNonNull(variables, "variables");
+        Objects.requireNonNull(encoding, "encoding");
+        if (blockRows < 1) {
+            throw new IllegalArgumentException("blockRows must be >= 1");
+        }
+
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            AnswerFileWriter writer = new AnswerFileWriter(file, channel, encoding, variables.size(), blockRows);
+            writer.writeHeader(variables);
+            return writer;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends one tuple. Failures writing a completed block surface as {@link UncheckedIOException}
+     * so the writer can be fed from tuple visitors.
+     */
+    public void write(int[] tuple) {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        if (tuple.length != arity) {
+            throw new IllegalArgumentException("Expected " + arity + " values, got " + tuple.length);
+        }
+        for (int c = 0; c < arity; c++) {
+            columns[c][buffered] = tuple[c];
+        }
+        buffered++;
+        totalRows++;
+        if (buffered == blockRows) {
+            try {
+                flushBlock();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public long rowCount() {
+        return totalRows;
+    }
+
+    /**
+     * Writes the last block, the block index and the footer, and closes the file; returns the
+     * number of rows written.
+     */
+    public long finish() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("closed");
+        }
+        closed = true;
+        try (channel) {
+            if (buffered > 0) {
+                flushBlock();
+            }
+            long indexOffset = channel.position();
+            ByteBuffer tail = ByteBuffer.allocateDirect(blockCount * Long.BYTES + FOOTER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int b = 0; b < blockCount; b++) {
+                tail.putLong(blockOffsets[b]);
+            }
+            tail.putLong(totalRows).putInt(blockCount).putLong(indexOffset).putInt(FOOTER_MAGIC);
+            writeFully(tail.flip());
+        }
+        return totalRows;
+    }
+
+    /**
+     * Closes the file after {@link #finish()}; otherwise closes and deletes it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void writeHeader(List<String> variables) throws IOException {
+        byte[][] names = new byte[arity][];
+        int size = Integer.BYTES + 2 + Integer.BYTES * 2;
+        for (int i = 0; i < arity; i++) {
+            names[i] = variables.get(i).getBytes(StandardCharsets.UTF_8);
+            if (names[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Variable name too long: " + variables.get(i));
+            }
+            size += 2 + names[i].length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).put((byte) VERSION).put((byte) encoding.ordinal()).putInt(blockRows).putInt(arity);
+        for (byte[] name : names) {
+            header.putShort((short) name.length).put(name);
+        }
+        writeFully(header.flip());
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+        }
+        blockOffsets[blockCount++] = channel.position();
+
+        block.clear();
+        block.putInt(buffered);
+        for (int c = 0; c < arity; c++) {
+            int[] column = columns[c];
+            if (encoding == Encoding.PLAIN) {
+                block.asIntBuffer().put(column, 0, buffered);
+                block.position(block.position() + buffered * Integer.BYTES);
+            } else {
+                int lengthAt = block.position();
+                block.putInt(0);
+                int previous = 0;
+                for (int r = 0; r < buffered; r++) {
+                    putVarint(block, zigzag(column[r] - previous));
+                    previous = column[r];
+                }
+                block.putInt(lengthAt, block.position() - lengthAt - Integer.BYTES);
+            }
+        }
+        writeFully(block.flip());
+        buffered = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+}
@@ -0,0 +1,54 @@
+package evaluator.join;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Block-wise SIMD intersection: a vector of {@code a} is compared against every value of a block
+ * of {@code b} broadcast in turn, the block with the smaller last value advances, and the rest is
+ * finished by a scalar merge. Only compiled with {@code -PvectorSimd}, and only loaded, by
+ * {@link SortedIntersection}, when the module is present at run time.
+ */
+final class VectorIntersection implements SortedIntersection.Kernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    VectorIntersection() {
+    }
+
+    @Override
+    public int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out) {
+        int lanes = SPECIES.length();
+        int i = aFrom;
+        int j = bFrom;
+        int n = 0;
+        while (i + lanes <= aTo && j + lanes <= bTo) {
+            int aLast = a[i + lanes - 1];
+            int bLast = b[j + lanes - 1];
+            if (aLast < b[j]) {
+                i += lanes;
+                continue;
+            }
+            if (bLast < a[i]) {
+                j += lanes;
+                continue;
+            }
+            IntVector block = IntVector.fromArray(SPECIES, a, i);
+            VectorMask<Integer> match = block.eq(b[j]);
+            for (int k = 1; k < lanes; k++) {
+                match = match.or(block.eq(b[j + k]));
+            }
+            // each value of a matches at most one value of b, so no value is written twice
+            for (long bits = match.toLong(); bits != 0; bits &= bits - 1) {
+                out[n++] = a[i + Long.numberOfTrailingZeros(bits)];
+            }
+            if (aLast <= bLast) {
+                i += lanes;
+            }
+            if (bLast <= aLast) {
+                j += lanes;
+            }
+        }
+        return SortedIntersection.scalar(a, i, aTo, b, j, bTo, out, n);
+    }
+}
@@ -1,11 +1,46 @@
 package evaluator;
 
-import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import evaluator.index.CpqNativeIndex;
+import evaluator.output.AnswerFileReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class MainTest {
+    @TempDir
+    Path tempDir;
+
     @Test
     void printsUsageOnEmptyArgs() {
         assertDoesNotThrow(() -> Main.main(new String[] {}));
     }
+
+    @Test
+    void batchOutputColumnsFollowTheHead() throws Exception {
+        Path graph = tempDir.resolve("graph.edge");
+        // 1 -0-> 2 -1-> 3
+        Files.writeString(graph, "4 2 2\n1 2 0\n2 3 1\n");
+        Path index = tempDir.resolve("graph.idx");
+        CpqNativeIndex.build(graph, 2, 1).save(index);
+        Path queries = tempDir.resolve("queries.cq");
+        Files.writeString(queries, "(x,y,z) ← 0(x,y), 1(y,z)\n");
+        Path output = tempDir.resolve("answers");
+
+        Main.main(new String[] {index.toString(), "--output", output.toString(), "--queries-file", queries.toString()});
+
+        try (AnswerFileReader reader = AnswerFileReader.open(output.resolve("query-1.cpqa"))) {
+            assertEquals(List.of("?x", "?y", "?z"), reader.variables());
+            List<int[]> rows = new ArrayList<>();
+            reader.forEach(tuple -> rows.add(tuple.clone()));
+            assertEquals(1, rows.size());
+            assertArrayEquals(new int[] {1, 2, 3}, rows.get(0));
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package evaluator.cq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import dev.roanh.gmark.type.schema.Predicate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CanonicalQueryTest {
+    private static final List<Predicate> LABELS = List.of(new Predicate(0, "0"), new Predicate(1, "1"));
+
+    @Test
+    void keyIgnoresVariableNamesAndAtomOrder() {
+        CanonicalQuery a = CanonicalQuery.of(ConjunctiveQuery.parse("(x,z) ← 0(x,y), 1(y,z)", LABELS));
+        CanonicalQuery b = CanonicalQuery.of(ConjunctiveQuery.parse("(p,r) ← 1(q,r), 0(p,q)", LABELS));
+
+        assertEquals(a.key(), b.key());
+        // x and p play the same role, so they sit at the same canonical position
+        assertEquals(a.freeVariables().indexOf("x"), b.freeVariables().indexOf("p"));
+        assertEquals(a.freeVariables().indexOf("z"), b.freeVariables().indexOf("r"));
+    }
+
+    @Test
+    void keySeparatesDifferentQueries() {
+        CanonicalQuery path = CanonicalQuery.of(ConjunctiveQuery.parse("(x,z) ← 0(x,y), 1(y,z)", LABELS));
+        CanonicalQuery swapped = CanonicalQuery.of(ConjunctiveQuery.parse("(x,z) ← 1(x,y), 0(y,z)", LABELS));
+        CanonicalQuery projected = CanonicalQuery.of(ConjunctiveQuery.parse("(x) ← 0(x,y), 1(y,z)", LABELS));
+
+        assertNotEquals(path.key(), swapped.key());
+        assertNotEquals(path.key(), projected.key());
+    }
+}
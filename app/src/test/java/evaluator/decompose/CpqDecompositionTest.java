@@ -0,0 +1,74 @@
+package evaluator.decompose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.roanh.gmark.type.schema.Predicate;
+import evaluator.cq.ConjunctiveQuery;
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.decompose.CpqDecomposition.Orientation;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CpqDecompositionTest {
+    private static final List<Predicate> LABELS = List.of(
+            new Predicate(0, "0"),
+            new Predicate(1, "1"));
+
+    @Test
+    void inverseComponentsShareAKeyInOppositeOrientations() {
+        List<Component> components = components("(x,z) ← 0(x,y), 1(y,z)", 2);
+        Component forward = find(components, "x", "z");
+        Component backward = find(components, "z", "x");
+
+        Orientation a = CpqDecomposition.orientation(forward);
+        Orientation b = CpqDecomposition.orientation(backward);
+        assertEquals(a.key(), b.key());
+        assertNotEquals(a.transposed(), b.transposed());
+        // the key is the canonical form of whichever orientation is read untransposed
+        assertEquals(a.transposed() ? backward.canonical() : forward.canonical(), a.key());
+    }
+
+    @Test
+    void repeatedComponentsShareAKeyInTheSameOrientation() {
+        List<Component> components = components("(x,z) ← 0(x,y), 0(y,z), 1(z,x)", 1);
+        Orientation first = CpqDecomposition.orientation(find(components, "x", "y"));
+        Orientation second = CpqDecomposition.orientation(find(components, "y", "z"));
+        assertEquals(first, second);
+
+        Orientation other = CpqDecomposition.orientation(find(components, "z", "x"));
+        assertNotEquals(first.key(), other.key());
+    }
+
+    @Test
+    void loopsAreNeverTransposed() {
+        List<Component> components = components("(x) ← 0(x,y), 1(y,x)", 2);
+        Orientation loop = CpqDecomposition.orientation(find(components, "x", "x"));
+        assertFalse(loop.transposed());
+        assertTrue(loop.key().startsWith("loop:"));
+        assertNotEquals(CpqDecomposition.orientation(find(components, "x", "y")).key(), loop.key());
+    }
+
+    private static List<Component> components(String query, int k) {
+        return CpqEnumeration.enumerateCpqkComponents(ConjunctiveQuery.parse(query, LABELS).syntax(), k);
+    }
+
+    /**
+     * The component from {@code s} to {@code t} covering the most atoms.
+     */
+    private static Component find(List<Component> components, String s, String t) {
+        Component best = null;
+        for (Component c : components) {
+            if (c.s().getName().equals(s) && c.t().getName().equals(t)
+                    && (best == null || c.mask().cardinality() > best.mask().cardinality())) {
+                best = c;
+            }
+        }
+        if (best == null) {
+            throw new AssertionError("no component from " + s + " to " + t);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,74 @@
+package evaluator.decompose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.roanh.gmark.type.schema.Predicate;
+import evaluator.cq.ConjunctiveQuery;
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.decompose.CpqEnumeration.IncrementalEnumeration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+class IncrementalEnumerationTest {
+    private static final List<Predicate> LABELS = List.of(
+            new Predicate(0, "0"),
+            new Predicate(1, "1"),
+            new Predicate(2, "2"));
+
+    @Test
+    void extendedStateMatchesFreshEnumeration() {
+        ConjunctiveQuery base = ConjunctiveQuery.parse("(x,z) ← 0(x,y), 1(y,z)", LABELS);
+        ConjunctiveQuery extended = ConjunctiveQuery.parse("(x,z) ← 0(x,y), 1(y,z), 2(z,x)", LABELS);
+
+        IncrementalEnumeration state = IncrementalEnumeration.of(base.syntax(), 2);
+        assertTrue(state.isContainedIn(extended.syntax()));
+
+        IncrementalEnumeration next = state.extend(extended.syntax());
+        assertEquals(3, next.atomCount());
+        assertEquals(
+                describe(CpqEnumeration.enumerateCpqkComponents(extended.syntax(), 2)),
+                describe(next.components()));
+        assertFalse(next.exactDecompositions(0).isEmpty());
+        assertFalse(extended.decompose(next).components().isEmpty());
+        assertEquals(
+                ordered(extended.decompose(2).components()),
+                ordered(extended.decompose(next).components()));
+
+        // the base state is left untouched by the extension
+        assertEquals(
+                describe(CpqEnumeration.enumerateCpqkComponents(base.syntax(), 2)),
+                describe(state.components()));
+    }
+
+    @Test
+    void extendRejectsQueriesMissingAtoms() {
+        ConjunctiveQuery base = ConjunctiveQuery.parse("(x,z) ← 0(x,y), 1(y,z)", LABELS);
+        ConjunctiveQuery other = ConjunctiveQuery.parse("(x,z) ← 0(x,y), 2(y,z)", LABELS);
+
+        IncrementalEnumeration state = IncrementalEnumeration.of(base.syntax(), 2);
+        assertFalse(state.isContainedIn(other.syntax()));
+        assertThrows(IllegalArgumentException.class, () -> state.extend(other.syntax()));
+    }
+
+    private static List<String> ordered(List<Component> components) {
+        List<String> out = new ArrayList<>(components.size());
+        for (Component c : components) {
+            out.add(c.s().getName() + " " + c.t().getName() + " " + c.mask() + " " + c.canonical());
+        }
+        return out;
+    }
+
+    private static Set<String> describe(List<Component> components) {
+        Set<String> out = new TreeSet<>();
+        for (Component c : components) {
+            out.add(c.s().getName() + " " + c.t().getName() + " " + c.mask() + " " + c.canonical());
+        }
+        return out;
+    }
+}
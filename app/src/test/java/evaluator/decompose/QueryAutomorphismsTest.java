@@ -0,0 +1,68 @@
+package evaluator.decompose;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class QueryAutomorphismsTest {
+    @Test
+    void directedCycleHasItsRotations() {
+        // 0 -a-> 1 -a-> 2 -a-> 3 -a-> 0
+        QueryAutomorphisms group = QueryAutomorphisms.compute(4,
+                new int[] {0, 1, 2, 3}, new int[] {1, 2, 3, 0}, new String[] {"a", "a", "a", "a"}, new BitSet());
+        assertEquals(3, group.size());
+        Set<List<Integer>> maps = new HashSet<>();
+        for (int element = 0; element < group.size(); element++) {
+            int[] map = group.vertexMap(element);
+            maps.add(List.of(map[0], map[1], map[2], map[3]));
+            int shift = map[0];
+            for (int v = 0; v < 4; v++) {
+                assertEquals((v + shift) % 4, map[v]);
+            }
+            // atom e runs from e to e + 1, so it moves with its source
+            for (int e = 0; e < 4; e++) {
+                assertEquals((e + shift) % 4, group.edgeMap(element)[e]);
+            }
+        }
+        assertEquals(3, maps.size());
+    }
+
+    @Test
+    void labelsAndFreeVariablesBreakSymmetry() {
+        int[] sources = {0, 1, 2, 3};
+        int[] targets = {1, 2, 3, 0};
+        assertEquals(1, QueryAutomorphisms.compute(4, sources, targets, new String[] {"a", "b", "a", "b"}, new BitSet()).size());
+        assertEquals(0, QueryAutomorphisms.compute(4, sources, targets, new String[] {"a", "b", "c", "a"}, new BitSet()).size());
+
+        BitSet free = new BitSet();
+        free.set(0);
+        assertEquals(0, QueryAutomorphisms.compute(4, sources, targets, new String[] {"a", "a", "a", "a"}, free).size());
+
+        // star x -a-> y_i with x free: the leaves may be permuted among themselves
+        QueryAutomorphisms star = QueryAutomorphisms.compute(4,
+                new int[] {0, 0, 0}, new int[] {1, 2, 3}, new String[] {"a", "a", "a"}, free);
+        assertEquals(5, star.size());
+        for (int element = 0; element < star.size(); element++) {
+            assertEquals(0, star.vertexMap(element)[0]);
+        }
+    }
+
+    @Test
+    void collectionStopsAtTheCap() {
+        // seven leaves under one hub: 7! - 1 non-identity elements
+        int[] sources = new int[7];
+        int[] targets = new int[7];
+        String[] labels = new String[7];
+        for (int i = 0; i < 7; i++) {
+            targets[i] = i + 1;
+            labels[i] = "a";
+        }
+        QueryAutomorphisms group = QueryAutomorphisms.compute(8, sources, targets, labels, new BitSet());
+        assertEquals(QueryAutomorphisms.MAX_ELEMENTS, group.size());
+        assertEquals(0, group.vertexMap(0)[0]);
+    }
+}
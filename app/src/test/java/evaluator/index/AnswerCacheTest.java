@@ -0,0 +1,76 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import evaluator.cq.CanonicalQuery;
+import evaluator.join.FactorisedResult;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class AnswerCacheTest {
+    private static final CanonicalQuery PATH = new CanonicalQuery("3;0 1 ;0 a 2,2 b 1", List.of("x", "z"));
+
+    @Test
+    void hitReturnsAnswersUnderCallersNames() {
+        AnswerCache cache = new AnswerCache(1 << 20, AnswerCache.Policy.LRU);
+        // stored with the columns in the opposite order of the canonical one
+        FactorisedResult answers = FactorisedResult.fromSortedTuples(
+                List.of("?z", "?x"), new int[][] {{1, 5}, {2, 4}, {3, 4}});
+        cache.put("idx", PATH, List.of("?x", "?z"), answers);
+
+        FactorisedResult hit = cache.get("idx", PATH, List.of("?a", "?b"));
+        assertNotNull(hit);
+        assertEquals(List.of("?a", "?b"), hit.variables());
+        // rows keep the stored trie order instead of being re-sorted by the canonical columns
+        assertEquals(List.of("?b", "?a"), hit.levelVariables());
+        assertEquals(
+                List.of(Map.of("?a", 5, "?b", 1), Map.of("?a", 4, "?b", 2), Map.of("?a", 4, "?b", 3)),
+                hit.toRows());
+        assertEquals(3, cache.count("idx", PATH));
+        assertEquals(-1, cache.count("other", PATH));
+
+        AnswerCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(2.0 / 3.0, stats.hitRate(), 1e-9);
+    }
+
+    @Test
+    void evictsWithinBudget() {
+        FactorisedResult answers = FactorisedResult.fromSortedTuples(
+                List.of("?x", "?z"), new int[][] {{1, 1}, {1, 2}, {2, 1}, {2, 2}});
+        CanonicalQuery first = new CanonicalQuery("q1", List.of("x", "z"));
+        CanonicalQuery second = new CanonicalQuery("q2", List.of("x", "z"));
+        CanonicalQuery third = new CanonicalQuery("q3", List.of("x", "z"));
+
+        AnswerCache lru = new AnswerCache(300, AnswerCache.Policy.LRU);
+        lru.put("idx", first, List.of("?x", "?z"), answers);
+        lru.put("idx", second, List.of("?x", "?z"), answers);
+        lru.get("idx", first, List.of("?x", "?z"));
+        lru.put("idx", third, List.of("?x", "?z"), answers);
+        assertNotNull(lru.get("idx", first, List.of("?x", "?z")));
+        assertNull(lru.get("idx", second, List.of("?x", "?z")));
+        assertEquals(1, lru.stats().evictions());
+
+        AnswerCache lfu = new AnswerCache(300, AnswerCache.Policy.LFU);
+        lfu.put("idx", first, List.of("?x", "?z"), answers);
+        lfu.put("idx", second, List.of("?x", "?z"), answers);
+        lfu.get("idx", second, List.of("?x", "?z"));
+        lfu.get("idx", second, List.of("?x", "?z"));
+        lfu.get("idx", first, List.of("?x", "?z"));
+        lfu.put("idx", third, List.of("?x", "?z"), answers);
+        assertNull(lfu.get("idx", first, List.of("?x", "?z")));
+        assertNotNull(lfu.get("idx", second, List.of("?x", "?z")));
+    }
+
+    @Test
+    void answersLargerThanBudgetAreNotCached() {
+        AnswerCache cache = new AnswerCache(16, AnswerCache.Policy.LRU);
+        cache.put("idx", PATH, List.of("?x", "?z"), FactorisedResult.fromSortedTuples(
+                List.of("?x", "?z"), new int[][] {{1, 2}}));
+        assertEquals(0, cache.stats().entries());
+    }
+}
@@ -0,0 +1,215 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import evaluator.cq.ConjunctiveQuery;
+import evaluator.decompose.CpqDecomposition;
+import evaluator.decompose.CpqDecomposition.Component;
+import evaluator.decompose.CpqEnumeration;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CpqNativeIndexTest {
+    // 0 -0-> 1, 1 -1-> 2, 3 -2-> 1
+    private static final String GRAPH = "4 3 3\n0 1 0\n1 2 1\n3 1 2\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void labelPairsWithoutPairsProveEmptiness() throws Exception {
+        CpqNativeIndex index = CpqNativeIndex.build(write("graph.edge", GRAPH), 2, 1);
+        index.computeStatistics(3, 2);
+
+        assertFalse(index.isProvablyEmpty(index.parseCQ("(x,z) ← 0(x,y), 1(y,z)")));
+        assertTrue(index.isProvablyEmpty(index.parseCQ("(x,z) ← 1(x,y), 0(y,z)")));
+        // y is the target of both atoms: 0 followed by the inverse of 2
+        assertFalse(index.isProvablyEmpty(index.parseCQ("(x,z) ← 0(x,y), 2(z,y)")));
+        // y is the source of both atoms: the inverse of 0 followed by 2
+        assertTrue(index.isProvablyEmpty(index.parseCQ("(x,z) ← 0(y,x), 2(y,z)")));
+        // label 3 is not catalogued, so nothing is known about it without the graph
+        ConjunctiveQuery unknownLabel = index.parseCQ("(x,y) ← 3(x,y)");
+        assertFalse(index.isProvablyEmpty(unknownLabel));
+        index.attachGraph(tempDir.resolve("graph.edge"));
+        assertTrue(index.isProvablyEmpty(unknownLabel));
+
+        ConjunctiveQuery empty = index.parseCQ("(x,z) ← 1(x,y), 0(y,z)");
+        assertTrue(index.plan(empty, () -> empty.decompose(index.k())).components().isEmpty());
+        assertEquals(0, index.count(index.plan(empty, () -> empty.decompose(index.k()))));
+
+        // an update could add the missing pairs
+        index.insertEdge(2, 0, 3);
+        assertFalse(index.isProvablyEmpty(empty));
+        assertEquals(1, index.count(empty.decompose(index.k())));
+    }
+
+    @Test
+    void sidecarsOfAReplacedIndexAreIgnored() throws Exception {
+        Path indexFile = tempDir.resolve("graph.idx");
+        CpqNativeIndex first = CpqNativeIndex.build(write("first.edge", GRAPH), 2, 1);
+        first.save(indexFile);
+        first.computeStatistics(3, 2).write(StatisticsCatalog.sidecarFor(indexFile), CpqNativeIndex.indexStamp(indexFile));
+        assertNotNull(CpqNativeIndex.load(indexFile).statistics());
+
+        // rebuilt with an edge 2 -0-> 3, so the path 1 then 0 is no longer empty
+        CpqNativeIndex.build(write("second.edge", "4 4 3\n0 1 0\n1 2 1\n3 1 2\n2 3 0\n"), 2, 1).save(indexFile);
+        CpqNativeIndex reloaded = CpqNativeIndex.load(indexFile);
+
+        assertNull(reloaded.statistics());
+        ConjunctiveQuery query = reloaded.parseCQ("(x,z) ← 1(x,y), 0(y,z)");
+        assertFalse(reloaded.isProvablyEmpty(query));
+        assertEquals(1, reloaded.count(query.decompose(reloaded.k())));
+    }
+
+    @Test
+    void traversalGivesTheSameAnswersAsIndexLookups() throws Exception {
+        // a path 0 -0-> 1 -0-> ... -0-> 7 closed by 7 -1-> 0: label 1 binds few vertices, so the
+        // label 0 components after it are cheaper to walk than to look up
+        StringBuilder edges = new StringBuilder("8 8 2\n");
+        for (int v = 0; v < 7; v++) {
+            edges.append(v).append(' ').append(v + 1).append(" 0\n");
+        }
+        Path graph = write("path.edge", edges.append("7 0 1\n").toString());
+
+        for (int k = 1; k <= 2; k++) {
+            CpqNativeIndex lookups = CpqNativeIndex.build(graph, k, 1);
+            CpqNativeIndex traversal = CpqNativeIndex.build(graph, k, 1);
+            traversal.attachGraph(graph);
+            traversal.setSidewaysPassing(true);
+
+            for (String query : List.of(
+                    "(x,z) ← 1(x,y), 0(y,z)",
+                    "(x,z) ← 0(x,y), 1(y,z)",
+                    "(x,w) ← 1(x,y), 0(y,z), 0(z,w)",
+                    "(x,z) ← 0(x,y), 0(y,z), 1(z,w), 0(w,x)",
+                    "(y) ← 1(x,y), 0(z,y)")) {
+                CpqDecomposition expected = lookups.parseCQ(query).decompose(k);
+                CpqDecomposition actual = traversal.parseCQ(query).decompose(k);
+                assertEquals(lookups.evaluate(expected), traversal.evaluate(actual), "k=" + k + " " + query);
+            }
+            // some queries collapse into a single unbound component at k = 2, but not all of them
+            assertTrue(traversal.traversals() > 0, "k=" + k);
+            assertEquals(0, lookups.traversals(), "k=" + k);
+        }
+    }
+
+    @Test
+    void sidewaysPassingGivesThePlainAnswers() throws Exception {
+        Random random = new Random(7);
+        StringBuilder edges = new StringBuilder("12 40 3\n");
+        for (int e = 0; e < 40; e++) {
+            edges.append(random.nextInt(12)).append(' ').append(random.nextInt(12)).append(' ').append(random.nextInt(3)).append('\n');
+        }
+        Path graph = write("random.edge", edges.toString());
+        int[] domain = {1, 4, 5, 9};
+
+        for (int k = 1; k <= 2; k++) {
+            CpqNativeIndex index = CpqNativeIndex.build(graph, k, 1);
+            for (String query : List.of(
+                    "(x,z) ← 0(x,y), 1(y,z)",
+                    "(x,w) ← 0(x,y), 1(y,z), 2(z,w)",
+                    "(x,y,z) ← 0(x,y), 1(x,z), 2(x,w)",
+                    "(x,y) ← 0(x,y), 1(y,z), 2(z,x)",
+                    "(x,z) ← 0(x,y), 0(y,z), 1(x,z)")) {
+                CpqDecomposition decomposition = index.parseCQ(query).decompose(k);
+                index.setSidewaysPassing(false);
+                List<Map<String, Integer>> plain = index.evaluate(decomposition);
+                index.setSidewaysPassing(true);
+                assertEquals(plain, index.evaluate(decomposition), "k=" + k + " " + query);
+
+                // the seeded restriction is passed sideways even with the switch off
+                index.setSidewaysPassing(false);
+                List<Map<String, Integer>> restricted = plain.stream()
+                        .filter(row -> Arrays.binarySearch(domain, row.get("?x")) >= 0)
+                        .toList();
+                assertEquals(restricted, index.evaluateRestricted(decomposition, "?x", domain).toRows(),
+                        "k=" + k + " " + query + " restricted to " + Arrays.toString(domain));
+            }
+        }
+    }
+
+    @Test
+    void sharedComponentsGiveTheUnsharedAnswers() throws Exception {
+        Random random = new Random(11);
+        StringBuilder edges = new StringBuilder("10 30 2\n");
+        for (int e = 0; e < 30; e++) {
+            edges.append(random.nextInt(10)).append(' ').append(random.nextInt(10)).append(' ').append(random.nextInt(2)).append('\n');
+        }
+        CpqNativeIndex index = CpqNativeIndex.build(write("shared.edge", edges.toString()), 1, 1);
+
+        // the same label twice, then once with the second atom read from y to z as its inverse
+        CpqDecomposition repeated = index.parseCQ("(x,z) ← 0(x,y), 0(y,z)").decompose(1);
+        ConjunctiveQuery query = index.parseCQ("(x,z) ← 0(x,y), 0(z,y)");
+        List<Component> forward = query.decompose(1).components();
+        Component second = forward.get(1);
+        Component inverse = CpqEnumeration.enumerateCpqkComponents(query.syntax(), 1).stream()
+                .filter(c -> c.s().equals(second.t()) && c.t().equals(second.s()) && c.mask().equals(second.mask()))
+                .findFirst()
+                .orElseThrow();
+        CpqDecomposition inverted = new CpqDecomposition(query, List.of(forward.get(0), inverse));
+        assertEquals(
+                CpqDecomposition.orientation(forward.get(0)).key(),
+                CpqDecomposition.orientation(inverse).key());
+
+        for (CpqDecomposition decomposition : List.of(repeated, inverted)) {
+            index.setComponentSharing(true);
+            List<Map<String, Integer>> shared = index.evaluate(decomposition);
+            index.setComponentSharing(false);
+            assertEquals(index.evaluate(decomposition), shared, decomposition.cq().syntax().toFormalSyntax());
+        }
+    }
+
+    @Test
+    void updatedAnswersMatchARebuiltIndexBeforeAndAfterCompaction() throws Exception {
+        Path graphFile = write("graph.edge", GRAPH);
+        Path indexFile = tempDir.resolve("graph.idx");
+        CpqNativeIndex.build(graphFile, 2, 1).save(indexFile);
+        CpqNativeIndex index = CpqNativeIndex.load(indexFile);
+        index.attachGraph(graphFile);
+
+        index.insertEdge(2, 0, 3);
+        index.insertEdge(1, 2, 0);
+        index.deleteEdge(0, 0, 1);
+        assertEquals(3, index.pendingEdgeUpdates());
+        CpqNativeIndex rebuilt = CpqNativeIndex.build(write("updated.edge", "4 4 3\n1 2 1\n3 1 2\n2 3 0\n1 0 2\n"), 2, 1);
+        List<String> queries = List.of(
+                "(x,y) ← 0(x,y)",
+                "(x,z) ← 1(x,y), 0(y,z)",
+                "(x,z) ← 0(x,y), 2(y,z)",
+                "(x,z) ← 2(x,y), 0(y,z)",
+                "(x,w) ← 1(x,y), 0(y,z), 2(z,w)",
+                "(x) ← 1(x,y), 0(y,z), 2(z,x)");
+        assertSameAnswers(rebuilt, index, queries);
+
+        assertEquals(indexFile, index.compactAsync(indexFile, graphFile, 1).get());
+        assertEquals(0, index.pendingEdgeUpdates());
+        assertSameAnswers(rebuilt, index, queries);
+        assertSameAnswers(rebuilt, CpqNativeIndex.load(indexFile), queries);
+        assertSameAnswers(rebuilt, CpqNativeIndex.build(graphFile, 2, 1), queries);
+    }
+
+    private static void assertSameAnswers(CpqNativeIndex expected, CpqNativeIndex actual, List<String> queries) {
+        for (String query : queries) {
+            assertEquals(
+                    expected.evaluate(expected.parseCQ(query).decompose(expected.k())),
+                    actual.evaluate(actual.parseCQ(query).decompose(actual.k())),
+                    query);
+        }
+    }
+
+    private Path write(String name, String edges) throws Exception {
+        Path file = tempDir.resolve(name);
+        Files.writeString(file, edges);
+        return file;
+    }
+}
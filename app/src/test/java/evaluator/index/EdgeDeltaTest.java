@@ -0,0 +1,76 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.roanh.gmark.lang.cpq.CPQ;
+import dev.roanh.gmark.type.schema.Predicate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class EdgeDeltaTest {
+    private static final Predicate A = new Predicate(0, "0");
+    private static final Predicate B = new Predicate(1, "1");
+
+    // 0 -a-> 1 -b-> 2, 1 -a-> 3
+    private static GraphAdjacency base() {
+        return GraphAdjacency.from(4, 2, new int[] {0, 1, 1}, new int[] {1, 2, 3}, new int[] {0, 1, 0});
+    }
+
+    @Test
+    void lastUpdateOfAnEdgeWinsAndFoldKeepsLaterUpdates() {
+        EdgeDelta.Log log = new EdgeDelta.Log();
+        log.apply(0, 0, 2, true);
+        log.apply(0, 0, 2, false);
+        log.apply(1, 1, 2, false);
+        EdgeDelta first = log.snapshot();
+        assertSame(first, log.snapshot());
+        assertEquals(3, first.version());
+        assertEquals(2, first.size());
+        assertArrayEquals(new int[] {2}, first.changes(0, 0, false, false));
+        assertArrayEquals(new int[0], first.changes(0, 0, false, true));
+        assertArrayEquals(new int[] {1}, first.changes(1, 2, true, false));
+
+        log.apply(4, 1, 0, true);
+        log.fold(first.version());
+        EdgeDelta rest = log.snapshot();
+        assertEquals(1, rest.size());
+        assertEquals(4, rest.version());
+        assertEquals(5, rest.vertexLimit());
+        BitSet b = new BitSet();
+        b.set(1);
+        assertArrayEquals(new int[] {0, 4}, rest.endpoints(b));
+    }
+
+    @Test
+    void overlayAndCompactionSeeTheUpdatedGraph() {
+        EdgeDelta.Log log = new EdgeDelta.Log();
+        log.apply(1, 1, 2, false);
+        log.apply(3, 1, 2, true);
+        log.apply(2, 0, 4, true);
+        GraphAdjacency updated = base().withDelta(log.snapshot());
+
+        assertEquals(5, updated.vertexCount());
+        assertArrayEquals(new int[] {2}, updated.reach(CPQ.concat(CPQ.label(A), CPQ.label(B)).toAbstractSyntaxTree(), 1, false));
+        assertArrayEquals(new int[0], updated.reach(CPQ.label(B).toAbstractSyntaxTree(), 1, false));
+        assertArrayEquals(new int[] {4}, updated.reach(CPQ.label(A).toAbstractSyntaxTree(), 2, false));
+
+        List<String> edges = new ArrayList<>();
+        updated.compact().forEachEdge((source, label, target) -> edges.add(source + "-" + label + "-" + target));
+        assertEquals(List.of("0-0-1", "1-0-3", "2-0-4", "3-1-2"), edges);
+    }
+
+    @Test
+    void verticesNearFollowEdgesBothWays() {
+        BitSet labels = new BitSet();
+        labels.set(0);
+        labels.set(1);
+        int[] near = base().verticesNear(new int[] {2}, labels, 1);
+        assertArrayEquals(new int[] {1, 2}, near);
+        assertTrue(base().verticesNear(new int[] {2}, labels, 2).length == 4);
+    }
+}
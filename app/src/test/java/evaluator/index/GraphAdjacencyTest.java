@@ -0,0 +1,52 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import dev.roanh.gmark.ast.QueryTree;
+import dev.roanh.gmark.lang.cpq.CPQ;
+import dev.roanh.gmark.type.schema.Predicate;
+import org.junit.jupiter.api.Test;
+
+class GraphAdjacencyTest {
+    private static final Predicate A = new Predicate(0, "0");
+    private static final Predicate B = new Predicate(1, "1");
+
+    // 0 -a-> 1 -b-> 2, 0 -a-> 3 -b-> 2, 0 -b-> 2, 3 -a-> 0
+    private static final GraphAdjacency GRAPH = GraphAdjacency.from(
+            4,
+            2,
+            new int[] {0, 1, 0, 3, 0, 3},
+            new int[] {1, 2, 3, 2, 2, 0},
+            new int[] {0, 1, 0, 1, 1, 0});
+
+    @Test
+    void reachFollowsLabelsConcatenationAndIntersection() {
+        assertArrayEquals(new int[] {1, 3}, GRAPH.reach(CPQ.label(A).toAbstractSyntaxTree(), 0, false));
+        assertArrayEquals(new int[] {2}, GRAPH.reach(CPQ.concat(CPQ.label(A), CPQ.label(B)).toAbstractSyntaxTree(), 0, false));
+        assertArrayEquals(new int[] {2}, GRAPH.reach(
+                CPQ.intersect(CPQ.concat(CPQ.label(A), CPQ.label(B)), CPQ.label(B)).toAbstractSyntaxTree(), 0, false));
+        assertArrayEquals(new int[0], GRAPH.reach(CPQ.label(B).toAbstractSyntaxTree(), 3, true));
+    }
+
+    @Test
+    void backwardReachReturnsSources() {
+        assertArrayEquals(new int[] {0, 1, 3}, GRAPH.reach(CPQ.label(B).toAbstractSyntaxTree(), 2, true));
+        assertArrayEquals(new int[] {0, 3}, GRAPH.reach(CPQ.concat(CPQ.label(A), CPQ.label(B)).toAbstractSyntaxTree(), 2, true));
+        assertArrayEquals(new int[] {1, 3}, GRAPH.reach(CPQ.label(A.getInverse()).toAbstractSyntaxTree(), 0, true));
+    }
+
+    @Test
+    void estimatesFollowLabelCounts() {
+        // three edges per label over four vertices
+        QueryTree a = CPQ.label(A).toAbstractSyntaxTree();
+        QueryTree ab = CPQ.concat(CPQ.label(A), CPQ.label(B)).toAbstractSyntaxTree();
+        assertEquals(3.0, GRAPH.estimateCardinality(a), 1e-9);
+        assertEquals(3.0 * 3.0 / 4, GRAPH.estimateCardinality(ab), 1e-9);
+        assertEquals(1.0, GRAPH.estimateCardinality(CPQ.intersect(CPQ.label(A), CPQ.label(B)).toAbstractSyntaxTree()), 1e-9);
+
+        // one step plus the average degree, and the second step once per expected intermediate
+        assertEquals(1.75, GRAPH.estimateTraversalWork(a), 1e-9);
+        assertEquals(1.75 + 0.75 * 1.75, GRAPH.estimateTraversalWork(ab), 1e-9);
+    }
+}
@@ -0,0 +1,89 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import evaluator.decompose.CpqDecomposition;
+import evaluator.join.FactorisedResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QueryBatchTest {
+    // 0 -0-> 1, 1 -1-> 2, 1 -1-> 3, 2 -0-> 3
+    private static final String GRAPH = "4 4 2\n0 1 0\n1 2 1\n1 3 1\n2 3 0\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sharedRelationsGiveTheSameAnswersInHeadOrder() throws Exception {
+        CpqNativeIndex index = build();
+        List<CpqDecomposition> queries = new ArrayList<>();
+        for (String query : List.of("(x,y,z) ← 0(x,y), 1(y,z)", "(c,a) ← 0(a,b), 1(b,c)", "(y,x) ← 0(x,y)")) {
+            queries.add(index.parseCQ(query).decompose(index.k()));
+        }
+
+        List<List<Map<String, Integer>>> expected = new ArrayList<>();
+        for (CpqDecomposition query : queries) {
+            expected.add(index.evaluate(query));
+        }
+        FactorisedResult[] batched = new FactorisedResult[queries.size()];
+        QueryBatch batch = new QueryBatch(index, queries, QueryBatch.defaultBudgetBytes());
+        batch.run((query, decomposition, relations) -> batched[query] = index.evaluateFactorised(decomposition, relations, batch.identity()));
+
+        for (int q = 0; q < queries.size(); q++) {
+            assertEquals(expected.get(q), batched[q].toRows(), "query " + q);
+        }
+        // the join runs in variable order, the answers keep the head's
+        assertEquals(List.of("?x", "?y", "?z"), batched[0].variables());
+        assertArrayEquals(new int[] {0, 1, 2}, batched[0].tuples(1).get(0));
+        assertEquals(List.of("?c", "?a"), batched[1].variables());
+        assertTrue(batch.distinctComponents() < queries.stream().mapToInt(q -> q.components().size()).sum());
+    }
+
+    @Test
+    void batchAnswersFillTheAnswerCache() throws Exception {
+        CpqNativeIndex index = build();
+        index.setAnswerCache(new AnswerCache(1 << 20, AnswerCache.Policy.LRU));
+        CpqDecomposition query = index.parseCQ("(x,z) ← 0(x,y), 1(y,z)").decompose(index.k());
+        assertEquals(-1, index.cachedCount(query));
+
+        QueryBatch batch = new QueryBatch(index, List.of(query), QueryBatch.defaultBudgetBytes());
+        batch.run((ignored, decomposition, relations) -> index.evaluateFactorised(decomposition, relations, batch.identity()));
+
+        assertEquals(2, index.cachedCount(query));
+        assertEquals(2, index.evaluateFactorised(query).count());
+    }
+
+    @Test
+    void answersJoinedAcrossAnUpdateAreNotCached() throws Exception {
+        CpqNativeIndex index = build();
+        index.attachGraph(tempDir.resolve("graph.edge"));
+        index.setAnswerCache(new AnswerCache(1 << 20, AnswerCache.Policy.LRU));
+        CpqDecomposition query = index.parseCQ("(x,z) ← 0(x,y), 1(y,z)").decompose(index.k());
+
+        QueryBatch batch = new QueryBatch(index, List.of(query), QueryBatch.defaultBudgetBytes());
+        batch.run((ignored, decomposition, relations) -> {
+            // lands after the relations were evaluated against the old graph
+            index.insertEdge(3, 1, 0);
+            index.evaluateFactorised(decomposition, relations, batch.identity());
+        });
+
+        assertEquals(-1, index.cachedCount(query));
+        // 2 -0-> 3 -1-> 0 is an answer now
+        assertEquals(3, index.evaluateFactorised(query).count());
+        assertEquals(3, index.cachedCount(query));
+    }
+
+    private CpqNativeIndex build() throws Exception {
+        Path graph = tempDir.resolve("graph.edge");
+        Files.writeString(graph, GRAPH);
+        return CpqNativeIndex.build(graph, 2, 1);
+    }
+}
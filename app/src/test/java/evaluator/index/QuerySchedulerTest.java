@@ -0,0 +1,82 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import evaluator.index.QueryScheduler.Priority;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class QuerySchedulerTest {
+    @Test
+    void queriesWaitForBudgetAndOverflowIsRejected() throws Exception {
+        // the decomposition argument is unused: estimates come from the map, keyed per test query
+        Map<String, Long> estimates = Map.of("big", 80L, "small", 50L);
+        String[] next = {"big"};
+        QueryScheduler scheduler = new QueryScheduler(null, ignored -> estimates.get(next[0]), 100, 2);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<String> big = CompletableFuture.supplyAsync(() -> run(scheduler, Priority.NORMAL, () -> {
+            started.countDown();
+            await(finish);
+            return "big";
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        next[0] = "small";
+        CompletableFuture<String> small = CompletableFuture.supplyAsync(() -> run(scheduler, Priority.NORMAL, () -> "small"));
+        waitForQueue(scheduler, 1);
+        assertThrows(RejectedExecutionException.class, () -> scheduler.run(null, Priority.LOW, ignored -> "low"));
+
+        finish.countDown();
+        assertEquals("big", big.get(5, TimeUnit.SECONDS));
+        assertEquals("small", small.get(5, TimeUnit.SECONDS));
+
+        QueryScheduler.Stats stats = scheduler.stats();
+        assertEquals(2, stats.admitted());
+        assertEquals(1, stats.rejected());
+        assertEquals(0, stats.running());
+        assertEquals(0, stats.inUseBytes());
+        assertTrue(stats.maxWaitNanos() > 0);
+    }
+
+    @Test
+    void oversizeQueryRunsAlone() throws Exception {
+        QueryScheduler scheduler = new QueryScheduler(null, ignored -> 1_000L, 100, 0);
+        assertEquals("done", scheduler.run(null, Priority.HIGH, ignored -> {
+            assertEquals(100, scheduler.stats().inUseBytes());
+            return "done";
+        }));
+    }
+
+    private static String run(QueryScheduler scheduler, Priority priority, Supplier<String> body) {
+        try {
+            return scheduler.run(null, priority, ignored -> body.get());
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitForQueue(QueryScheduler scheduler, int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.queueDepth() < depth && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(depth, scheduler.queueDepth());
+    }
+}
@@ -0,0 +1,78 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShardLayoutTest {
+    // path 0 -a-> 1 -a-> 2 -b-> 3 -a-> 4 -b-> 5
+    private static GraphAdjacency path() {
+        return GraphAdjacency.from(6, 2,
+                new int[] {0, 1, 2, 3, 4},
+                new int[] {1, 2, 3, 4, 5},
+                new int[] {0, 0, 1, 0, 1});
+    }
+
+    private static ShardLayout layout(ShardLayout.Strategy strategy, int shards, int hops) {
+        List<Path> files = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            files.add(Path.of("shard-" + shard + ".idx"));
+        }
+        return new ShardLayout(strategy, shards, 6, 1, hops, files);
+    }
+
+    @Test
+    void everyVertexHasExactlyOneOwner() {
+        for (ShardLayout.Strategy strategy : ShardLayout.Strategy.values()) {
+            ShardLayout layout = layout(strategy, 3, 1);
+            int owned = 0;
+            for (int shard = 0; shard < 3; shard++) {
+                for (int v : layout.ownedVertices(shard)) {
+                    assertEquals(shard, layout.owner(v));
+                    owned++;
+                }
+            }
+            assertEquals(6, owned);
+        }
+        ShardLayout range = layout(ShardLayout.Strategy.RANGE, 3, 1);
+        assertArrayEquals(new int[] {2, 3}, range.ownedVertices(1));
+        assertEquals(2, range.owner(100));
+    }
+
+    @Test
+    void shardsHoldEveryPathOfAtMostHopsEdgesFromOwnedVertices() {
+        ShardLayout oneHop = layout(ShardLayout.Strategy.RANGE, 3, 1);
+        assertEquals(List.of("1-0-2", "3-0-4", "2-1-3"), edges(oneHop.shardGraph(path(), 1)));
+
+        ShardLayout twoHops = layout(ShardLayout.Strategy.RANGE, 3, 2);
+        assertEquals(List.of("0-0-1", "1-0-2", "3-0-4", "2-1-3", "4-1-5"), edges(twoHops.shardGraph(path(), 1)));
+    }
+
+    @Test
+    void manifestRoundTripsWithIndexFilesNextToIt(@TempDir Path dir) throws Exception {
+        List<Path> files = List.of(dir.resolve("g-0.idx"), dir.resolve("g-1.idx"));
+        ShardLayout written = new ShardLayout(ShardLayout.Strategy.HASH, 2, 6, 2, 3, files);
+        Path manifest = dir.resolve("g" + ShardLayout.MANIFEST_SUFFIX);
+        written.write(manifest);
+
+        ShardLayout read = ShardLayout.read(manifest);
+        assertEquals(written.toString(), read.toString());
+        assertEquals(files.get(1), read.indexFile(1));
+        for (int v = 0; v < 6; v++) {
+            assertEquals(written.owner(v), read.owner(v));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ShardLayout(ShardLayout.Strategy.HASH, 2, 6, 2, 1, files));
+    }
+
+    private static List<String> edges(GraphAdjacency graph) {
+        List<String> out = new ArrayList<>();
+        graph.forEachEdge((source, label, target) -> out.add(source + "-" + label + "-" + target));
+        return out;
+    }
+}
@@ -0,0 +1,108 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import dev.roanh.gmark.lang.cpq.CPQ;
+import dev.roanh.gmark.type.schema.Predicate;
+import evaluator.join.RelationBinding.RelationProjection;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StatisticsCatalogTest {
+    private static final Predicate A = new Predicate(0, "0");
+    private static final Predicate B = new Predicate(1, "1");
+
+    // 0 -a-> 1, 0 -a-> 2, 0 -a-> 3, 1 -b-> 4, 2 -b-> 4, 3 -b-> 5
+    private static final GraphAdjacency GRAPH = GraphAdjacency.from(
+            6,
+            2,
+            new int[] {0, 0, 0, 1, 2, 3},
+            new int[] {1, 2, 3, 4, 4, 5},
+            new int[] {0, 0, 0, 1, 1, 1});
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void catalogHoldsExactLabelAndSequenceCounts() {
+        StatisticsCatalog catalog = StatisticsCatalog.compute(StatisticsCatalogTest::evaluate, 2, 2);
+
+        StatisticsCatalog.PathStats a = catalog.stats(List.of(A));
+        assertEquals(3, a.pairs());
+        assertEquals(1, a.distinctSources());
+        assertEquals(3, a.distinctTargets());
+        assertEquals(3, a.maxOutDegree());
+        assertEquals(0, a.heavySources()[0]);
+
+        StatisticsCatalog.PathStats aInverse = catalog.stats(List.of(A.getInverse()));
+        assertEquals(3, aInverse.distinctSources());
+        assertEquals(1, aInverse.distinctTargets());
+
+        StatisticsCatalog.PathStats ab = catalog.stats(List.of(A, B));
+        assertEquals(2, ab.pairs());
+        assertEquals(2.0, catalog.estimateCardinality(CPQ.concat(CPQ.label(A), CPQ.label(B)).toAbstractSyntaxTree()), 1e-9);
+        assertEquals(6, catalog.vertexCount());
+    }
+
+    @Test
+    void uncataloguedLabelsHaveNoEstimate() {
+        StatisticsCatalog catalog = StatisticsCatalog.compute(StatisticsCatalogTest::evaluate, 2, 2);
+        Predicate c = new Predicate(2, "2");
+
+        assertTrue(Double.isNaN(catalog.estimateCardinality(CPQ.label(c).toAbstractSyntaxTree())));
+        assertTrue(Double.isNaN(catalog.estimateCardinality(CPQ.concat(CPQ.label(A), CPQ.label(c)).toAbstractSyntaxTree())));
+        assertTrue(Double.isNaN(catalog.estimateCardinality(CPQ.intersect(CPQ.label(A), CPQ.label(c)).toAbstractSyntaxTree())));
+        // a catalogued path whose pairs are absent is known to be empty
+        assertEquals(0.0, catalog.estimateCardinality(CPQ.concat(CPQ.label(B), CPQ.label(A)).toAbstractSyntaxTree()), 1e-9);
+    }
+
+    @Test
+    void onlyCataloguedPathsWithoutPairsProveEmptiness() {
+        StatisticsCatalog catalog = StatisticsCatalog.compute(StatisticsCatalogTest::evaluate, 2, 2);
+
+        assertTrue(catalog.provesEmpty(List.of(B, A)));
+        assertTrue(catalog.provesEmpty(List.of(A, A)));
+        assertFalse(catalog.provesEmpty(List.of(A, B)));
+        assertFalse(catalog.provesEmpty(List.of(B.getInverse(), B)));
+        // uncatalogued label and path length
+        assertFalse(catalog.provesEmpty(List.of(new Predicate(2, "2"))));
+        assertFalse(catalog.provesEmpty(List.of(B, A, B)));
+    }
+
+    @Test
+    void sidecarRoundTrips() throws Exception {
+        StatisticsCatalog catalog = StatisticsCatalog.compute(StatisticsCatalogTest::evaluate, 2, 2);
+        Path index = tempDir.resolve("graph.idx");
+        Path sidecar = StatisticsCatalog.sidecarFor(index);
+        catalog.write(sidecar, "12:34");
+
+        assertEquals(tempDir.resolve("graph.idx.stats"), sidecar);
+        StatisticsCatalog loaded = StatisticsCatalog.read(sidecar, "12:34");
+        assertEquals(catalog.vertexCount(), loaded.vertexCount());
+        assertEquals(catalog.stats(List.of(A, B)).pairs(), loaded.stats(List.of(A, B)).pairs());
+        assertEquals(catalog.stats(List.of(B.getInverse())).distinctSources(), loaded.stats(List.of(B.getInverse())).distinctSources());
+        assertTrue(Files.size(sidecar) > 0);
+        assertThrows(IOException.class, () -> StatisticsCatalog.read(sidecar, "12:35"));
+    }
+
+    private static RelationProjection evaluate(CPQ cpq) {
+        int[] sources = new int[64];
+        int[] targets = new int[64];
+        int size = 0;
+        for (int v = 0; v < GRAPH.vertexCount(); v++) {
+            for (int reached : GRAPH.reach(cpq.toAbstractSyntaxTree(), v, false)) {
+                sources[size] = v;
+                targets[size] = reached;
+                size++;
+            }
+        }
+        return RelationProjection.fromPairs(sources, targets, size);
+    }
+}
@@ -0,0 +1,70 @@
+package evaluator.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VertexOrderingTest {
+    // star around 3 (0, 1, 2, 4) plus the chain 4 - 5 - 6
+    private static final int[] SOURCES = {0, 1, 2, 3, 4, 5};
+    private static final int[] TARGETS = {3, 3, 3, 4, 5, 6};
+
+    @Test
+    void degreeOrderPutsHubsFirst() {
+        VertexOrdering ordering = VertexOrdering.compute(VertexOrdering.Strategy.DEGREE, 8, SOURCES, TARGETS, SOURCES.length);
+        assertArrayEquals(new int[] {3, 4, 5, 0, 1, 2, 6, 7}, originals(ordering));
+        assertEquals(0, ordering.internal(3));
+        assertEquals(100, ordering.internal(100));
+        assertEquals(100, ordering.original(100));
+    }
+
+    @Test
+    void breadthFirstOrderKeepsNeighbourhoodsTogether() {
+        VertexOrdering ordering = VertexOrdering.compute(VertexOrdering.Strategy.BFS, 8, SOURCES, TARGETS, SOURCES.length);
+        assertArrayEquals(new int[] {3, 4, 0, 1, 2, 5, 6, 7}, originals(ordering));
+
+        int[] tuple = {ordering.internal(6), ordering.internal(3)};
+        ordering.restore(tuple);
+        assertArrayEquals(new int[] {6, 3}, tuple);
+        assertArrayEquals(new int[] {0, 1, 3}, ordering.internalSet(new int[] {4, 3, 1, 4}));
+    }
+
+    @Test
+    void sidecarRoundTripsAndRejectsNonPermutations(@TempDir Path dir) throws Exception {
+        VertexOrdering written = VertexOrdering.compute(VertexOrdering.Strategy.BFS, 8, SOURCES, TARGETS, SOURCES.length);
+        Path sidecar = VertexOrdering.sidecarFor(dir.resolve("g.idx"));
+        assertEquals("g.idx" + VertexOrdering.SIDECAR_SUFFIX, sidecar.getFileName().toString());
+        written.write(sidecar, "12:34");
+
+        VertexOrdering read = VertexOrdering.read(sidecar, "12:34");
+        assertEquals(written.fingerprint(), read.fingerprint());
+        assertArrayEquals(originals(written), originals(read));
+        assertThrows(IOException.class, () -> VertexOrdering.read(sidecar, "12:35"));
+
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(sidecar))) {
+            out.writeInt(0x43505150);
+            out.writeInt(2);
+            out.writeUTF("12:34");
+            out.writeUTF("DEGREE");
+            out.writeInt(2);
+            out.writeInt(1);
+            out.writeInt(1);
+        }
+        assertThrows(IOException.class, () -> VertexOrdering.read(sidecar, "12:34"));
+    }
+
+    private static int[] originals(VertexOrdering ordering) {
+        int[] out = new int[ordering.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = ordering.original(i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,99 @@
+package evaluator.join;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+class CompressedProjectionTest {
+    @Test
+    void cursorSeeksAcrossBlocksLikeASortedArray() {
+        Random random = new Random(3);
+        TreeSet<Integer> set = new TreeSet<>();
+        // a dense run (zero-width blocks) followed by sparse values with wide gaps
+        for (int v = 0; v < 300; v++) {
+            set.add(v);
+        }
+        while (set.size() < 1000) {
+            set.add(300 + random.nextInt(1 << 30));
+        }
+        int[] sorted = set.stream().mapToInt(Integer::intValue).toArray();
+        PostingBlocks blocks = PostingBlocks.of(sorted, sorted.length);
+        assertArrayEquals(sorted, blocks.toArray(0));
+        assertTrue(blocks.byteSize() < 4L * sorted.length);
+
+        PostingBlocks.Cursor cursor = blocks.cursor();
+        for (int round = 0; round < 200; round++) {
+            cursor.reset(0);
+            int pos = 0;
+            while (!cursor.atEnd()) {
+                int target = cursor.key() + 1 + random.nextInt(round % 2 == 0 ? 4 : 1 << 26);
+                cursor.seek(target);
+                pos = RelationTrie.gallop(sorted, pos, sorted.length, target);
+                assertEquals(sorted.length - pos, cursor.remaining());
+                if (pos < sorted.length) {
+                    assertFalse(cursor.atEnd());
+                    assertEquals(sorted[pos], cursor.key());
+                    assertEquals(pos, cursor.index());
+                }
+            }
+            assertEquals(sorted.length, pos);
+        }
+    }
+
+    @Test
+    void lookupsMatchHeapProjection() {
+        int[] sources = {3, 1, 3, 2, 1, 3};
+        int[] targets = {5, 4, 5, 4, 6, 4};
+        RelationBinding.RelationProjection heap = RelationBinding.RelationProjection.fromPairs(sources, targets, sources.length);
+        CompressedProjection compressed = CompressedProjection.fromPairs(sources, targets, sources.length);
+
+        assertEquals(heap.size(), compressed.size());
+        assertArrayEquals(heap.allSources(), compressed.allSources());
+        assertArrayEquals(heap.allTargets(), compressed.allTargets());
+        for (int v = 0; v < 8; v++) {
+            assertArrayEquals(heap.targetsForSource(v), compressed.targetsForSource(v), "targets of " + v);
+            assertArrayEquals(heap.sourcesForTarget(v), compressed.sourcesForTarget(v), "sources of " + v);
+        }
+    }
+
+    @Test
+    void compressedJoinMatchesHeapJoin() {
+        Random random = new Random(9);
+        for (int round = 0; round < 10; round++) {
+            // enough vertices and edges that lists and key sets span several blocks
+            int[][] edges = LeapfrogTrieJoinTest.randomEdges(random, 400, 3000);
+            List<String> order = List.of("?a", "?b", "?c");
+            Set<Map<String, Integer>> expected = new HashSet<>(LeapfrogTrieJoin.join(List.of(
+                    LeapfrogTrieJoinTest.binary("?a", "?b", edges),
+                    LeapfrogTrieJoinTest.binary("?b", "?c", edges),
+                    LeapfrogTrieJoinTest.binary("?c", "?a", edges)), order));
+
+            List<RelationBinding> relations = List.of(
+                    compressed("?a", "?b", edges),
+                    compressed("?b", "?c", edges),
+                    compressed("?c", "?a", edges));
+            assertEquals(expected, new HashSet<>(LeapfrogTrieJoin.join(relations, order)));
+            assertEquals(expected.size(), LeapfrogTrieJoin.count(relations, order, order));
+        }
+    }
+
+    private static RelationBinding compressed(String sourceVar, String targetVar, int[][] edges) {
+        int[] sources = new int[edges.length];
+        int[] targets = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            sources[i] = edges[i][0];
+            targets[i] = edges[i][1];
+        }
+        CompressedProjection projection = CompressedProjection.fromPairs(sources, targets, edges.length);
+        return RelationBinding.binary(sourceVar, targetVar, sourceVar + targetVar, projection);
+    }
+}
@@ -0,0 +1,97 @@
+package evaluator.join;
+
+import static evaluator.join.LeapfrogTrieJoinTest.binary;
+import static evaluator.join.LeapfrogTrieJoinTest.randomEdges;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class FactorisedResultTest {
+    @Test
+    void factorisedJoinExpandsToFlatJoin() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            int[][] edges = randomEdges(random, 10, 25);
+            List<RelationBinding> relations = List.of(
+                    binary("?x", "?y", edges),
+                    binary("?x", "?z", edges),
+                    binary("?z", "?w", edges));
+            List<String> order = List.of("?x", "?y", "?z", "?w");
+
+            List<Map<String, Integer>> flat = LeapfrogTrieJoin.join(relations, order);
+            FactorisedResult factorised = LeapfrogTrieJoin.joinFactorised(relations, order);
+
+            assertEquals(flat.size(), factorised.count());
+            assertEquals(new HashSet<>(flat), new HashSet<>(factorised.toRows()));
+            assertTrue(factorised.nodeCount() <= (long) flat.size() * order.size());
+        }
+    }
+
+    @Test
+    void projectedResultMatchesDistinctProjection() {
+        Random random = new Random(5);
+        for (int round = 0; round < 20; round++) {
+            int[][] edges = randomEdges(random, 10, 25);
+            List<RelationBinding> relations = List.of(
+                    binary("?x", "?y", edges),
+                    binary("?y", "?z", edges));
+            List<String> order = List.of("?y", "?x", "?z");
+            List<Map<String, Integer>> flat = LeapfrogTrieJoin.join(relations, order);
+
+            for (List<String> projection : List.of(List.of("?y"), List.of("?x", "?y"), List.of("?z", "?x"))) {
+                Set<List<Integer>> expected = new HashSet<>();
+                for (Map<String, Integer> row : flat) {
+                    expected.add(projection.stream().map(row::get).toList());
+                }
+                FactorisedResult result = LeapfrogTrieJoin.joinProjected(relations, order, projection);
+                Set<List<Integer>> actual = new HashSet<>();
+                for (Map<String, Integer> row : result.toRows()) {
+                    actual.add(projection.stream().map(row::get).toList());
+                }
+                assertEquals(expected, actual, "projection " + projection);
+                assertEquals(expected.size(), result.count());
+            }
+        }
+    }
+
+    @Test
+    void projectedColumnsFollowTheProjection() {
+        int[][] edges = {{1, 2}, {2, 3}, {2, 4}};
+        List<RelationBinding> relations = List.of(binary("?x", "?y", edges), binary("?y", "?z", edges));
+        List<String> projection = List.of("?x", "?y", "?z");
+
+        FactorisedResult result = LeapfrogTrieJoin.joinProjected(relations, List.of("?y", "?x", "?z"), projection);
+
+        assertEquals(projection, result.variables());
+        // the trie keeps the planned order
+        assertEquals(List.of("?y", "?x", "?z"), result.levelVariables());
+        assertArrayEquals(new int[] {1, 2, 3}, result.tuples(1).get(0));
+
+        FactorisedResult reordered = result.reordered(List.of("?z", "?x", "?y"));
+        assertEquals(List.of("?z", "?x", "?y"), reordered.variables());
+        assertEquals(result.levelVariables(), reordered.levelVariables());
+        assertEquals(result.nodeCount(), reordered.nodeCount());
+        assertArrayEquals(new int[] {3, 1, 2}, reordered.tuples(1).get(0));
+        assertArrayEquals(new int[] {1, 2, 3}, reordered.mapValues(v -> v).reordered(projection).tuples(1).get(0));
+        assertEquals(result.levelVariables(), reordered.reordered(List.of("?y", "?x", "?z")).variables());
+    }
+
+    @Test
+    void limitStopsExpansionEarly() {
+        int[][] edges = {{1, 2}, {1, 3}, {1, 4}, {2, 5}, {3, 5}, {4, 5}};
+        List<RelationBinding> relations = List.of(binary("?x", "?y", edges), binary("?y", "?z", edges));
+        FactorisedResult result = LeapfrogTrieJoin.joinFactorised(relations, List.of("?x", "?y", "?z"));
+
+        assertEquals(3, result.count());
+        assertEquals(1, result.countDistinct(1));
+        assertEquals(2, result.tuples(2).size());
+        assertArrayEquals(new int[] {1, 2, 5}, result.tuples(1).get(0));
+    }
+}
@@ -0,0 +1,136 @@
+package evaluator.join;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import evaluator.join.RelationBinding.RelationProjection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class LeapfrogTrieJoinTest {
+    @Test
+    void triangleJoinFindsAllTriangles() {
+        int[][] edges = {{1, 2}, {2, 3}, {1, 3}, {3, 4}, {2, 4}};
+        List<RelationBinding> relations = List.of(
+                binary("?a", "?b", edges),
+                binary("?b", "?c", edges),
+                binary("?a", "?c", edges));
+
+        List<Map<String, Integer>> rows = LeapfrogTrieJoin.join(relations, List.of("?a", "?b", "?c"));
+
+        Set<List<Integer>> triangles = new HashSet<>();
+        for (Map<String, Integer> row : rows) {
+            triangles.add(List.of(row.get("?a"), row.get("?b"), row.get("?c")));
+        }
+        assertEquals(Set.of(List.of(1, 2, 3), List.of(2, 3, 4)), triangles);
+    }
+
+    @Test
+    void countAndExistsAgreeWithMaterialisedJoin() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            int[][] edges = randomEdges(random, 12, 30);
+            List<RelationBinding> relations = List.of(
+                    binary("?x", "?y", edges),
+                    binary("?y", "?z", edges));
+            List<String> order = List.of("?y", "?x", "?z");
+            List<Map<String, Integer>> rows = LeapfrogTrieJoin.join(relations, order);
+
+            for (List<String> projection : List.of(
+                    List.<String>of(),
+                    List.of("?y"),
+                    List.of("?x", "?y"),
+                    List.of("?x", "?z"),
+                    List.of("?x", "?y", "?z"))) {
+                Set<List<Integer>> distinct = new HashSet<>();
+                for (Map<String, Integer> row : rows) {
+                    distinct.add(projection.stream().map(row::get).toList());
+                }
+                long expected = rows.isEmpty() ? 0 : distinct.size();
+                assertEquals(expected, LeapfrogTrieJoin.count(relations, order, projection), "projection " + projection);
+            }
+            assertEquals(!rows.isEmpty(), LeapfrogTrieJoin.exists(relations, order));
+        }
+    }
+
+    @Test
+    void existsIsFalseWhenJoinIsEmpty() {
+        List<RelationBinding> relations = List.of(
+                binary("?x", "?y", new int[][] {{1, 2}}),
+                binary("?y", "?z", new int[][] {{3, 4}}));
+
+        assertFalse(LeapfrogTrieJoin.exists(relations, List.of("?x", "?y", "?z")));
+        assertEquals(0, LeapfrogTrieJoin.count(relations, List.of("?x", "?y", "?z"), List.of("?x")));
+        assertTrue(LeapfrogTrieJoin.join(relations, List.of("?x", "?y", "?z")).isEmpty());
+    }
+
+    @Test
+    void heavyLightSplitMatchesPlainJoinOnSkewedInput() {
+        Random random = new Random(11);
+        for (int round = 0; round < 10; round++) {
+            int[][] edges = hubEdges(random, 200, 600);
+            List<String> order = List.of("?a", "?b", "?c");
+            List<Map<String, Integer>> plain = LeapfrogTrieJoin.join(List.of(
+                    binary("?a", "?b", edges, 0),
+                    binary("?b", "?c", edges, 0),
+                    binary("?a", "?c", edges, 0)), order);
+            List<RelationBinding> split = List.of(
+                    binary("?a", "?b", edges, 8),
+                    binary("?b", "?c", edges, 8),
+                    binary("?a", "?c", edges, 8));
+
+            RelationProjection projection = RelationProjection.fromPairs(
+                    column(edges, 0), column(edges, 1), edges.length, 8);
+            assertTrue(projection.heavySourceCount() + projection.heavyTargetCount() > 0);
+            assertEquals(new HashSet<>(plain), new HashSet<>(LeapfrogTrieJoin.join(split, order)));
+            assertEquals(plain.size(), LeapfrogTrieJoin.count(split, order, order));
+        }
+    }
+
+    /**
+     * Random edges where roughly half of them leave or enter one of three hub vertices.
+     */
+    static int[][] hubEdges(Random random, int vertices, int count) {
+        int[][] edges = randomEdges(random, vertices, count);
+        for (int i = 0; i < count; i += 2) {
+            edges[i][random.nextBoolean() ? 0 : 1] = random.nextInt(3);
+        }
+        return edges;
+    }
+
+    private static int[] column(int[][] edges, int index) {
+        int[] out = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            out[i] = edges[i][index];
+        }
+        return out;
+    }
+
+    static int[][] randomEdges(Random random, int vertices, int count) {
+        int[][] edges = new int[count][];
+        for (int i = 0; i < count; i++) {
+            edges[i] = new int[] {random.nextInt(vertices), random.nextInt(vertices)};
+        }
+        return edges;
+    }
+
+    static RelationBinding binary(String sourceVar, String targetVar, int[][] edges) {
+        return binary(sourceVar, targetVar, edges, RelationProjection.DEFAULT_HEAVY_DEGREE);
+    }
+
+    static RelationBinding binary(String sourceVar, String targetVar, int[][] edges, int heavyDegree) {
+        int[] sources = new int[edges.length];
+        int[] targets = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            sources[i] = edges[i][0];
+            targets[i] = edges[i][1];
+        }
+        RelationProjection projection = RelationProjection.fromPairs(sources, targets, edges.length, heavyDegree);
+        return RelationBinding.binary(sourceVar, targetVar, sourceVar + targetVar, projection);
+    }
+}
@@ -0,0 +1,101 @@
+package evaluator.join;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.foreign.Arena;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class OffHeapProjectionTest {
+    @Test
+    void lookupsMatchHeapProjection() {
+        int[] sources = {3, 1, 3, 2, 1, 3};
+        int[] targets = {5, 4, 5, 4, 6, 4};
+        RelationBinding.RelationProjection heap = RelationBinding.RelationProjection.fromPairs(sources, targets, sources.length);
+        try (Arena arena = Arena.ofConfined()) {
+            OffHeapProjection offHeap = OffHeapProjection.fromPairs(arena, sources, targets, sources.length);
+
+            assertEquals(heap.size(), offHeap.size());
+            assertArrayEquals(heap.allSources(), offHeap.allSources());
+            assertArrayEquals(heap.allTargets(), offHeap.allTargets());
+            for (int v = 0; v < 8; v++) {
+                assertArrayEquals(heap.targetsForSource(v), offHeap.targetsForSource(v), "targets of " + v);
+                assertArrayEquals(heap.sourcesForTarget(v), offHeap.sourcesForTarget(v), "sources of " + v);
+            }
+        }
+    }
+
+    @Test
+    void offHeapJoinMatchesHeapJoin() {
+        Random random = new Random(5);
+        for (int round = 0; round < 10; round++) {
+            int[][] edges = LeapfrogTrieJoinTest.randomEdges(random, 15, 40);
+            List<String> order = List.of("?a", "?b", "?c");
+            Set<Map<String, Integer>> expected = new HashSet<>(LeapfrogTrieJoin.join(List.of(
+                    LeapfrogTrieJoinTest.binary("?a", "?b", edges),
+                    LeapfrogTrieJoinTest.binary("?b", "?c", edges),
+                    LeapfrogTrieJoinTest.binary("?a", "?c", edges)), order));
+
+            try (Arena arena = Arena.ofConfined()) {
+                List<RelationBinding> relations = List.of(
+                        offHeap(arena, "?a", "?b", edges),
+                        offHeap(arena, "?b", "?c", edges),
+                        offHeap(arena, "?a", "?c", edges));
+                OffHeapTuples out = new OffHeapTuples(arena, order);
+                LeapfrogTrieJoin.forEachDistinct(relations, order, order, tuple -> {
+                    out.add(tuple);
+                    return true;
+                });
+
+                assertEquals(expected.size(), out.count());
+                assertEquals(expected, new HashSet<>(out.toRows(-1)));
+            }
+        }
+    }
+
+    @Test
+    void forEachDistinctDeduplicatesNonPrefixProjection() {
+        int[][] edges = {{1, 2}, {1, 3}, {4, 2}, {2, 5}, {3, 5}};
+        List<RelationBinding> relations = List.of(
+                LeapfrogTrieJoinTest.binary("?x", "?y", edges),
+                LeapfrogTrieJoinTest.binary("?y", "?z", edges));
+        Set<List<Integer>> seen = new HashSet<>();
+        int[] calls = {0};
+        LeapfrogTrieJoin.forEachDistinct(relations, List.of("?y", "?x", "?z"), List.of("?x", "?z"), tuple -> {
+            seen.add(List.of(tuple[0], tuple[1]));
+            calls[0]++;
+            return true;
+        });
+        assertEquals(Set.of(List.of(1, 5), List.of(4, 5)), seen);
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    void tuplesAreUnreachableAfterArenaCloses() {
+        OffHeapTuples tuples;
+        try (Arena arena = Arena.ofConfined()) {
+            tuples = new OffHeapTuples(arena, List.of("?x", "?y"));
+            tuples.add(new int[] {1, 2});
+            tuples.add(new int[] {3, 4});
+            assertEquals(3, tuples.get(1, 0));
+        }
+        assertThrows(IllegalStateException.class, () -> tuples.get(0, 0));
+    }
+
+    private static RelationBinding offHeap(Arena arena, String sourceVar, String targetVar, int[][] edges) {
+        int[] sources = new int[edges.length];
+        int[] targets = new int[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            sources[i] = edges[i][0];
+            targets[i] = edges[i][1];
+        }
+        OffHeapProjection projection = OffHeapProjection.fromPairs(arena, sources, targets, edges.length);
+        return RelationBinding.binary(sourceVar, targetVar, sourceVar + targetVar, projection);
+    }
+}
@@ -0,0 +1,103 @@
+package evaluator.join;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import evaluator.join.RelationBinding.RelationProjection;
+import java.lang.foreign.Arena;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RelationBindingTest {
+    @Test
+    void projectionFromPairsIsSortedAndDeduplicated() {
+        int[] sources = {5, 1, 5, 1, 3, 5, 0};
+        int[] targets = {2, 9, 2, 4, 2, 7, 0};
+
+        RelationProjection projection = RelationProjection.fromPairs(sources, targets, 6);
+
+        assertArrayEquals(new int[] {1, 3, 5}, projection.allSources());
+        assertArrayEquals(new int[] {2, 4, 7, 9}, projection.allTargets());
+        assertArrayEquals(new int[] {4, 9}, projection.targetsForSource(1));
+        assertArrayEquals(new int[] {2, 7}, projection.targetsForSource(5));
+        assertArrayEquals(new int[] {3, 5}, projection.sourcesForTarget(2));
+        assertArrayEquals(new int[0], projection.targetsForSource(0));
+        assertEquals(5, projection.size());
+    }
+
+    @Test
+    void trieIteratorNestsVariablesInJoinOrder() {
+        int[] sources = {1, 1, 3, 5, 5, 5};
+        int[] targets = {4, 9, 2, 2, 7, 9};
+        RelationBinding heap = RelationBinding.binary("?x", "?y", "r", RelationProjection.fromPairs(sources, targets, sources.length));
+        try (Arena arena = Arena.ofConfined()) {
+            RelationBinding offHeap = RelationBinding.binary("?x", "?y", "r", OffHeapProjection.fromPairs(arena, sources, targets, sources.length));
+            for (RelationBinding binding : List.of(heap, offHeap)) {
+                assertEquals(List.of(1, 4, 1, 9, 3, 2, 5, 2, 5, 7, 5, 9), walk(binding.trieIterator(List.of("?x", "?y"))));
+                assertEquals(List.of(2, 3, 2, 5, 4, 1, 7, 5, 9, 1, 9, 5), walk(binding.trieIterator(List.of("?y", "?x"))));
+
+                TrieIterator it = binding.trieIterator(List.of("?x", "?y"));
+                it.open();
+                it.seek(4);
+                assertEquals(5, it.key());
+                it.open();
+                assertEquals(3, it.remaining());
+                it.seek(8);
+                assertEquals(9, it.key());
+                it.seek(10);
+                assertTrue(it.atEnd());
+                it.up();
+                assertEquals(0, it.depth());
+                assertEquals(5, it.key());
+                it.next();
+                assertTrue(it.atEnd());
+            }
+        }
+    }
+
+    @Test
+    void renamedRelationsShareTheProjectionUnderNewVariables() {
+        int[] sources = {1, 2, 2};
+        int[] targets = {2, 3, 1};
+        RelationBinding shared = RelationBinding.binary("?x", "?y", "r", RelationProjection.fromPairs(sources, targets, sources.length));
+
+        RelationBinding ab = shared.renamed("?a", "?b");
+        RelationBinding bc = shared.renamed("?b", "?c");
+        assertEquals("?a", ab.sourceVar());
+        assertEquals(shared.byteSize(), bc.byteSize());
+        assertEquals(List.of(List.of(1, 2, 1), List.of(1, 2, 3), List.of(2, 1, 2)),
+                LeapfrogTrieJoin.joinProjected(List.of(ab, bc), List.of("?a", "?b", "?c"), List.of("?a", "?b", "?c")).tuples(10)
+                        .stream().map(tuple -> List.of(tuple[0], tuple[1], tuple[2])).toList());
+        assertEquals("?v", RelationBinding.unary("?x", "d", new int[] {4}).renamed("?v", "?v").sourceVar());
+    }
+
+    @Test
+    void swappedRenamingReadsTheInverseRelation() {
+        int[] sources = {1, 2, 2};
+        int[] targets = {2, 3, 1};
+        RelationBinding shared = RelationBinding.binary("?x", "?y", "r", RelationProjection.fromPairs(sources, targets, sources.length));
+
+        // the inverse of r over (?a, ?b) is r with ?b as source and ?a as target
+        RelationBinding inverse = shared.renamed("?b", "?a");
+        assertEquals(List.of(List.of(1, 2), List.of(2, 1), List.of(3, 2)),
+                LeapfrogTrieJoin.joinProjected(List.of(inverse), List.of("?a", "?b"), List.of("?a", "?b")).tuples(10)
+                        .stream().map(tuple -> List.of(tuple[0], tuple[1])).toList());
+    }
+
+    private static List<Integer> walk(TrieIterator it) {
+        List<Integer> pairs = new ArrayList<>();
+        for (it.open(); !it.atEnd(); it.next()) {
+            int first = it.key();
+            for (it.open(); !it.atEnd(); it.next()) {
+                pairs.add(first);
+                pairs.add(it.key());
+            }
+            it.up();
+        }
+        it.up();
+        assertEquals(-1, it.depth());
+        return pairs;
+    }
+}
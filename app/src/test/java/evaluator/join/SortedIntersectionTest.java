@@ -0,0 +1,66 @@
+package evaluator.join;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class SortedIntersectionTest {
+    @Test
+    void vectorKernelMatchesScalarMerge() {
+        assumeTrue(SortedIntersection.vectorised(), "vector kernel not built or jdk.incubator.vector not available");
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            int[] a = sortedDistinct(random, random.nextInt(200), 1 + random.nextInt(400));
+            int[] b = sortedDistinct(random, random.nextInt(200), 1 + random.nextInt(400));
+            int aFrom = a.length == 0 ? 0 : random.nextInt(a.length);
+            int bFrom = b.length == 0 ? 0 : random.nextInt(b.length);
+
+            int[] expected = new int[Math.min(a.length, b.length)];
+            int expectedSize = SortedIntersection.scalar(a, aFrom, a.length, b, bFrom, b.length, expected, 0);
+            int[] actual = new int[expected.length];
+            int actualSize = SortedIntersection.vectorKernel().intersect(a, aFrom, a.length, b, bFrom, b.length, actual);
+
+            assertEquals(expectedSize, actualSize, "round " + round);
+            assertArrayEquals(Arrays.copyOf(expected, expectedSize), Arrays.copyOf(actual, actualSize), "round " + round);
+        }
+    }
+
+    @Test
+    void threeWayJoinOfBalancedListsMatchesExpectedTriangles() {
+        Random random = new Random(13);
+        int[][] edges = LeapfrogTrieJoinTest.randomEdges(random, 40, 600);
+        Set<List<Integer>> edgeSet = new HashSet<>();
+        for (int[] edge : edges) {
+            edgeSet.add(List.of(edge[0], edge[1]));
+        }
+        Set<Map<String, Integer>> expected = new HashSet<>();
+        for (List<Integer> ab : edgeSet) {
+            for (List<Integer> bc : edgeSet) {
+                if (ab.get(1).equals(bc.get(0)) && edgeSet.contains(List.of(ab.get(0), bc.get(1)))) {
+                    expected.add(Map.of("?a", ab.get(0), "?b", ab.get(1), "?c", bc.get(1)));
+                }
+            }
+        }
+
+        List<RelationBinding> relations = List.of(
+                LeapfrogTrieJoinTest.binary("?a", "?b", edges),
+                LeapfrogTrieJoinTest.binary("?b", "?c", edges),
+                LeapfrogTrieJoinTest.binary("?a", "?c", edges),
+                RelationBinding.unary("?b", "b", IntStream.range(0, 40).toArray()));
+
+        assertEquals(expected, new HashSet<>(LeapfrogTrieJoin.join(relations, List.of("?a", "?b", "?c"))));
+    }
+
+    private static int[] sortedDistinct(Random random, int count, int bound) {
+        return random.ints(count, 0, bound).sorted().distinct().toArray();
+    }
+}
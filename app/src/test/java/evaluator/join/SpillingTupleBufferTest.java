@@ -0,0 +1,81 @@
+package evaluator.join;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpillingTupleBufferTest {
+    @TempDir
+    Path spillDir;
+
+    @Test
+    void mergesRunsIntoSortedDistinctTuples() throws IOException {
+        Random random = new Random(3);
+        Set<List<Integer>> expected = new TreeSet<>((a, b) -> a.get(0).equals(b.get(0))
+                ? Integer.compare(a.get(1), b.get(1))
+                : Integer.compare(a.get(0), b.get(0)));
+        List<List<Integer>> seen = new ArrayList<>();
+        try (SpillingTupleBuffer buffer = new SpillingTupleBuffer(2, 64, spillDir)) {
+            for (int i = 0; i < 2_000; i++) {
+                int[] tuple = {random.nextInt(30), random.nextInt(30)};
+                expected.add(List.of(tuple[0], tuple[1]));
+                buffer.add(tuple);
+            }
+            // 8 rows per run, so the merge has to go through intermediate runs
+            assertTrue(buffer.runCount() > 64);
+
+            buffer.forEachDistinct(tuple -> seen.add(List.of(tuple[0], tuple[1])));
+            assertEquals(new ArrayList<>(expected), seen);
+            assertEquals(expected.size(), buffer.countDistinct());
+        }
+        try (Stream<Path> files = Files.list(spillDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void sortDistinctHandlesRowMajorData() {
+        int[] rows = {3, 1, 1, 2, 3, 1, 0, 9, 1, 2};
+        int distinct = SpillingTupleBuffer.sortDistinct(rows, 5, 2);
+        assertEquals(3, distinct);
+        assertEquals(List.of(0, 9, 1, 2, 3, 1), List.of(rows[0], rows[1], rows[2], rows[3], rows[4], rows[5]));
+    }
+
+    @Test
+    void projectIntoMatchesInMemoryProjection() {
+        Random random = new Random(9);
+        for (int round = 0; round < 10; round++) {
+            int[][] edges = LeapfrogTrieJoinTest.randomEdges(random, 12, 40);
+            List<RelationBinding> relations = List.of(
+                    LeapfrogTrieJoinTest.binary("?x", "?y", edges),
+                    LeapfrogTrieJoinTest.binary("?y", "?z", edges));
+            List<String> order = List.of("?y", "?x", "?z");
+            List<String> projection = List.of("?x", "?z");
+
+            Set<List<Integer>> expected = new HashSet<>();
+            for (Map<String, Integer> row : LeapfrogTrieJoin.join(relations, order)) {
+                expected.add(List.of(row.get("?x"), row.get("?z")));
+            }
+
+            Set<List<Integer>> actual = new HashSet<>();
+            try (SpillingTupleBuffer buffer = new SpillingTupleBuffer(2, 40, spillDir)) {
+                LeapfrogTrieJoin.projectInto(relations, order, projection, buffer);
+                buffer.forEachDistinct(tuple -> actual.add(List.of(tuple[0], tuple[1])));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package evaluator.output;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import evaluator.output.AnswerFileWriter.Encoding;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnswerFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsAcrossBlocksInBothEncodings() throws IOException {
+        Random random = new Random(1);
+        List<int[]> rows = new ArrayList<>();
+        int value = 0;
+        for (int i = 0; i < 1_000; i++) {
+            value += random.nextInt(5);
+            rows.add(new int[] {value, random.nextInt(), -random.nextInt(100)});
+        }
+
+        for (Encoding encoding : Encoding.values()) {
+            Path file = dir.resolve(encoding + ".cpqa");
+            try (AnswerFileWriter writer = AnswerFileWriter.open(file, List.of("?x", "?y", "?z"), encoding, 128)) {
+                rows.forEach(writer::write);
+                assertEquals(rows.size(), writer.finish());
+            }
+
+            try (AnswerFileReader reader = AnswerFileReader.open(file)) {
+                assertEquals(List.of("?x", "?y", "?z"), reader.variables());
+                assertEquals(encoding, reader.encoding());
+                assertEquals(rows.size(), reader.rowCount());
+                assertEquals(8, reader.blockCount());
+                assertEquals(rows.get(130)[1], reader.block(1).column(1).get(2));
+
+                List<int[]> read = new ArrayList<>();
+                reader.forEach(tuple -> read.add(tuple.clone()));
+                assertEquals(rows.size(), read.size());
+                for (int i = 0; i < rows.size(); i++) {
+                    assertArrayEquals(rows.get(i), read.get(i), "row " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void deltaEncodingShrinksSortedColumns() throws IOException {
+        Path plain = dir.resolve("plain.cpqa");
+        Path delta = dir.resolve("delta.cpqa");
+        for (Path file : List.of(plain, delta)) {
+            try (AnswerFileWriter writer = AnswerFileWriter.open(file, List.of("?x", "?y"), file == plain ? Encoding.PLAIN : Encoding.DELTA_VARINT)) {
+                for (int i = 0; i < 10_000; i++) {
+                    writer.write(new int[] {i / 10, 1_000_000 + i});
+                }
+                writer.finish();
+            }
+        }
+        assertTrue(Files.size(delta) * 3 < Files.size(plain));
+    }
+
+    @Test
+    void handlesEmptyAndNullaryResults() throws IOException {
+        Path empty = dir.resolve("empty.cpqa");
+        try (AnswerFileWriter writer = AnswerFileWriter.open(empty, List.of("?x"), Encoding.PLAIN)) {
+            writer.finish();
+        }
+        try (AnswerFileReader reader = AnswerFileReader.open(empty)) {
+            assertEquals(0, reader.rowCount());
+            assertEquals(0, reader.blockCount());
+        }
+
+        Path nullary = dir.resolve("nullary.cpqa");
+        try (AnswerFileWriter writer = AnswerFileWriter.open(nullary, List.of(), Encoding.DELTA_VARINT)) {
+            writer.write(new int[0]);
+            writer.finish();
+        }
+        try (AnswerFileReader reader = AnswerFileReader.open(nullary)) {
+            assertEquals(List.of(), reader.variables());
+            assertEquals(1, reader.rowCount());
+        }
+    }
+
+    @Test
+    void unfinishedFilesAreDeleted() throws IOException {
+        Path file = dir.resolve("failed.cpqa");
+        assertThrows(IllegalStateException.class, () -> {
+            try (AnswerFileWriter writer = AnswerFileWriter.open(file, List.of("?x"), Encoding.PLAIN, 2)) {
+                for (int i = 0; i < 5; i++) {
+                    writer.write(new int[] {i});
+                }
+                throw new IllegalStateException("evaluation failed");
+            }
+        });
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void rejectsForeignFiles() throws IOException {
+        Path file = dir.resolve("not-answers.bin");
+        Files.write(file, new byte[64]);
+        assertThrows(IOException.class, () -> AnswerFileReader.open(file));
+    }
+}